@@ -0,0 +1,515 @@
+package com.google.maps.android;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.google.maps.android.MathUtil.EARTH_RADIUS;
+import static java.lang.Math.PI;
+import static java.lang.Math.asin;
+import static java.lang.Math.cos;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * Distances from one point to many, over points packed into arrays. Each point is stored once as
+ * a unit vector, i.e. its cos(latitude) and the other trigonometry of
+ * {@link SphericalUtil#computeDistanceBetween} are computed when the batch is built. Comparing a
+ * query against a point then takes three multiply-adds: the squared chord between the two
+ * vectors grows with the great circle distance, so points are ranked by chord and only the
+ * results are converted to meters. The distances are the same as those of
+ * {@link SphericalUtil#computeDistanceBetween}.
+ * <p>
+ * Immutable and thread safe; {@link #with} and {@link #without} return changed copies.
+ */
+public final class SphericalBatch {
+
+    /** Smallest batch {@link #findNearest} splits over a fork/join pool. */
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private static final double[] NONE = new double[0];
+
+    private final int mSize;
+
+    private final double[] mLatitudes;
+
+    private final double[] mLongitudes;
+
+    private final double[] mX;
+
+    private final double[] mY;
+
+    private final double[] mZ;
+
+    /**
+     * Builds a batch from the first {@code size} coordinates in degrees. The arrays are copied.
+     */
+    public SphericalBatch(double[] latitudes, double[] longitudes, int size) {
+        this(size, Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size),
+                new double[size], new double[size], new double[size]);
+        for (int i = 0; i < size; i++) {
+            toVector(i);
+        }
+    }
+
+    public SphericalBatch(double[] latitudes, double[] longitudes) {
+        this(latitudes, longitudes, latitudes.length);
+    }
+
+    private SphericalBatch(int size, double[] latitudes, double[] longitudes, double[] x,
+                           double[] y, double[] z) {
+        mSize = size;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mX = x;
+        mY = y;
+        mZ = z;
+    }
+
+    /**
+     * Returns an empty batch.
+     */
+    public static SphericalBatch empty() {
+        return new SphericalBatch(0, NONE, NONE, NONE, NONE, NONE);
+    }
+
+    /**
+     * Returns a copy with a point appended at index {@link #size()}.
+     */
+    public SphericalBatch with(double latitude, double longitude) {
+        int size = mSize + 1;
+        SphericalBatch batch = new SphericalBatch(size, Arrays.copyOf(mLatitudes, size),
+                Arrays.copyOf(mLongitudes, size), Arrays.copyOf(mX, size),
+                Arrays.copyOf(mY, size), Arrays.copyOf(mZ, size));
+        batch.mLatitudes[mSize] = latitude;
+        batch.mLongitudes[mSize] = longitude;
+        batch.toVector(mSize);
+        return batch;
+    }
+
+    /**
+     * Returns a copy without the point at {@code index}, later points move down by one.
+     */
+    public SphericalBatch without(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        return new SphericalBatch(mSize - 1, remove(mLatitudes, index),
+                remove(mLongitudes, index), remove(mX, index), remove(mY, index),
+                remove(mZ, index));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Writes the distance in meters from the given point to every point of the batch to
+     * {@code out}, which must hold {@link #size()} values.
+     */
+    public void computeDistances(double latitude, double longitude, double[] out) {
+        double lat = toRadians(latitude);
+        double lng = toRadians(longitude);
+        double cosLat = cos(lat);
+        double x = cosLat * cos(lng);
+        double y = cosLat * sin(lng);
+        double z = sin(lat);
+        for (int i = 0; i < mSize; i++) {
+            out[i] = toMeters(chordSquared(i, x, y, z));
+        }
+    }
+
+    /**
+     * Adds {@code items[i]} of every point {@code i} within {@code meters} of the given point to
+     * {@code out}, in index order.
+     *
+     * @param items values for the points by index, at least {@link #size()} of them.
+     * @return number of items added.
+     */
+    public <T> int collectWithinRadius(double latitude, double longitude, double meters,
+                                       T[] items, List<? super T> out) {
+        if (mSize == 0) {
+            return 0;
+        }
+        double lat = toRadians(latitude);
+        double lng = toRadians(longitude);
+        double cosLat = cos(lat);
+        double x = cosLat * cos(lng);
+        double y = cosLat * sin(lng);
+        double z = sin(lat);
+        double limit = toChordSquared(meters);
+        int added = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (chordSquared(i, x, y, z) <= limit) {
+                out.add(items[i]);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Finds up to {@code k} points within {@code maxMeters} of the given point, without sorting
+     * the batch: a bounded heap keeps the k best, so this takes O(n log k).
+     *
+     * @param indices receives the indices of the points found, closest first.
+     * @param distances receives their distances in meters, may be {@code null}.
+     * @return number of points found, at most {@code k}.
+     */
+    public int findNearest(double latitude, double longitude, int k, double maxMeters,
+                           int[] indices, double[] distances) {
+        if (k <= 0) {
+            return 0;
+        }
+        Nearest<Object> nearest = new Nearest<>(k).reset(latitude, longitude, maxMeters);
+        nearest.add(this, null, 0, mSize);
+        return nearest.copyTo(indices, distances);
+    }
+
+    /**
+     * Like {@link #findNearest(double, double, int, double, int[], double[])}, splitting batches
+     * of at least {@link #PARALLEL_THRESHOLD} points into chunks evaluated on {@code pool}.
+     */
+    public int findNearest(double latitude, double longitude, int k, double maxMeters,
+                           int[] indices, double[] distances, ForkJoinPool pool) {
+        if (k <= 0) {
+            return 0;
+        }
+        if (mSize < PARALLEL_THRESHOLD) {
+            return findNearest(latitude, longitude, k, maxMeters, indices, distances);
+        }
+        int chunk = Math.max(PARALLEL_THRESHOLD / 4,
+                mSize / (4 * pool.getParallelism()) + 1);
+        Nearest<Object> nearest = pool.invoke(
+                new NearestTask(this, latitude, longitude, k, maxMeters, 0, mSize, chunk));
+        return nearest.copyTo(indices, distances);
+    }
+
+    private void toVector(int i) {
+        double lat = toRadians(mLatitudes[i]);
+        double lng = toRadians(mLongitudes[i]);
+        double cosLat = cos(lat);
+        mX[i] = cosLat * cos(lng);
+        mY[i] = cosLat * sin(lng);
+        mZ[i] = sin(lat);
+    }
+
+    private double chordSquared(int i, double x, double y, double z) {
+        double dx = mX[i] - x;
+        double dy = mY[i] - y;
+        double dz = mZ[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Squared chord of the unit sphere spanning an arc of the given length.
+     */
+    private static double toChordSquared(double meters) {
+        if (meters < 0) {
+            return -1;
+        }
+        if (meters >= PI * EARTH_RADIUS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double half = sin(meters / EARTH_RADIUS / 2);
+        return 4 * half * half;
+    }
+
+    private static double toMeters(double chordSquared) {
+        // hav(angle) = chord^2 / 4, the same formula as computeDistanceBetween
+        return 2 * asin(min(1, sqrt(chordSquared) / 2)) * EARTH_RADIUS;
+    }
+
+    private static double[] remove(double[] values, int index) {
+        double[] result = new double[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * The k points nearest to a query point over one or more batches, e.g. the cells of a grid,
+     * kept in a bounded max-heap. Results are read closest first once all batches are added.
+     * Not thread safe.
+     *
+     * @param <T> values associated with the points.
+     */
+    public static final class Nearest<T> {
+
+        private final int mK;
+
+        /** Squared chords, a max-heap until sorted. */
+        private final double[] mKeys;
+
+        private final int[] mIndices;
+
+        private final Object[] mItems;
+
+        private int mCount;
+
+        private boolean mSorted;
+
+        private double mX;
+
+        private double mY;
+
+        private double mZ;
+
+        private double mLimit;
+
+        public Nearest(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive: " + k);
+            }
+            mK = k;
+            mKeys = new double[k];
+            mIndices = new int[k];
+            mItems = new Object[k];
+        }
+
+        /**
+         * Clears the results and sets the query point and the largest distance in meters.
+         */
+        public Nearest<T> reset(double latitude, double longitude, double maxMeters) {
+            double lat = toRadians(latitude);
+            double lng = toRadians(longitude);
+            double cosLat = cos(lat);
+            mX = cosLat * cos(lng);
+            mY = cosLat * sin(lng);
+            mZ = sin(lat);
+            mLimit = toChordSquared(maxMeters);
+            Arrays.fill(mItems, 0, mCount, null);
+            mCount = 0;
+            mSorted = false;
+            return this;
+        }
+
+        /**
+         * Offers every point of a batch.
+         *
+         * @param items values for the points by index or {@code null} to only keep indices.
+         */
+        public void add(SphericalBatch batch, T[] items) {
+            add(batch, items, 0, batch.mSize);
+        }
+
+        void add(SphericalBatch batch, Object[] items, int from, int to) {
+            if (mSorted) {
+                throw new IllegalStateException("results already read, reset first");
+            }
+            double[] xs = batch.mX;
+            double[] ys = batch.mY;
+            double[] zs = batch.mZ;
+            double x = mX;
+            double y = mY;
+            double z = mZ;
+            for (int i = from; i < to; i++) {
+                double dx = xs[i] - x;
+                double dy = ys[i] - y;
+                double dz = zs[i] - z;
+                double key = dx * dx + dy * dy + dz * dz;
+                if (key <= mLimit && (mCount < mK || key < mKeys[0])) {
+                    offer(key, i, items != null ? items[i] : null);
+                }
+            }
+        }
+
+        /**
+         * Offers the results of another instance with the same query.
+         */
+        void merge(Nearest<T> other) {
+            for (int i = 0; i < other.mCount; i++) {
+                double key = other.mKeys[i];
+                if (mCount < mK || key < mKeys[0]) {
+                    offer(key, other.mIndices[i], other.mItems[i]);
+                }
+            }
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        public boolean isFull() {
+            return mCount == mK;
+        }
+
+        /**
+         * Returns the distance in meters of the farthest result so far, which later points have
+         * to beat once {@link #isFull()}.
+         */
+        public double getFarthestDistance() {
+            if (mCount == 0) {
+                return 0;
+            }
+            return toMeters(mSorted ? mKeys[mCount - 1] : mKeys[0]);
+        }
+
+        /**
+         * Returns the value of the {@code i}th closest point.
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int i) {
+            sort();
+            return (T) mItems[i];
+        }
+
+        /**
+         * Returns the index within its batch of the {@code i}th closest point.
+         */
+        public int getIndex(int i) {
+            sort();
+            return mIndices[i];
+        }
+
+        /**
+         * Returns the distance in meters of the {@code i}th closest point.
+         */
+        public double getDistance(int i) {
+            sort();
+            return toMeters(mKeys[i]);
+        }
+
+        int copyTo(int[] indices, double[] distances) {
+            sort();
+            System.arraycopy(mIndices, 0, indices, 0, mCount);
+            if (distances != null) {
+                for (int i = 0; i < mCount; i++) {
+                    distances[i] = toMeters(mKeys[i]);
+                }
+            }
+            return mCount;
+        }
+
+        private void offer(double key, int index, Object item) {
+            int i;
+            if (mCount < mK) {
+                // append and sift up
+                i = mCount++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (mKeys[parent] >= key) {
+                        break;
+                    }
+                    move(parent, i);
+                    i = parent;
+                }
+            } else {
+                // replace the farthest and sift down
+                i = siftDown(key, 0, mCount);
+            }
+            mKeys[i] = key;
+            mIndices[i] = index;
+            mItems[i] = item;
+        }
+
+        /**
+         * Moves children up from {@code i} until {@code key} fits, returns its slot.
+         */
+        private int siftDown(double key, int i, int count) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= count) {
+                    return i;
+                }
+                if (child + 1 < count && mKeys[child + 1] > mKeys[child]) {
+                    child++;
+                }
+                if (mKeys[child] <= key) {
+                    return i;
+                }
+                move(child, i);
+                i = child;
+            }
+        }
+
+        private void move(int from, int to) {
+            mKeys[to] = mKeys[from];
+            mIndices[to] = mIndices[from];
+            mItems[to] = mItems[from];
+        }
+
+        /**
+         * Heap sort of the k results, closest first.
+         */
+        private void sort() {
+            if (mSorted) {
+                return;
+            }
+            for (int end = mCount - 1; end > 0; end--) {
+                double key = mKeys[end];
+                int index = mIndices[end];
+                Object item = mItems[end];
+                move(0, end);
+                int i = siftDown(key, 0, end);
+                mKeys[i] = key;
+                mIndices[i] = index;
+                mItems[i] = item;
+            }
+            mSorted = true;
+        }
+    }
+
+    private static final class NearestTask extends RecursiveTask<Nearest<Object>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SphericalBatch mBatch;
+
+        private final double mLatitude;
+
+        private final double mLongitude;
+
+        private final int mK;
+
+        private final double mMaxMeters;
+
+        private final int mFrom;
+
+        private final int mTo;
+
+        private final int mChunk;
+
+        NearestTask(SphericalBatch batch, double latitude, double longitude, int k,
+                    double maxMeters, int from, int to, int chunk) {
+            mBatch = batch;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mK = k;
+            mMaxMeters = maxMeters;
+            mFrom = from;
+            mTo = to;
+            mChunk = chunk;
+        }
+
+        @Override
+        protected Nearest<Object> compute() {
+            if (mTo - mFrom <= mChunk) {
+                Nearest<Object> nearest = new Nearest<>(mK).reset(mLatitude, mLongitude,
+                        mMaxMeters);
+                nearest.add(mBatch, null, mFrom, mTo);
+                return nearest;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            NearestTask left = new NearestTask(mBatch, mLatitude, mLongitude, mK, mMaxMeters,
+                    mFrom, middle, mChunk);
+            NearestTask right = new NearestTask(mBatch, mLatitude, mLongitude, mK, mMaxMeters,
+                    middle, mTo, mChunk);
+            left.fork();
+            Nearest<Object> nearest = right.compute();
+            nearest.merge(left.join());
+            return nearest;
+        }
+    }
+}
@@ -45,11 +45,19 @@ public class SphericalUtil {
      * @return The heading in degrees clockwise from north.
      */
     public static double computeHeading(LatLng from, LatLng to) {
+        return computeHeading(from.latitude, from.longitude, to.latitude, to.longitude);
+    }
+
+    /**
+     * Like {@link #computeHeading(LatLng, LatLng)}, with coordinates in degrees.
+     */
+    public static double computeHeading(double fromLatitude, double fromLongitude,
+                                        double toLatitude, double toLongitude) {
         // http://williams.best.vwh.net/avform.htm#Crs
-        double fromLat = toRadians(from.latitude);
-        double fromLng = toRadians(from.longitude);
-        double toLat = toRadians(to.latitude);
-        double toLng = toRadians(to.longitude);
+        double fromLat = toRadians(fromLatitude);
+        double fromLng = toRadians(fromLongitude);
+        double toLat = toRadians(toLatitude);
+        double toLng = toRadians(toLongitude);
         double dLng = toLng - fromLng;
         double heading = atan2(
                 sin(dLng) * cos(toLat),
@@ -65,20 +73,82 @@ public class SphericalUtil {
      * @param heading  The heading in degrees clockwise from north.
      */
     public static LatLng computeOffset(LatLng from, double distance, double heading) {
+        double[] point = new double[2];
+        computeOffset(from.latitude, from.longitude, distance, heading, point, 0);
+        return new LatLng(point[0], point[1]);
+    }
+
+    /**
+     * Like {@link #computeOffset(LatLng, double, double)} without allocating: writes latitude
+     * and longitude in degrees to {@code out[offset]} and {@code out[offset + 1]}.
+     */
+    public static void computeOffset(double fromLatitude, double fromLongitude, double distance,
+                                     double heading, double[] out, int offset) {
         distance /= EARTH_RADIUS;
-        heading = toRadians(heading);
-        // http://williams.best.vwh.net/avform.htm#LL
-        double fromLat = toRadians(from.latitude);
-        double fromLng = toRadians(from.longitude);
+        double fromLat = toRadians(fromLatitude);
+        double sinFromLat = sin(fromLat);
+        double cosFromLat = cos(fromLat);
+        offset(sinFromLat, cosFromLat, toRadians(fromLongitude), cos(distance), sin(distance),
+                toRadians(heading), out, offset);
+    }
+
+    /**
+     * Batch form of {@link #computeOffset(double, double, double, double, double[], int)},
+     * moving the same distance from one origin in each of the given headings. Point {@code i}
+     * is written to {@code out[2 * i]} and {@code out[2 * i + 1]}. Terms that only depend on the
+     * origin and distance are computed once.
+     *
+     * @param count number of headings to use.
+     */
+    public static void computeOffsets(double fromLatitude, double fromLongitude, double distance,
+                                      double[] headings, int count, double[] out) {
+        distance /= EARTH_RADIUS;
+        double fromLat = toRadians(fromLatitude);
+        double fromLng = toRadians(fromLongitude);
+        double sinFromLat = sin(fromLat);
+        double cosFromLat = cos(fromLat);
         double cosDistance = cos(distance);
         double sinDistance = sin(distance);
+        for (int i = 0; i < count; i++) {
+            offset(sinFromLat, cosFromLat, fromLng, cosDistance, sinDistance,
+                    toRadians(headings[i]), out, 2 * i);
+        }
+    }
+
+    /**
+     * Fills {@code out} with {@code count} points on a circle of the given radius in meters,
+     * starting north and going clockwise in equal steps, e.g. for drawing an accuracy circle.
+     * Point {@code i} is written to {@code out[2 * i]} and {@code out[2 * i + 1]}.
+     */
+    public static void computeCircle(double centerLatitude, double centerLongitude,
+                                     double radius, int count, double[] out) {
+        double distance = radius / EARTH_RADIUS;
+        double fromLat = toRadians(centerLatitude);
+        double fromLng = toRadians(centerLongitude);
         double sinFromLat = sin(fromLat);
         double cosFromLat = cos(fromLat);
+        double cosDistance = cos(distance);
+        double sinDistance = sin(distance);
+        double step = 2 * PI / count;
+        for (int i = 0; i < count; i++) {
+            offset(sinFromLat, cosFromLat, fromLng, cosDistance, sinDistance, i * step,
+                    out, 2 * i);
+        }
+    }
+
+    /**
+     * Shared by the offset methods, distance and heading in radians.
+     */
+    private static void offset(double sinFromLat, double cosFromLat, double fromLng,
+                               double cosDistance, double sinDistance, double heading,
+                               double[] out, int offset) {
+        // http://williams.best.vwh.net/avform.htm#LL
         double sinLat = cosDistance * sinFromLat + sinDistance * cosFromLat * cos(heading);
         double dLng = atan2(
                 sinDistance * cosFromLat * sin(heading),
                 cosDistance - sinFromLat * sinLat);
-        return new LatLng(toDegrees(asin(sinLat)), toDegrees(fromLng + dLng));
+        out[offset] = toDegrees(asin(sinLat));
+        out[offset + 1] = toDegrees(fromLng + dLng);
     }
 
     /**
@@ -91,13 +161,28 @@ public class SphericalUtil {
      * @param heading  The heading in degrees clockwise from north.
      */
     public static LatLng computeOffsetOrigin(LatLng to, double distance, double heading) {
+        double[] point = new double[2];
+        if (!computeOffsetOrigin(to.latitude, to.longitude, distance, heading, point, 0)) {
+            return null;
+        }
+        return new LatLng(point[0], point[1]);
+    }
+
+    /**
+     * Like {@link #computeOffsetOrigin(LatLng, double, double)} without allocating: writes
+     * latitude and longitude in degrees to {@code out[offset]} and {@code out[offset + 1]}.
+     * @return false, leaving {@code out} unchanged, if there is no solution.
+     */
+    public static boolean computeOffsetOrigin(double toLatitude, double toLongitude,
+                                              double distance, double heading,
+                                              double[] out, int offset) {
         heading = toRadians(heading);
         distance /= EARTH_RADIUS;
         // http://lists.maptools.org/pipermail/proj/2008-October/003939.html
         double n1 = cos(distance);
         double n2 = sin(distance) * cos(heading);
         double n3 = sin(distance) * sin(heading);
-        double n4 = sin(toRadians(to.latitude));
+        double n4 = sin(toRadians(toLatitude));
         // There are two solutions for b. b = n2 * n4 +/- sqrt(), one solution results
         // in the latitude outside the [-90, 90] range. We first try one solution and
         // back off to the other if we are outside that range.
@@ -105,7 +190,7 @@ public class SphericalUtil {
         double discriminant = n2 * n2 * n12 + n12 * n12 - n12 * n4 * n4;
         if (discriminant < 0) {
             // No real solution which would make sense in LatLng-space.
-            return null;
+            return false;
         }
         double b = n2 * n4 + sqrt(discriminant);
         b /= n1 * n1 + n2 * n2;
@@ -118,11 +203,13 @@ public class SphericalUtil {
         }
         if (fromLatRadians < -PI / 2 || fromLatRadians > PI / 2) {
             // No solution which would make sense in LatLng-space.
-            return null;
+            return false;
         }
-        double fromLngRadians = toRadians(to.longitude) -
+        double fromLngRadians = toRadians(toLongitude) -
                 atan2(n3, n1 * cos(fromLatRadians) - n2 * sin(fromLatRadians));
-        return new LatLng(toDegrees(fromLatRadians), toDegrees(fromLngRadians));
+        out[offset] = toDegrees(fromLatRadians);
+        out[offset + 1] = toDegrees(fromLngRadians);
+        return true;
     }
 
     /**
@@ -134,32 +221,86 @@ public class SphericalUtil {
      * @return The interpolated LatLng.
      */
     public static LatLng interpolate(LatLng from, LatLng to, double fraction) {
+        if (sin(computeAngleBetween(from, to)) < 1E-6) {
+            return from;
+        }
+        double[] point = new double[2];
+        interpolate(from.latitude, from.longitude, to.latitude, to.longitude, fraction,
+                point, 0);
+        return new LatLng(point[0], point[1]);
+    }
+
+    /**
+     * Like {@link #interpolate(LatLng, LatLng, double)} without allocating: writes latitude and
+     * longitude in degrees to {@code out[offset]} and {@code out[offset + 1]}.
+     */
+    public static void interpolate(double fromLatitude, double fromLongitude,
+                                   double toLatitude, double toLongitude, double fraction,
+                                   double[] out, int offset) {
+        interpolate(fromLatitude, fromLongitude, toLatitude, toLongitude, fraction, 0, 1,
+                out, offset);
+    }
+
+    /**
+     * Batch form of {@link #interpolate(double, double, double, double, double, double[], int)},
+     * filling {@code out} with {@code count} points evenly spaced along the great circle,
+     * including both ends, e.g. for drawing a path. Point {@code i} is written to
+     * {@code out[2 * i]} and {@code out[2 * i + 1]}.
+     */
+    public static void interpolate(double fromLatitude, double fromLongitude,
+                                   double toLatitude, double toLongitude, int count,
+                                   double[] out) {
+        double step = count > 1 ? 1.0 / (count - 1) : 0;
+        interpolate(fromLatitude, fromLongitude, toLatitude, toLongitude, 0, step, count,
+                out, 0);
+    }
+
+    /**
+     * Writes {@code count} points at fractions {@code first}, {@code first + step}, ...
+     */
+    private static void interpolate(double fromLatitude, double fromLongitude,
+                                    double toLatitude, double toLongitude, double first,
+                                    double step, int count, double[] out, int offset) {
         // http://en.wikipedia.org/wiki/Slerp
-        double fromLat = toRadians(from.latitude);
-        double fromLng = toRadians(from.longitude);
-        double toLat = toRadians(to.latitude);
-        double toLng = toRadians(to.longitude);
-        double cosFromLat = cos(fromLat);
-        double cosToLat = cos(toLat);
+        double fromLat = toRadians(fromLatitude);
+        double fromLng = toRadians(fromLongitude);
+        double toLat = toRadians(toLatitude);
+        double toLng = toRadians(toLongitude);
 
         // Computes Spherical interpolation coefficients.
-        double angle = computeAngleBetween(from, to);
+        double angle = distanceRadians(fromLat, fromLng, toLat, toLng);
         double sinAngle = sin(angle);
         if (sinAngle < 1E-6) {
-            return from;
+            for (int i = 0; i < count; i++) {
+                out[offset + 2 * i] = fromLatitude;
+                out[offset + 2 * i + 1] = fromLongitude;
+            }
+            return;
         }
-        double a = sin((1 - fraction) * angle) / sinAngle;
-        double b = sin(fraction * angle) / sinAngle;
+        double cosFromLat = cos(fromLat);
+        double cosToLat = cos(toLat);
+        double fromX = cosFromLat * cos(fromLng);
+        double fromY = cosFromLat * sin(fromLng);
+        double fromZ = sin(fromLat);
+        double toX = cosToLat * cos(toLng);
+        double toY = cosToLat * sin(toLng);
+        double toZ = sin(toLat);
+        for (int i = 0; i < count; i++) {
+            double fraction = first + i * step;
+            double a = sin((1 - fraction) * angle) / sinAngle;
+            double b = sin(fraction * angle) / sinAngle;
 
-        // Converts from polar to vector and interpolate.
-        double x = a * cosFromLat * cos(fromLng) + b * cosToLat * cos(toLng);
-        double y = a * cosFromLat * sin(fromLng) + b * cosToLat * sin(toLng);
-        double z = a * sin(fromLat) + b * sin(toLat);
+            // Converts from polar to vector and interpolate.
+            double x = a * fromX + b * toX;
+            double y = a * fromY + b * toY;
+            double z = a * fromZ + b * toZ;
 
-        // Converts interpolated vector back to polar.
-        double lat = atan2(z, sqrt(x * x + y * y));
-        double lng = atan2(y, x);
-        return new LatLng(toDegrees(lat), toDegrees(lng));
+            // Converts interpolated vector back to polar.
+            double lat = atan2(z, sqrt(x * x + y * y));
+            double lng = atan2(y, x);
+            out[offset + 2 * i] = toDegrees(lat);
+            out[offset + 2 * i + 1] = toDegrees(lng);
+        }
     }
 
     /**
@@ -185,6 +326,15 @@ public class SphericalUtil {
         return computeAngleBetween(from, to) * EARTH_RADIUS;
     }
 
+    /**
+     * Like {@link #computeDistanceBetween(LatLng, LatLng)}, with coordinates in degrees.
+     */
+    public static double computeDistanceBetween(double fromLatitude, double fromLongitude,
+                                                double toLatitude, double toLongitude) {
+        return distanceRadians(toRadians(fromLatitude), toRadians(fromLongitude),
+                toRadians(toLatitude), toRadians(toLongitude)) * EARTH_RADIUS;
+    }
+
     /**
      * Returns the length of the given path, in meters, on Earth.
      */
@@ -0,0 +1,13 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+/**
+ * Source of monotonic time, injectable so that time dependent logic can be driven
+ * deterministically in tests.
+ */
+public interface Clock {
+
+    /**
+     * Returns milliseconds since some fixed point of time, e.g. boot. Must never go backwards.
+     */
+    long elapsedRealtime();
+}
@@ -0,0 +1,244 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import com.indooratlas.android.example.indoor.wrld.model.LocalTangentPlane;
+
+/**
+ * Decides how eagerly GPS should be running. Outdoor fixes are thrown away while indoors, so once
+ * the user has been stably indoors for a while GPS updates are first reduced and then suspended.
+ * GPS is brought back to full rate ahead of an exit, i.e. when the indoor fix approaches the venue
+ * boundary or the floor plan has been lost and an exit is pending.
+ * <p>
+ * Like {@link IndoorOutdoorTransitionEngine} this class has no timers of its own: the owner calls
+ * {@link #tick()} no later than {@link #getNextDeadline()}. Not thread safe except for the
+ * counters which can be read from any thread.
+ */
+public class GpsDutyCyclePolicy {
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    public enum Mode {
+        /** Updates as often as available. */
+        CONTINUOUS,
+        /** Infrequent updates, see {@link Config#setReducedInterval(long, float)}. */
+        REDUCED,
+        /** No GPS updates at all. */
+        SUSPENDED
+    }
+
+    /**
+     * Receives mode changes.
+     */
+    public interface Callback {
+        void onGpsModeChanged(Mode mode);
+    }
+
+    /**
+     * Tunable thresholds, times in milliseconds and distances in meters.
+     */
+    public static class Config {
+
+        long reduceAfterMillis = 10000;
+        long suspendAfterMillis = 60000;
+        long reducedIntervalMillis = 10000;
+        float reducedMinDistance = 10f;
+        float boundaryMargin = 20f;
+        float defaultVenueRadius = 100f;
+
+        /**
+         * How long indoors must be stable before reducing and suspending GPS.
+         */
+        public Config setStableIndoorsMillis(long reduceAfter, long suspendAfter) {
+            reduceAfterMillis = reduceAfter;
+            suspendAfterMillis = suspendAfter;
+            return this;
+        }
+
+        /**
+         * Request parameters used in {@link Mode#REDUCED}.
+         */
+        public Config setReducedInterval(long intervalMillis, float minDistance) {
+            reducedIntervalMillis = intervalMillis;
+            reducedMinDistance = minDistance;
+            return this;
+        }
+
+        /**
+         * GPS is restored when the indoor fix, widened by its accuracy, comes closer than this
+         * to the venue boundary.
+         */
+        public Config setBoundaryMargin(float meters) {
+            boundaryMargin = meters;
+            return this;
+        }
+
+        /**
+         * Venue radius used when the venue footprint is not known.
+         */
+        public Config setDefaultVenueRadius(float meters) {
+            defaultVenueRadius = meters;
+            return this;
+        }
+    }
+
+    private final Clock mClock;
+
+    private final Config mConfig;
+
+    private final Callback mCallback;
+
+    private Mode mMode = Mode.CONTINUOUS;
+
+    private boolean mIndoors;
+
+    private boolean mExitPending;
+
+    private boolean mNearBoundary;
+
+    /** Time since when indoors has been stable, i.e. no pending exit or boundary proximity. */
+    private long mStableSince;
+
+    /** Frame anchored at the venue center or {@code null} if there is no boundary. */
+    private LocalTangentPlane mBoundary;
+
+    private float mBoundaryRadius;
+
+    private volatile long mCallbackCount;
+
+    private volatile long mDiscardedCount;
+
+    public GpsDutyCyclePolicy(Clock clock, Config config, Callback callback) {
+        mClock = clock;
+        mConfig = config;
+        mCallback = callback;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public long getReducedIntervalMillis() {
+        return mConfig.reducedIntervalMillis;
+    }
+
+    public float getReducedMinDistance() {
+        return mConfig.reducedMinDistance;
+    }
+
+    public void onIndoorsChanged(boolean indoors) {
+        mIndoors = indoors;
+        mNearBoundary = false;
+        resetStable();
+    }
+
+    /**
+     * Called when the floor plan has been lost while indoors and an exit may follow
+     * ({@code true}) or when that is no longer the case ({@code false}).
+     */
+    public void onExitPending(boolean pending) {
+        if (pending != mExitPending) {
+            mExitPending = pending;
+            resetStable();
+        }
+    }
+
+    /**
+     * Sets the area of the current venue, a circle around its center.
+     *
+     * @param radius radius in meters or 0 to use the default.
+     */
+    public void setVenueBoundary(double latitude, double longitude, float radius) {
+        mBoundary = new LocalTangentPlane(latitude, longitude);
+        mBoundaryRadius = radius > 0 ? radius : mConfig.defaultVenueRadius;
+    }
+
+    public void clearVenueBoundary() {
+        mBoundary = null;
+        if (mNearBoundary) {
+            mNearBoundary = false;
+            resetStable();
+        }
+    }
+
+    public void onIndoorFix(double latitude, double longitude, float accuracy) {
+        LocalTangentPlane boundary = mBoundary;
+        if (boundary == null) {
+            return;
+        }
+        double distance = boundary.distance(latitude, longitude, boundary.getLatitude(),
+                boundary.getLongitude());
+        boolean near = distance + accuracy + mConfig.boundaryMargin >= mBoundaryRadius;
+        if (near != mNearBoundary) {
+            mNearBoundary = near;
+            resetStable();
+        }
+    }
+
+    /**
+     * Records a GPS callback for the statistics.
+     *
+     * @param discarded true if the fix was thrown away, e.g. because we are indoors.
+     */
+    public void recordCallback(boolean discarded) {
+        mCallbackCount++;
+        if (discarded) {
+            mDiscardedCount++;
+        }
+    }
+
+    /**
+     * Number of GPS callbacks received.
+     */
+    public long getCallbackCount() {
+        return mCallbackCount;
+    }
+
+    /**
+     * Number of GPS callbacks whose fix was thrown away.
+     */
+    public long getDiscardedCount() {
+        return mDiscardedCount;
+    }
+
+    public void tick() {
+        evaluate();
+    }
+
+    public long getNextDeadline() {
+        if (!isStable()) {
+            return NO_DEADLINE;
+        }
+        switch (mMode) {
+            case CONTINUOUS:
+                return mStableSince + mConfig.reduceAfterMillis;
+            case REDUCED:
+                return mStableSince + mConfig.suspendAfterMillis;
+            default:
+                return NO_DEADLINE;
+        }
+    }
+
+    private boolean isStable() {
+        return mIndoors && !mExitPending && !mNearBoundary;
+    }
+
+    private void resetStable() {
+        mStableSince = mClock.elapsedRealtime();
+        evaluate();
+    }
+
+    private void evaluate() {
+        Mode mode = Mode.CONTINUOUS;
+        if (isStable()) {
+            long stable = mClock.elapsedRealtime() - mStableSince;
+            if (stable >= mConfig.suspendAfterMillis) {
+                mode = Mode.SUSPENDED;
+            } else if (stable >= mConfig.reduceAfterMillis) {
+                mode = Mode.REDUCED;
+            }
+        }
+        if (mode != mMode) {
+            mMode = mode;
+            mCallback.onGpsModeChanged(mode);
+        }
+    }
+}
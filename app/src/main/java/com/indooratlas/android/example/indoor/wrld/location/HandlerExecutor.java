@@ -0,0 +1,57 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+import timber.log.Timber;
+
+/**
+ * Adapts a {@link Handler} to {@link Executor} so that {@link LocationEventBus} subscribers can be
+ * served on a looper thread.
+ */
+public class HandlerExecutor implements Executor {
+
+    private final Handler mHandler;
+
+    public HandlerExecutor(Handler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Executor running tasks on the main thread.
+     */
+    public static HandlerExecutor mainThread() {
+        return new HandlerExecutor(new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Executor running tasks on a new dedicated {@link HandlerThread}. Call {@link #quit()} when
+     * no longer needed.
+     */
+    public static HandlerExecutor newThread(String name) {
+        HandlerThread thread = new HandlerThread(name);
+        thread.start();
+        return new HandlerExecutor(new Handler(thread.getLooper()));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!mHandler.post(command)) {
+            Timber.w("looper has quit, dropping task: %s", command);
+        }
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Quits the looper after pending tasks have been run.
+     */
+    public void quit() {
+        mHandler.getLooper().quitSafely();
+    }
+}
@@ -6,6 +6,9 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import com.indooratlas.android.sdk.IALocation;
@@ -14,13 +17,24 @@ import com.indooratlas.android.sdk.IALocationManager;
 import com.indooratlas.android.sdk.IALocationRequest;
 import com.indooratlas.android.sdk.IARegion;
 import com.indooratlas.android.example.indoor.wrld.Global;
+import com.indooratlas.android.example.indoor.wrld.model.IaId;
+import com.indooratlas.android.example.indoor.wrld.model.VenueCatalog;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadataStorage;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 import timber.log.Timber;
 
 /**
  * Implementation of {@link LocationProducer} which fuses together locations from indoors
- * (IndoorAtlas) and outdoors (platform location). Note that this class is not thread safe and not
- * intended for production use.
+ * (IndoorAtlas) and outdoors (platform location). All callbacks and the fusion logic run on a
+ * dedicated {@link HandlerThread}; the indoor/outdoor context is kept in an immutable
+ * {@link State} that is swapped atomically, so the getters can be called from any thread.
+ * Transitions between indoors and outdoors are decided by {@link IndoorOutdoorTransitionEngine}
+ * and GPS is duty cycled while indoors according to {@link GpsDutyCyclePolicy}.
+ * Subscribers receive events on the producer thread unless they subscribe with an asynchronous
+ * {@link LocationEventBus.DispatchPolicy}. Not intended for production use.
  */
 public class IndoorOutdoorLocationProducer implements
         LocationProducer,
@@ -30,8 +44,8 @@ public class IndoorOutdoorLocationProducer implements
 
     private static final String TAG = IndoorOutdoorLocationProducer.class.getSimpleName();
 
-    /** Delay after last exit-floor event when we'll fire exit venue locally. */
-    private static final long EXIT_VENUE_DELAY = 1500;
+    /** Distance from a venue within which outdoor fixes start preparing for entering it. */
+    private static final double PRE_ENTRY_RADIUS_METERS = 200;
 
     /** IndoorAtlas location manager for indoor positions. */
     private IALocationManager mIndoorManager;
@@ -39,24 +53,78 @@ public class IndoorOutdoorLocationProducer implements
     /** Platform location manager for outdoor locations (GPS). */
     private LocationManager mOutdoorManager;
 
-    /** Listener for the location related events we produce. */
-    private LocationProducer.Listener mListener = new ListenerSupport();
+    /** Subscribers of the location related events we produce. */
+    private final LocationEventBus mListener = new LocationEventBus();
+
+    /** Current indoor/outdoor context, replaced as a whole on each change. */
+    private final AtomicReference<State> mState = new AtomicReference<>(State.INITIAL);
+
+    private final LocationFixSnapshot mLastFix = new LocationFixSnapshot();
+
+    /** Thread on which all callbacks are received and processed. */
+    private final HandlerThread mThread;
 
-    /** True when it's detected that we've entered indoor space - according to IndoorAtlas IPS */
-    private volatile boolean mIsIndoors;
+    private final Handler mHandler;
+
+    /** Pre-allocated fixes handed to the listener, avoids allocating for each location update. */
+    private final LocationFixRing mFixes = new LocationFixRing(8);
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /** Applies hysteresis to indoor/outdoor transitions, accessed only from producer thread. */
+    private final IndoorOutdoorTransitionEngine mTransitions;
+
+    /** Controls GPS request rate, accessed only from producer thread. */
+    private final GpsDutyCyclePolicy mGpsPolicy;
+
+    /** Venue nearest to the last outdoor fix, accessed only from producer thread. */
+    @Nullable
+    private IaId mApproachingVenueId;
+
+    /** Used for looking up venue boundaries, may be null. */
+    @Nullable
+    private final VenueMetadataStorage mVenueStorage;
 
-    private volatile String mCurrentVenueId;
-    private volatile String mCurrentFloorPlanId;
-    private volatile Location mLastLocation;
-    private volatile int mCurrentFloorLevel;
-    private boolean mPendingFloorChange;
+    /** True between start and stop, accessed only from producer thread. */
+    private boolean mStarted;
 
-    private final Handler mHandler = new Handler();
+    public IndoorOutdoorLocationProducer(Context context,
+                                         @Nullable VenueMetadataStorage venueStorage) {
+        this(context, venueStorage, new IndoorOutdoorTransitionEngine.Config(),
+                new GpsDutyCyclePolicy.Config());
+    }
 
-    public IndoorOutdoorLocationProducer(Context context) {
+    public IndoorOutdoorLocationProducer(Context context,
+                                         @Nullable VenueMetadataStorage venueStorage,
+                                         IndoorOutdoorTransitionEngine.Config transitionConfig,
+                                         GpsDutyCyclePolicy.Config gpsConfig) {
+        mVenueStorage = venueStorage;
+        mTransitions = new IndoorOutdoorTransitionEngine(mClock, transitionConfig,
+                mTransitionCallback);
+        mGpsPolicy = new GpsDutyCyclePolicy(mClock, gpsConfig, mGpsModeCallback);
         mIndoorManager = IALocationManager.create(context);
         mOutdoorManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
         Global.indoorAtlasSdkVersion = mIndoorManager.getExtraInfo().version;
+        mThread = new HandlerThread("IndoorOutdoorLocationProducer");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        if (venueStorage != null) {
+            // a venue may be entered before the catalog has loaded
+            venueStorage.whenLoaded(new VenueMetadataStorage.OnLoadedListener() {
+                @Override
+                public void onVenuesLoaded(VenueCatalog catalog) {
+                    IaId venueId = mState.get().venueId;
+                    if (venueId != null) {
+                        updateVenueBoundary(venueId);
+                    }
+                }
+            }, new HandlerExecutor(mHandler));
+        }
     }
 
     /**
@@ -65,19 +133,32 @@ public class IndoorOutdoorLocationProducer implements
     @Override
     public void onLocationChanged(IALocation location) {
 
-        if (mPendingFloorChange) {
-            mPendingFloorChange = false;
-            mCurrentFloorLevel = location.getFloorLevel();
-            mListener.onFloorChanged(mCurrentVenueId, mCurrentFloorPlanId,
-                    String.valueOf(mCurrentFloorLevel));
+        State state = mState.get();
+        if (state.pendingFloorChange) {
+            state = state.withFloorLevel(location.getFloorLevel());
+            mState.set(state);
+            mListener.onFloorChanged(idString(state.venueId), idString(state.floorPlanId),
+                    String.valueOf(state.floorLevel));
         }
 
-        Location tmp = location.toLocation();
-        if (mIsIndoors) {
+        mTransitions.onIndoorFix(location.getAccuracy());
+        scheduleTicks();
+        state = mState.get();
+
+        if (state.indoors) {
+            mGpsPolicy.onIndoorFix(location.getLatitude(), location.getLongitude(),
+                    location.getAccuracy());
             // only updating last location from IndoorAtlas if it's already detected that we are
             // indoors
-            mLastLocation = tmp;
-            mListener.onLocationChanged(LocationUpdate.indoor(tmp));
+            LocationFix fix = mFixes.next().set(LocationFix.SOURCE_INDOOR,
+                    location.getLatitude(),
+                    location.getLongitude(),
+                    location.getBearing(),
+                    location.getAccuracy(),
+                    location.getTime(),
+                    location.hasFloorLevel() ? location.getFloorLevel() : LocationFix.NO_FLOOR);
+            mLastFix.set(fix);
+            mListener.onLocationChanged(fix);
         }
 
     }
@@ -91,10 +172,22 @@ public class IndoorOutdoorLocationProducer implements
             // last known location can be null
             return;
         }
-        if (!mIsIndoors) {
+        mTransitions.onOutdoorFix(location.getAccuracy());
+        scheduleTicks();
+        final boolean indoors = mState.get().indoors;
+        mGpsPolicy.recordCallback(indoors);
+        if (!indoors) {
             // update current location but don't override with lower quality locations
-            mLastLocation = location;
-            mListener.onLocationChanged(LocationUpdate.outdoor(mLastLocation));
+            LocationFix fix = mFixes.next().set(LocationFix.SOURCE_OUTDOOR,
+                    location.getLatitude(),
+                    location.getLongitude(),
+                    location.getBearing(),
+                    location.getAccuracy(),
+                    location.getTime(),
+                    LocationFix.NO_FLOOR);
+            mLastFix.set(fix);
+            mListener.onLocationChanged(fix);
+            updateApproachingVenue(location.getLatitude(), location.getLongitude());
         }
     }
 
@@ -115,24 +208,38 @@ public class IndoorOutdoorLocationProducer implements
     }
 
     @Override
-    public void onEnterRegion(IARegion region) {
+    public void onEnterRegion(final IARegion region) {
+        if (!isProducerThread()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onEnterRegion(region);
+                }
+            });
+            return;
+        }
         Timber.d("onEnterRegion: " + region);
-        mHandler.removeCallbacks(mExitVenueRunnable);
+        // region ids are parsed once here, the state and lookups use the parsed ids
+        IaId id = IaId.tryParse(region.getId());
+        if (id == null) {
+            Timber.w("ignoring region with malformed id: %s", region);
+            return;
+        }
+        id = internId(id);
+        State state = mState.get();
         switch (region.getType()) {
             case IARegion.TYPE_VENUE:
-                Timber.i("enter venue: %s, name: %s", region.getId(), region.getName());
-                mCurrentFloorPlanId = null;
-                mCurrentVenueId = region.getId();
-                mListener.onEnterVenue(mCurrentVenueId, region.getName());
+                Timber.i("enter venue: %s, name: %s", id, region.getName());
+                state = state.withVenue(id);
+                mState.set(state);
+                updateVenueBoundary(id);
+                mListener.onEnterVenue(id.toString(), region.getName());
                 break;
             case IARegion.TYPE_FLOOR_PLAN:
-                Timber.i("enter floor plan: %s", region.getId());
-                mCurrentFloorPlanId = region.getId();
-                if (!mIsIndoors) {
-                    mIsIndoors = true;
-                    mListener.onEnterIndoors(mCurrentVenueId);
-                }
-                mPendingFloorChange = true;
+                Timber.i("enter floor plan: %s", id);
+                mState.set(state.withFloorPlan(id));
+                mTransitions.onEnterFloorPlan();
+                scheduleTicks();
                 break;
             default:
                 Timber.w("unsupported region type: %s" + region);
@@ -140,21 +247,28 @@ public class IndoorOutdoorLocationProducer implements
     }
 
     @Override
-    public void onExitRegion(IARegion region) {
+    public void onExitRegion(final IARegion region) {
+        if (!isProducerThread()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onExitRegion(region);
+                }
+            });
+            return;
+        }
+        State state = mState.get();
         switch (region.getType()) {
             case IARegion.TYPE_FLOOR_PLAN:
-                mCurrentFloorLevel = -1;
-                mCurrentFloorPlanId = null;
-                mHandler.postDelayed(mExitVenueRunnable, EXIT_VENUE_DELAY);
+                mState.set(state.withoutFloorPlan());
+                mTransitions.onExitFloorPlan();
+                scheduleTicks();
                 break;
             case IARegion.TYPE_VENUE:
-                Timber.i("exit venue, mIsIndoors: %b", mIsIndoors);
-                if (mIsIndoors) {
-                    mIsIndoors = false;
-                    mListener.onExitIndoors(mCurrentVenueId);
-                }
-                mListener.onExitVenue(mCurrentVenueId);
-                mCurrentVenueId = null;
+                Timber.i("exit venue, mIsIndoors: %b", state.indoors);
+                // exits indoors immediately through the callback if needed
+                mTransitions.onExitVenue();
+                exitVenue();
                 break;
             default:
                 Timber.w(TAG, "unsupported region type: %s", region);
@@ -163,58 +277,60 @@ public class IndoorOutdoorLocationProducer implements
     }
 
     @Override
-    public void setListener(Listener listener) {
-        mListener = listener != null ? listener : new ListenerSupport();
+    public void subscribe(Listener listener, LocationEventBus.DispatchPolicy policy) {
+        mListener.subscribe(listener, policy);
+    }
+
+    @Override
+    public void unsubscribe(Listener listener) {
+        mListener.unsubscribe(listener);
     }
 
-    @SuppressWarnings("MissingPermission")
     @Override
     public void start() {
-        Timber.d("start requesting location updates");
-        mIndoorManager.requestLocationUpdates(IALocationRequest.create(), this);
-        mIndoorManager.registerRegionListener(this);
-        mOutdoorManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this);
-        onLocationChanged(mOutdoorManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
+        mHandler.post(mStartRunnable);
     }
 
     @Override
     public void stop() {
-        Timber.d("stop requesting location updates");
-        mIndoorManager.removeLocationUpdates(this);
-        mIndoorManager.unregisterRegionListener(this);
-        mOutdoorManager.removeUpdates(this);
+        mHandler.post(mStopRunnable);
     }
 
     @Override
     public void destroy() {
-        mIndoorManager.destroy();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mIndoorManager.destroy();
+            }
+        });
+        mThread.quitSafely();
     }
 
     @Override
     public boolean isIndoors() {
-        return mIsIndoors;
+        return mState.get().indoors;
     }
 
     @Override
     public String getVenueId() {
-        return mCurrentVenueId;
+        return idString(mState.get().venueId);
     }
 
     @Nullable
     @Override
     public String getFloorId() {
-        return mCurrentFloorPlanId;
+        return idString(mState.get().floorPlanId);
     }
 
-    @Nullable
     @Override
-    public Location getLastLocation() {
-        return mLastLocation;
+    public boolean getLastFix(LocationFix out) {
+        return mLastFix.copyTo(out);
     }
 
     @Override
     public String getFloorLevel() {
-        return String.valueOf(mCurrentFloorLevel);
+        return String.valueOf(mState.get().floorLevel);
     }
 
     @Override
@@ -222,12 +338,239 @@ public class IndoorOutdoorLocationProducer implements
         return mIndoorManager.getExtraInfo().traceId;
     }
 
-    private Runnable mExitVenueRunnable = new Runnable() {
+    private boolean isProducerThread() {
+        return Looper.myLooper() == mThread.getLooper();
+    }
+
+    private void exitVenue() {
+        State state = mState.get();
+        mState.set(State.INITIAL);
+        mGpsPolicy.clearVenueBoundary();
+        mApproachingVenueId = null;
+        scheduleTicks();
+        if (state.venueId != null) {
+            mListener.onExitVenue(state.venueId.toString());
+        }
+    }
+
+    /**
+     * Makes sure the transition engine and GPS policy get to re-evaluate their time based
+     * conditions.
+     */
+    private void scheduleTicks() {
+        mGpsPolicy.onExitPending(mTransitions.isExitPending());
+        mHandler.removeCallbacks(mTickRunnable);
+        long deadline = Math.min(mTransitions.getNextDeadline(), mGpsPolicy.getNextDeadline());
+        if (deadline != Long.MAX_VALUE) {
+            mHandler.postDelayed(mTickRunnable, Math.max(0, deadline - mClock.elapsedRealtime()));
+        }
+    }
+
+    /**
+     * Prepares for entering the venue closest to an outdoor fix, before IndoorAtlas reports the
+     * venue, by setting up its boundary for the GPS policy.
+     */
+    private void updateApproachingVenue(double latitude, double longitude) {
+        if (mVenueStorage == null || mState.get().venueId != null) {
+            return;
+        }
+        VenueCatalog catalog = mVenueStorage.getCatalog();
+        if (catalog == null) {
+            return;
+        }
+        VenueMetadata venue = catalog.getSpatialIndex().findNearest(latitude, longitude,
+                PRE_ENTRY_RADIUS_METERS);
+        IaId venueId = venue != null ? venue.iaId : null;
+        if (venueId == null ? mApproachingVenueId == null : venueId.equals(mApproachingVenueId)) {
+            return;
+        }
+        mApproachingVenueId = venueId;
+        if (venue != null) {
+            Timber.d("approaching venue: %s", venue.name);
+            mGpsPolicy.setVenueBoundary(venue.coordinates[0], venue.coordinates[1], 0);
+        } else {
+            mGpsPolicy.clearVenueBoundary();
+        }
+    }
+
+    /**
+     * Returns the catalog's instance of a region id, so that the id strings handed to listeners
+     * are built once and compare by reference with each other and with the catalog.
+     */
+    private IaId internId(IaId id) {
+        return mVenueStorage != null ? mVenueStorage.internId(id) : id;
+    }
+
+    @Nullable
+    private static String idString(@Nullable IaId id) {
+        return id != null ? id.toString() : null;
+    }
+
+    private void updateVenueBoundary(IaId venueId) {
+        VenueMetadata venue = mVenueStorage != null ? mVenueStorage.findByIaId(venueId) : null;
+        if (venue != null && venue.coordinates != null && venue.coordinates.length == 2) {
+            mGpsPolicy.setVenueBoundary(venue.coordinates[0], venue.coordinates[1], 0);
+        } else {
+            mGpsPolicy.clearVenueBoundary();
+        }
+    }
+
+    @SuppressWarnings("MissingPermission")
+    private void requestGpsUpdates(GpsDutyCyclePolicy.Mode mode) {
+        mOutdoorManager.removeUpdates(this);
+        switch (mode) {
+            case CONTINUOUS:
+                mOutdoorManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this,
+                        mThread.getLooper());
+                break;
+            case REDUCED:
+                mOutdoorManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
+                        mGpsPolicy.getReducedIntervalMillis(), mGpsPolicy.getReducedMinDistance(),
+                        this, mThread.getLooper());
+                break;
+            case SUSPENDED:
+                break;
+        }
+    }
+
+    /**
+     * Number of GPS callbacks received since creation.
+     */
+    public long getGpsCallbackCount() {
+        return mGpsPolicy.getCallbackCount();
+    }
+
+    /**
+     * Number of GPS callbacks whose fix was thrown away because we were indoors.
+     */
+    public long getGpsDiscardedCount() {
+        return mGpsPolicy.getDiscardedCount();
+    }
+
+    private final GpsDutyCyclePolicy.Callback mGpsModeCallback =
+            new GpsDutyCyclePolicy.Callback() {
+                @Override
+                public void onGpsModeChanged(GpsDutyCyclePolicy.Mode mode) {
+                    Timber.d("GPS mode: %s, callbacks: %d, discarded: %d", mode,
+                            mGpsPolicy.getCallbackCount(), mGpsPolicy.getDiscardedCount());
+                    if (mStarted) {
+                        requestGpsUpdates(mode);
+                    }
+                }
+            };
+
+    private final IndoorOutdoorTransitionEngine.Callback mTransitionCallback =
+            new IndoorOutdoorTransitionEngine.Callback() {
+
+                @Override
+                public void onEnterIndoors() {
+                    State state = mState.get().withIndoors(true);
+                    mState.set(state);
+                    Timber.i("entered indoors, venue: %s", state.venueId);
+                    mGpsPolicy.onIndoorsChanged(true);
+                    mListener.onEnterIndoors(idString(state.venueId));
+                }
+
+                @Override
+                public void onExitIndoors(boolean venueLost) {
+                    State state = mState.get().withIndoors(false);
+                    mState.set(state);
+                    Timber.i("exited indoors, venue: %s, venue lost: %b", state.venueId,
+                            venueLost);
+                    mGpsPolicy.onIndoorsChanged(false);
+                    mListener.onExitIndoors(idString(state.venueId));
+                    if (venueLost) {
+                        // floor plan has been lost long enough, exit venue locally if not
+                        // triggered by the server
+                        exitVenue();
+                    }
+                }
+            };
+
+    private final Runnable mStartRunnable = new Runnable() {
+        @SuppressWarnings("MissingPermission")
         @Override
         public void run() {
-            Timber.d("triggering timed venue exit for %s", mCurrentVenueId);
-            // manually trigger exit venue after N seconds if it is not triggered by the server
-            onExitRegion(IARegion.venue(mCurrentVenueId));
+            Timber.d("start requesting location updates");
+            Looper looper = mThread.getLooper();
+            mIndoorManager.requestLocationUpdates(IALocationRequest.create(),
+                    IndoorOutdoorLocationProducer.this, looper);
+            mIndoorManager.registerRegionListener(IndoorOutdoorLocationProducer.this);
+            mStarted = true;
+            requestGpsUpdates(mGpsPolicy.getMode());
+            onLocationChanged(mOutdoorManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
         }
     };
+
+    private final Runnable mStopRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Timber.d("stop requesting location updates");
+            mStarted = false;
+            mHandler.removeCallbacks(mTickRunnable);
+            mIndoorManager.removeLocationUpdates(IndoorOutdoorLocationProducer.this);
+            mIndoorManager.unregisterRegionListener(IndoorOutdoorLocationProducer.this);
+            mOutdoorManager.removeUpdates(IndoorOutdoorLocationProducer.this);
+        }
+    };
+
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mTransitions.tick();
+            mGpsPolicy.tick();
+            scheduleTicks();
+        }
+    };
+
+    /**
+     * Immutable snapshot of the indoor/outdoor context.
+     */
+    static final class State {
+
+        static final State INITIAL = new State(false, null, null, -1, false);
+
+        /** True when it's detected that we've entered indoor space - according to IndoorAtlas */
+        final boolean indoors;
+
+        @Nullable
+        final IaId venueId;
+
+        @Nullable
+        final IaId floorPlanId;
+
+        final int floorLevel;
+
+        /** True when floor plan changed but floor level is not known until next indoor fix. */
+        final boolean pendingFloorChange;
+
+        State(boolean indoors, @Nullable IaId venueId, @Nullable IaId floorPlanId,
+              int floorLevel, boolean pendingFloorChange) {
+            this.indoors = indoors;
+            this.venueId = venueId;
+            this.floorPlanId = floorPlanId;
+            this.floorLevel = floorLevel;
+            this.pendingFloorChange = pendingFloorChange;
+        }
+
+        State withVenue(IaId venueId) {
+            return new State(indoors, venueId, null, floorLevel, pendingFloorChange);
+        }
+
+        State withFloorPlan(IaId floorPlanId) {
+            return new State(indoors, venueId, floorPlanId, floorLevel, true);
+        }
+
+        State withIndoors(boolean indoors) {
+            return new State(indoors, venueId, floorPlanId, floorLevel, pendingFloorChange);
+        }
+
+        State withoutFloorPlan() {
+            return new State(indoors, venueId, null, -1, false);
+        }
+
+        State withFloorLevel(int floorLevel) {
+            return new State(indoors, venueId, floorPlanId, floorLevel, false);
+        }
+    }
 }
@@ -0,0 +1,353 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+/**
+ * Decides when the user enters or exits indoor space. Instead of reacting to each IndoorAtlas
+ * floor plan event directly, the engine requires the evidence to persist for a dwell time and
+ * weighs the quality of indoor (IndoorAtlas) and outdoor (GPS) fixes, which suppresses the rapid
+ * enter/exit flapping typically seen at building entrances.
+ * <p>
+ * The engine is pure logic: it has no threads or timers of its own. Time comes from the injected
+ * {@link Clock} and the owner is expected to call {@link #tick()} no later than
+ * {@link #getNextDeadline()}. Not thread safe, all calls must come from the same thread.
+ */
+public class IndoorOutdoorTransitionEngine {
+
+    /** Returned by {@link #getNextDeadline()} when there is nothing to wait for. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Receives the confirmed transitions.
+     */
+    public interface Callback {
+
+        void onEnterIndoors();
+
+        /**
+         * @param venueLost true if the exit was caused by losing the floor plan for long enough
+         *                  rather than an explicit venue exit.
+         */
+        void onExitIndoors(boolean venueLost);
+    }
+
+    /**
+     * Tunable thresholds. Accuracies are in meters, times in milliseconds and confidences in
+     * range [0, 1].
+     */
+    public static class Config {
+
+        long enterDwellMillis = 1000;
+        long maxEnterDwellMillis = 10000;
+        long exitDwellMillis = 1500;
+        long maxExitDwellMillis = 10000;
+        long fixStaleMillis = 5000;
+        float indoorGoodAccuracy = 5f;
+        float indoorBadAccuracy = 20f;
+        float outdoorGoodAccuracy = 10f;
+        float outdoorBadAccuracy = 50f;
+        float smoothing = 0.3f;
+        float enterConfidence = 0.5f;
+        float enterMargin = 0f;
+        float exitConfidence = 0.5f;
+
+        /**
+         * How long a floor plan must be continuously detected before entering indoors.
+         */
+        public Config setEnterDwellMillis(long millis) {
+            enterDwellMillis = millis;
+            return this;
+        }
+
+        /**
+         * How long a floor plan must be continuously detected before entering indoors regardless
+         * of confidence, e.g. in venues where indoor accuracy stays poor.
+         */
+        public Config setMaxEnterDwellMillis(long millis) {
+            maxEnterDwellMillis = millis;
+            return this;
+        }
+
+        /**
+         * How long the floor plan must be lost, with a good GPS fix, before exiting indoors.
+         */
+        public Config setExitDwellMillis(long millis) {
+            exitDwellMillis = millis;
+            return this;
+        }
+
+        /**
+         * How long the floor plan must be lost before exiting indoors regardless of GPS.
+         */
+        public Config setMaxExitDwellMillis(long millis) {
+            maxExitDwellMillis = millis;
+            return this;
+        }
+
+        /**
+         * Fixes older than this no longer contribute to confidence.
+         */
+        public Config setFixStaleMillis(long millis) {
+            fixStaleMillis = millis;
+            return this;
+        }
+
+        /**
+         * Indoor fixes with accuracy at or below {@code good} count as full confidence, at or
+         * above {@code bad} as none, linear in between.
+         */
+        public Config setIndoorAccuracy(float good, float bad) {
+            indoorGoodAccuracy = good;
+            indoorBadAccuracy = bad;
+            return this;
+        }
+
+        /**
+         * Same as {@link #setIndoorAccuracy(float, float)} for outdoor fixes.
+         */
+        public Config setOutdoorAccuracy(float good, float bad) {
+            outdoorGoodAccuracy = good;
+            outdoorBadAccuracy = bad;
+            return this;
+        }
+
+        /**
+         * Weight of the newest fix in the exponentially smoothed confidence.
+         */
+        public Config setSmoothing(float alpha) {
+            smoothing = alpha;
+            return this;
+        }
+
+        /**
+         * Minimum indoor confidence required to enter.
+         */
+        public Config setEnterConfidence(float confidence) {
+            enterConfidence = confidence;
+            return this;
+        }
+
+        /**
+         * How much indoor confidence must exceed outdoor confidence to enter, 0 meaning indoor
+         * must be at least as confident as outdoor.
+         */
+        public Config setEnterMargin(float margin) {
+            enterMargin = margin;
+            return this;
+        }
+
+        /**
+         * Minimum outdoor confidence required to exit after {@link #setExitDwellMillis(long)}.
+         */
+        public Config setExitConfidence(float confidence) {
+            exitConfidence = confidence;
+            return this;
+        }
+    }
+
+    private final Clock mClock;
+
+    private final Config mConfig;
+
+    private final Callback mCallback;
+
+    private boolean mIndoors;
+
+    private boolean mOnFloorPlan;
+
+    /** Time when the floor plan was last entered or exited. */
+    private long mFloorPlanChangedAt;
+
+    private float mIndoorConfidence;
+
+    private float mOutdoorConfidence;
+
+    private long mLastIndoorFixAt = Long.MIN_VALUE;
+
+    private long mLastOutdoorFixAt = Long.MIN_VALUE;
+
+    /** True while a transition is being considered but not yet confirmed. */
+    private boolean mCandidate;
+
+    private int mTransitionCount;
+
+    private int mSuppressedCount;
+
+    public IndoorOutdoorTransitionEngine(Clock clock, Config config, Callback callback) {
+        mClock = clock;
+        mConfig = config;
+        mCallback = callback;
+    }
+
+    public boolean isIndoors() {
+        return mIndoors;
+    }
+
+    /**
+     * Explicit venue exit, exits indoors immediately.
+     */
+    public void onExitVenue() {
+        mOnFloorPlan = false;
+        mFloorPlanChangedAt = mClock.elapsedRealtime();
+        mCandidate = false;
+        if (mIndoors) {
+            mIndoors = false;
+            mTransitionCount++;
+            mCallback.onExitIndoors(false);
+        }
+    }
+
+    public void onEnterFloorPlan() {
+        if (!mOnFloorPlan) {
+            mOnFloorPlan = true;
+            mFloorPlanChangedAt = mClock.elapsedRealtime();
+        }
+        evaluate();
+    }
+
+    public void onExitFloorPlan() {
+        if (mOnFloorPlan) {
+            mOnFloorPlan = false;
+            mFloorPlanChangedAt = mClock.elapsedRealtime();
+        }
+        evaluate();
+    }
+
+    public void onIndoorFix(float accuracy) {
+        mIndoorConfidence = smooth(isStale(mLastIndoorFixAt), mIndoorConfidence,
+                score(accuracy, mConfig.indoorGoodAccuracy, mConfig.indoorBadAccuracy));
+        mLastIndoorFixAt = mClock.elapsedRealtime();
+        evaluate();
+    }
+
+    public void onOutdoorFix(float accuracy) {
+        mOutdoorConfidence = smooth(isStale(mLastOutdoorFixAt), mOutdoorConfidence,
+                score(accuracy, mConfig.outdoorGoodAccuracy, mConfig.outdoorBadAccuracy));
+        mLastOutdoorFixAt = mClock.elapsedRealtime();
+        evaluate();
+    }
+
+    /**
+     * Re-evaluates time based conditions.
+     */
+    public void tick() {
+        evaluate();
+    }
+
+    /**
+     * Returns the elapsed realtime at which {@link #tick()} should be called next, or
+     * {@link #NO_DEADLINE}.
+     */
+    public long getNextDeadline() {
+        final long now = mClock.elapsedRealtime();
+        if (mIndoors && !mOnFloorPlan) {
+            long exit = mFloorPlanChangedAt + mConfig.exitDwellMillis;
+            long maxExit = mFloorPlanChangedAt + mConfig.maxExitDwellMillis;
+            return exit > now ? exit : (maxExit > now ? maxExit : NO_DEADLINE);
+        }
+        if (!mIndoors && mOnFloorPlan) {
+            long enter = mFloorPlanChangedAt + mConfig.enterDwellMillis;
+            long maxEnter = mFloorPlanChangedAt + mConfig.maxEnterDwellMillis;
+            return enter > now ? enter : (maxEnter > now ? maxEnter : NO_DEADLINE);
+        }
+        return NO_DEADLINE;
+    }
+
+    /**
+     * Returns true while indoors but the floor plan has been lost, i.e. an exit may follow.
+     */
+    public boolean isExitPending() {
+        return mIndoors && !mOnFloorPlan;
+    }
+
+    /**
+     * Number of enter and exit transitions emitted.
+     */
+    public int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * Number of candidate transitions that were abandoned before being confirmed, i.e. flaps
+     * avoided.
+     */
+    public int getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    public float getIndoorConfidence() {
+        return currentIndoorConfidence();
+    }
+
+    public float getOutdoorConfidence() {
+        return currentOutdoorConfidence();
+    }
+
+    private void evaluate() {
+        final long now = mClock.elapsedRealtime();
+        final long elapsed = now - mFloorPlanChangedAt;
+        final boolean wantsTransition = mIndoors ? !mOnFloorPlan : mOnFloorPlan;
+
+        if (!wantsTransition) {
+            if (mCandidate) {
+                mCandidate = false;
+                mSuppressedCount++;
+            }
+            return;
+        }
+        mCandidate = true;
+
+        if (!mIndoors) {
+            float indoor = currentIndoorConfidence();
+            boolean confirmed = elapsed >= mConfig.maxEnterDwellMillis
+                    || (elapsed >= mConfig.enterDwellMillis
+                    && indoor >= mConfig.enterConfidence
+                    && indoor - currentOutdoorConfidence() >= mConfig.enterMargin);
+            if (confirmed) {
+                mCandidate = false;
+                mIndoors = true;
+                mTransitionCount++;
+                mCallback.onEnterIndoors();
+            }
+        } else {
+            boolean confirmed = elapsed >= mConfig.maxExitDwellMillis
+                    || (elapsed >= mConfig.exitDwellMillis
+                    && currentOutdoorConfidence() >= mConfig.exitConfidence);
+            if (confirmed) {
+                mCandidate = false;
+                mIndoors = false;
+                mTransitionCount++;
+                mCallback.onExitIndoors(true);
+            }
+        }
+    }
+
+    private float currentIndoorConfidence() {
+        return isStale(mLastIndoorFixAt) ? 0f : mIndoorConfidence;
+    }
+
+    private float currentOutdoorConfidence() {
+        return isStale(mLastOutdoorFixAt) ? 0f : mOutdoorConfidence;
+    }
+
+    private boolean isStale(long fixAt) {
+        return fixAt == Long.MIN_VALUE || mClock.elapsedRealtime() - fixAt > mConfig.fixStaleMillis;
+    }
+
+    private float smooth(boolean stale, float previous, float sample) {
+        // without recent history the first sample is taken as is
+        return stale ? sample : previous + mConfig.smoothing * (sample - previous);
+    }
+
+    /**
+     * Maps accuracy to [0, 1], 1 being at or better than {@code good}.
+     */
+    private static float score(float accuracy, float good, float bad) {
+        if (accuracy <= 0 || accuracy >= bad) {
+            // 0 means unknown accuracy
+            return 0f;
+        }
+        if (accuracy <= good) {
+            return 1f;
+        }
+        return (bad - accuracy) / (bad - good);
+    }
+}
@@ -0,0 +1,416 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans out location events to any number of {@link LocationProducer.Listener}s. The subscriber
+ * list is a copy-on-write array swapped with compare-and-set, so publishing never takes a lock and
+ * subscribers can be added or removed at any time, also from within a callback.
+ * <p>
+ * Each subscriber has a {@link DispatchPolicy}. Only latency critical consumers such as the blue
+ * dot should be {@link DispatchPolicy#synchronous() synchronous}; anything else should use
+ * {@link DispatchPolicy#async(Executor)} or {@link DispatchPolicy#latestOnly(Executor)} so that a
+ * slow consumer does not delay the others.
+ */
+public final class LocationEventBus implements LocationProducer.Listener {
+
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+
+    private final AtomicReference<Subscriber[]> mSubscribers = new AtomicReference<>(EMPTY);
+
+    /**
+     * Adds a subscriber. Adding the same listener again replaces its dispatch policy.
+     */
+    public void subscribe(LocationProducer.Listener listener, DispatchPolicy policy) {
+        if (listener == null || policy == null) {
+            throw new IllegalArgumentException("listener and policy must be non-null");
+        }
+        Subscriber subscriber = policy.wrap(listener);
+        while (true) {
+            Subscriber[] current = mSubscribers.get();
+            int index = indexOf(current, listener);
+            Subscriber[] next;
+            if (index >= 0) {
+                next = current.clone();
+                next[index] = subscriber;
+            } else {
+                next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = subscriber;
+            }
+            if (mSubscribers.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes a subscriber. Events already queued for an asynchronous subscriber may still be
+     * delivered.
+     *
+     * @return true if listener was subscribed.
+     */
+    public boolean unsubscribe(LocationProducer.Listener listener) {
+        while (true) {
+            Subscriber[] current = mSubscribers.get();
+            int index = indexOf(current, listener);
+            if (index < 0) {
+                return false;
+            }
+            Subscriber[] next;
+            if (current.length == 1) {
+                next = EMPTY;
+            } else {
+                next = new Subscriber[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, next.length - index);
+            }
+            if (mSubscribers.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return mSubscribers.get().length;
+    }
+
+    private static int indexOf(Subscriber[] subscribers, LocationProducer.Listener listener) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i].mListener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void onLocationChanged(LocationFix fix) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onLocationChanged(fix);
+        }
+    }
+
+    @Override
+    public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onFloorChanged(venueId, floorId, floorLevel);
+        }
+    }
+
+    @Override
+    public void onEnterIndoors(String venueId) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onEnterIndoors(venueId);
+        }
+    }
+
+    @Override
+    public void onExitIndoors(String venueId) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onExitIndoors(venueId);
+        }
+    }
+
+    @Override
+    public void onEnterVenue(String venueId, @Nullable String venueName) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onEnterVenue(venueId, venueName);
+        }
+    }
+
+    @Override
+    public void onExitVenue(String venueId) {
+        final Subscriber[] subscribers = mSubscribers.get();
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].onExitVenue(venueId);
+        }
+    }
+
+    /**
+     * Defines on which thread and how eagerly events are delivered to a subscriber.
+     */
+    public abstract static class DispatchPolicy {
+
+        private static final DispatchPolicy SYNCHRONOUS = new DispatchPolicy() {
+            @Override
+            Subscriber wrap(LocationProducer.Listener listener) {
+                return new Subscriber(listener);
+            }
+        };
+
+        private DispatchPolicy() {
+        }
+
+        /**
+         * Events are delivered on the publishing thread before the publish call returns. Does not
+         * allocate.
+         */
+        public static DispatchPolicy synchronous() {
+            return SYNCHRONOUS;
+        }
+
+        /**
+         * Every event is delivered in order on given executor, e.g. a {@link HandlerExecutor}.
+         * Location fixes are copied for each event.
+         */
+        public static DispatchPolicy async(final Executor executor) {
+            return new DispatchPolicy() {
+                @Override
+                Subscriber wrap(LocationProducer.Listener listener) {
+                    return new QueuedSubscriber(listener, executor, false);
+                }
+            };
+        }
+
+        /**
+         * Context events (floor, venue, indoors) are delivered in order on given executor but
+         * location fixes that have not been delivered yet are replaced by newer ones, i.e. the
+         * subscriber only sees the latest fix. Fixes are never reordered with respect to context
+         * events. Does not allocate for location fixes.
+         */
+        public static DispatchPolicy latestOnly(final Executor executor) {
+            return new DispatchPolicy() {
+                @Override
+                Subscriber wrap(LocationProducer.Listener listener) {
+                    return new QueuedSubscriber(listener, executor, true);
+                }
+            };
+        }
+
+        abstract Subscriber wrap(LocationProducer.Listener listener);
+    }
+
+    /**
+     * Synchronous delivery, base class for the other policies.
+     */
+    static class Subscriber implements LocationProducer.Listener {
+
+        final LocationProducer.Listener mListener;
+
+        Subscriber(LocationProducer.Listener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            mListener.onLocationChanged(fix);
+        }
+
+        @Override
+        public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+            mListener.onFloorChanged(venueId, floorId, floorLevel);
+        }
+
+        @Override
+        public void onEnterIndoors(String venueId) {
+            mListener.onEnterIndoors(venueId);
+        }
+
+        @Override
+        public void onExitIndoors(String venueId) {
+            mListener.onExitIndoors(venueId);
+        }
+
+        @Override
+        public void onEnterVenue(String venueId, @Nullable String venueName) {
+            mListener.onEnterVenue(venueId, venueName);
+        }
+
+        @Override
+        public void onExitVenue(String venueId) {
+            mListener.onExitVenue(venueId);
+        }
+    }
+
+    /**
+     * Queues events and drains them on an executor. At most one drain task is scheduled at a time,
+     * so the listener is never invoked concurrently with itself.
+     */
+    private static final class QueuedSubscriber extends Subscriber implements Runnable {
+
+        private final Executor mExecutor;
+
+        private final boolean mCoalesceLocations;
+
+        private final ConcurrentLinkedQueue<Event> mQueue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+        /** Guards mPending and mHasPending, and the queue when coalescing. */
+        private final Object mLock = new Object();
+
+        private final LocationFix mPending = new LocationFix();
+
+        private final LocationFix mDelivering = new LocationFix();
+
+        private boolean mHasPending;
+
+        QueuedSubscriber(LocationProducer.Listener listener, Executor executor,
+                         boolean coalesceLocations) {
+            super(listener);
+            mExecutor = executor;
+            mCoalesceLocations = coalesceLocations;
+        }
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            if (mCoalesceLocations) {
+                synchronized (mLock) {
+                    mPending.copyFrom(fix);
+                    mHasPending = true;
+                }
+            } else {
+                mQueue.add(Event.location(fix));
+            }
+            schedule();
+        }
+
+        @Override
+        public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+            enqueue(new Event(Event.FLOOR_CHANGED, venueId, floorId, floorLevel));
+        }
+
+        @Override
+        public void onEnterIndoors(String venueId) {
+            enqueue(new Event(Event.ENTER_INDOORS, venueId, null, null));
+        }
+
+        @Override
+        public void onExitIndoors(String venueId) {
+            enqueue(new Event(Event.EXIT_INDOORS, venueId, null, null));
+        }
+
+        @Override
+        public void onEnterVenue(String venueId, @Nullable String venueName) {
+            enqueue(new Event(Event.ENTER_VENUE, venueId, venueName, null));
+        }
+
+        @Override
+        public void onExitVenue(String venueId) {
+            enqueue(new Event(Event.EXIT_VENUE, venueId, null, null));
+        }
+
+        private void enqueue(Event event) {
+            if (mCoalesceLocations) {
+                synchronized (mLock) {
+                    // keep the pending fix ahead of the context event it preceded
+                    if (mHasPending) {
+                        mQueue.add(Event.location(mPending));
+                        mHasPending = false;
+                    }
+                    mQueue.add(event);
+                }
+            } else {
+                mQueue.add(event);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (mScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Event event = mQueue.poll();
+                if (event != null) {
+                    event.dispatch(mListener);
+                    continue;
+                }
+                synchronized (mLock) {
+                    if (!mQueue.isEmpty()) {
+                        continue;
+                    }
+                    if (!mHasPending) {
+                        // only now may another drain be scheduled; an event queued without the
+                        // lock after the check above finds the flag still set, so look again
+                        mScheduled.set(false);
+                        if (mQueue.isEmpty() || !mScheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    mDelivering.copyFrom(mPending);
+                    mHasPending = false;
+                }
+                mListener.onLocationChanged(mDelivering);
+            }
+        }
+    }
+
+    /**
+     * Queued event for asynchronous subscribers.
+     */
+    private static final class Event {
+
+        static final int LOCATION = 0;
+        static final int FLOOR_CHANGED = 1;
+        static final int ENTER_INDOORS = 2;
+        static final int EXIT_INDOORS = 3;
+        static final int ENTER_VENUE = 4;
+        static final int EXIT_VENUE = 5;
+
+        final int type;
+        final LocationFix fix;
+        final String arg1;
+        final String arg2;
+        final String arg3;
+
+        Event(int type, String arg1, String arg2, String arg3) {
+            this.type = type;
+            this.fix = null;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+        }
+
+        private Event(LocationFix fix) {
+            this.type = LOCATION;
+            this.fix = fix;
+            this.arg1 = null;
+            this.arg2 = null;
+            this.arg3 = null;
+        }
+
+        static Event location(LocationFix fix) {
+            return new Event(new LocationFix().copyFrom(fix));
+        }
+
+        void dispatch(LocationProducer.Listener listener) {
+            switch (type) {
+                case LOCATION:
+                    listener.onLocationChanged(fix);
+                    break;
+                case FLOOR_CHANGED:
+                    listener.onFloorChanged(arg1, arg2, arg3);
+                    break;
+                case ENTER_INDOORS:
+                    listener.onEnterIndoors(arg1);
+                    break;
+                case EXIT_INDOORS:
+                    listener.onExitIndoors(arg1);
+                    break;
+                case ENTER_VENUE:
+                    listener.onEnterVenue(arg1, arg2);
+                    break;
+                case EXIT_VENUE:
+                    listener.onExitVenue(arg1);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+/**
+ * Compact, mutable location fix made of primitives only. Instances are meant to be reused: the
+ * producers fill pre-allocated fixes from a {@link LocationFixRing} and consumers copy the values
+ * they need to retain, so that passing fixes to synchronous and
+ * {@link LocationEventBus.DispatchPolicy#latestOnly latest-only} subscribers does not allocate.
+ */
+public final class LocationFix {
+
+    public static final int SOURCE_INDOOR = 0;
+
+    public static final int SOURCE_OUTDOOR = 1;
+
+    /** Value of {@link #floorLevel} when floor is not known, e.g. for outdoor fixes. */
+    public static final int NO_FLOOR = Integer.MIN_VALUE;
+
+    public double latitude;
+
+    public double longitude;
+
+    /** Bearing in degrees clockwise from north. */
+    public float bearing;
+
+    /** Horizontal accuracy in meters, 0 if unknown. */
+    public float accuracy;
+
+    /** Wall clock time of the fix in milliseconds. */
+    public long time;
+
+    public int floorLevel = NO_FLOOR;
+
+    /** Either {@link #SOURCE_INDOOR} or {@link #SOURCE_OUTDOOR}. */
+    public int source = SOURCE_OUTDOOR;
+
+    public LocationFix set(int source, double latitude, double longitude, float bearing,
+                           float accuracy, long time, int floorLevel) {
+        this.source = source;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.bearing = bearing;
+        this.accuracy = accuracy;
+        this.time = time;
+        this.floorLevel = floorLevel;
+        return this;
+    }
+
+    public LocationFix copyFrom(LocationFix other) {
+        return set(other.source, other.latitude, other.longitude, other.bearing, other.accuracy,
+                other.time, other.floorLevel);
+    }
+
+    public boolean isIndoor() {
+        return source == SOURCE_INDOOR;
+    }
+
+    public boolean hasFloorLevel() {
+        return floorLevel != NO_FLOOR;
+    }
+
+    /**
+     * Returns true if position, bearing and accuracy are the same as in {@code other}. Time and
+     * source are not compared.
+     */
+    public boolean isSamePosition(LocationFix other) {
+        return other != null
+                && latitude == other.latitude
+                && longitude == other.longitude
+                && bearing == other.bearing
+                && accuracy == other.accuracy;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LocationFix{");
+        sb.append("latitude=").append(latitude);
+        sb.append(", longitude=").append(longitude);
+        sb.append(", bearing=").append(bearing);
+        sb.append(", accuracy=").append(accuracy);
+        sb.append(", time=").append(time);
+        sb.append(", floorLevel=").append(floorLevel);
+        sb.append(", source=").append(source == SOURCE_INDOOR ? "INDOOR" : "OUTDOOR");
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+/**
+ * Fixed size ring of pre-allocated {@link LocationFix} instances used to hand fixes from a
+ * producer to its consumers without allocating. A slot returned by {@link #next()} stays
+ * untouched until the ring wraps around, i.e. for {@code capacity - 1} further fixes. Only a
+ * single thread may write to the ring.
+ */
+public final class LocationFixRing {
+
+    private final LocationFix[] mSlots;
+
+    private final int mMask;
+
+    private int mNext;
+
+    /**
+     * @param capacity number of slots, rounded up to the next power of two.
+     */
+    public LocationFixRing(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2, was: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new LocationFix[size];
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new LocationFix();
+        }
+        mMask = size - 1;
+    }
+
+    /**
+     * Returns the next slot to be filled by the producer.
+     */
+    public LocationFix next() {
+        LocationFix fix = mSlots[mNext];
+        mNext = (mNext + 1) & mMask;
+        return fix;
+    }
+
+    public int capacity() {
+        return mSlots.length;
+    }
+}
@@ -0,0 +1,34 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+/**
+ * Latest fix of a producer for readers on other threads. Unlike a {@link LocationFixRing} slot,
+ * which the producer rewrites once the ring wraps around, the snapshot is written and copied out
+ * under a lock, so a reader always gets the fields of a single fix. Neither side allocates.
+ */
+public final class LocationFixSnapshot {
+
+    private final LocationFix mFix = new LocationFix();
+
+    private boolean mSet;
+
+    public synchronized void set(LocationFix fix) {
+        mFix.copyFrom(fix);
+        mSet = true;
+    }
+
+    public synchronized void clear() {
+        mSet = false;
+    }
+
+    /**
+     * Copies the latest fix to {@code out}.
+     *
+     * @return false if there is no fix yet, {@code out} is then left as it is.
+     */
+    public synchronized boolean copyTo(LocationFix out) {
+        if (mSet) {
+            out.copyFrom(mFix);
+        }
+        return mSet;
+    }
+}
@@ -3,7 +3,6 @@
  */
 package com.indooratlas.android.example.indoor.wrld.location;
 
-import android.location.Location;
 import android.support.annotation.Nullable;
 
 /**
@@ -27,9 +26,15 @@ public interface LocationProducer {
     void destroy();
 
     /**
-     * Use this listener as the "consumer" of the location updates.
+     * Adds a "consumer" of the location updates. Any number of listeners can be subscribed, each
+     * with its own {@link LocationEventBus.DispatchPolicy}.
      */
-    void setListener(Listener listener);
+    void subscribe(Listener listener, LocationEventBus.DispatchPolicy policy);
+
+    /**
+     * Removes a listener added with {@link #subscribe(Listener, LocationEventBus.DispatchPolicy)}.
+     */
+    void unsubscribe(Listener listener);
 
     /**
      * Returns {@code true} if it appears that user is indoors.
@@ -60,11 +65,11 @@ public interface LocationProducer {
 
 
     /**
-     * Convenience method for returning last seen location or {@code null} if non have been heard
-     * yet.
+     * Copies the last seen location to {@code out}, safe to call from any thread.
+     *
+     * @return false if none has been heard yet, {@code out} is then left as it is.
      */
-    @Nullable
-    Location getLastLocation();
+    boolean getLastFix(LocationFix out);
 
     /**
      * Id that identifies the positioning session for debugging purposes.
@@ -77,9 +82,10 @@ public interface LocationProducer {
     interface Listener {
 
         /**
-         * Triggered for for both indoor and outdoor location updates.
+         * Triggered for for both indoor and outdoor location updates. The fix is owned by the
+         * producer and will be reused, copy it if it needs to outlive this call.
          */
-        void onLocationChanged(LocationUpdate update);
+        void onLocationChanged(LocationFix fix);
 
         /**
          * Triggered when user enters first floor or switches from one floor to another. The switch
@@ -113,7 +119,7 @@ public interface LocationProducer {
     class ListenerSupport implements Listener {
 
         @Override
-        public void onLocationChanged(LocationUpdate update) {
+        public void onLocationChanged(LocationFix fix) {
 
         }
 
@@ -142,39 +148,4 @@ public interface LocationProducer {
 
         }
     }
-
-    class LocationUpdate {
-
-        public enum Source {
-            INDOOR,
-            OUTDOOR
-        }
-
-        public final Location location;
-
-        public final Source source;
-
-        private LocationUpdate(Source source, Location location) {
-            this.source = source;
-            this.location = location;
-        }
-
-
-        public static LocationUpdate indoor(Location location) {
-            return new LocationUpdate(Source.INDOOR, location);
-        }
-
-        public static LocationUpdate outdoor(Location location) {
-            return new LocationUpdate(Source.OUTDOOR, location);
-        }
-
-        @Override
-        public String toString() {
-            final StringBuilder sb = new StringBuilder("LocationUpdate{");
-            sb.append("location=").append(location);
-            sb.append(", source=").append(source);
-            sb.append('}');
-            return sb.toString();
-        }
-    }
 }
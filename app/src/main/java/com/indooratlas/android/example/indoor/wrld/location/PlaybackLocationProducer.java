@@ -1,20 +1,26 @@
 package com.indooratlas.android.example.indoor.wrld.location;
 
 import android.content.Context;
-import android.location.Location;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import com.indooratlas.android.example.indoor.wrld.R;
-
-import org.apache.commons.io.IOUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import com.indooratlas.android.example.indoor.wrld.location.playback.BinaryPlaybackEventSource;
+import com.indooratlas.android.example.indoor.wrld.location.playback.JsonPlaybackEventSource;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackClock;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackDispatcher;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackEventSource;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackIndex;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackPump;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackTrace;
+import com.indooratlas.android.example.indoor.wrld.location.playback.StreamOpener;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
@@ -22,34 +28,57 @@ import java.lang.ref.WeakReference;
 import timber.log.Timber;
 
 /**
- * Helper class for testing UI logic by producing location events from a proprietary JSON file.
+ * Helper class for testing UI logic by producing location events from a proprietary JSON file or
+ * a compact binary trace converted from one.
+ * Bundled and other small JSON traces are compiled into a {@link PlaybackTrace} when playback
+ * starts, larger ones are read incrementally so that memory use stays bounded also for long
+ * traces.
+ * <p>
+ * Events are played at the pace of their timestamps as mapped by the {@link PlaybackClock},
+ * events without a timestamp are spaced by the update delay given to the constructor.
  */
 public class PlaybackLocationProducer implements LocationProducer {
 
     public static final long DEFAULT_DELAY = 1000;
+
+    /** JSON trace files up to this size are compiled instead of streamed. */
+    private static final long MAX_COMPILED_BYTES = 1024 * 1024;
+
     private PlaybackHandler mHandler;
 
-    private LocationProducer.Listener mListener;
+    private final LocationEventBus mListener = new LocationEventBus();
+
+    private final PlaybackDispatcher mDispatcher = new PlaybackDispatcher(mListener);
 
     private long mUpdateDelayMillis;
 
     private Context mContext;
 
-    private JSONArray mEvents;
+    private PlaybackClock mClock = PlaybackClock.realTime();
 
-    private boolean mLooping;
+    /** Accessed only from the playback thread. */
+    private PlaybackEventSource mEvents;
+
+    /** Accessed only from the playback thread, null if the trace is not compiled. */
+    private PlaybackTrace mTrace;
+
+    /** Accessed only from the playback thread. */
+    private PlaybackPump mPump;
 
-    private boolean mIsIndoors;
+    /** Accessed only from the playback thread. */
+    private PlaybackIndex mIndex;
 
-    private volatile String mCurrentVenueId;
+    private boolean mLooping;
 
-    private volatile String mCurrentFloorId;
+    private volatile long mDispatchedCount;
 
-    private volatile String mCurrentFloorLevel;
+    /** Events dispatched by the pumps replaced since, accessed only from the playback thread. */
+    private long mPreviousPumpsCount;
 
     private int mPlaybackResourceId;
 
-    private volatile Location mLastLocation;
+    @Nullable
+    private File mPlaybackFile;
 
     public PlaybackLocationProducer(Context context, long updateDelayMillis) {
         mContext = context;
@@ -61,8 +90,13 @@ public class PlaybackLocationProducer implements LocationProducer {
     }
 
     @Override
-    public void setListener(Listener listener) {
-        mListener = listener;
+    public void subscribe(Listener listener, LocationEventBus.DispatchPolicy policy) {
+        mListener.subscribe(listener, policy);
+    }
+
+    @Override
+    public void unsubscribe(Listener listener) {
+        mListener.unsubscribe(listener);
     }
 
     public PlaybackLocationProducer setLooping(boolean isLooping) {
@@ -72,13 +106,29 @@ public class PlaybackLocationProducer implements LocationProducer {
 
     public PlaybackLocationProducer setData(int resourceId) {
         mPlaybackResourceId = resourceId;
+        mPlaybackFile = null;
+        return this;
+    }
+
+    /**
+     * Sets the pace of the playback, takes effect on next {@link #start()}.
+     */
+    public PlaybackLocationProducer setClock(PlaybackClock clock) {
+        mClock = clock;
+        return this;
+    }
+
+    /**
+     * Plays a binary trace file, which is memory mapped instead of parsed.
+     */
+    public PlaybackLocationProducer setData(File binaryTrace) {
+        mPlaybackFile = binaryTrace;
         return this;
     }
 
     @Override
     public void start() {
-        mIsIndoors = false;
-        mHandler.sendEmptyMessage(0);
+        mHandler.sendEmptyMessage(PlaybackHandler.CMD_START);
     }
 
     @Override
@@ -86,6 +136,24 @@ public class PlaybackLocationProducer implements LocationProducer {
         mHandler.sendEmptyMessage(PlaybackHandler.CMD_STOP);
     }
 
+    /**
+     * Continues playback from the first event at or after the given trace time, with the venue,
+     * floor and indoor state of that point. Uses a seek index, which for trace files is stored
+     * next to the trace as {@code <trace>.idx} and built on first use.
+     */
+    public void seekTo(long traceTimeMillis) {
+        mHandler.sendMessage(mHandler.obtainMessage(PlaybackHandler.CMD_SEEK,
+                Long.valueOf(traceTimeMillis)));
+    }
+
+    /**
+     * Like {@link #seekTo(long)} but relative to the first event of the trace.
+     */
+    public void seekToElapsed(long millisFromStart) {
+        mHandler.sendMessage(mHandler.obtainMessage(PlaybackHandler.CMD_SEEK_ELAPSED,
+                Long.valueOf(millisFromStart)));
+    }
+
     @Override
     public void destroy() {
         mHandler.sendEmptyMessage(PlaybackHandler.CMD_QUIT);
@@ -99,120 +167,142 @@ public class PlaybackLocationProducer implements LocationProducer {
     }
 
     /**
-     * Parse events into memory unless already parsed.
+     * Opens the event source unless already open.
      */
-    private void init() throws IOException, JSONException {
-        if (mEvents != null) {
-            return;
+    private void init() throws IOException {
+        if (mEvents == null) {
+            if (mPlaybackFile != null) {
+                if (BinaryPlaybackEventSource.isBinaryTrace(mPlaybackFile)) {
+                    mEvents = new BinaryPlaybackEventSource(mPlaybackFile);
+                } else {
+                    final File file = mPlaybackFile;
+                    StreamOpener opener = new StreamOpener() {
+                        @Override
+                        public InputStream open() throws IOException {
+                            return new FileInputStream(file);
+                        }
+                    };
+                    if (file.length() <= MAX_COMPILED_BYTES) {
+                        mEvents = compile(opener);
+                    } else {
+                        mEvents = new JsonPlaybackEventSource(opener);
+                    }
+                }
+            } else {
+                mEvents = compile(resourceOpener(mPlaybackResourceId));
+            }
         }
-        InputStream in = null;
+        retirePump();
+        mPump = new PlaybackPump(mEvents, mDispatcher, mClock, mUpdateDelayMillis)
+                .setLooping(mLooping);
+    }
+
+    private PlaybackEventSource compile(StreamOpener opener) throws IOException {
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(opener);
         try {
-            in = mContext.getResources().openRawResource(mPlaybackResourceId);
-            mEvents = new JSONArray(IOUtils.toString(in));
+            mTrace = PlaybackTrace.compile(source);
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+            source.close();
+        }
+        Timber.d("compiled playback trace of %d events", mTrace.size());
+        return mTrace.newSource();
+    }
+
+    private StreamOpener resourceOpener(final int resourceId) {
+        return new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return mContext.getResources().openRawResource(resourceId);
+            }
+        };
+    }
+
+    private void release() {
+        if (mEvents != null) {
+            try {
+                mEvents.close();
+            } catch (IOException e) {
+                // ignore
             }
+            mEvents = null;
         }
+        mTrace = null;
+        retirePump();
+        mIndex = null;
     }
 
     /**
-     * Invoke listener with N'th event.
-     *
-     * @return index of the event actually sent or -1 if there are not more events to be sent.
+     * Keeps the count of the current pump, each start creates a new one.
      */
-    private int dispatchEvent(int index) throws JSONException {
-        if (index < 0 || index >= mEvents.length()) {
-            Timber.e("asked to dispatch index %d  but we only have %d items",
-                    index, mEvents.length());
-            return -1;
+    private void retirePump() {
+        if (mPump != null) {
+            mPreviousPumpsCount += mPump.getDispatchedCount();
+            mPump = null;
         }
-        JSONObject event = mEvents.getJSONObject(index);
-        Timber.v("processing event: %s", event);
-        switch (event.getString("type")) {
-            case "location":
-                JSONArray coordinates = event.getJSONArray("coordinates");
-                Location location = new Location("Playback");
-                location.setLatitude(coordinates.getDouble(0));
-                location.setLongitude(coordinates.getDouble(1));
-                mLastLocation = location;
-                mListener.onLocationChanged(mIsIndoors
-                        ? LocationUpdate.indoor(mLastLocation)
-                        : LocationUpdate.outdoor(mLastLocation));
-                break;
-            case "context":
-                switch (event.getString("kind")) {
-                    case "venue-entry":
-                        mCurrentVenueId = event.getString("id");
-                        mListener.onEnterVenue(mCurrentVenueId, event.optString("name"));
-                        break;
-                    case "floor-entry":
-                        if (!mIsIndoors) {
-                            mIsIndoors = true;
-                            mListener.onEnterIndoors(mCurrentVenueId);
-                        }
-                        mCurrentFloorId = event.getString("id");
-                        mCurrentFloorLevel = event.optString("floorLevel", null);
-                        mListener.onFloorChanged(mCurrentVenueId, mCurrentFloorId,
-                                mCurrentFloorLevel);
-                        break;
-                    case "venue-exit":
-                        final String venueId = mCurrentVenueId;
-                        mIsIndoors = false;
-                        mCurrentVenueId = null;
-                        mCurrentFloorId = null;
-                        mListener.onExitVenue(venueId);
-                        mListener.onExitIndoors(venueId);
-                        break;
-                }
-                break;
-        }
-        if (index == mEvents.length() - 1) {
-            if (mLooping) {
-                index = 0;
+    }
+
+    /**
+     * Returns the seek index of the trace. Compiled traces are indexed in memory, there is no
+     * sidecar file to reuse for bundled resources anyway.
+     */
+    private PlaybackIndex getIndex() throws IOException {
+        if (mIndex == null) {
+            if (mTrace != null) {
+                mIndex = mTrace.buildIndex(mUpdateDelayMillis, PlaybackIndex.DEFAULT_SPACING);
+            } else if (mPlaybackFile != null) {
+                mIndex = PlaybackIndex.forFile(mPlaybackFile, mUpdateDelayMillis);
             } else {
-                // end of items, no looping
-                index = -1;
+                mIndex = PlaybackIndex.buildJson(resourceOpener(mPlaybackResourceId),
+                        mUpdateDelayMillis, PlaybackIndex.DEFAULT_SPACING);
             }
+            Timber.d("playback index with %d checkpoints for %d events",
+                    mIndex.getCheckpoints().size(), mIndex.getEventCount());
         }
-        return index;
+        return mIndex;
+    }
+
+    /**
+     * Number of events played since the producer was created. Together with
+     * {@link PlaybackClock#unthrottled()} this allows measuring listener throughput.
+     */
+    public long getDispatchedCount() {
+        return mDispatchedCount;
     }
 
     @Override
     public boolean isIndoors() {
-        return mIsIndoors;
+        return mDispatcher.isIndoors();
     }
 
     @Override
     public String getVenueId() {
-        return mCurrentVenueId;
+        return mDispatcher.getVenueId();
     }
 
     @Override
     public String getFloorId() {
-        return mCurrentFloorId;
+        return mDispatcher.getFloorId();
     }
 
     @Nullable
     @Override
     public String getFloorLevel() {
-        return mCurrentFloorLevel;
+        return mDispatcher.getFloorLevel();
     }
 
-    @Nullable
     @Override
-    public Location getLastLocation() {
-        return mLastLocation;
+    public boolean getLastFix(LocationFix out) {
+        return mDispatcher.getLastFix(out);
     }
 
     private static class PlaybackHandler extends Handler {
 
         private final WeakReference<PlaybackLocationProducer> mProducerRef;
 
+        private static final int CMD_NEXT = 0;
+        private static final int CMD_START = 1;
+        private static final int CMD_SEEK = 2;
+        private static final int CMD_SEEK_ELAPSED = 3;
         private static final int CMD_STOP = -1;
         private static final int CMD_QUIT = -2;
 
@@ -227,6 +317,9 @@ public class PlaybackLocationProducer implements LocationProducer {
             final int what = msg.what;
             PlaybackLocationProducer producer = mProducerRef.get();
             if (producer == null || what == CMD_QUIT) {
+                if (producer != null) {
+                    producer.release();
+                }
                 getLooper().quit();
                 return;
             }
@@ -237,16 +330,40 @@ public class PlaybackLocationProducer implements LocationProducer {
             }
 
             try {
-                producer.init();
-                int index = producer.dispatchEvent(what);
-                if (index >= 0) {
-                    // process next event after a configured delay
-                    sendMessageDelayed(Message.obtain(null, index + 1), producer.mUpdateDelayMillis);
-                } else {
+                final long now = SystemClock.uptimeMillis();
+                if (what == CMD_START) {
+                    removeMessages(CMD_NEXT);
+                    producer.init();
+                    producer.mPump.start(now);
+                } else if (what == CMD_SEEK || what == CMD_SEEK_ELAPSED) {
+                    removeMessages(CMD_NEXT);
+                    if (producer.mPump == null) {
+                        producer.init();
+                    }
+                    final PlaybackIndex index = producer.getIndex();
+                    long time = (Long) msg.obj;
+                    if (what == CMD_SEEK_ELAPSED) {
+                        time += index.getStartTime();
+                    }
+                    if (!producer.mPump.seekTo(index, time, now)) {
+                        Timber.w("seek to %d is past the end of playback", time);
+                        return;
+                    }
+                } else if (producer.mPump == null) {
+                    return;
+                }
+                final PlaybackPump pump = producer.mPump;
+                final long delay = pump.step(now);
+                producer.mDispatchedCount = producer.mPreviousPumpsCount
+                        + pump.getDispatchedCount();
+                if (delay == PlaybackPump.END) {
                     Timber.d("end of playback reached, not looping");
+                } else {
+                    sendEmptyMessageAtTime(CMD_NEXT, now + delay);
                 }
             } catch (Exception e) {
                 Timber.e(e, "processing playback data failed");
+                producer.release();
                 getLooper().quit();
             }
 
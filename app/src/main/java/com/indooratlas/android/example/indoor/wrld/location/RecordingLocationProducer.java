@@ -0,0 +1,151 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.indooratlas.android.example.indoor.wrld.location.playback.TraceRecorder;
+
+import java.io.File;
+
+import timber.log.Timber;
+
+/**
+ * Decorator that records all events of another producer to a JSON trace which can later be
+ * replayed with {@link PlaybackLocationProducer}. Recording happens synchronously on the
+ * producer's callback thread but only copies the event to memory, disk I/O is done by the
+ * {@link TraceRecorder} writer thread.
+ */
+public class RecordingLocationProducer implements LocationProducer {
+
+    private final LocationProducer mDelegate;
+
+    private final TraceRecorder mRecorder;
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private final Listener mRecordingListener = new Listener() {
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            mRecorder.recordLocation(fix.latitude, fix.longitude);
+        }
+
+        @Override
+        public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+            mRecorder.recordFloorEntry(floorId, floorLevel);
+        }
+
+        @Override
+        public void onEnterIndoors(String venueId) {
+            mRecorder.recordIndoorsEntry();
+        }
+
+        @Override
+        public void onExitIndoors(String venueId) {
+            mRecorder.recordIndoorsExit();
+        }
+
+        @Override
+        public void onEnterVenue(String venueId, @Nullable String venueName) {
+            mRecorder.recordVenueEntry(venueId, venueName);
+        }
+
+        @Override
+        public void onExitVenue(String venueId) {
+            mRecorder.recordVenueExit();
+        }
+    };
+
+    public RecordingLocationProducer(LocationProducer delegate, File traceFile) {
+        this(delegate, traceFile, TraceRecorder.DEFAULT_CAPACITY);
+    }
+
+    public RecordingLocationProducer(LocationProducer delegate, File traceFile, int capacity) {
+        mDelegate = delegate;
+        mRecorder = new TraceRecorder(traceFile, capacity, mClock);
+        mDelegate.subscribe(mRecordingListener, LocationEventBus.DispatchPolicy.synchronous());
+    }
+
+    @Override
+    public void start() {
+        mRecorder.start();
+        mDelegate.start();
+    }
+
+    @Override
+    public void stop() {
+        mDelegate.stop();
+        logDrops();
+    }
+
+    @Override
+    public void destroy() {
+        mDelegate.unsubscribe(mRecordingListener);
+        mDelegate.destroy();
+        mRecorder.close();
+        Timber.d("recorded %d events to %s", mRecorder.getWrittenCount(), mRecorder.getFile());
+        logDrops();
+    }
+
+    @Override
+    public void subscribe(Listener listener, LocationEventBus.DispatchPolicy policy) {
+        mDelegate.subscribe(listener, policy);
+    }
+
+    @Override
+    public void unsubscribe(Listener listener) {
+        mDelegate.unsubscribe(listener);
+    }
+
+    @Override
+    public boolean isIndoors() {
+        return mDelegate.isIndoors();
+    }
+
+    @Nullable
+    @Override
+    public String getVenueId() {
+        return mDelegate.getVenueId();
+    }
+
+    @Nullable
+    @Override
+    public String getFloorId() {
+        return mDelegate.getFloorId();
+    }
+
+    @Nullable
+    @Override
+    public String getFloorLevel() {
+        return mDelegate.getFloorLevel();
+    }
+
+    @Override
+    public boolean getLastFix(LocationFix out) {
+        return mDelegate.getLastFix(out);
+    }
+
+    @Override
+    public String getDebugId() {
+        return mDelegate.getDebugId();
+    }
+
+    /**
+     * Number of events that could not be recorded because the writer fell behind.
+     */
+    public long getDroppedCount() {
+        return mRecorder.getDroppedCount();
+    }
+
+    private void logDrops() {
+        final long dropped = mRecorder.getDroppedCount();
+        if (dropped > 0) {
+            Timber.w("%d events dropped from trace %s", dropped, mRecorder.getFile());
+        }
+    }
+}
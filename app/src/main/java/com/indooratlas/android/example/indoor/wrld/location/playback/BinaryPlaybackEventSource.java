@@ -0,0 +1,231 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.HEADER_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.MAGIC;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.NO_STRING;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OFFSET_RECORD_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OFFSET_START_TIME;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OFFSET_STRING_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OFFSET_STRING_TABLE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_FLOOR_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_INDOORS_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_INDOORS_EXIT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_LATITUDE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_LONGITUDE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_TIME;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_LOCATION;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_VENUE_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_VENUE_EXIT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.RECORD_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.VERSION;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.toDegrees;
+
+/**
+ * Plays a {@link BinaryTraceFormat} trace directly from a memory mapped file. The string table is
+ * decoded once when the trace is opened, records are decoded on demand without copying.
+ */
+public class BinaryPlaybackEventSource implements SeekablePlaybackEventSource {
+
+    private final FileInputStream mStream;
+
+    private final ByteBuffer mBuffer;
+
+    private final String[] mStrings;
+
+    private final int mRecordCount;
+
+    private final long mStartTime;
+
+    private int mRecord;
+
+    private long mTime;
+
+    private int mLatitude;
+
+    private int mLongitude;
+
+    public BinaryPlaybackEventSource(File file) throws IOException {
+        this(new FileInputStream(file), 0, file.length());
+    }
+
+    /**
+     * Maps a trace stored at the given range of a file, e.g. an uncompressed asset opened via
+     * {@code AssetFileDescriptor}. The stream is closed with this source.
+     */
+    public BinaryPlaybackEventSource(FileInputStream stream, long offset, long length)
+            throws IOException {
+        mStream = stream;
+        try {
+            FileChannel channel = stream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            mBuffer = buffer;
+            if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("not a binary trace");
+            }
+            int version = buffer.getShort(4);
+            if (version != VERSION || buffer.getShort(6) != RECORD_SIZE) {
+                throw new IOException("unsupported binary trace version " + version);
+            }
+            mRecordCount = buffer.getInt(OFFSET_RECORD_COUNT);
+            mStartTime = buffer.getLong(OFFSET_START_TIME);
+            long stringTable = buffer.getLong(OFFSET_STRING_TABLE);
+            if (mRecordCount < 0
+                    || stringTable != HEADER_SIZE + (long) mRecordCount * RECORD_SIZE
+                    || stringTable > length) {
+                throw new IOException("corrupt binary trace");
+            }
+            mStrings = readStrings(buffer, (int) stringTable,
+                    buffer.getInt(OFFSET_STRING_COUNT));
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        rewind();
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int offset, int count)
+            throws IOException {
+        if (count < 0) {
+            throw new IOException("corrupt binary trace");
+        }
+        String[] strings = new String[count];
+        ByteBuffer table = buffer.duplicate();
+        table.position(offset);
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = table.getShort() & 0xffff;
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            table.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, "UTF-8");
+        }
+        return strings;
+    }
+
+    /**
+     * Returns {@code true} if the file starts like a binary trace.
+     */
+    public static boolean isBinaryTrace(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return file.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    int getRecordPosition() {
+        return mRecord;
+    }
+
+    long getCursorTime() {
+        return mTime;
+    }
+
+    int getCursorLatitude() {
+        return mLatitude;
+    }
+
+    int getCursorLongitude() {
+        return mLongitude;
+    }
+
+    @Nullable
+    @Override
+    public PlaybackEvent next() throws IOException {
+        final ByteBuffer buffer = mBuffer;
+        while (mRecord < mRecordCount) {
+            int position = HEADER_SIZE + mRecord * RECORD_SIZE;
+            mRecord++;
+            int op = buffer.get(position) & 0xff;
+            mTime += buffer.getShort(position + 2) & 0xffff;
+            int a = buffer.getShort(position + 4);
+            int b = buffer.getShort(position + 6);
+            switch (op) {
+                case OP_LOCATION:
+                    mLatitude += a;
+                    mLongitude += b;
+                    return PlaybackEvent.location(mTime, toDegrees(mLatitude),
+                            toDegrees(mLongitude));
+                case OP_VENUE_ENTRY:
+                    return PlaybackEvent.venueEntry(mTime, string(a), string(b));
+                case OP_FLOOR_ENTRY:
+                    return PlaybackEvent.floorEntry(mTime, string(a), string(b));
+                case OP_VENUE_EXIT:
+                    return PlaybackEvent.venueExit(mTime);
+                case OP_INDOORS_ENTRY:
+                    return PlaybackEvent.indoorsEntry(mTime);
+                case OP_INDOORS_EXIT:
+                    return PlaybackEvent.indoorsExit(mTime);
+                case OP_KEY_LATITUDE:
+                    mLatitude = toInt(a, b);
+                    break;
+                case OP_KEY_LONGITUDE:
+                    mLongitude = toInt(a, b);
+                    break;
+                case OP_KEY_TIME:
+                    mTime += toInt(a, b) & 0xffffffffL;
+                    break;
+                default:
+                    throw new IOException("unknown record " + op + " at " + (mRecord - 1));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void rewind() {
+        mRecord = 0;
+        mTime = mStartTime;
+        mLatitude = 0;
+        mLongitude = 0;
+    }
+
+    @Override
+    public void seek(PlaybackIndex.Checkpoint checkpoint) throws IOException {
+        if (checkpoint.offset < 0 || checkpoint.offset > mRecordCount) {
+            throw new IOException("checkpoint outside of trace: " + checkpoint);
+        }
+        mRecord = (int) checkpoint.offset;
+        mTime = checkpoint.cursorTime;
+        mLatitude = checkpoint.cursorLatitude;
+        mLongitude = checkpoint.cursorLongitude;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // mapping stays valid until the buffer is collected, nothing to release explicitly
+        mStream.close();
+    }
+
+    @Nullable
+    private String string(int index) throws IOException {
+        index &= 0xffff;
+        if (index == NO_STRING) {
+            return null;
+        }
+        if (index >= mStrings.length) {
+            throw new IOException("string index out of range: " + index);
+        }
+        return mStrings[index];
+    }
+
+    private static int toInt(int high, int low) {
+        return (high << 16) | (low & 0xffff);
+    }
+}
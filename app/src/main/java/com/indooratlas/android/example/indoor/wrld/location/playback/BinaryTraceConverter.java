@@ -0,0 +1,76 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Converts JSON playback traces to the {@link BinaryTraceFormat}. Can also be run on a desktop
+ * JVM to convert a corpus: {@code BinaryTraceConverter in.json out.trace [in2.json out2.trace..]}
+ */
+public final class BinaryTraceConverter {
+
+    /** Spacing of events in traces that do not record time, same as the default playback rate. */
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    private BinaryTraceConverter() {
+    }
+
+    /**
+     * Writes all events of the source to a binary trace. Events without a timestamp are placed
+     * {@code intervalMillis} after the previous one.
+     *
+     * @return number of events written.
+     */
+    public static int convert(PlaybackEventSource source, File output, long intervalMillis)
+            throws IOException {
+        BinaryTraceWriter writer = new BinaryTraceWriter(output);
+        int count = 0;
+        try {
+            long time = -intervalMillis;
+            PlaybackEvent event;
+            while ((event = source.next()) != null) {
+                if (event.timestamp == PlaybackEvent.NO_TIMESTAMP) {
+                    time += intervalMillis;
+                    event = event.withTimestamp(time);
+                } else {
+                    time = event.timestamp;
+                }
+                writer.write(event);
+                count++;
+            }
+        } finally {
+            writer.close();
+        }
+        return count;
+    }
+
+    public static int convert(final File json, File output) throws IOException {
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(json);
+            }
+        });
+        try {
+            return convert(source, output, DEFAULT_INTERVAL);
+        } finally {
+            source.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 != 0) {
+            System.err.println("usage: BinaryTraceConverter in.json out.trace [...]");
+            System.exit(1);
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            File in = new File(args[i]);
+            File out = new File(args[i + 1]);
+            int count = convert(in, out);
+            System.out.println(in + ": " + count + " events, " + in.length() + " -> "
+                    + out.length() + " bytes");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+/**
+ * Layout of the compact binary trace format. All values are big-endian.
+ * <pre>
+ * header   32 bytes  magic, version, record size, record count, string count,
+ *                    string table offset, start time
+ * records  8 bytes each, starting right after the header
+ * strings  UTF-8 strings, each prefixed with an unsigned 16-bit length
+ * </pre>
+ * A record is {@code op:u8, reserved:u8, dt:u16, a:s16, b:s16} where {@code dt} is the time in
+ * milliseconds since the previous record. Coordinates are delta-encoded in units of 1e-7 degrees
+ * (about 1 cm); deltas and time gaps that do not fit in 16 bits are written as extra key records
+ * preceding the event. Venue and floor ids are indices into the string table so that each UUID
+ * is stored only once.
+ */
+final class BinaryTraceFormat {
+
+    static final int MAGIC = 0x49415452; // "IATR"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 8;
+
+    static final int OFFSET_RECORD_COUNT = 8;
+
+    static final int OFFSET_STRING_COUNT = 12;
+
+    static final int OFFSET_STRING_TABLE = 16;
+
+    static final int OFFSET_START_TIME = 24;
+
+    // event records, a and b as documented
+    /** a, b: latitude and longitude delta. */
+    static final int OP_LOCATION = 0;
+    /** a: venue id, b: venue name. */
+    static final int OP_VENUE_ENTRY = 1;
+    /** a: floor plan id, b: floor level. */
+    static final int OP_FLOOR_ENTRY = 2;
+    static final int OP_VENUE_EXIT = 3;
+    static final int OP_INDOORS_ENTRY = 4;
+    static final int OP_INDOORS_EXIT = 5;
+
+    // key records, not events by themselves
+    /** a:b absolute latitude. */
+    static final int OP_KEY_LATITUDE = 0x40;
+    /** a:b absolute longitude. */
+    static final int OP_KEY_LONGITUDE = 0x41;
+    /** a:b milliseconds added to trace time in addition to dt. */
+    static final int OP_KEY_TIME = 0x42;
+
+    /** String index of a {@code null} string. */
+    static final int NO_STRING = 0xffff;
+
+    static final int MAX_STRINGS = NO_STRING;
+
+    static final int MAX_DT = 0xffff;
+
+    static final double COORDINATE_SCALE = 1e7;
+
+    private BinaryTraceFormat() {
+    }
+
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    static double toDegrees(int fixed) {
+        return fixed / COORDINATE_SCALE;
+    }
+
+    static boolean fitsInShort(int value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+}
@@ -0,0 +1,217 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.HEADER_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.MAGIC;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.MAX_DT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.MAX_STRINGS;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.NO_STRING;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_FLOOR_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_INDOORS_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_INDOORS_EXIT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_LATITUDE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_LONGITUDE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_KEY_TIME;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_LOCATION;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_VENUE_ENTRY;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.OP_VENUE_EXIT;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.RECORD_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.VERSION;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.fitsInShort;
+import static com.indooratlas.android.example.indoor.wrld.location.playback.BinaryTraceFormat.toFixed;
+
+/**
+ * Writes events in the {@link BinaryTraceFormat}. Records are streamed to disk as they are
+ * written, only the string table is kept in memory until {@link #close()}.
+ */
+public class BinaryTraceWriter implements PlaybackEventWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile mFile;
+
+    private final FileChannel mChannel;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final Map<String, Integer> mStringIndex = new HashMap<>();
+
+    private final List<String> mStrings = new ArrayList<>();
+
+    private int mRecordCount;
+
+    private long mStartTime = PlaybackEvent.NO_TIMESTAMP;
+
+    private long mTime;
+
+    private int mLatitude;
+
+    private int mLongitude;
+
+    private boolean mClosed;
+
+    public BinaryTraceWriter(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mChannel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Appends an event. Timestamps must be set and must not decrease.
+     */
+    @Override
+    public void write(PlaybackEvent event) throws IOException {
+        if (event.timestamp == PlaybackEvent.NO_TIMESTAMP) {
+            throw new IllegalArgumentException("event without timestamp: " + event);
+        }
+        if (mStartTime == PlaybackEvent.NO_TIMESTAMP) {
+            mStartTime = event.timestamp;
+            mTime = event.timestamp;
+        }
+        long dt = event.timestamp - mTime;
+        if (dt < 0) {
+            throw new IllegalArgumentException("timestamps must not decrease: " + event);
+        }
+        while (dt > MAX_DT) {
+            long skip = Math.min(dt - MAX_DT, Integer.MAX_VALUE);
+            writeInt(OP_KEY_TIME, 0, (int) skip);
+            dt -= skip;
+        }
+        mTime = event.timestamp;
+
+        switch (event.type) {
+            case PlaybackEvent.TYPE_LOCATION:
+                int latitude = toFixed(event.latitude);
+                int longitude = toFixed(event.longitude);
+                if (!fitsInShort(latitude - mLatitude)) {
+                    writeInt(OP_KEY_LATITUDE, 0, latitude);
+                    mLatitude = latitude;
+                }
+                if (!fitsInShort(longitude - mLongitude)) {
+                    writeInt(OP_KEY_LONGITUDE, 0, longitude);
+                    mLongitude = longitude;
+                }
+                writeRecord(OP_LOCATION, (int) dt, latitude - mLatitude, longitude - mLongitude);
+                mLatitude = latitude;
+                mLongitude = longitude;
+                break;
+            case PlaybackEvent.TYPE_VENUE_ENTRY:
+                writeRecord(OP_VENUE_ENTRY, (int) dt, intern(event.id), intern(event.name));
+                break;
+            case PlaybackEvent.TYPE_FLOOR_ENTRY:
+                writeRecord(OP_FLOOR_ENTRY, (int) dt, intern(event.id),
+                        intern(event.floorLevel));
+                break;
+            case PlaybackEvent.TYPE_VENUE_EXIT:
+                writeRecord(OP_VENUE_EXIT, (int) dt, 0, 0);
+                break;
+            case PlaybackEvent.TYPE_INDOORS_ENTRY:
+                writeRecord(OP_INDOORS_ENTRY, (int) dt, 0, 0);
+                break;
+            case PlaybackEvent.TYPE_INDOORS_EXIT:
+                writeRecord(OP_INDOORS_EXIT, (int) dt, 0, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported event: " + event);
+        }
+    }
+
+    /**
+     * Writes the string table and header, the trace is not readable before this is called.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            long stringTableOffset = HEADER_SIZE + (long) mRecordCount * RECORD_SIZE;
+            for (String string : mStrings) {
+                byte[] bytes = string.getBytes("UTF-8");
+                if (bytes.length > 0xffff) {
+                    throw new IOException("string too long: " + string.substring(0, 32));
+                }
+                ensureRemaining(2);
+                mBuffer.putShort((short) bytes.length);
+                int offset = 0;
+                while (offset < bytes.length) {
+                    ensureRemaining(1);
+                    int count = Math.min(mBuffer.remaining(), bytes.length - offset);
+                    mBuffer.put(bytes, offset, count);
+                    offset += count;
+                }
+            }
+            flush();
+
+            mBuffer.clear();
+            mBuffer.putInt(MAGIC);
+            mBuffer.putShort((short) VERSION);
+            mBuffer.putShort((short) RECORD_SIZE);
+            mBuffer.putInt(mRecordCount);
+            mBuffer.putInt(mStrings.size());
+            mBuffer.putLong(stringTableOffset);
+            mBuffer.putLong(mStartTime == PlaybackEvent.NO_TIMESTAMP ? 0 : mStartTime);
+            mBuffer.flip();
+            mChannel.write(mBuffer, 0);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private int intern(@Nullable String string) throws IOException {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = mStringIndex.get(string);
+        if (index == null) {
+            if (mStrings.size() == MAX_STRINGS) {
+                throw new IOException("too many distinct strings");
+            }
+            index = mStrings.size();
+            mStrings.add(string);
+            mStringIndex.put(string, index);
+        }
+        return index;
+    }
+
+    private void writeInt(int op, int dt, int value) throws IOException {
+        writeRecord(op, dt, value >> 16, value);
+    }
+
+    private void writeRecord(int op, int dt, int a, int b) throws IOException {
+        ensureRemaining(RECORD_SIZE);
+        mBuffer.put((byte) op);
+        mBuffer.put((byte) 0);
+        mBuffer.putShort((short) dt);
+        mBuffer.putShort((short) a);
+        mBuffer.putShort((short) b);
+        mRecordCount++;
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (mBuffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+}
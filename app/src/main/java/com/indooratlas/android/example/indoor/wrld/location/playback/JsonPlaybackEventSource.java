@@ -0,0 +1,202 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+
+import timber.log.Timber;
+
+/**
+ * Reads the JSON playback format incrementally, one event at a time, so that memory use does not
+ * depend on the length of the trace. The format is an array of objects such as:
+ * <pre>
+ * {"type": "location", "coordinates": [60.16981, 24.93535]}
+ * {"type": "context", "kind": "venue-entry", "id": "...", "name": "Kamppi"}
+ * {"type": "context", "kind": "floor-entry", "id": "...", "floorLevel": "2"}
+ * {"type": "context", "kind": "venue-exit"}
+ * {"type": "context", "kind": "indoors-entry"}
+ * {"type": "context", "kind": "indoors-exit"}
+ * </pre>
+ * Events may have an optional {@code "timestamp"} in milliseconds, which is used to pace the
+ * playback. Unknown event types and properties are skipped. A trace that was cut short, e.g. a
+ * recording that was never closed, ends at its last complete event.
+ */
+public class JsonPlaybackEventSource implements SeekablePlaybackEventSource {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] ARRAY_START = {'['};
+
+    private final StreamOpener mOpener;
+
+    private JsonReader mReader;
+
+    public JsonPlaybackEventSource(StreamOpener opener) {
+        mOpener = opener;
+    }
+
+    @Nullable
+    @Override
+    public PlaybackEvent next() throws IOException {
+        if (mReader == null) {
+            open();
+        }
+        try {
+            while (mReader.hasNext()) {
+                PlaybackEvent event = readEvent(mReader);
+                if (event != null) {
+                    return event;
+                }
+            }
+        } catch (EOFException e) {
+            Timber.w("trace ends abruptly at %s", mReader);
+        }
+        return null;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mReader != null) {
+            try {
+                mReader.close();
+            } finally {
+                mReader = null;
+            }
+        }
+    }
+
+    /**
+     * Continues from the object at the byte offset of the checkpoint. The stream is skipped up
+     * to that point, which is cheap for files.
+     */
+    @Override
+    public void seek(PlaybackIndex.Checkpoint checkpoint) throws IOException {
+        close();
+        InputStream stream = mOpener.open();
+        try {
+            long remaining = checkpoint.offset;
+            while (remaining > 0) {
+                long skipped = stream.skip(remaining);
+                if (skipped <= 0) {
+                    throw new EOFException("trace ends before offset " + checkpoint.offset);
+                }
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        // make the rest of the trace look like a complete array again
+        open(new SequenceInputStream(new ByteArrayInputStream(ARRAY_START), stream));
+    }
+
+    private void open() throws IOException {
+        open(mOpener.open());
+    }
+
+    private void open(InputStream stream) throws IOException {
+        mReader = new JsonReader(new BufferedReader(
+                new InputStreamReader(stream, "UTF-8"), BUFFER_SIZE));
+        mReader.beginArray();
+    }
+
+    /**
+     * Decodes one event object, returns {@code null} if it's not a supported event.
+     */
+    @Nullable
+    static PlaybackEvent readEvent(JsonReader reader) throws IOException {
+        String type = null;
+        String kind = null;
+        String id = null;
+        String name = null;
+        String floorLevel = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        long timestamp = PlaybackEvent.NO_TIMESTAMP;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = readString(reader);
+                    break;
+                case "timestamp":
+                    timestamp = reader.nextLong();
+                    break;
+                case "kind":
+                    kind = readString(reader);
+                    break;
+                case "id":
+                    id = readString(reader);
+                    break;
+                case "name":
+                    name = readString(reader);
+                    break;
+                case "floorLevel":
+                    floorLevel = readString(reader);
+                    break;
+                case "coordinates":
+                    reader.beginArray();
+                    latitude = reader.nextDouble();
+                    longitude = reader.nextDouble();
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if ("location".equals(type)) {
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                throw new IOException("location event without coordinates at "
+                        + reader.toString());
+            }
+            return PlaybackEvent.location(timestamp, latitude, longitude);
+        }
+        if ("context".equals(type) && kind != null) {
+            switch (kind) {
+                case "venue-entry":
+                    return PlaybackEvent.venueEntry(timestamp, id, name);
+                case "floor-entry":
+                    return PlaybackEvent.floorEntry(timestamp, id, floorLevel);
+                case "venue-exit":
+                    return PlaybackEvent.venueExit(timestamp);
+                case "indoors-entry":
+                    return PlaybackEvent.indoorsEntry(timestamp);
+                case "indoors-exit":
+                    return PlaybackEvent.indoorsExit(timestamp);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads strings, numbers (as text) and nulls.
+     */
+    @Nullable
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the byte offsets of the top-level objects of a JSON trace, which
+ * {@link com.google.gson.stream.JsonReader} does not expose. Works on raw UTF-8 bytes as all
+ * structural characters are ASCII.
+ */
+class JsonTraceScanner {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream mStream;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    private int mPosition;
+
+    private int mLimit;
+
+    /** Offset of {@link #mBuffer} in the stream. */
+    private long mBufferOffset;
+
+    JsonTraceScanner(InputStream stream) {
+        mStream = stream;
+    }
+
+    /**
+     * Skips over the next top-level object.
+     *
+     * @return byte offset of the object or -1 at the end of the array or an incomplete object.
+     */
+    long nextObject() throws IOException {
+        long offset = -1;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        while (true) {
+            if (mPosition == mLimit && !fill()) {
+                return -1;
+            }
+            final byte b = mBuffer[mPosition++];
+            if (depth == 0) {
+                if (b == '{') {
+                    offset = mBufferOffset + mPosition - 1;
+                    depth = 1;
+                } else if (b == ']') {
+                    return -1;
+                }
+            } else if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    return offset;
+                }
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        mBufferOffset += mLimit;
+        mPosition = 0;
+        mLimit = Math.max(0, mStream.read(mBuffer));
+        return mLimit > 0;
+    }
+}
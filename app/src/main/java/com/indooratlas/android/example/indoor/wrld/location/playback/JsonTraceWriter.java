@@ -0,0 +1,73 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes events in the JSON format read by {@link JsonPlaybackEventSource}. Closing completes the
+ * array and closes the underlying writer.
+ */
+public class JsonTraceWriter implements PlaybackEventWriter {
+
+    private final JsonWriter mWriter;
+
+    public JsonTraceWriter(Writer out) throws IOException {
+        mWriter = new JsonWriter(out);
+        mWriter.beginArray();
+    }
+
+    @Override
+    public void write(PlaybackEvent event) throws IOException {
+        final JsonWriter writer = mWriter;
+        writer.beginObject();
+        if (event.type == PlaybackEvent.TYPE_LOCATION) {
+            writer.name("type").value("location");
+            writeTimestamp(event);
+            writer.name("coordinates").beginArray()
+                    .value(event.latitude)
+                    .value(event.longitude)
+                    .endArray();
+        } else {
+            writer.name("type").value("context");
+            writeTimestamp(event);
+            switch (event.type) {
+                case PlaybackEvent.TYPE_VENUE_ENTRY:
+                    writer.name("kind").value("venue-entry");
+                    writer.name("id").value(event.id);
+                    writer.name("name").value(event.name);
+                    break;
+                case PlaybackEvent.TYPE_VENUE_EXIT:
+                    writer.name("kind").value("venue-exit");
+                    break;
+                case PlaybackEvent.TYPE_FLOOR_ENTRY:
+                    writer.name("kind").value("floor-entry");
+                    writer.name("id").value(event.id);
+                    writer.name("floorLevel").value(event.floorLevel);
+                    break;
+                case PlaybackEvent.TYPE_INDOORS_ENTRY:
+                    writer.name("kind").value("indoors-entry");
+                    break;
+                case PlaybackEvent.TYPE_INDOORS_EXIT:
+                    writer.name("kind").value("indoors-exit");
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported event: " + event);
+            }
+        }
+        writer.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.endArray();
+        mWriter.close();
+    }
+
+    private void writeTimestamp(PlaybackEvent event) throws IOException {
+        if (event.timestamp != PlaybackEvent.NO_TIMESTAMP) {
+            mWriter.name("timestamp").value(event.timestamp);
+        }
+    }
+}
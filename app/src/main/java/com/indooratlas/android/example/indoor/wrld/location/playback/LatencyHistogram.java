@@ -0,0 +1,79 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+/**
+ * Log-linear histogram of non-negative values, e.g. latencies in microseconds. Each power of two
+ * is split into {@link #SUB_BUCKETS} buckets, so percentiles are accurate to about 6% with a fixed
+ * footprint of a few kilobytes. Not thread safe, merge per-thread histograms with
+ * {@link #add(LatencyHistogram)}.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] mCounts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    private long mCount;
+
+    private long mMax;
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[indexOf(value)]++;
+        mCount++;
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mCount += other.mCount;
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, 0 if empty.
+     */
+    long percentile(double percentile) {
+        long rank = (long) Math.ceil(percentile / 100 * mCount);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), mMax);
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long base = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+}
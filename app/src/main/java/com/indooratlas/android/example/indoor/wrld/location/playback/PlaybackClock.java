@@ -0,0 +1,63 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+/**
+ * Maps trace time to playback time: real time, N times faster or slower, or as fast as possible.
+ * Instances are immutable and can be shared.
+ */
+public final class PlaybackClock {
+
+    private static final PlaybackClock REAL_TIME = new PlaybackClock(1);
+
+    private static final PlaybackClock UNTHROTTLED = new PlaybackClock(0);
+
+    /** Playback speed relative to real time, 0 for unthrottled. */
+    private final double mSpeed;
+
+    private PlaybackClock(double speed) {
+        mSpeed = speed;
+    }
+
+    public static PlaybackClock realTime() {
+        return REAL_TIME;
+    }
+
+    /**
+     * Plays {@code speed} times faster than real time, e.g. 0.5 for half speed.
+     */
+    public static PlaybackClock scaled(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        return new PlaybackClock(speed);
+    }
+
+    /**
+     * Drains events through the listener without any delay.
+     */
+    public static PlaybackClock unthrottled() {
+        return UNTHROTTLED;
+    }
+
+    public boolean isUnthrottled() {
+        return mSpeed == 0;
+    }
+
+    public double getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Returns the playback duration of the given trace duration.
+     */
+    public long scale(long traceMillis) {
+        if (mSpeed == 0) {
+            return 0;
+        }
+        return mSpeed == 1 ? traceMillis : (long) (traceMillis / mSpeed);
+    }
+
+    @Override
+    public String toString() {
+        return mSpeed == 0 ? "PlaybackClock{unthrottled}" : "PlaybackClock{" + mSpeed + "x}";
+    }
+}
@@ -0,0 +1,198 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFixRing;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFixSnapshot;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+/**
+ * Turns playback events into {@link LocationProducer.Listener} callbacks while tracking the
+ * venue, floor and indoor context the way a live producer would. Events must be dispatched from a
+ * single thread, the getters can be called from any thread.
+ */
+public class PlaybackDispatcher {
+
+    private static final LocationProducer.Listener SILENT = new LocationProducer.ListenerSupport();
+
+    private final LocationProducer.Listener mListener;
+
+    private final LocationFixRing mFixes = new LocationFixRing(8);
+
+    private volatile boolean mIsIndoors;
+
+    private volatile String mCurrentVenueId;
+
+    private volatile String mCurrentVenueName;
+
+    private volatile String mCurrentFloorId;
+
+    private volatile String mCurrentFloorLevel;
+
+    private int mCurrentFloorLevelValue = LocationFix.NO_FLOOR;
+
+    private final LocationFixSnapshot mLastFix = new LocationFixSnapshot();
+
+    public PlaybackDispatcher(LocationProducer.Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Clears the indoor context, e.g. when playback starts over.
+     */
+    public void reset() {
+        mIsIndoors = false;
+        mCurrentVenueId = null;
+        mCurrentVenueName = null;
+        mCurrentFloorId = null;
+        mCurrentFloorLevel = null;
+        mCurrentFloorLevelValue = LocationFix.NO_FLOOR;
+    }
+
+    public void dispatch(PlaybackEvent event) {
+        apply(event, mListener);
+    }
+
+    /**
+     * Updates the state like {@link #dispatch(PlaybackEvent)} but without notifying the listener,
+     * e.g. when skipping events.
+     */
+    void apply(PlaybackEvent event) {
+        apply(event, SILENT);
+    }
+
+    /**
+     * Tells the listener that the current venue and indoor space are left, e.g. before jumping to
+     * another point of the trace.
+     */
+    void leave() {
+        final String venueId = mCurrentVenueId;
+        final boolean wasIndoors = mIsIndoors;
+        reset();
+        if (wasIndoors) {
+            mListener.onExitIndoors(venueId);
+        }
+        if (venueId != null) {
+            mListener.onExitVenue(venueId);
+        }
+    }
+
+    /**
+     * Silently replaces the state with a snapshot of an index.
+     */
+    void restore(PlaybackIndex.Checkpoint checkpoint) {
+        mCurrentVenueId = checkpoint.venueId;
+        mCurrentVenueName = checkpoint.venueName;
+        mIsIndoors = checkpoint.indoors;
+        mCurrentFloorId = checkpoint.floorId;
+        mCurrentFloorLevel = checkpoint.floorLevel;
+        mCurrentFloorLevelValue = PlaybackEvent.parseFloorLevel(checkpoint.floorLevel);
+    }
+
+    /**
+     * Tells the listener about the current venue, indoor and floor state as if they were just
+     * entered.
+     */
+    void announce() {
+        if (mCurrentVenueId != null) {
+            mListener.onEnterVenue(mCurrentVenueId, mCurrentVenueName);
+        }
+        if (mIsIndoors) {
+            mListener.onEnterIndoors(mCurrentVenueId);
+            if (mCurrentFloorId != null) {
+                mListener.onFloorChanged(mCurrentVenueId, mCurrentFloorId, mCurrentFloorLevel);
+            }
+        }
+    }
+
+    private void apply(PlaybackEvent event, LocationProducer.Listener listener) {
+        switch (event.type) {
+            case PlaybackEvent.TYPE_LOCATION:
+                LocationFix fix = mFixes.next().set(
+                        mIsIndoors ? LocationFix.SOURCE_INDOOR : LocationFix.SOURCE_OUTDOOR,
+                        event.latitude,
+                        event.longitude,
+                        0f,
+                        0f,
+                        event.timestamp != PlaybackEvent.NO_TIMESTAMP
+                                ? event.timestamp : System.currentTimeMillis(),
+                        mIsIndoors ? mCurrentFloorLevelValue : LocationFix.NO_FLOOR);
+                mLastFix.set(fix);
+                listener.onLocationChanged(fix);
+                break;
+            case PlaybackEvent.TYPE_VENUE_ENTRY:
+                mCurrentVenueId = event.id;
+                mCurrentVenueName = event.name;
+                listener.onEnterVenue(mCurrentVenueId, event.name);
+                break;
+            case PlaybackEvent.TYPE_FLOOR_ENTRY:
+                if (!mIsIndoors) {
+                    mIsIndoors = true;
+                    listener.onEnterIndoors(mCurrentVenueId);
+                }
+                mCurrentFloorId = event.id;
+                mCurrentFloorLevel = event.floorLevel;
+                mCurrentFloorLevelValue = event.floorLevelValue;
+                listener.onFloorChanged(mCurrentVenueId, mCurrentFloorId, mCurrentFloorLevel);
+                break;
+            case PlaybackEvent.TYPE_VENUE_EXIT:
+                final String venueId = mCurrentVenueId;
+                final boolean wasIndoors = mIsIndoors;
+                reset();
+                listener.onExitVenue(venueId);
+                if (wasIndoors) {
+                    listener.onExitIndoors(venueId);
+                }
+                break;
+            case PlaybackEvent.TYPE_INDOORS_ENTRY:
+                if (!mIsIndoors) {
+                    mIsIndoors = true;
+                    listener.onEnterIndoors(mCurrentVenueId);
+                }
+                break;
+            case PlaybackEvent.TYPE_INDOORS_EXIT:
+                if (mIsIndoors) {
+                    mIsIndoors = false;
+                    mCurrentFloorId = null;
+                    mCurrentFloorLevel = null;
+                    mCurrentFloorLevelValue = LocationFix.NO_FLOOR;
+                    listener.onExitIndoors(mCurrentVenueId);
+                }
+                break;
+        }
+    }
+
+    public boolean isIndoors() {
+        return mIsIndoors;
+    }
+
+    @Nullable
+    public String getVenueId() {
+        return mCurrentVenueId;
+    }
+
+    @Nullable
+    public String getVenueName() {
+        return mCurrentVenueName;
+    }
+
+    @Nullable
+    public String getFloorId() {
+        return mCurrentFloorId;
+    }
+
+    @Nullable
+    public String getFloorLevel() {
+        return mCurrentFloorLevel;
+    }
+
+    /**
+     * Copies the last dispatched fix to {@code out}, safe to call from any thread.
+     *
+     * @return false if no fix has been dispatched yet.
+     */
+    public boolean getLastFix(LocationFix out) {
+        return mLastFix.copyTo(out);
+    }
+}
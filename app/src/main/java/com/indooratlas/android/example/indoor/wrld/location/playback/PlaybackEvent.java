@@ -0,0 +1,120 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+
+/**
+ * Immutable, typed event of a playback trace.
+ */
+public final class PlaybackEvent {
+
+    public static final int TYPE_LOCATION = 0;
+    public static final int TYPE_VENUE_ENTRY = 1;
+    public static final int TYPE_FLOOR_ENTRY = 2;
+    public static final int TYPE_VENUE_EXIT = 3;
+    public static final int TYPE_INDOORS_ENTRY = 4;
+    public static final int TYPE_INDOORS_EXIT = 5;
+
+    /** Timestamp of an event whose trace does not record time. */
+    public static final long NO_TIMESTAMP = -1;
+
+    public final int type;
+
+    /** Trace time of the event in milliseconds or {@link #NO_TIMESTAMP}. */
+    public final long timestamp;
+
+    /** Latitude of a location event. */
+    public final double latitude;
+
+    /** Longitude of a location event. */
+    public final double longitude;
+
+    /** IndoorAtlas id of the venue or floor plan entered. */
+    @Nullable
+    public final String id;
+
+    /** Name of the venue entered. */
+    @Nullable
+    public final String name;
+
+    /** Floor level of the floor plan entered. */
+    @Nullable
+    public final String floorLevel;
+
+    /** Floor level parsed once here rather than on every dispatch. */
+    final int floorLevelValue;
+
+    private PlaybackEvent(int type, long timestamp, double latitude, double longitude,
+                          @Nullable String id, @Nullable String name,
+                          @Nullable String floorLevel) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.id = id;
+        this.name = name;
+        this.floorLevel = floorLevel;
+        this.floorLevelValue = parseFloorLevel(floorLevel);
+    }
+
+    public static PlaybackEvent location(long timestamp, double latitude, double longitude) {
+        return new PlaybackEvent(TYPE_LOCATION, timestamp, latitude, longitude, null, null, null);
+    }
+
+    public static PlaybackEvent venueEntry(long timestamp, String id, @Nullable String name) {
+        return new PlaybackEvent(TYPE_VENUE_ENTRY, timestamp, 0, 0, id, name, null);
+    }
+
+    public static PlaybackEvent floorEntry(long timestamp, String id,
+                                           @Nullable String floorLevel) {
+        return new PlaybackEvent(TYPE_FLOOR_ENTRY, timestamp, 0, 0, id, null, floorLevel);
+    }
+
+    public static PlaybackEvent venueExit(long timestamp) {
+        return new PlaybackEvent(TYPE_VENUE_EXIT, timestamp, 0, 0, null, null, null);
+    }
+
+    public static PlaybackEvent indoorsEntry(long timestamp) {
+        return new PlaybackEvent(TYPE_INDOORS_ENTRY, timestamp, 0, 0, null, null, null);
+    }
+
+    public static PlaybackEvent indoorsExit(long timestamp) {
+        return new PlaybackEvent(TYPE_INDOORS_EXIT, timestamp, 0, 0, null, null, null);
+    }
+
+    static int parseFloorLevel(@Nullable String floorLevel) {
+        if (floorLevel == null) {
+            return LocationFix.NO_FLOOR;
+        }
+        try {
+            return Integer.parseInt(floorLevel);
+        } catch (NumberFormatException e) {
+            return LocationFix.NO_FLOOR;
+        }
+    }
+
+    /**
+     * Returns a copy of this event at the given trace time.
+     */
+    public PlaybackEvent withTimestamp(long timestamp) {
+        return new PlaybackEvent(type, timestamp, latitude, longitude, id, name, floorLevel);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PlaybackEvent{");
+        sb.append("type=").append(type);
+        sb.append(", timestamp=").append(timestamp);
+        if (type == TYPE_LOCATION) {
+            sb.append(", latitude=").append(latitude);
+            sb.append(", longitude=").append(longitude);
+        } else {
+            sb.append(", id='").append(id).append('\'');
+            sb.append(", name='").append(name).append('\'');
+            sb.append(", floorLevel='").append(floorLevel).append('\'');
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential source of playback events.
+ */
+public interface PlaybackEventSource extends Closeable {
+
+    /**
+     * Returns the next event or {@code null} at the end of the trace.
+     */
+    @Nullable
+    PlaybackEvent next() throws IOException;
+
+    /**
+     * Starts over from the first event.
+     */
+    void rewind() throws IOException;
+}
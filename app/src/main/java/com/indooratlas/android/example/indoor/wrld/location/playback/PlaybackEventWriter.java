@@ -0,0 +1,12 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential sink of playback events, the counterpart of {@link PlaybackEventSource}.
+ */
+public interface PlaybackEventWriter extends Closeable {
+
+    void write(PlaybackEvent event) throws IOException;
+}
@@ -0,0 +1,340 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationEventBus;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Replays many traces at once to see how the location pipeline scales with the number of
+ * simulated devices. Each session is an independent pipeline of {@link PlaybackPump},
+ * {@link PlaybackDispatcher}, {@link LocationEventBus} and a controller listener, like the one
+ * built by {@code PlaybackLocationProducer}. Instead of a thread per session, all sessions are
+ * stepped on one shared executor with a fixed number of threads.
+ * <p>
+ * Dispatch latency is the time from when an event was due to when the controller received it,
+ * which includes waiting for an executor thread. It is only meaningful with a real-time or scaled
+ * clock; with an unthrottled clock everything is due immediately and throughput is what counts.
+ */
+public class PlaybackHarness {
+
+    /**
+     * Creates the parts of a session, called once per session before playback starts.
+     */
+    public interface SessionFactory {
+
+        PlaybackEventSource openSource(int session) throws IOException;
+
+        LocationProducer.Listener createController(int session);
+    }
+
+    /**
+     * Aggregate results of a run.
+     */
+    public static class Report {
+
+        public final int sessions;
+
+        public final int failedSessions;
+
+        public final long events;
+
+        public final long elapsedMillis;
+
+        public final long p50LatencyMicros;
+
+        public final long p99LatencyMicros;
+
+        public final long maxLatencyMicros;
+
+        /**
+         * Heap retained by a session during playback, once every session has taken its first
+         * step, measured after GC. -1 if not measured or if concurrent allocation and collection
+         * left no positive difference to report.
+         */
+        public final long heapPerSessionBytes;
+
+        Report(int sessions, int failedSessions, long events, long elapsedMillis,
+               LatencyHistogram latency, long heapPerSessionBytes) {
+            this.sessions = sessions;
+            this.failedSessions = failedSessions;
+            this.events = events;
+            this.elapsedMillis = elapsedMillis;
+            this.p50LatencyMicros = latency.percentile(50);
+            this.p99LatencyMicros = latency.percentile(99);
+            this.maxLatencyMicros = latency.getMax();
+            this.heapPerSessionBytes = heapPerSessionBytes;
+        }
+
+        public long getEventsPerSecond() {
+            return events * 1000 / Math.max(1, elapsedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d sessions (%d failed), %d events in %d ms"
+                            + " (%d events/s), latency p50 %d us, p99 %d us, max %d us,"
+                            + " heap/session %d bytes", sessions, failedSessions, events,
+                    elapsedMillis, getEventsPerSecond(), p50LatencyMicros, p99LatencyMicros,
+                    maxLatencyMicros, heapPerSessionBytes);
+        }
+    }
+
+    private final SessionFactory mFactory;
+
+    private int mSessions = 100;
+
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+
+    private PlaybackClock mClock = PlaybackClock.realTime();
+
+    private long mDefaultInterval = 1000;
+
+    private boolean mMeasureHeap = true;
+
+    // state of the current run
+    private volatile boolean mStopped;
+
+    private long mStartNanos;
+
+    private CountDownLatch mFinished;
+
+    /** Counted down by each session after its first step, or when it ends before that. */
+    private CountDownLatch mWarmedUp;
+
+    private final AtomicInteger mFailed = new AtomicInteger();
+
+    public PlaybackHarness(SessionFactory factory) {
+        mFactory = factory;
+    }
+
+    public PlaybackHarness setSessions(int sessions) {
+        mSessions = sessions;
+        return this;
+    }
+
+    public PlaybackHarness setThreads(int threads) {
+        mThreads = threads;
+        return this;
+    }
+
+    public PlaybackHarness setClock(PlaybackClock clock) {
+        mClock = clock;
+        return this;
+    }
+
+    public PlaybackHarness setDefaultInterval(long defaultIntervalMillis) {
+        mDefaultInterval = defaultIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Heap measurement forces garbage collections, disable it when only throughput matters.
+     */
+    public PlaybackHarness setMeasureHeap(boolean measureHeap) {
+        mMeasureHeap = measureHeap;
+        return this;
+    }
+
+    /**
+     * Plays all sessions to the end, or until the timeout after which unfinished sessions are
+     * stopped and the report covers what was played so far.
+     */
+    public Report run(long timeoutMillis) throws IOException, InterruptedException {
+        mStopped = false;
+        mFinished = new CountDownLatch(mSessions);
+        mWarmedUp = new CountDownLatch(mSessions);
+        mFailed.set(0);
+        long heapBefore = mMeasureHeap ? usedHeap() : 0;
+        Session[] sessions = new Session[mSessions];
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(mThreads);
+        // on timeout, pending steps of stopped sessions are dropped rather than waited for
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        try {
+            for (int i = 0; i < sessions.length; i++) {
+                sessions[i] = new Session(i, executor);
+            }
+
+            mStartNanos = System.nanoTime();
+            for (Session session : sessions) {
+                session.start();
+            }
+            long heapPerSession = -1;
+            if (mMeasureHeap && sessions.length > 0
+                    && mWarmedUp.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                // the sessions keep running, a collection or allocation racing with the
+                // samples can make the difference meaningless
+                long retained = (usedHeap() - heapBefore) / sessions.length;
+                heapPerSession = retained > 0 ? retained : -1;
+            }
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+                    - (System.nanoTime() - mStartNanos);
+            if (!mFinished.await(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)) {
+                Timber.w("%d sessions still running after %d ms", mFinished.getCount(),
+                        timeoutMillis);
+                mStopped = true;
+            }
+            executor.shutdown();
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos);
+
+            // shutdown happens-before termination, so session state is safe to read
+            LatencyHistogram latency = new LatencyHistogram();
+            long events = 0;
+            for (Session session : sessions) {
+                latency.add(session.mLatency);
+                events += session.mPump.getDispatchedCount();
+            }
+            return new Report(sessions.length, mFailed.get(), events, elapsedMillis, latency,
+                    heapPerSession);
+        } finally {
+            executor.shutdownNow();
+            for (Session session : sessions) {
+                if (session != null) {
+                    session.mSource.close();
+                }
+            }
+        }
+    }
+
+    private long uptimeMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos - mStartNanos);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * One simulated device. Runs are serialized by scheduling the next step only from the end
+     * of the previous one, so the pipeline needs no synchronization of its own.
+     */
+    private final class Session implements Runnable {
+
+        final int mId;
+
+        final ScheduledThreadPoolExecutor mExecutor;
+
+        final PlaybackEventSource mSource;
+
+        final PlaybackPump mPump;
+
+        final LatencyHistogram mLatency = new LatencyHistogram();
+
+        /** When the events of the current step were due. */
+        long mDueNanos;
+
+        boolean mWarm;
+
+        Session(int id, ScheduledThreadPoolExecutor executor) throws IOException {
+            mId = id;
+            mExecutor = executor;
+            mSource = mFactory.openSource(id);
+            LocationEventBus bus = new LocationEventBus();
+            bus.subscribe(new LatencyProbe(), LocationEventBus.DispatchPolicy.synchronous());
+            bus.subscribe(mFactory.createController(id),
+                    LocationEventBus.DispatchPolicy.synchronous());
+            mPump = new PlaybackPump(mSource, new PlaybackDispatcher(bus), mClock,
+                    mDefaultInterval);
+        }
+
+        void start() throws IOException {
+            long now = System.nanoTime();
+            mPump.start(uptimeMillis(now));
+            mDueNanos = now;
+            mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            if (mStopped) {
+                finish();
+                return;
+            }
+            long delay;
+            try {
+                delay = mPump.step(uptimeMillis(now));
+            } catch (IOException | RuntimeException e) {
+                Timber.e(e, "session %d failed", mId);
+                mFailed.incrementAndGet();
+                finish();
+                return;
+            }
+            warmUp();
+            if (delay == PlaybackPump.END) {
+                mFinished.countDown();
+            } else if (delay == 0) {
+                // batch limit reached, the remaining events were due by now at the latest
+                mExecutor.execute(this);
+            } else {
+                mDueNanos = now + TimeUnit.MILLISECONDS.toNanos(delay);
+                mExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void warmUp() {
+            if (!mWarm) {
+                mWarm = true;
+                mWarmedUp.countDown();
+            }
+        }
+
+        private void finish() {
+            warmUp();
+            mFinished.countDown();
+        }
+
+        /**
+         * Runs on the session thread before the controller.
+         */
+        private final class LatencyProbe extends LocationProducer.ListenerSupport {
+
+            private void record() {
+                mLatency.record((System.nanoTime() - mDueNanos) / 1000);
+            }
+
+            @Override
+            public void onLocationChanged(LocationFix fix) {
+                record();
+            }
+
+            @Override
+            public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+                record();
+            }
+
+            @Override
+            public void onEnterIndoors(String venueId) {
+                record();
+            }
+
+            @Override
+            public void onExitIndoors(String venueId) {
+                record();
+            }
+
+            @Override
+            public void onEnterVenue(String venueId, String venueName) {
+                record();
+            }
+
+            @Override
+            public void onExitVenue(String venueId) {
+                record();
+            }
+        }
+    }
+}
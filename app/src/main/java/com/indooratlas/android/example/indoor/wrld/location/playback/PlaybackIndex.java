@@ -0,0 +1,395 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Random access index of a playback trace. Checkpoints are taken every few events and map the
+ * event ordinal and trace time to the position of the event in the trace, together with a
+ * snapshot of the venue, floor and indoor state at that point. Seeking is a binary search over
+ * the checkpoints followed by skipping at most {@link #getSpacing()} events.
+ * <p>
+ * Trace time of events without a timestamp is derived the same way as {@link PlaybackPump} does.
+ * The index can be stored as a sidecar file next to the trace, see {@link #forFile(File, long)}.
+ */
+public final class PlaybackIndex {
+
+    public static final int DEFAULT_SPACING = 256;
+
+    private static final int MAGIC = 0x49414958; // "IAIX"
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Position of an event and the playback state just before it.
+     */
+    public static final class Checkpoint {
+
+        /** Number of events before this one. */
+        public final long ordinal;
+
+        /** Trace time of the event. */
+        public final long timestamp;
+
+        /** Byte offset of a JSON event, record index of a binary one. */
+        final long offset;
+
+        /** Decoder state of binary traces. */
+        final long cursorTime;
+        final int cursorLatitude;
+        final int cursorLongitude;
+
+        @Nullable
+        public final String venueId;
+        @Nullable
+        public final String venueName;
+        @Nullable
+        public final String floorId;
+        @Nullable
+        public final String floorLevel;
+        public final boolean indoors;
+
+        Checkpoint(long ordinal, long timestamp, long offset, long cursorTime,
+                   int cursorLatitude, int cursorLongitude, @Nullable String venueId,
+                   @Nullable String venueName, @Nullable String floorId,
+                   @Nullable String floorLevel, boolean indoors) {
+            this.ordinal = ordinal;
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.cursorTime = cursorTime;
+            this.cursorLatitude = cursorLatitude;
+            this.cursorLongitude = cursorLongitude;
+            this.venueId = venueId;
+            this.venueName = venueName;
+            this.floorId = floorId;
+            this.floorLevel = floorLevel;
+            this.indoors = indoors;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint{ordinal=" + ordinal + ", timestamp=" + timestamp
+                    + ", offset=" + offset + ", venueId='" + venueId + "', floorId='" + floorId
+                    + "', indoors=" + indoors + '}';
+        }
+    }
+
+    private final List<Checkpoint> mCheckpoints;
+
+    private final long mEventCount;
+
+    private final long mDefaultInterval;
+
+    private final int mSpacing;
+
+    private final long mTraceLength;
+
+    private PlaybackIndex(List<Checkpoint> checkpoints, long eventCount, long defaultInterval,
+                          int spacing, long traceLength) {
+        mCheckpoints = Collections.unmodifiableList(checkpoints);
+        mEventCount = eventCount;
+        mDefaultInterval = defaultInterval;
+        mSpacing = spacing;
+        mTraceLength = traceLength;
+    }
+
+    /**
+     * Indexes a JSON trace. The trace is opened twice, once for finding the offsets of the events
+     * and once for decoding them.
+     */
+    public static PlaybackIndex buildJson(StreamOpener opener, long defaultInterval, int spacing)
+            throws IOException {
+        return buildJson(opener, defaultInterval, spacing, -1);
+    }
+
+    private static PlaybackIndex buildJson(StreamOpener opener, long defaultInterval,
+                                           int spacing, long traceLength) throws IOException {
+        Builder builder = new Builder(defaultInterval, spacing);
+        InputStream offsets = opener.open();
+        JsonReader reader = null;
+        try {
+            JsonTraceScanner scanner = new JsonTraceScanner(offsets);
+            reader = new JsonReader(new BufferedReader(new InputStreamReader(opener.open(),
+                    "UTF-8"), BUFFER_SIZE));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // the reader consumes exactly one top-level object per event, even unknown ones
+                long offset = scanner.nextObject();
+                PlaybackEvent event = JsonPlaybackEventSource.readEvent(reader);
+                if (event != null) {
+                    builder.add(event, offset, 0, 0, 0);
+                }
+            }
+        } catch (EOFException e) {
+            // trace cut short, index what is there
+        } finally {
+            offsets.close();
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return builder.build(traceLength);
+    }
+
+    /**
+     * Indexes a binary trace, leaves the source at its end.
+     */
+    public static PlaybackIndex buildBinary(BinaryPlaybackEventSource source,
+                                            long defaultInterval, int spacing)
+            throws IOException {
+        return buildBinary(source, defaultInterval, spacing, -1);
+    }
+
+    private static PlaybackIndex buildBinary(BinaryPlaybackEventSource source,
+                                             long defaultInterval, int spacing,
+                                             long traceLength) throws IOException {
+        Builder builder = new Builder(defaultInterval, spacing);
+        source.rewind();
+        while (true) {
+            long record = source.getRecordPosition();
+            long time = source.getCursorTime();
+            int latitude = source.getCursorLatitude();
+            int longitude = source.getCursorLongitude();
+            PlaybackEvent event = source.next();
+            if (event == null) {
+                break;
+            }
+            builder.add(event, record, time, latitude, longitude);
+        }
+        return builder.build(traceLength);
+    }
+
+    /**
+     * Indexes a compiled trace, checkpoint offsets are event ordinals.
+     */
+    static PlaybackIndex build(PlaybackTrace trace, long defaultInterval, int spacing) {
+        Builder builder = new Builder(defaultInterval, spacing);
+        for (int i = 0; i < trace.size(); i++) {
+            builder.add(trace.get(i), i, 0, 0, 0);
+        }
+        return builder.build(-1);
+    }
+
+    /**
+     * Returns the index of a JSON or binary trace file, loading it from the sidecar
+     * {@code <trace>.idx} or building and storing it if the sidecar is missing or out of date.
+     */
+    public static PlaybackIndex forFile(final File trace, long defaultInterval) throws IOException {
+        File sidecar = new File(trace.getPath() + ".idx");
+        if (sidecar.exists() && sidecar.lastModified() >= trace.lastModified()) {
+            try {
+                PlaybackIndex index = read(sidecar);
+                if (index.mDefaultInterval == defaultInterval
+                        && index.mTraceLength == trace.length()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // rebuild
+            }
+        }
+        PlaybackIndex index;
+        if (BinaryPlaybackEventSource.isBinaryTrace(trace)) {
+            BinaryPlaybackEventSource source = new BinaryPlaybackEventSource(trace);
+            try {
+                index = buildBinary(source, defaultInterval, DEFAULT_SPACING, trace.length());
+            } finally {
+                source.close();
+            }
+        } else {
+            index = buildJson(new StreamOpener() {
+                @Override
+                public InputStream open() throws IOException {
+                    return new FileInputStream(trace);
+                }
+            }, defaultInterval, DEFAULT_SPACING, trace.length());
+        }
+        index.write(sidecar);
+        return index;
+    }
+
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * Trace time of the first event, 0 for an empty trace.
+     */
+    public long getStartTime() {
+        return mCheckpoints.isEmpty() ? 0 : mCheckpoints.get(0).timestamp;
+    }
+
+    public int getSpacing() {
+        return mSpacing;
+    }
+
+    public long getDefaultInterval() {
+        return mDefaultInterval;
+    }
+
+    public List<Checkpoint> getCheckpoints() {
+        return mCheckpoints;
+    }
+
+    /**
+     * Returns the last checkpoint at or before the given trace time, or {@code null} if the trace
+     * is empty.
+     */
+    @Nullable
+    public Checkpoint findByTime(long timestamp) {
+        int low = 0;
+        int high = mCheckpoints.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mCheckpoints.get(mid).timestamp <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return mCheckpoints.isEmpty() ? null : mCheckpoints.get(Math.max(0, high));
+    }
+
+    /**
+     * Returns the last checkpoint at or before the given event ordinal, or {@code null} if the
+     * trace is empty.
+     */
+    @Nullable
+    public Checkpoint findByOrdinal(long ordinal) {
+        if (mCheckpoints.isEmpty()) {
+            return null;
+        }
+        int index = (int) Math.min(mCheckpoints.size() - 1, Math.max(0, ordinal / mSpacing));
+        return mCheckpoints.get(index);
+    }
+
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mTraceLength);
+            out.writeLong(mEventCount);
+            out.writeLong(mDefaultInterval);
+            out.writeInt(mSpacing);
+            out.writeInt(mCheckpoints.size());
+            for (Checkpoint checkpoint : mCheckpoints) {
+                out.writeLong(checkpoint.ordinal);
+                out.writeLong(checkpoint.timestamp);
+                out.writeLong(checkpoint.offset);
+                out.writeLong(checkpoint.cursorTime);
+                out.writeInt(checkpoint.cursorLatitude);
+                out.writeInt(checkpoint.cursorLongitude);
+                writeString(out, checkpoint.venueId);
+                writeString(out, checkpoint.venueName);
+                writeString(out, checkpoint.floorId);
+                writeString(out, checkpoint.floorLevel);
+                out.writeBoolean(checkpoint.indoors);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static PlaybackIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a playback index: " + file);
+            }
+            long traceLength = in.readLong();
+            long eventCount = in.readLong();
+            long defaultInterval = in.readLong();
+            int spacing = in.readInt();
+            int count = in.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                checkpoints.add(new Checkpoint(in.readLong(), in.readLong(), in.readLong(),
+                        in.readLong(), in.readInt(), in.readInt(), readString(in),
+                        readString(in), readString(in), readString(in), in.readBoolean()));
+            }
+            return new PlaybackIndex(checkpoints, eventCount, defaultInterval, spacing,
+                    traceLength);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Tracks state over the events of a trace and takes checkpoints.
+     */
+    private static final class Builder {
+
+        private final long mDefaultInterval;
+
+        private final int mSpacing;
+
+        private final PlaybackDispatcher mState =
+                new PlaybackDispatcher(new LocationProducer.ListenerSupport());
+
+        private final List<Checkpoint> mCheckpoints = new ArrayList<>();
+
+        private long mOrdinal;
+
+        private long mTime;
+
+        Builder(long defaultInterval, int spacing) {
+            mDefaultInterval = defaultInterval;
+            mSpacing = spacing;
+            mTime = -defaultInterval;
+        }
+
+        void add(PlaybackEvent event, long offset, long cursorTime, int cursorLatitude,
+                 int cursorLongitude) {
+            mTime = event.timestamp != PlaybackEvent.NO_TIMESTAMP
+                    ? event.timestamp : mTime + mDefaultInterval;
+            if (mOrdinal % mSpacing == 0) {
+                mCheckpoints.add(new Checkpoint(mOrdinal, mTime, offset, cursorTime,
+                        cursorLatitude, cursorLongitude, mState.getVenueId(),
+                        mState.getVenueName(), mState.getFloorId(), mState.getFloorLevel(),
+                        mState.isIndoors()));
+            }
+            mState.apply(event);
+            mOrdinal++;
+        }
+
+        PlaybackIndex build(long traceLength) {
+            return new PlaybackIndex(mCheckpoints, mOrdinal, mDefaultInterval, mSpacing,
+                    traceLength);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Feeds events from a source to a dispatcher at the pace of a {@link PlaybackClock}. Scheduling
+ * is left to the caller: {@link #step(long)} dispatches all due events and tells when to call it
+ * next, which keeps this independent of Android and lets tests drive it with a fake time. Events
+ * without a timestamp are spaced by a default interval.
+ * <p>
+ * Not thread safe, all calls must come from the playback thread.
+ */
+public class PlaybackPump {
+
+    /** Returned by {@link #step(long)} when there are no more events. */
+    public static final long END = -1;
+
+    /** Maximum events dispatched per step so that other work on the thread is not starved. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final PlaybackEventSource mSource;
+
+    private final PlaybackDispatcher mDispatcher;
+
+    private final PlaybackClock mClock;
+
+    private final long mDefaultInterval;
+
+    private boolean mLooping;
+
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    @Nullable
+    private PlaybackEvent mNext;
+
+    /** Trace time of the next event. */
+    private long mNextTime;
+
+    private long mAnchorTraceTime;
+
+    private long mAnchorUptime;
+
+    private long mDispatchedCount;
+
+    public PlaybackPump(PlaybackEventSource source, PlaybackDispatcher dispatcher,
+                        PlaybackClock clock, long defaultIntervalMillis) {
+        mSource = source;
+        mDispatcher = dispatcher;
+        mClock = clock;
+        mDefaultInterval = defaultIntervalMillis;
+    }
+
+    public PlaybackPump setLooping(boolean looping) {
+        mLooping = looping;
+        return this;
+    }
+
+    public PlaybackPump setBatchSize(int batchSize) {
+        mBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Starts over from the beginning of the trace, the first event is due immediately.
+     */
+    public void start(long uptimeMillis) throws IOException {
+        mSource.rewind();
+        mDispatcher.reset();
+        mNext = null;
+        mNextTime = -mDefaultInterval;
+        if (read(uptimeMillis, false)) {
+            anchor(uptimeMillis);
+        }
+    }
+
+    /**
+     * Jumps to the first event at or after the given trace time. Listeners are told to leave the
+     * current venue and indoor state and to enter the state at the new position. The source must
+     * be the one indexed and seekable.
+     *
+     * @return {@code false} if the trace ends before the given time.
+     */
+    public boolean seekTo(PlaybackIndex index, long traceTime, long uptimeMillis)
+            throws IOException {
+        return seek(index, index.findByTime(traceTime), traceTime, 0, uptimeMillis);
+    }
+
+    /**
+     * Jumps to the event with the given ordinal, otherwise like
+     * {@link #seekTo(PlaybackIndex, long, long)}.
+     */
+    public boolean seekToOrdinal(PlaybackIndex index, long ordinal, long uptimeMillis)
+            throws IOException {
+        return seek(index, index.findByOrdinal(ordinal), Long.MIN_VALUE, ordinal, uptimeMillis);
+    }
+
+    private boolean seek(PlaybackIndex index, @Nullable PlaybackIndex.Checkpoint checkpoint,
+                         long traceTime, long ordinal, long uptimeMillis) throws IOException {
+        if (!(mSource instanceof SeekablePlaybackEventSource)) {
+            throw new UnsupportedOperationException("source is not seekable: " + mSource);
+        }
+        if (index.getDefaultInterval() != mDefaultInterval) {
+            throw new IllegalArgumentException("index built with another default interval");
+        }
+        mDispatcher.leave();
+        mNext = null;
+        if (checkpoint == null) {
+            return false;
+        }
+        ((SeekablePlaybackEventSource) mSource).seek(checkpoint);
+        mDispatcher.restore(checkpoint);
+        mNextTime = checkpoint.timestamp - mDefaultInterval;
+        long current = checkpoint.ordinal;
+        read(uptimeMillis, false);
+        // at most index spacing events to skip
+        while (mNext != null && (mNextTime < traceTime || current < ordinal)) {
+            mDispatcher.apply(mNext);
+            current++;
+            read(uptimeMillis, false);
+        }
+        mDispatcher.announce();
+        if (mNext == null) {
+            return false;
+        }
+        anchor(uptimeMillis);
+        return true;
+    }
+
+    /**
+     * Dispatches events that are due at the given time.
+     *
+     * @return milliseconds until the next call, 0 if more events are due right away or
+     * {@link #END} if the trace has ended.
+     */
+    public long step(long uptimeMillis) throws IOException {
+        int dispatched = 0;
+        while (mNext != null) {
+            long delay = mAnchorUptime + mClock.scale(mNextTime - mAnchorTraceTime)
+                    - uptimeMillis;
+            if (delay > 0) {
+                return delay;
+            }
+            if (dispatched == mBatchSize) {
+                return 0;
+            }
+            mDispatcher.dispatch(mNext);
+            mDispatchedCount++;
+            dispatched++;
+            read(uptimeMillis, mLooping);
+        }
+        return END;
+    }
+
+    /**
+     * Total number of events dispatched, including previous loops and restarts.
+     */
+    public long getDispatchedCount() {
+        return mDispatchedCount;
+    }
+
+    private boolean read(long uptimeMillis, boolean loop) throws IOException {
+        PlaybackEvent event = mSource.next();
+        boolean restarted = false;
+        if (event == null && loop) {
+            mSource.rewind();
+            event = mSource.next();
+            restarted = true;
+        }
+        mNext = event;
+        if (event == null) {
+            return false;
+        }
+        if (event.timestamp != PlaybackEvent.NO_TIMESTAMP) {
+            mNextTime = event.timestamp;
+        } else {
+            mNextTime = restarted ? 0 : mNextTime + mDefaultInterval;
+        }
+        if (restarted) {
+            // trace time jumps back, continue one default interval after the last event
+            mAnchorTraceTime = mNextTime - mDefaultInterval;
+            mAnchorUptime = uptimeMillis;
+        }
+        return true;
+    }
+
+    private void anchor(long uptimeMillis) {
+        mAnchorTraceTime = mNextTime;
+        mAnchorUptime = uptimeMillis;
+    }
+}
@@ -0,0 +1,122 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trace compiled into an array of events, so that playing it back is an array read per event
+ * with no parsing. Strings are interned per trace, which keeps repeated venue and floor ids from
+ * taking memory once per event. Immutable, one trace can back any number of concurrent
+ * {@link #newSource() sources}.
+ * <p>
+ * Meant for traces that comfortably fit in memory, e.g. bundled resources; long traces are better
+ * streamed or memory mapped.
+ */
+public final class PlaybackTrace {
+
+    private final PlaybackEvent[] mEvents;
+
+    private PlaybackTrace(PlaybackEvent[] events) {
+        mEvents = events;
+    }
+
+    /**
+     * Reads all events of a source, which is rewound first and left at its end.
+     */
+    public static PlaybackTrace compile(PlaybackEventSource source) throws IOException {
+        source.rewind();
+        Map<String, String> strings = new HashMap<>();
+        List<PlaybackEvent> events = new ArrayList<>();
+        PlaybackEvent event;
+        while ((event = source.next()) != null) {
+            switch (event.type) {
+                case PlaybackEvent.TYPE_VENUE_ENTRY:
+                    event = PlaybackEvent.venueEntry(event.timestamp,
+                            intern(strings, event.id), intern(strings, event.name));
+                    break;
+                case PlaybackEvent.TYPE_FLOOR_ENTRY:
+                    event = PlaybackEvent.floorEntry(event.timestamp,
+                            intern(strings, event.id), intern(strings, event.floorLevel));
+                    break;
+            }
+            events.add(event);
+        }
+        return new PlaybackTrace(events.toArray(new PlaybackEvent[events.size()]));
+    }
+
+    @Nullable
+    private static String intern(Map<String, String> strings, @Nullable String string) {
+        if (string == null) {
+            return null;
+        }
+        String interned = strings.get(string);
+        if (interned == null) {
+            strings.put(string, string);
+            interned = string;
+        }
+        return interned;
+    }
+
+    public int size() {
+        return mEvents.length;
+    }
+
+    public PlaybackEvent get(int index) {
+        return mEvents[index];
+    }
+
+    /**
+     * Returns a new source positioned at the first event.
+     */
+    public SeekablePlaybackEventSource newSource() {
+        return new Cursor(mEvents);
+    }
+
+    /**
+     * Indexes the trace for seeking its sources, which can also be done with any other index of
+     * the same trace since only checkpoint ordinals are used.
+     */
+    public PlaybackIndex buildIndex(long defaultInterval, int spacing) {
+        return PlaybackIndex.build(this, defaultInterval, spacing);
+    }
+
+    private static final class Cursor implements SeekablePlaybackEventSource {
+
+        private final PlaybackEvent[] mEvents;
+
+        private int mNext;
+
+        Cursor(PlaybackEvent[] events) {
+            mEvents = events;
+        }
+
+        @Nullable
+        @Override
+        public PlaybackEvent next() {
+            return mNext < mEvents.length ? mEvents[mNext++] : null;
+        }
+
+        @Override
+        public void rewind() {
+            mNext = 0;
+        }
+
+        @Override
+        public void seek(PlaybackIndex.Checkpoint checkpoint) {
+            if (checkpoint.ordinal > mEvents.length) {
+                throw new IllegalArgumentException("checkpoint past the end: " + checkpoint);
+            }
+            mNext = (int) checkpoint.ordinal;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the events belong to the trace
+        }
+    }
+}
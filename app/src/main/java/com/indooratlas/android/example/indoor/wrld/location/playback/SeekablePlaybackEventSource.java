@@ -0,0 +1,14 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.io.IOException;
+
+/**
+ * Event source that can continue from a {@link PlaybackIndex.Checkpoint} of its trace.
+ */
+public interface SeekablePlaybackEventSource extends PlaybackEventSource {
+
+    /**
+     * Positions the source so that the next event returned is the one at the checkpoint.
+     */
+    void seek(PlaybackIndex.Checkpoint checkpoint) throws IOException;
+}
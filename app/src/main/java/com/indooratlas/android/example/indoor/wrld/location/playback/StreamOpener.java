@@ -0,0 +1,12 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens a new stream to the same data each time, e.g. a raw resource or a file.
+ */
+public interface StreamOpener {
+
+    InputStream open() throws IOException;
+}
@@ -0,0 +1,406 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.google.gson.Gson;
+import com.indooratlas.android.example.indoor.wrld.model.IaId;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata.FloorMetadata;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Generates synthetic playback traces from a venue catalog for load and scale testing. The
+ * simulated user walks outdoors from venue to venue, enters each one, wanders around inside its
+ * footprint, changes floors one zOrder step at a time and finally leaves through the entrance
+ * floor. Events are streamed to a {@link PlaybackEventWriter}, so memory use does not depend on
+ * the trace length. Output is deterministic for a given seed and configuration.
+ */
+public class SyntheticTraceGenerator {
+
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    public static final long DEFAULT_START_TIME = 1500000000000L;
+
+    // good enough for walks of a few kilometers
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    private final VenueMetadata[] mVenues;
+
+    private final FloorMetadata[][] mFloors;
+
+    private final String[][] mFloorLevels;
+
+    private final int[] mEntranceFloors;
+
+    private final Random mRandom;
+
+    private long mStartTime = DEFAULT_START_TIME;
+
+    private long mInterval = DEFAULT_INTERVAL;
+
+    private double mIntervalJitter = 0.1;
+
+    private double mWalkingSpeed = 1.4;
+
+    private double mFootprintRadius = 40;
+
+    private double mIndoorNoise = 2;
+
+    private double mOutdoorNoise = 8;
+
+    private double mFloorChangeProbability = 0.01;
+
+    private int mMinVisitEvents = 60;
+
+    private int mMaxVisitEvents = 600;
+
+    private int mMaxOutdoorEvents = 300;
+
+    // walk state
+    private double mLatitude;
+
+    private double mLongitude;
+
+    private double mHeading;
+
+    private long mTime;
+
+    private long mWritten;
+
+    private long mLimit;
+
+    public SyntheticTraceGenerator(VenueMetadata[] venues, long seed) {
+        if (venues.length == 0) {
+            throw new IllegalArgumentException("no venues");
+        }
+        mVenues = venues;
+        mRandom = new Random(seed);
+        mFloors = new FloorMetadata[venues.length][];
+        mFloorLevels = new String[venues.length][];
+        mEntranceFloors = new int[venues.length];
+        for (int i = 0; i < venues.length; i++) {
+            FloorMetadata[] floors = venues[i].floors.clone();
+            Arrays.sort(floors, new Comparator<FloorMetadata>() {
+                @Override
+                public int compare(FloorMetadata a, FloorMetadata b) {
+                    return a.zOrder < b.zOrder ? -1 : (a.zOrder == b.zOrder ? 0 : 1);
+                }
+            });
+            String[] levels = new String[floors.length];
+            int entrance = 0;
+            for (int j = 0; j < floors.length; j++) {
+                levels[j] = String.valueOf(floors[j].zOrder);
+                if (Math.abs(floors[j].zOrder) < Math.abs(floors[entrance].zOrder)) {
+                    entrance = j;
+                }
+            }
+            mFloors[i] = floors;
+            mFloorLevels[i] = levels;
+            mEntranceFloors[i] = entrance;
+        }
+    }
+
+    public SyntheticTraceGenerator setStartTime(long startTime) {
+        mStartTime = startTime;
+        return this;
+    }
+
+    /**
+     * Sets the mean time between location events, i.e. the event rate.
+     */
+    public SyntheticTraceGenerator setInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        mInterval = interval;
+        return this;
+    }
+
+    /**
+     * Sets the random variation of the event interval as a fraction of it, between 0 and 1.
+     */
+    public SyntheticTraceGenerator setIntervalJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        mIntervalJitter = jitter;
+        return this;
+    }
+
+    public SyntheticTraceGenerator setWalkingSpeed(double metersPerSecond) {
+        mWalkingSpeed = metersPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the radius in meters of the area around venue coordinates the indoor walk stays in.
+     */
+    public SyntheticTraceGenerator setFootprintRadius(double meters) {
+        mFootprintRadius = meters;
+        return this;
+    }
+
+    /**
+     * Sets the standard deviation in meters of the error added to indoor and outdoor fixes.
+     */
+    public SyntheticTraceGenerator setNoise(double indoorMeters, double outdoorMeters) {
+        mIndoorNoise = indoorMeters;
+        mOutdoorNoise = outdoorMeters;
+        return this;
+    }
+
+    /**
+     * Sets the probability of moving to an adjacent floor between two indoor fixes.
+     */
+    public SyntheticTraceGenerator setFloorChangeProbability(double probability) {
+        mFloorChangeProbability = probability;
+        return this;
+    }
+
+    /**
+     * Sets the range of the number of location events spent inside a venue per visit.
+     */
+    public SyntheticTraceGenerator setVisitLength(int minEvents, int maxEvents) {
+        if (minEvents < 1 || maxEvents < minEvents) {
+            throw new IllegalArgumentException("invalid visit length " + minEvents + ".."
+                    + maxEvents);
+        }
+        mMinVisitEvents = minEvents;
+        mMaxVisitEvents = maxEvents;
+        return this;
+    }
+
+    /**
+     * Limits the walk between two venues. Longer distances are covered by jumping ahead, as if
+     * the user took a ride.
+     */
+    public SyntheticTraceGenerator setMaxOutdoorEvents(int maxEvents) {
+        mMaxOutdoorEvents = maxEvents;
+        return this;
+    }
+
+    /**
+     * Writes {@code eventCount} events, counting both location and context events, to
+     * {@code out}. The trace may end in the middle of a venue visit. The writer is not closed.
+     */
+    public void generate(PlaybackEventWriter out, long eventCount) throws IOException {
+        mWritten = 0;
+        mLimit = eventCount;
+        mTime = mStartTime;
+        mHeading = mRandom.nextDouble() * 2 * Math.PI;
+        int venue = mRandom.nextInt(mVenues.length);
+        // start a few hundred meters away from the first venue
+        mLatitude = mVenues[venue].coordinates[0];
+        mLongitude = mVenues[venue].coordinates[1];
+        move(mHeading, 10 * mFootprintRadius);
+        while (mWritten < mLimit) {
+            walkTo(out, venue);
+            visit(out, venue);
+            venue = mRandom.nextInt(mVenues.length);
+        }
+    }
+
+    private void walkTo(PlaybackEventWriter out, int venue) throws IOException {
+        double[] coordinates = mVenues[venue].coordinates;
+        double north = (coordinates[0] - mLatitude) * METERS_PER_DEGREE;
+        double east = (coordinates[1] - mLongitude) * METERS_PER_DEGREE * cos(mLatitude);
+        double distance = Math.sqrt(north * north + east * east) - mFootprintRadius;
+        if (distance <= 0) {
+            return;
+        }
+        mHeading = Math.atan2(east, north);
+        double step = mWalkingSpeed * mInterval / 1000.0;
+        long steps = (long) Math.ceil(distance / step);
+        if (steps > mMaxOutdoorEvents) {
+            move(mHeading, (steps - mMaxOutdoorEvents) * step);
+            steps = mMaxOutdoorEvents;
+        }
+        for (long i = 0; i < steps && mWritten < mLimit; i++) {
+            move(mHeading, step);
+            location(out, mOutdoorNoise);
+        }
+    }
+
+    private void visit(PlaybackEventWriter out, int venue) throws IOException {
+        VenueMetadata metadata = mVenues[venue];
+        FloorMetadata[] floors = mFloors[venue];
+        String[] levels = mFloorLevels[venue];
+        int entrance = mEntranceFloors[venue];
+        if (!emit(out, PlaybackEvent.venueEntry(mTime, metadata.iaId.toString(), metadata.name))
+                || !emit(out, PlaybackEvent.indoorsEntry(mTime))
+                || !emit(out, PlaybackEvent.floorEntry(mTime, floors[entrance].iaId.toString(),
+                levels[entrance]))) {
+            return;
+        }
+        double centerLatitude = metadata.coordinates[0];
+        double centerLongitude = metadata.coordinates[1];
+        double step = mWalkingSpeed * mInterval / 1000.0;
+        int floor = entrance;
+        int events = mMinVisitEvents + mRandom.nextInt(mMaxVisitEvents - mMinVisitEvents + 1);
+        for (int i = 0; i < events; i++) {
+            if (floors.length > 1 && mRandom.nextDouble() < mFloorChangeProbability) {
+                if (floor == 0) {
+                    floor++;
+                } else if (floor == floors.length - 1 || mRandom.nextBoolean()) {
+                    floor--;
+                } else {
+                    floor++;
+                }
+                if (!emit(out, PlaybackEvent.floorEntry(mTime, floors[floor].iaId.toString(),
+                        levels[floor]))) {
+                    return;
+                }
+            }
+            mHeading += mRandom.nextGaussian() * 0.5;
+            double north = (centerLatitude - mLatitude) * METERS_PER_DEGREE;
+            double east = (centerLongitude - mLongitude) * METERS_PER_DEGREE * cos(mLatitude);
+            if (north * north + east * east > mFootprintRadius * mFootprintRadius) {
+                // turn back towards the middle of the venue
+                mHeading = Math.atan2(east, north) + mRandom.nextGaussian() * 0.3;
+            }
+            move(mHeading, step);
+            if (!location(out, mIndoorNoise)) {
+                return;
+            }
+        }
+        // leave through the entrance floor
+        while (floor != entrance) {
+            floor += floor < entrance ? 1 : -1;
+            if (!emit(out, PlaybackEvent.floorEntry(mTime, floors[floor].iaId.toString(), levels[floor]))
+                    || !location(out, mIndoorNoise)) {
+                return;
+            }
+        }
+        if (emit(out, PlaybackEvent.indoorsExit(mTime))) {
+            emit(out, PlaybackEvent.venueExit(mTime));
+        }
+    }
+
+    private boolean location(PlaybackEventWriter out, double noise) throws IOException {
+        long interval = mInterval;
+        if (mIntervalJitter > 0) {
+            interval += Math.round((mRandom.nextDouble() * 2 - 1) * mIntervalJitter * mInterval);
+        }
+        mTime += Math.max(1, interval);
+        double north = mRandom.nextGaussian() * noise;
+        double east = mRandom.nextGaussian() * noise;
+        return emit(out, PlaybackEvent.location(mTime,
+                mLatitude + north / METERS_PER_DEGREE,
+                mLongitude + east / (METERS_PER_DEGREE * cos(mLatitude))));
+    }
+
+    private boolean emit(PlaybackEventWriter out, PlaybackEvent event) throws IOException {
+        if (mWritten >= mLimit) {
+            return false;
+        }
+        out.write(event);
+        mWritten++;
+        return true;
+    }
+
+    private void move(double heading, double meters) {
+        double latitude = mLatitude;
+        mLatitude += Math.cos(heading) * meters / METERS_PER_DEGREE;
+        mLongitude += Math.sin(heading) * meters / (METERS_PER_DEGREE * cos(latitude));
+    }
+
+    private static double cos(double latitude) {
+        return Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * Reads a venue catalog in the format of {@code res/raw/venues.json}.
+     */
+    public static VenueMetadata[] readVenues(Reader in) {
+        return new Gson().fromJson(in, VenueMetadata[].class);
+    }
+
+    /**
+     * Generates {@code count} venues with one to six floors, some of them below ground, scattered
+     * uniformly within {@code radius} meters of the given coordinates.
+     */
+    public static VenueMetadata[] generateVenues(int count, long seed, double latitude,
+                                                 double longitude, double radius) {
+        Random random = new Random(seed);
+        VenueMetadata[] venues = new VenueMetadata[count];
+        for (int i = 0; i < count; i++) {
+            VenueMetadata venue = new VenueMetadata();
+            venue.name = "Synthetic venue " + i;
+            venue.iaId = randomId(random);
+            venue.wrldId = "synthetic-" + i;
+            double distance = radius * Math.sqrt(random.nextDouble());
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            venue.coordinates = new double[]{
+                    latitude + Math.cos(bearing) * distance / METERS_PER_DEGREE,
+                    longitude + Math.sin(bearing) * distance / (METERS_PER_DEGREE * cos(latitude))
+            };
+            int floorCount = 1 + random.nextInt(6);
+            int basements = Math.min(random.nextInt(3), floorCount - 1);
+            venue.floors = new FloorMetadata[floorCount];
+            for (int j = 0; j < floorCount; j++) {
+                FloorMetadata floor = new FloorMetadata();
+                floor.zOrder = j - basements;
+                floor.name = floor.zOrder < 0 ? "Basement " + -floor.zOrder
+                        : "Floor " + floor.zOrder;
+                floor.iaId = randomId(random);
+                floor.index = j;
+                venue.floors[j] = floor;
+            }
+            venues[i] = venue;
+        }
+        return venues;
+    }
+
+    private static IaId randomId(Random random) {
+        return new IaId(random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * Command line entry point. The output format is chosen by file extension: {@code .json}
+     * traces can be played back from resources, anything else is written in the binary format.
+     * Note that the binary string table limits a single trace to some ten thousand venues.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: SyntheticTraceGenerator out.json|out.trace events"
+                    + " [venues.json|venueCount] [seed]");
+            System.exit(1);
+        }
+        File outFile = new File(args[0]);
+        long events = Long.parseLong(args[1]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        VenueMetadata[] venues;
+        if (args.length > 2 && args[2].endsWith(".json")) {
+            Reader in = new InputStreamReader(new FileInputStream(args[2]), "UTF-8");
+            try {
+                venues = readVenues(in);
+            } finally {
+                in.close();
+            }
+        } else {
+            int count = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            // around central Helsinki, where the bundled venues are
+            venues = generateVenues(count, seed, 60.1699, 24.9384, 5000);
+        }
+        PlaybackEventWriter out = args[0].endsWith(".json")
+                ? new JsonTraceWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8"), 1 << 16))
+                : new BinaryTraceWriter(outFile);
+        try {
+            new SyntheticTraceGenerator(venues, seed).generate(out, events);
+        } finally {
+            out.close();
+        }
+        System.out.println(outFile + ": " + events + " events from " + venues.length
+                + " venues, " + outFile.length() + " bytes");
+    }
+}
@@ -0,0 +1,293 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import android.support.annotation.Nullable;
+
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import timber.log.Timber;
+
+/**
+ * Records events to a JSON trace readable by {@link JsonPlaybackEventSource}. The recording
+ * methods only copy the event into a preallocated slot of a bounded ring buffer, a background
+ * thread drains the ring and writes to disk with periodic flushes. If the ring is full the event
+ * is dropped and counted, the caller is never blocked. Events are encoded to memory and only
+ * complete events are written to the file, so that a recording that is never closed is still
+ * readable up to the last flush.
+ * <p>
+ * Recording methods must be called from a single thread at a time, which is the case for
+ * {@link com.indooratlas.android.example.indoor.wrld.location.LocationProducer} callbacks.
+ */
+public class TraceRecorder {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** How often the writer checks for new events when the ring is not filling up. */
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Encoded events are written out at latest when this many characters are pending. */
+    private static final int BATCH_SIZE = 16 * 1024;
+
+    private static final int KIND_LOCATION = 0;
+    private static final int KIND_VENUE_ENTRY = 1;
+    private static final int KIND_VENUE_EXIT = 2;
+    private static final int KIND_FLOOR_ENTRY = 3;
+    private static final int KIND_INDOORS_ENTRY = 4;
+    private static final int KIND_INDOORS_EXIT = 5;
+
+    private static final class Slot {
+        int kind;
+        long time;
+        double latitude;
+        double longitude;
+        String id;
+        String name;
+        String floorLevel;
+    }
+
+    private final File mFile;
+
+    private final Clock mClock;
+
+    private final long mStartWallTime;
+
+    private final long mStartElapsed;
+
+    private final Slot[] mSlots;
+
+    private final int mMask;
+
+    /** Next slot to be written to disk, advanced by the writer thread. */
+    private final AtomicLong mHead = new AtomicLong();
+
+    /** Next slot to be filled, advanced by the recording thread. */
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private volatile long mWrittenCount;
+
+    private volatile boolean mClosed;
+
+    private volatile boolean mFailed;
+
+    private Thread mWriterThread;
+
+    public TraceRecorder(File file, int capacity, Clock clock) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        mFile = file;
+        mClock = clock;
+        mStartWallTime = System.currentTimeMillis();
+        mStartElapsed = clock.elapsedRealtime();
+        mSlots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSlots[i] = new Slot();
+        }
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Starts the writer thread, which creates the trace file.
+     */
+    public synchronized void start() {
+        if (mWriterThread != null) {
+            return;
+        }
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "TraceRecorder");
+        mWriterThread.start();
+    }
+
+    /**
+     * Writes out the events recorded so far, completes the trace and waits for the writer to
+     * finish. Events recorded after this are dropped.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        if (mWriterThread == null) {
+            return;
+        }
+        LockSupport.unpark(mWriterThread);
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void recordLocation(double latitude, double longitude) {
+        Slot slot = claim();
+        if (slot != null) {
+            slot.latitude = latitude;
+            slot.longitude = longitude;
+            publish(slot, KIND_LOCATION, null, null, null);
+        }
+    }
+
+    public void recordVenueEntry(String venueId, @Nullable String venueName) {
+        Slot slot = claim();
+        if (slot != null) {
+            publish(slot, KIND_VENUE_ENTRY, venueId, venueName, null);
+        }
+    }
+
+    public void recordVenueExit() {
+        Slot slot = claim();
+        if (slot != null) {
+            publish(slot, KIND_VENUE_EXIT, null, null, null);
+        }
+    }
+
+    public void recordFloorEntry(String floorId, @Nullable String floorLevel) {
+        Slot slot = claim();
+        if (slot != null) {
+            publish(slot, KIND_FLOOR_ENTRY, floorId, null, floorLevel);
+        }
+    }
+
+    public void recordIndoorsEntry() {
+        Slot slot = claim();
+        if (slot != null) {
+            publish(slot, KIND_INDOORS_ENTRY, null, null, null);
+        }
+    }
+
+    public void recordIndoorsExit() {
+        Slot slot = claim();
+        if (slot != null) {
+            publish(slot, KIND_INDOORS_EXIT, null, null, null);
+        }
+    }
+
+    /**
+     * Number of events dropped because the ring was full or the trace could not be written.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return mWrittenCount;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    @Nullable
+    private Slot claim() {
+        final long tail = mTail.get();
+        if (mClosed || mFailed || tail - mHead.get() > mMask) {
+            mDroppedCount.incrementAndGet();
+            return null;
+        }
+        return mSlots[(int) tail & mMask];
+    }
+
+    private void publish(Slot slot, int kind, @Nullable String id, @Nullable String name,
+                         @Nullable String floorLevel) {
+        slot.kind = kind;
+        slot.time = mStartWallTime + mClock.elapsedRealtime() - mStartElapsed;
+        slot.id = id;
+        slot.name = name;
+        slot.floorLevel = floorLevel;
+        final long tail = mTail.get() + 1;
+        mTail.lazySet(tail);
+        if (tail - mHead.get() == (mMask + 1) / 2) {
+            // filling up faster than polled, wake up the writer
+            LockSupport.unpark(mWriterThread);
+        }
+    }
+
+    private void writeLoop() {
+        Writer file = null;
+        try {
+            file = new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8");
+            CharArrayWriter batch = new CharArrayWriter(BATCH_SIZE);
+            JsonTraceWriter writer = new JsonTraceWriter(batch);
+            long lastFlush = System.nanoTime();
+            while (true) {
+                // read closed before draining so that nothing recorded before close is lost
+                final boolean closed = mClosed;
+                final long tail = mTail.get();
+                long head = mHead.get();
+                while (head < tail) {
+                    Slot slot = mSlots[(int) head & mMask];
+                    writer.write(toEvent(slot));
+                    // release string references early
+                    slot.id = slot.name = slot.floorLevel = null;
+                    head++;
+                    mHead.lazySet(head);
+                    if (batch.size() >= BATCH_SIZE) {
+                        flush(batch, file);
+                    }
+                }
+                mWrittenCount = head;
+                if (closed) {
+                    break;
+                }
+                if (batch.size() > 0 && System.nanoTime() - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                    flush(batch, file);
+                    lastFlush = System.nanoTime();
+                }
+                LockSupport.parkNanos(this, POLL_INTERVAL_NANOS);
+            }
+            writer.close();
+            flush(batch, file);
+        } catch (IOException e) {
+            Timber.e(e, "recording trace to %s failed", mFile);
+            mFailed = true;
+            mDroppedCount.addAndGet(mTail.get() - mHead.get());
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void flush(CharArrayWriter batch, Writer file) throws IOException {
+        batch.writeTo(file);
+        batch.reset();
+        file.flush();
+    }
+
+    private static PlaybackEvent toEvent(Slot slot) {
+        switch (slot.kind) {
+            case KIND_LOCATION:
+                return PlaybackEvent.location(slot.time, slot.latitude, slot.longitude);
+            case KIND_VENUE_ENTRY:
+                return PlaybackEvent.venueEntry(slot.time, slot.id, slot.name);
+            case KIND_VENUE_EXIT:
+                return PlaybackEvent.venueExit(slot.time);
+            case KIND_FLOOR_ENTRY:
+                return PlaybackEvent.floorEntry(slot.time, slot.id, slot.floorLevel);
+            case KIND_INDOORS_ENTRY:
+                return PlaybackEvent.indoorsEntry(slot.time);
+            case KIND_INDOORS_EXIT:
+                return PlaybackEvent.indoorsExit(slot.time);
+            default:
+                throw new IllegalStateException("unknown kind " + slot.kind);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+/**
+ * Layout of the binary venue catalog compiled from {@code venues.json} at build time. All values
+ * are big-endian.
+ * <pre>
+ * header       36 bytes  magic, version, reserved, venue count, floor count, venue id count,
+ *                        floor id count, WRLD id count, string count, string index offset
+ * venues       48 bytes each, starting right after the header
+ * floors       32 bytes each, the floors of each venue stored together in venue order
+ * venue ids    20 bytes each, sorted
+ * floor ids    20 bytes each, sorted
+ * WRLD ids      8 bytes each, sorted
+ * string index  4 bytes each, the offset of each string from the start of the catalog
+ * strings      UTF-8 strings, each prefixed with an unsigned 16-bit length
+ * </pre>
+ * A venue is {@code name:s32, wrldId:s32, floorCount:s32, firstFloor:s32, iaId:s64:s64,
+ * latitude:f64, longitude:f64}, {@code firstFloor} being the position of its first floor record;
+ * a floor is {@code name:s32, zOrder:s32, index:s32, reserved:s32, iaId:s64:s64}. Ids are stored
+ * as the two halves of their {@link IaId}, the nil UUID standing for a missing id. Strings are
+ * positions in the string index, each distinct string is stored once; {@link #NO_STRING} is
+ * {@code null}. Venues without coordinates have NaN coordinates.
+ * <p>
+ * The id tables let lookups binary search the catalog instead of building maps. An IndoorAtlas
+ * id entry is {@code iaId:s64:s64, venue:s32}, sorted by the signed halves of the id; a WRLD id
+ * entry is {@code wrldId:s32, venue:s32}, sorted by {@link String#compareTo(String)}. Entries of
+ * equal ids are in venue order, so the first one is the venue a linear search would find.
+ * Missing ids have no entry.
+ */
+final class BinaryVenueFormat {
+
+    static final int MAGIC = 0x49415643; // "IAVC"
+
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 36;
+
+    static final int VENUE_SIZE = 48;
+
+    static final int FLOOR_SIZE = 32;
+
+    static final int ID_ENTRY_SIZE = 20;
+
+    static final int WRLD_ID_ENTRY_SIZE = 8;
+
+    static final int OFFSET_VENUE_COUNT = 8;
+
+    static final int OFFSET_FLOOR_COUNT = 12;
+
+    static final int OFFSET_VENUE_ID_COUNT = 16;
+
+    static final int OFFSET_FLOOR_ID_COUNT = 20;
+
+    static final int OFFSET_WRLD_ID_COUNT = 24;
+
+    static final int OFFSET_STRING_COUNT = 28;
+
+    static final int OFFSET_STRING_INDEX = 32;
+
+    static final int NO_STRING = -1;
+
+    static final int MAX_STRING_BYTES = 0xffff;
+
+    private BinaryVenueFormat() {
+    }
+}
@@ -0,0 +1,54 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a catalog compiled by {@link VenueCatalogCompiler}. A mapped catalog is not parsed up
+ * front: lookups binary search the sorted id tables of the file and only the venues found are
+ * decoded, see {@link MappedVenues}. Each distinct string is decoded once and shared by all
+ * venues and floors using it.
+ */
+public final class BinaryVenueReader {
+
+    private BinaryVenueReader() {
+    }
+
+    /**
+     * Maps a catalog stored at the given range of a file, e.g. an uncompressed asset opened via
+     * {@code AssetFileDescriptor}. The stream is closed, the mapping stays valid.
+     *
+     * @param version version of the catalog, which update deltas are based on.
+     */
+    public static VenueCatalog map(FileInputStream stream, long offset, long length, int version)
+            throws IOException {
+        try {
+            return open(stream.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length),
+                    version);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns a catalog that resolves lookups against the buffer, which must not be modified
+     * afterwards. Only the layout is checked here, venues are decoded as they are looked up.
+     */
+    public static VenueCatalog open(ByteBuffer buffer, int version) throws IOException {
+        return new VenueCatalog(MappedVenues.open(buffer), version);
+    }
+
+    /**
+     * Decodes all venues of a catalog.
+     */
+    public static VenueMetadata[] read(ByteBuffer buffer) throws IOException {
+        MappedVenues venues = MappedVenues.open(buffer);
+        VenueMetadata[] decoded = new VenueMetadata[venues.size()];
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = venues.get(i);
+        }
+        return decoded;
+    }
+}
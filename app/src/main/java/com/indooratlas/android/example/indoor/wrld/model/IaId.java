@@ -0,0 +1,199 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import android.support.annotation.Nullable;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * IndoorAtlas venue or floor plan id, a UUID stored as two longs instead of a 36 character
+ * string. Equality and hashing are a couple of primitive operations. Written to and read from
+ * JSON in the usual string form, which is also what {@link #toString()} returns; the string is
+ * built on first use and kept, so ids handed out as strings, e.g. to location listeners, are the
+ * same instance every time.
+ */
+@JsonAdapter(IaId.GsonAdapter.class)
+public final class IaId {
+
+    private static final int LENGTH = 36;
+
+    private final long mMostSignificantBits;
+
+    private final long mLeastSignificantBits;
+
+    private String mString;
+
+    public IaId(long mostSignificantBits, long leastSignificantBits) {
+        mMostSignificantBits = mostSignificantBits;
+        mLeastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * Parses an id in the form {@code 773c63d2-06d5-46d2-8d1e-46fc9b2cc31a}, in either case.
+     *
+     * @throws IllegalArgumentException if the id is not in that form.
+     */
+    public static IaId parse(String id) {
+        IaId parsed = tryParse(id);
+        if (parsed == null) {
+            throw new IllegalArgumentException("not an IndoorAtlas id: " + id);
+        }
+        return parsed;
+    }
+
+    /**
+     * Like {@link #parse(String)} but returns {@code null} for {@code null} or malformed ids.
+     */
+    @Nullable
+    public static IaId tryParse(@Nullable String id) {
+        if (id == null || id.length() != LENGTH || id.charAt(8) != '-' || id.charAt(13) != '-'
+                || id.charAt(18) != '-' || id.charAt(23) != '-') {
+            return null;
+        }
+        long most = hex(id, 0, 8);
+        long mid = hex(id, 9, 13);
+        long high = hex(id, 14, 18);
+        long low = hex(id, 19, 23);
+        long node = hex(id, 24, 36);
+        if ((most | mid | high | low | node) < 0) {
+            return null;
+        }
+        return new IaId(most << 32 | mid << 16 | high, low << 48 | node);
+    }
+
+    /**
+     * Returns the value of the hex digits in the range, or -1 if one is not a hex digit.
+     */
+    private static long hex(String string, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(string.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    public long getMostSignificantBits() {
+        return mMostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return mLeastSignificantBits;
+    }
+
+    /**
+     * Compares to an id given as its bits, without creating an instance.
+     */
+    public boolean equals(long mostSignificantBits, long leastSignificantBits) {
+        return mMostSignificantBits == mostSignificantBits
+                && mLeastSignificantBits == leastSignificantBits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IaId)) {
+            return false;
+        }
+        IaId other = (IaId) o;
+        return equals(other.mMostSignificantBits, other.mLeastSignificantBits);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = mMostSignificantBits ^ mLeastSignificantBits;
+        return (int) (bits >> 32) ^ (int) bits;
+    }
+
+    @Override
+    public String toString() {
+        // racy but benign, every thread builds an equal string
+        String string = mString;
+        if (string == null) {
+            char[] chars = new char[LENGTH];
+            digits(chars, 0, mMostSignificantBits >>> 32, 8);
+            chars[8] = '-';
+            digits(chars, 9, mMostSignificantBits >>> 16, 4);
+            chars[13] = '-';
+            digits(chars, 14, mMostSignificantBits, 4);
+            chars[18] = '-';
+            digits(chars, 19, mLeastSignificantBits >>> 48, 4);
+            chars[23] = '-';
+            digits(chars, 24, mLeastSignificantBits, 12);
+            string = new String(chars);
+            mString = string;
+        }
+        return string;
+    }
+
+    private static void digits(char[] chars, int offset, long value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            chars[i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * Parses ids received as strings, e.g. in location listener callbacks, remembering the last
+     * one so that an id passed around repeatedly is parsed once. Producers hand out the same
+     * string instance for an id, which makes the check a reference comparison. Not thread safe.
+     */
+    public static final class LastParsed {
+
+        private String mString;
+
+        private IaId mId;
+
+        /**
+         * Like {@link IaId#tryParse(String)}.
+         */
+        @Nullable
+        public IaId parse(@Nullable String id) {
+            if (id != mString && (id == null || !id.equals(mString))) {
+                mId = tryParse(id);
+                mString = id;
+            }
+            return mId;
+        }
+    }
+
+    /**
+     * Reads and writes ids as strings, failing on malformed ones.
+     */
+    static final class GsonAdapter extends TypeAdapter<IaId> {
+
+        @Override
+        public void write(JsonWriter out, IaId id) throws IOException {
+            if (id == null) {
+                out.nullValue();
+            } else {
+                out.value(id.toString());
+            }
+        }
+
+        @Override
+        public IaId read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String string = in.nextString();
+            IaId id = tryParse(string);
+            if (id == null) {
+                throw new JsonParseException("not an IndoorAtlas id: " + string);
+            }
+            return id;
+        }
+    }
+}
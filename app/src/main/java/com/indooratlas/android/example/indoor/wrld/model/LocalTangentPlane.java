@@ -0,0 +1,147 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+/**
+ * Flat east-north frame in meters anchored at a point, usually a venue center, for geometry at
+ * venue scale without the trigonometry of the spherical formulas in
+ * {@link com.google.maps.android.SphericalUtil}. Uses the same spherical earth model, so results
+ * can be mixed with those.
+ * <p>
+ * {@link #toLocal} and {@link #toGeodetic} are an equirectangular projection around the anchor,
+ * exact inverses of each other; east distances are scaled for the anchor latitude, so the
+ * projection stretches away from it by about {@code tan(latitude)} per meter north or south
+ * (0.17 mm per meter at 60 degrees). {@link #distance}, {@link #heading} and {@link #offset}
+ * correct for that and for the convergence of meridians using series around the anchor latitude.
+ * With both points within 1 km of the anchor, up to 70 degrees latitude, they stay within 0.1 mm
+ * and 0.00001 degrees of the spherical results; the error grows quickly beyond that.
+ * <p>
+ * Immutable and thread safe. Not usable near the poles or across the antimeridian farther than
+ * the range above.
+ */
+public final class LocalTangentPlane {
+
+    /** Same mean radius as {@code SphericalUtil}. */
+    public static final double EARTH_RADIUS = 6371009;
+
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private final double mLatitude;
+
+    private final double mLongitude;
+
+    private final double mCos;
+
+    private final double mSin;
+
+    /** Meters per degree of longitude at the anchor. */
+    private final double mEastScale;
+
+    public LocalTangentPlane(double latitude, double longitude) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mCos = Math.cos(Math.toRadians(latitude));
+        mSin = Math.sin(Math.toRadians(latitude));
+        mEastScale = METERS_PER_DEGREE * mCos;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Writes east and north in meters of a point to {@code out[offset]} and
+     * {@code out[offset + 1]}.
+     */
+    public void toLocal(double latitude, double longitude, double[] out, int offset) {
+        out[offset] = longitudeDelta(longitude, mLongitude) * mEastScale;
+        out[offset + 1] = (latitude - mLatitude) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Inverse of {@link #toLocal}, writes latitude and longitude to {@code out[offset]} and
+     * {@code out[offset + 1]}.
+     */
+    public void toGeodetic(double east, double north, double[] out, int offset) {
+        out[offset] = mLatitude + north / METERS_PER_DEGREE;
+        out[offset + 1] = mLongitude + east / mEastScale;
+    }
+
+    /**
+     * Returns the distance in meters between two points, like
+     * {@code SphericalUtil.computeDistanceBetween}.
+     */
+    public double distance(double fromLatitude, double fromLongitude, double toLatitude,
+                           double toLongitude) {
+        double delta = Math.toRadians((fromLatitude + toLatitude) / 2 - mLatitude);
+        double east = longitudeDelta(toLongitude, fromLongitude) * METERS_PER_DEGREE
+                * cos(delta);
+        double north = (toLatitude - fromLatitude) * METERS_PER_DEGREE;
+        return Math.sqrt(east * east + north * north);
+    }
+
+    /**
+     * Returns the initial heading from one point to another in degrees clockwise from north
+     * within [-180, 180), like {@code SphericalUtil.computeHeading}.
+     */
+    public double heading(double fromLatitude, double fromLongitude, double toLatitude,
+                          double toLongitude) {
+        double delta = Math.toRadians((fromLatitude + toLatitude) / 2 - mLatitude);
+        double longitudeDelta = longitudeDelta(toLongitude, fromLongitude);
+        double east = longitudeDelta * METERS_PER_DEGREE * cos(delta);
+        double north = (toLatitude - fromLatitude) * METERS_PER_DEGREE;
+        // atan2 gives the mean heading, meridians converge by dLambda sin(phi) along the way
+        double heading = Math.toDegrees(Math.atan2(east, north))
+                - longitudeDelta * sin(delta) / 2;
+        return heading >= 180 ? heading - 360 : (heading < -180 ? heading + 360 : heading);
+    }
+
+    /**
+     * Moves a distance in meters from a point with the given initial heading in degrees clockwise
+     * from north, like {@code SphericalUtil.computeOffset}. Writes latitude and longitude to
+     * {@code out[offset]} and {@code out[offset + 1]}.
+     */
+    public void offset(double fromLatitude, double fromLongitude, double distance,
+                       double heading, double[] out, int offset) {
+        double radians = Math.toRadians(heading);
+        double east = distance * Math.sin(radians);
+        double north = distance * Math.cos(radians);
+        // turn the initial heading into the mean heading, the convergence depends on the
+        // longitude change which is estimated with the initial heading first
+        double delta = Math.toRadians(fromLatitude + north / METERS_PER_DEGREE / 2 - mLatitude);
+        double convergence = Math.toRadians(east / (METERS_PER_DEGREE * cos(delta)))
+                * sin(delta) / 2;
+        double rotatedEast = east + north * convergence;
+        north -= east * convergence;
+        east = rotatedEast;
+        delta = Math.toRadians(fromLatitude + north / METERS_PER_DEGREE / 2 - mLatitude);
+        out[offset] = fromLatitude + north / METERS_PER_DEGREE;
+        out[offset + 1] = fromLongitude + east / (METERS_PER_DEGREE * cos(delta));
+    }
+
+    /**
+     * Cosine of the latitude {@code delta} radians from the anchor, by series.
+     */
+    private double cos(double delta) {
+        return mCos - delta * (mSin + delta * mCos / 2);
+    }
+
+    /**
+     * Sine of the latitude {@code delta} radians from the anchor, by series.
+     */
+    private double sin(double delta) {
+        return mSin + delta * (mCos - delta * mSin / 2);
+    }
+
+    private static double longitudeDelta(double to, double from) {
+        double delta = to - from;
+        return delta >= 180 ? delta - 360 : (delta < -180 ? delta + 360 : delta);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalTangentPlane{" + mLatitude + ", " + mLongitude + '}';
+    }
+}
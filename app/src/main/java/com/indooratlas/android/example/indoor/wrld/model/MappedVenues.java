@@ -0,0 +1,321 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.FLOOR_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.HEADER_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.ID_ENTRY_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.MAGIC;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.NO_STRING;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_FLOOR_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_FLOOR_ID_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_STRING_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_STRING_INDEX;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_VENUE_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_VENUE_ID_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.OFFSET_WRLD_ID_COUNT;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.VENUE_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.VERSION;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.WRLD_ID_ENTRY_SIZE;
+
+/**
+ * Venues of a {@link BinaryVenueFormat} catalog resolved straight from its buffer, typically a
+ * memory mapped file. Opening checks the layout in one pass over the records without creating
+ * objects, lookups binary search the id tables and decode only the venue found. Each venue and
+ * string is decoded on first use and shared afterwards. Thread safe.
+ */
+final class MappedVenues {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+
+    private final int mVenueCount;
+
+    private final int mVenueIds;
+
+    private final int mVenueIdCount;
+
+    private final int mFloorIds;
+
+    private final int mFloorIdCount;
+
+    private final int mWrldIds;
+
+    private final int mWrldIdCount;
+
+    private final int mStringIndex;
+
+    private final AtomicReferenceArray<VenueMetadata> mVenues;
+
+    private final AtomicReferenceArray<String> mStrings;
+
+    private MappedVenues(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a venue catalog");
+        }
+        int version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported venue catalog version " + version);
+        }
+        mBuffer = buffer;
+        mVenueCount = buffer.getInt(OFFSET_VENUE_COUNT);
+        int floorCount = buffer.getInt(OFFSET_FLOOR_COUNT);
+        mVenueIdCount = buffer.getInt(OFFSET_VENUE_ID_COUNT);
+        mFloorIdCount = buffer.getInt(OFFSET_FLOOR_ID_COUNT);
+        mWrldIdCount = buffer.getInt(OFFSET_WRLD_ID_COUNT);
+        int stringCount = buffer.getInt(OFFSET_STRING_COUNT);
+        mStringIndex = buffer.getInt(OFFSET_STRING_INDEX);
+        long venueIds = HEADER_SIZE + (long) mVenueCount * VENUE_SIZE
+                + (long) floorCount * FLOOR_SIZE;
+        long floorIds = venueIds + (long) mVenueIdCount * ID_ENTRY_SIZE;
+        long wrldIds = floorIds + (long) mFloorIdCount * ID_ENTRY_SIZE;
+        if ((mVenueCount | floorCount | mVenueIdCount | mFloorIdCount | mWrldIdCount
+                | stringCount) < 0
+                || mStringIndex != wrldIds + (long) mWrldIdCount * WRLD_ID_ENTRY_SIZE) {
+            throw new IOException("corrupt venue catalog");
+        }
+        if (mStringIndex + 4L * stringCount > buffer.limit()) {
+            throw new IOException("truncated venue catalog");
+        }
+        mVenueIds = (int) venueIds;
+        mFloorIds = (int) floorIds;
+        mWrldIds = (int) wrldIds;
+        mVenues = new AtomicReferenceArray<>(mVenueCount);
+        mStrings = new AtomicReferenceArray<>(stringCount);
+        check(floorCount, stringCount);
+    }
+
+    /**
+     * Checks the layout of a catalog so that later reads cannot fail.
+     *
+     * @throws IOException if it is not a catalog in the current format, or corrupt.
+     */
+    static MappedVenues open(ByteBuffer buffer) throws IOException {
+        return new MappedVenues(buffer);
+    }
+
+    /**
+     * Checks that the floors of the venues add up, that string and venue references are in
+     * range and that the strings are within the buffer.
+     */
+    private void check(int floorCount, int stringCount) throws IOException {
+        int floor = 0;
+        for (int i = 0; i < mVenueCount; i++) {
+            int offset = HEADER_SIZE + i * VENUE_SIZE;
+            int floors = mBuffer.getInt(offset + 8);
+            if (floors < 0 || floors > floorCount - floor
+                    || mBuffer.getInt(offset + 12) != floor) {
+                throw new IOException("corrupt venue catalog");
+            }
+            checkString(mBuffer.getInt(offset), stringCount);
+            checkString(mBuffer.getInt(offset + 4), stringCount);
+            floor += floors;
+        }
+        if (floor != floorCount) {
+            throw new IOException("corrupt venue catalog");
+        }
+        int floors = HEADER_SIZE + mVenueCount * VENUE_SIZE;
+        for (int i = 0; i < floorCount; i++) {
+            checkString(mBuffer.getInt(floors + i * FLOOR_SIZE), stringCount);
+        }
+        for (int i = 0; i < mVenueIdCount + mFloorIdCount; i++) {
+            checkVenue(mBuffer.getInt(mVenueIds + i * ID_ENTRY_SIZE + 16));
+        }
+        for (int i = 0; i < mWrldIdCount; i++) {
+            int offset = mWrldIds + i * WRLD_ID_ENTRY_SIZE;
+            int id = mBuffer.getInt(offset);
+            if (id < 0 || id >= stringCount) {
+                throw new IOException("corrupt venue catalog");
+            }
+            checkVenue(mBuffer.getInt(offset + 4));
+        }
+        int strings = mStringIndex + 4 * stringCount;
+        for (int i = 0; i < stringCount; i++) {
+            int offset = mBuffer.getInt(mStringIndex + 4 * i);
+            if (offset < strings || offset > mBuffer.limit() - 2) {
+                throw new IOException("truncated venue catalog");
+            }
+            if (offset + 2 + (mBuffer.getShort(offset) & 0xffff) > mBuffer.limit()) {
+                throw new IOException("truncated venue catalog");
+            }
+        }
+    }
+
+    private static void checkString(int index, int count) throws IOException {
+        if (index != NO_STRING && (index < 0 || index >= count)) {
+            throw new IOException("corrupt venue catalog");
+        }
+    }
+
+    private void checkVenue(int index) throws IOException {
+        if (index < 0 || index >= mVenueCount) {
+            throw new IOException("corrupt venue catalog");
+        }
+    }
+
+    int size() {
+        return mVenueCount;
+    }
+
+    /**
+     * Returns the venue at the given position, decoding it on first use.
+     */
+    VenueMetadata get(int index) {
+        VenueMetadata venue = mVenues.get(index);
+        if (venue == null) {
+            venue = decode(index);
+            if (!mVenues.compareAndSet(index, null, venue)) {
+                venue = mVenues.get(index);
+            }
+        }
+        return venue;
+    }
+
+    /**
+     * Returns the venues as a list that decodes them as they are accessed.
+     */
+    List<VenueMetadata> asList() {
+        return new VenueList();
+    }
+
+    @Nullable
+    VenueMetadata findByIaId(IaId id) {
+        return find(mVenueIds, mVenueIdCount, id);
+    }
+
+    @Nullable
+    VenueMetadata findByFloorIaId(IaId floorId) {
+        return find(mFloorIds, mFloorIdCount, floorId);
+    }
+
+    @Nullable
+    VenueMetadata findByWrldId(String wrldId) {
+        int low = 0;
+        int high = mWrldIdCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            String id = string(mBuffer.getInt(mWrldIds + middle * WRLD_ID_ENTRY_SIZE));
+            if (id.compareTo(wrldId) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < mWrldIdCount) {
+            int offset = mWrldIds + low * WRLD_ID_ENTRY_SIZE;
+            if (string(mBuffer.getInt(offset)).equals(wrldId)) {
+                return get(mBuffer.getInt(offset + 4));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first entry of an id in a sorted id table.
+     */
+    @Nullable
+    private VenueMetadata find(int table, int count, IaId id) {
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int offset = table + middle * ID_ENTRY_SIZE;
+            long entryMost = mBuffer.getLong(offset);
+            if (entryMost < most
+                    || entryMost == most && mBuffer.getLong(offset + 8) < least) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < count) {
+            int offset = table + low * ID_ENTRY_SIZE;
+            if (id.equals(mBuffer.getLong(offset), mBuffer.getLong(offset + 8))) {
+                return get(mBuffer.getInt(offset + 16));
+            }
+        }
+        return null;
+    }
+
+    private VenueMetadata decode(int index) {
+        int offset = HEADER_SIZE + index * VENUE_SIZE;
+        VenueMetadata venue = new VenueMetadata();
+        venue.name = string(mBuffer.getInt(offset));
+        venue.wrldId = string(mBuffer.getInt(offset + 4));
+        int floors = mBuffer.getInt(offset + 8);
+        int floorOffset = HEADER_SIZE + mVenueCount * VENUE_SIZE
+                + mBuffer.getInt(offset + 12) * FLOOR_SIZE;
+        venue.iaId = id(offset + 16);
+        double latitude = mBuffer.getDouble(offset + 32);
+        double longitude = mBuffer.getDouble(offset + 40);
+        if (!Double.isNaN(latitude)) {
+            venue.coordinates = new double[]{latitude, longitude};
+        }
+        venue.floors = new VenueMetadata.FloorMetadata[floors];
+        for (int j = 0; j < floors; j++) {
+            VenueMetadata.FloorMetadata floor = new VenueMetadata.FloorMetadata();
+            floor.name = string(mBuffer.getInt(floorOffset));
+            floor.zOrder = mBuffer.getInt(floorOffset + 4);
+            floor.index = mBuffer.getInt(floorOffset + 8);
+            floor.iaId = id(floorOffset + 16);
+            venue.floors[j] = floor;
+            floorOffset += FLOOR_SIZE;
+        }
+        venue.buildIndex();
+        return venue;
+    }
+
+    @Nullable
+    private IaId id(int offset) {
+        long most = mBuffer.getLong(offset);
+        long least = mBuffer.getLong(offset + 8);
+        return most == 0 && least == 0 ? null : new IaId(most, least);
+    }
+
+    @Nullable
+    private String string(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        String string = mStrings.get(index);
+        if (string == null) {
+            int offset = mBuffer.getInt(mStringIndex + 4 * index);
+            byte[] bytes = new byte[mBuffer.getShort(offset) & 0xffff];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = mBuffer.get(offset + 2 + i);
+            }
+            string = new String(bytes, UTF_8);
+            if (!mStrings.compareAndSet(index, null, string)) {
+                string = mStrings.get(index);
+            }
+        }
+        return string;
+    }
+
+    private final class VenueList extends AbstractList<VenueMetadata> implements RandomAccess {
+
+        @Override
+        public VenueMetadata get(int index) {
+            if (index < 0 || index >= mVenueCount) {
+                throw new IndexOutOfBoundsException("venue " + index + " of " + mVenueCount);
+            }
+            return MappedVenues.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mVenueCount;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Venue metadata indexed for constant time lookups by IndoorAtlas venue id, WRLD id and
+ * IndoorAtlas floor id, and by location with a {@link VenueSpatialIndex}. Also builds the per
+ * venue floor maps used by {@link VenueMetadata#findFloorByIaId(IaId)} and friends. Immutable
+ * after construction and therefore safe to share between threads; updates derive a new catalog
+ * with {@link #withChanges(int, Collection, Collection)}.
+ * <p>
+ * A catalog opened with {@link BinaryVenueReader} builds no maps, its lookups binary search the
+ * id tables of the mapped file and decode venues as they are found. The spatial index of such a
+ * catalog is built on first use.
+ */
+public class VenueCatalog {
+
+    private final int mVersion;
+
+    private final List<VenueMetadata> mVenues;
+
+    /** Resolves lookups of a mapped catalog, which has no maps, {@code null} otherwise. */
+    @Nullable
+    private final MappedVenues mMapped;
+
+    private final Map<IaId, VenueMetadata> mVenuesByIaId;
+
+    private final Map<String, VenueMetadata> mVenuesByWrldId;
+
+    private final Map<IaId, VenueMetadata> mVenuesByFloorIaId;
+
+    /** Built lazily for a mapped catalog, guarded by this while building. */
+    private volatile VenueSpatialIndex mSpatialIndex;
+
+    /**
+     * Indexes given venues, which should not be modified afterwards. Where ids are shared, the
+     * first venue or floor wins like in a linear search.
+     */
+    public VenueCatalog(VenueMetadata[] venues) {
+        this(venues, 0);
+    }
+
+    public VenueCatalog(VenueMetadata[] venues, int version) {
+        mVersion = version;
+        mMapped = null;
+        mVenues = Collections.unmodifiableList(Arrays.asList(venues.clone()));
+        int capacity = capacityFor(venues.length);
+        mVenuesByIaId = new HashMap<>(capacity);
+        mVenuesByWrldId = new HashMap<>(capacity);
+        mVenuesByFloorIaId = new HashMap<>(capacity * 4);
+        for (int i = venues.length - 1; i >= 0; i--) {
+            VenueMetadata venue = venues[i];
+            venue.buildIndex();
+            mVenuesByIaId.put(venue.iaId, venue);
+            if (venue.wrldId != null) {
+                mVenuesByWrldId.put(venue.wrldId, venue);
+            }
+            for (VenueMetadata.FloorMetadata floor : venue.floors) {
+                mVenuesByFloorIaId.put(floor.iaId, venue);
+            }
+        }
+        mSpatialIndex = VenueSpatialIndex.of(mVenues);
+    }
+
+    VenueCatalog(MappedVenues venues, int version) {
+        mVersion = version;
+        mMapped = venues;
+        mVenues = Collections.unmodifiableList(venues.asList());
+        mVenuesByIaId = null;
+        mVenuesByWrldId = null;
+        mVenuesByFloorIaId = null;
+    }
+
+    private VenueCatalog(int version, List<VenueMetadata> venues,
+                         Map<IaId, VenueMetadata> byIaId, Map<String, VenueMetadata> byWrldId,
+                         Map<IaId, VenueMetadata> byFloorIaId, VenueSpatialIndex spatialIndex) {
+        mVersion = version;
+        mMapped = null;
+        mVenues = Collections.unmodifiableList(venues);
+        mVenuesByIaId = byIaId;
+        mVenuesByWrldId = byWrldId;
+        mVenuesByFloorIaId = byFloorIaId;
+        mSpatialIndex = spatialIndex;
+    }
+
+    /**
+     * Returns a new catalog with venues added, replaced by IndoorAtlas id, or removed. Only the
+     * changed venues are indexed, the rest of the indexes are copied from this catalog, which is
+     * left unchanged. Replaced venues keep their position, new ones are appended.
+     *
+     * @param put       venues to add or replace, which should not be modified afterwards.
+     * @param removeIds IndoorAtlas ids of venues to remove, unknown ids are ignored.
+     */
+    VenueCatalog withChanges(int version, Collection<VenueMetadata> put,
+                             Collection<IaId> removeIds) {
+        if (mMapped != null) {
+            // updates are rare, the changed catalog is indexed in memory like one read from JSON
+            return new VenueCatalog(mVenues.toArray(new VenueMetadata[mVenues.size()]), mVersion)
+                    .withChanges(version, put, removeIds);
+        }
+        Map<IaId, VenueMetadata> byIaId = new HashMap<>(mVenuesByIaId);
+        Map<String, VenueMetadata> byWrldId = new HashMap<>(mVenuesByWrldId);
+        Map<IaId, VenueMetadata> byFloorIaId = new HashMap<>(mVenuesByFloorIaId);
+        VenueSpatialIndex spatialIndex = getSpatialIndex().copy();
+        Set<IaId> changedIds = new HashSet<>(removeIds);
+        for (IaId id : removeIds) {
+            VenueMetadata old = byIaId.remove(id);
+            if (old != null) {
+                unindex(old, byWrldId, byFloorIaId, spatialIndex);
+            }
+        }
+        for (VenueMetadata venue : put) {
+            venue.buildIndex();
+            changedIds.add(venue.iaId);
+            VenueMetadata old = byIaId.put(venue.iaId, venue);
+            if (old != null) {
+                unindex(old, byWrldId, byFloorIaId, spatialIndex);
+            }
+            if (venue.wrldId != null) {
+                byWrldId.put(venue.wrldId, venue);
+            }
+            for (VenueMetadata.FloorMetadata floor : venue.floors) {
+                if (!byFloorIaId.containsKey(floor.iaId)) {
+                    byFloorIaId.put(floor.iaId, venue);
+                }
+            }
+            spatialIndex.add(venue);
+        }
+
+        List<VenueMetadata> venues = new ArrayList<>(mVenues.size() + put.size());
+        Set<IaId> placedIds = new HashSet<>();
+        for (VenueMetadata venue : mVenues) {
+            if (!changedIds.contains(venue.iaId)) {
+                venues.add(venue);
+            } else if (placedIds.add(venue.iaId) && byIaId.containsKey(venue.iaId)) {
+                venues.add(byIaId.get(venue.iaId));
+            }
+        }
+        for (VenueMetadata venue : put) {
+            if (placedIds.add(venue.iaId)) {
+                venues.add(byIaId.get(venue.iaId));
+            }
+        }
+        return new VenueCatalog(version, venues, byIaId, byWrldId, byFloorIaId, spatialIndex);
+    }
+
+    private static void unindex(VenueMetadata venue, Map<String, VenueMetadata> byWrldId,
+                                Map<IaId, VenueMetadata> byFloorIaId,
+                                VenueSpatialIndex spatialIndex) {
+        if (venue.wrldId != null && byWrldId.get(venue.wrldId) == venue) {
+            byWrldId.remove(venue.wrldId);
+        }
+        for (VenueMetadata.FloorMetadata floor : venue.floors) {
+            if (byFloorIaId.get(floor.iaId) == venue) {
+                byFloorIaId.remove(floor.iaId);
+            }
+        }
+        spatialIndex.remove(venue);
+    }
+
+    private static int capacityFor(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    public List<VenueMetadata> getVenues() {
+        return mVenues;
+    }
+
+    /**
+     * Returns the version of the catalog, which update deltas are based on.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int size() {
+        return mVenues.size();
+    }
+
+    /**
+     * Returns the index for finding venues by location, e.g. near a GPS fix or in the camera
+     * bounds.
+     */
+    public VenueSpatialIndex getSpatialIndex() {
+        VenueSpatialIndex index = mSpatialIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = mSpatialIndex;
+                if (index == null) {
+                    index = VenueSpatialIndex.of(mVenues);
+                    mSpatialIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Finds a venue by IndoorAtlas id.
+     */
+    @Nullable
+    public VenueMetadata findByIaId(IaId id) {
+        return mMapped != null ? mMapped.findByIaId(id) : mVenuesByIaId.get(id);
+    }
+
+    @Nullable
+    public VenueMetadata findByWrldId(String wrldId) {
+        return mMapped != null ? mMapped.findByWrldId(wrldId) : mVenuesByWrldId.get(wrldId);
+    }
+
+    /**
+     * Finds the venue a floor belongs to by IndoorAtlas floor id.
+     */
+    @Nullable
+    public VenueMetadata findByFloorIaId(IaId floorId) {
+        return mMapped != null ? mMapped.findByFloorIaId(floorId)
+                : mVenuesByFloorIaId.get(floorId);
+    }
+
+    /**
+     * Finds a floor by IndoorAtlas floor id without knowing the venue.
+     */
+    @Nullable
+    public VenueMetadata.FloorMetadata findFloorByIaId(IaId floorId) {
+        VenueMetadata venue = findByFloorIaId(floorId);
+        return venue != null ? venue.findFloorByIaId(floorId) : null;
+    }
+
+    /**
+     * Returns the catalog's instance of a venue or floor plan id, or the given id if it is not
+     * in the catalog. Ids parsed from IndoorAtlas regions are interned with this so that the id
+     * strings passed on are built once and compare by reference.
+     */
+    public IaId internId(IaId id) {
+        VenueMetadata venue = findByIaId(id);
+        if (venue != null) {
+            return venue.iaId;
+        }
+        VenueMetadata.FloorMetadata floor = findFloorByIaId(id);
+        return floor != null ? floor.iaId : id;
+    }
+}
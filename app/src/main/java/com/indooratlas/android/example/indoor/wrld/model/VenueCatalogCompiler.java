@@ -0,0 +1,342 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.FLOOR_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.HEADER_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.ID_ENTRY_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.MAGIC;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.MAX_STRING_BYTES;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.NO_STRING;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.VENUE_SIZE;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.VERSION;
+import static com.indooratlas.android.example.indoor.wrld.model.BinaryVenueFormat.WRLD_ID_ENTRY_SIZE;
+
+/**
+ * Validates {@code venues.json} and compiles it to the {@link BinaryVenueFormat}. Run by the
+ * {@code compileVenueCatalog} Gradle task, which fails the build if the catalog has errors:
+ * {@code VenueCatalogCompiler venues.json venues.bin}
+ * <p>
+ * Only depends on {@link VenueMetadata}, {@link IaId} and Gson so that it runs on a desktop JVM.
+ */
+public final class VenueCatalogCompiler {
+
+    private VenueCatalogCompiler() {
+    }
+
+    /**
+     * Checks that ids are present and unique and that floors are consistent. Several floors of a
+     * venue may share an IndoorAtlas floor plan, which is only reported as a warning.
+     *
+     * @param errors   receives problems that make the catalog unusable.
+     * @param warnings receives problems worth a look.
+     */
+    public static void validate(VenueMetadata[] venues, List<String> errors,
+                                List<String> warnings) {
+        Set<IaId> venueIds = new HashSet<>();
+        Set<String> wrldIds = new HashSet<>();
+        Map<IaId, IaId> floorVenues = new HashMap<>();
+        for (int i = 0; i < venues.length; i++) {
+            VenueMetadata venue = venues[i];
+            String where = "venue " + i + " (" + venue.name + ")";
+            if (venue.iaId == null) {
+                errors.add(where + ": missing iaId");
+            } else if (!venueIds.add(venue.iaId)) {
+                errors.add(where + ": duplicate iaId " + venue.iaId);
+            }
+            if (venue.wrldId != null && !wrldIds.add(venue.wrldId)) {
+                errors.add(where + ": duplicate wrldId " + venue.wrldId);
+            }
+            if (venue.coordinates == null || venue.coordinates.length != 2
+                    || !(Math.abs(venue.coordinates[0]) <= 90)
+                    || !(Math.abs(venue.coordinates[1]) <= 180)) {
+                errors.add(where + ": coordinates must be [latitude, longitude]");
+            }
+            if (venue.floors == null || venue.floors.length == 0) {
+                errors.add(where + ": no floors");
+                continue;
+            }
+            validateFloors(where, venue, floorVenues, errors, warnings);
+        }
+    }
+
+    private static void validateFloors(String where, VenueMetadata venue,
+                                       Map<IaId, IaId> floorVenues, List<String> errors,
+                                       List<String> warnings) {
+        Set<Integer> zOrders = new HashSet<>();
+        Set<Integer> indices = new HashSet<>();
+        for (VenueMetadata.FloorMetadata floor : venue.floors) {
+            String floorWhere = where + ", floor " + floor.name;
+            if (floor.iaId == null) {
+                errors.add(floorWhere + ": missing iaId");
+            } else {
+                IaId owner = floorVenues.get(floor.iaId);
+                if (owner == null) {
+                    floorVenues.put(floor.iaId, venue.iaId);
+                } else if (owner.equals(venue.iaId)) {
+                    warnings.add(floorWhere + ": shares floor plan " + floor.iaId
+                            + " with another floor");
+                } else {
+                    errors.add(floorWhere + ": iaId " + floor.iaId
+                            + " also used by venue " + owner);
+                }
+            }
+            if (!zOrders.add(floor.zOrder)) {
+                errors.add(floorWhere + ": duplicate zOrder " + floor.zOrder);
+            }
+            if (!indices.add(floor.index)) {
+                errors.add(floorWhere + ": duplicate index " + floor.index);
+            }
+        }
+        // zOrder and the WRLD floor index must order the floors the same way
+        VenueMetadata.FloorMetadata[] sorted = venue.floors.clone();
+        Arrays.sort(sorted, new Comparator<VenueMetadata.FloorMetadata>() {
+            @Override
+            public int compare(VenueMetadata.FloorMetadata a, VenueMetadata.FloorMetadata b) {
+                return a.zOrder < b.zOrder ? -1 : (a.zOrder == b.zOrder ? 0 : 1);
+            }
+        });
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].zOrder != sorted[i - 1].zOrder
+                    && sorted[i].index <= sorted[i - 1].index) {
+                errors.add(where + ": floors " + sorted[i - 1].name + " and " + sorted[i].name
+                        + " have zOrder and index in different order");
+            }
+        }
+    }
+
+    /**
+     * Writes a validated catalog.
+     */
+    public static void compile(VenueMetadata[] venues, File output) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            write(venues, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    static void write(VenueMetadata[] venues, DataOutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        List<IdEntry> venueIds = new ArrayList<>();
+        List<IdEntry> floorIds = new ArrayList<>();
+        List<WrldIdEntry> wrldIds = new ArrayList<>();
+        int floorCount = 0;
+        for (int i = 0; i < venues.length; i++) {
+            VenueMetadata venue = venues[i];
+            int floors = venue.floors != null ? venue.floors.length : 0;
+            boolean located = venue.coordinates != null && venue.coordinates.length == 2;
+            records.writeInt(intern(strings, venue.name));
+            records.writeInt(intern(strings, venue.wrldId));
+            records.writeInt(floors);
+            records.writeInt(floorCount);
+            writeId(records, venue.iaId);
+            records.writeDouble(located ? venue.coordinates[0] : Double.NaN);
+            records.writeDouble(located ? venue.coordinates[1] : Double.NaN);
+            floorCount += floors;
+            if (venue.iaId != null) {
+                venueIds.add(new IdEntry(venue.iaId, i));
+            }
+            if (venue.wrldId != null) {
+                wrldIds.add(new WrldIdEntry(venue.wrldId, intern(strings, venue.wrldId), i));
+            }
+        }
+        for (int i = 0; i < venues.length; i++) {
+            if (venues[i].floors == null) {
+                continue;
+            }
+            for (VenueMetadata.FloorMetadata floor : venues[i].floors) {
+                records.writeInt(intern(strings, floor.name));
+                records.writeInt(floor.zOrder);
+                records.writeInt(floor.index);
+                records.writeInt(0);
+                writeId(records, floor.iaId);
+                if (floor.iaId != null) {
+                    floorIds.add(new IdEntry(floor.iaId, i));
+                }
+            }
+        }
+        // stable sorts, entries of equal ids stay in venue order
+        Collections.sort(venueIds);
+        Collections.sort(floorIds);
+        Collections.sort(wrldIds);
+        for (IdEntry entry : venueIds) {
+            entry.write(records);
+        }
+        for (IdEntry entry : floorIds) {
+            entry.write(records);
+        }
+        for (WrldIdEntry entry : wrldIds) {
+            records.writeInt(entry.string);
+            records.writeInt(entry.venue);
+        }
+        records.flush();
+
+        int stringIndex = HEADER_SIZE + venues.length * VENUE_SIZE + floorCount * FLOOR_SIZE
+                + (venueIds.size() + floorIds.size()) * ID_ENTRY_SIZE
+                + wrldIds.size() * WRLD_ID_ENTRY_SIZE;
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes("UTF-8");
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException("string too long: " + string.substring(0, 32) + "..");
+            }
+            encoded.add(bytes);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(venues.length);
+        out.writeInt(floorCount);
+        out.writeInt(venueIds.size());
+        out.writeInt(floorIds.size());
+        out.writeInt(wrldIds.size());
+        out.writeInt(strings.size());
+        out.writeInt(stringIndex);
+        recordBytes.writeTo(out);
+        int offset = stringIndex + encoded.size() * 4;
+        for (byte[] bytes : encoded) {
+            out.writeInt(offset);
+            offset += 2 + bytes.length;
+        }
+        for (byte[] bytes : encoded) {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    private static void writeId(DataOutputStream out, IaId id) throws IOException {
+        out.writeLong(id != null ? id.getMostSignificantBits() : 0);
+        out.writeLong(id != null ? id.getLeastSignificantBits() : 0);
+    }
+
+    private static final class IdEntry implements Comparable<IdEntry> {
+
+        final long most;
+
+        final long least;
+
+        final int venue;
+
+        IdEntry(IaId id, int venue) {
+            most = id.getMostSignificantBits();
+            least = id.getLeastSignificantBits();
+            this.venue = venue;
+        }
+
+        @Override
+        public int compareTo(IdEntry other) {
+            int order = Long.compare(most, other.most);
+            return order != 0 ? order : Long.compare(least, other.least);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(most);
+            out.writeLong(least);
+            out.writeInt(venue);
+        }
+    }
+
+    private static final class WrldIdEntry implements Comparable<WrldIdEntry> {
+
+        final String id;
+
+        final int string;
+
+        final int venue;
+
+        WrldIdEntry(String id, int string, int venue) {
+            this.id = id;
+            this.string = string;
+            this.venue = venue;
+        }
+
+        @Override
+        public int compareTo(WrldIdEntry other) {
+            return id.compareTo(other.id);
+        }
+    }
+
+    private static int intern(Map<String, Integer> strings, String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    public static VenueMetadata[] readJson(File json) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(json), "UTF-8");
+        try {
+            VenueMetadata[] venues = new Gson().fromJson(reader, VenueMetadata[].class);
+            if (venues == null) {
+                throw new IOException(json + " is empty");
+            }
+            return venues;
+        } catch (JsonParseException e) {
+            throw new IOException(json + ": " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: VenueCatalogCompiler venues.json venues.bin");
+            System.exit(1);
+        }
+        File in = new File(args[0]);
+        File out = new File(args[1]);
+        VenueMetadata[] venues = readJson(in);
+        List<String> errors = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        validate(venues, errors, warnings);
+        for (String warning : warnings) {
+            System.err.println(in + ": warning: " + warning);
+        }
+        for (String error : errors) {
+            System.err.println(in + ": error: " + error);
+        }
+        if (!errors.isEmpty()) {
+            System.exit(1);
+        }
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        compile(venues, out);
+        System.out.println(in + ": " + venues.length + " venues, " + in.length() + " -> "
+                + out.length() + " bytes");
+    }
+}
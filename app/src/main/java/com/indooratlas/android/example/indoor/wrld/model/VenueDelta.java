@@ -0,0 +1,158 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes that take a venue catalog from one version to the next:
+ * <pre>
+ * {
+ *   "baseVersion": 3,
+ *   "version": 4,
+ *   "venues": [...],                  venues to add or replace, in the format of venues.json
+ *   "removedVenues": ["iaId", ...],
+ *   "floors": [{"venue": "iaId", "floors": [...], "removedZOrders": [2]}]
+ * }
+ * </pre>
+ * Floors are added or replaced by zOrder, which unlike the floor plan id is unique within a
+ * venue, and kept sorted by it.
+ */
+public class VenueDelta {
+
+    public int baseVersion;
+
+    public int version;
+
+    public VenueMetadata[] venues;
+
+    public IaId[] removedVenues;
+
+    public FloorChanges[] floors;
+
+    public static class FloorChanges {
+
+        /** IndoorAtlas id of the venue. */
+        public IaId venue;
+
+        public VenueMetadata.FloorMetadata[] floors;
+
+        public int[] removedZOrders;
+
+        VenueMetadata.FloorMetadata[] applyTo(VenueMetadata.FloorMetadata[] current) {
+            Map<Integer, VenueMetadata.FloorMetadata> byZOrder = new LinkedHashMap<>();
+            for (VenueMetadata.FloorMetadata floor : current) {
+                byZOrder.put(floor.zOrder, floor);
+            }
+            if (floors != null) {
+                for (VenueMetadata.FloorMetadata floor : floors) {
+                    byZOrder.put(floor.zOrder, floor);
+                }
+            }
+            if (removedZOrders != null) {
+                for (int zOrder : removedZOrders) {
+                    byZOrder.remove(zOrder);
+                }
+            }
+            VenueMetadata.FloorMetadata[] result = byZOrder.values().toArray(
+                    new VenueMetadata.FloorMetadata[byZOrder.size()]);
+            Arrays.sort(result, BY_Z_ORDER);
+            return result;
+        }
+    }
+
+    /**
+     * Parses and closes a delta.
+     */
+    public static VenueDelta parse(InputStream in) throws IOException {
+        try {
+            VenueDelta delta = new Gson().fromJson(new InputStreamReader(in, "UTF-8"),
+                    VenueDelta.class);
+            if (delta == null) {
+                throw new IOException("empty venue delta");
+            }
+            return delta;
+        } catch (JsonParseException e) {
+            throw new IOException("malformed venue delta", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the catalog with the changes applied, the given catalog is not modified.
+     *
+     * @throws IOException if the delta is not based on the catalog version or the changed
+     *                     venues are invalid.
+     */
+    public VenueCatalog applyTo(VenueCatalog catalog) throws IOException {
+        if (baseVersion != catalog.getVersion() || version <= baseVersion) {
+            throw new IOException("delta from version " + baseVersion + " to " + version
+                    + " does not apply to version " + catalog.getVersion());
+        }
+        Map<IaId, VenueMetadata> changed = new LinkedHashMap<>();
+        if (venues != null) {
+            for (VenueMetadata venue : venues) {
+                changed.put(venue.iaId, venue);
+            }
+        }
+        if (floors != null) {
+            for (FloorChanges changes : floors) {
+                VenueMetadata venue = changed.get(changes.venue);
+                if (venue == null) {
+                    venue = catalog.findByIaId(changes.venue);
+                }
+                if (venue == null) {
+                    throw new IOException("floor changes for unknown venue " + changes.venue);
+                }
+                changed.put(venue.iaId, venue.withFloors(changes.applyTo(venue.floors)));
+            }
+        }
+        List<String> errors = new ArrayList<>();
+        VenueCatalogCompiler.validate(changed.values().toArray(new VenueMetadata[0]), errors,
+                new ArrayList<String>());
+        if (!errors.isEmpty()) {
+            throw new IOException("invalid venue delta: " + errors.get(0));
+        }
+        List<IaId> removed = removedVenues != null
+                ? Arrays.asList(removedVenues) : Collections.<IaId>emptyList();
+        VenueCatalog updated = catalog.withChanges(version, changed.values(), removed);
+        // ids taken by other venues would make the changed venues unreachable
+        for (VenueMetadata venue : changed.values()) {
+            if (venue.wrldId != null && updated.findByWrldId(venue.wrldId) != venue) {
+                throw new IOException("invalid venue delta: wrldId " + venue.wrldId
+                        + " is already used");
+            }
+            for (VenueMetadata.FloorMetadata floor : venue.floors) {
+                if (updated.findByFloorIaId(floor.iaId) != venue) {
+                    throw new IOException("invalid venue delta: floor iaId " + floor.iaId
+                            + " is already used");
+                }
+            }
+        }
+        return updated;
+    }
+
+    private static final Comparator<VenueMetadata.FloorMetadata> BY_Z_ORDER =
+            new Comparator<VenueMetadata.FloorMetadata>() {
+                @Override
+                public int compare(VenueMetadata.FloorMetadata a,
+                                   VenueMetadata.FloorMetadata b) {
+                    return a.zOrder < b.zOrder ? -1 : (a.zOrder == b.zOrder ? 0 : 1);
+                }
+            };
+}
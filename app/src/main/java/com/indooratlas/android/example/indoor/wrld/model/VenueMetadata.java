@@ -3,6 +3,8 @@ package com.indooratlas.android.example.indoor.wrld.model;
 import android.support.annotation.Nullable;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Class that models venue metadata used within this app.
@@ -11,7 +13,7 @@ public class VenueMetadata {
 
     public String name;
 
-    public String iaId;
+    public IaId iaId;
 
     public String wrldId;
 
@@ -19,8 +21,59 @@ public class VenueMetadata {
 
     public double[] coordinates;
 
+    // built by VenueCatalog, not part of the JSON format
+    private transient Map<IaId, FloorMetadata> mFloorsByIaId;
+
+    private transient Map<Integer, FloorMetadata> mFloorsByZOrder;
+
+    private transient Map<Integer, FloorMetadata> mFloorsByIndex;
+
+    /**
+     * Builds the floor lookup maps. Where floors share a key, the first one in the array wins
+     * like in a linear search. Not needed for correctness, lookups fall back to scanning the
+     * floors if the maps have not been built. Does nothing if they are, the maps of a venue in
+     * use by other threads are never replaced.
+     */
+    void buildIndex() {
+        if (mFloorsByIaId != null) {
+            return;
+        }
+        Map<IaId, FloorMetadata> byIaId = new HashMap<>();
+        Map<Integer, FloorMetadata> byZOrder = new HashMap<>();
+        Map<Integer, FloorMetadata> byIndex = new HashMap<>();
+        for (int i = floors.length - 1; i >= 0; i--) {
+            FloorMetadata floor = floors[i];
+            byIaId.put(floor.iaId, floor);
+            byZOrder.put(floor.zOrder, floor);
+            byIndex.put(floor.index, floor);
+        }
+        mFloorsByIaId = byIaId;
+        mFloorsByZOrder = byZOrder;
+        mFloorsByIndex = byIndex;
+    }
+
+    /**
+     * Returns a copy of this venue with different floors, for changing a venue that may be in
+     * use by other threads.
+     */
+    VenueMetadata withFloors(FloorMetadata[] floors) {
+        VenueMetadata venue = new VenueMetadata();
+        venue.name = name;
+        venue.iaId = iaId;
+        venue.wrldId = wrldId;
+        venue.coordinates = coordinates;
+        venue.floors = floors;
+        return venue;
+    }
+
+    /**
+     * Finds a floor by IndoorAtlas floor plan id.
+     */
     @Nullable
-    public FloorMetadata findFloorByIaId(String id) {
+    public FloorMetadata findFloorByIaId(IaId id) {
+        if (mFloorsByIaId != null) {
+            return mFloorsByIaId.get(id);
+        }
         for (FloorMetadata floor : floors) {
             if (floor.iaId.equals(id)) {
                 return floor;
@@ -29,6 +82,35 @@ public class VenueMetadata {
         return null;
     }
 
+    @Nullable
+    public FloorMetadata findFloorByZOrder(int zOrder) {
+        if (mFloorsByZOrder != null) {
+            return mFloorsByZOrder.get(zOrder);
+        }
+        for (FloorMetadata floor : floors) {
+            if (floor.zOrder == zOrder) {
+                return floor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a floor by its WRLD indoor map floor index.
+     */
+    @Nullable
+    public FloorMetadata findFloorByIndex(int index) {
+        if (mFloorsByIndex != null) {
+            return mFloorsByIndex.get(index);
+        }
+        for (FloorMetadata floor : floors) {
+            if (floor.index == index) {
+                return floor;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("VenueMetadata{");
@@ -44,7 +126,7 @@ public class VenueMetadata {
 
         public String name;
 
-        public String iaId;
+        public IaId iaId;
 
         public int zOrder;
 
@@ -1,55 +1,437 @@
 package com.indooratlas.android.example.indoor.wrld.model;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.support.annotation.Nullable;
 
 import com.google.gson.Gson;
 import com.indooratlas.android.example.indoor.wrld.R;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
 
 /**
+ * Venue metadata bundled with the app, read from the binary catalog compiled at build time with
+ * {@code venues.json} as a fallback. The catalog is loaded and indexed on a background thread,
+ * lookups made before it is ready return {@code null}; use
+ * {@link #whenLoaded(OnLoadedListener, Executor)} to redo them once it is. Thread safe.
+ * <p>
+ * The catalog can be updated at runtime with {@link VenueDelta deltas}. An update replaces the
+ * catalog in one step, so readers see either the old or the new version, and is saved to a cache
+ * directory which is loaded instead of the bundled catalog on the next start.
  */
 public class VenueMetadataStorage {
 
+    /**
+     * Notified once the catalog has been loaded. If loading fails, the catalog is empty.
+     */
+    public interface OnLoadedListener {
+
+        void onVenuesLoaded(VenueCatalog catalog);
+    }
+
+    /**
+     * Reads the bundled catalog.
+     */
+    interface Loader {
+
+        VenueCatalog load(int version) throws Exception;
+    }
+
+    /** Compiled by the {@code compileVenueCatalog} Gradle task, stored uncompressed. */
+    static final String CATALOG_ASSET = "venues.bin";
+
+    /** Version of the bundled catalog, bump it along with {@code venues.json}. */
+    static final int BUNDLED_VERSION = 1;
+
+    /** Version of the empty catalog used if loading fails, so that no delta applies to it. */
+    static final int NO_VERSION = -1;
+
+    private static final String CACHE_PREFIX = "venues-";
+
+    private static final String CACHE_SUFFIX = ".bin";
+
+    private static final int HTTP_TIMEOUT_MILLIS = 15000;
+
+    /** Bounds the number of deltas fetched in a row by {@link #fetchUpdates(URL)}. */
+    private static final int MAX_DELTAS_PER_FETCH = 32;
+
     private static VenueMetadataStorage sSingleton;
 
-    private VenueMetadata[] mVenues;
+    private final FutureTask<VenueCatalog> mLoad;
+
+    @Nullable
+    private final File mCacheDir;
+
+    /** Serializes updates. */
+    private final Object mUpdateLock = new Object();
+
+    private volatile VenueCatalog mCatalog;
+
+    /** Guarded by this, null once loaded. */
+    private List<Runnable> mPending = new ArrayList<>();
+
+    VenueMetadataStorage(Callable<VenueMetadata[]> loader, Executor executor) {
+        this(loader, BUNDLED_VERSION, null, executor);
+    }
+
+    /**
+     * @param loader        reads the bundled catalog.
+     * @param loaderVersion version of the bundled catalog, a cached catalog is only used if it
+     *                      is newer.
+     * @param cacheDir      where updates are saved, {@code null} to keep them in memory only.
+     */
+    VenueMetadataStorage(final Callable<VenueMetadata[]> loader, int loaderVersion,
+                         @Nullable File cacheDir, Executor executor) {
+        this(new Loader() {
+            @Override
+            public VenueCatalog load(int version) throws Exception {
+                return new VenueCatalog(loader.call(), version);
+            }
+        }, loaderVersion, cacheDir, executor);
+    }
+
+    VenueMetadataStorage(final Loader loader, final int loaderVersion, @Nullable File cacheDir,
+                         Executor executor) {
+        mCacheDir = cacheDir;
+        mLoad = new FutureTask<>(new Callable<VenueCatalog>() {
+            @Override
+            public VenueCatalog call() {
+                long start = System.nanoTime();
+                VenueCatalog catalog = readCache(loaderVersion);
+                if (catalog == null) {
+                    try {
+                        catalog = loader.load(loaderVersion);
+                    } catch (Exception e) {
+                        Timber.e(e, "loading venue metadata failed");
+                        catalog = new VenueCatalog(new VenueMetadata[0], NO_VERSION);
+                    }
+                }
+                Timber.d("loaded %d venues (version %d) in %d ms", catalog.size(),
+                        catalog.getVersion(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                onLoaded(catalog);
+                return catalog;
+            }
+        });
+        executor.execute(mLoad);
+    }
 
-    private VenueMetadataStorage(Context context) {
-        // never do i/o in main thread
-        InputStream in = context.getResources().openRawResource(R.raw.venues);
+    /**
+     * Returns the storage, starting to load it on first call. Never blocks.
+     */
+    public static synchronized VenueMetadataStorage getInstance(Context context) {
+        if (sSingleton == null) {
+            final Context appContext = context.getApplicationContext();
+            sSingleton = new VenueMetadataStorage(new Loader() {
+                @Override
+                public VenueCatalog load(int version) throws IOException {
+                    try {
+                        return map(appContext.getAssets().openFd(CATALOG_ASSET), version);
+                    } catch (IOException e) {
+                        Timber.w(e, "no compiled venue catalog, parsing JSON");
+                        return new VenueCatalog(parse(appContext.getResources()
+                                .openRawResource(R.raw.venues)), version);
+                    }
+                }
+            }, BUNDLED_VERSION, new File(appContext.getFilesDir(), "venues"),
+                    newLoaderExecutor());
+        }
+        return sSingleton;
+    }
+
+    private static VenueCatalog map(AssetFileDescriptor asset, int version) throws IOException {
         try {
-            Gson gson = new Gson();
-            mVenues = gson.fromJson(new InputStreamReader(in), VenueMetadata[].class);
+            return BinaryVenueReader.map(asset.createInputStream(), asset.getStartOffset(),
+                    asset.getLength(), version);
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    // ignore
+            asset.close();
+        }
+    }
+
+    /**
+     * Parses and closes a catalog in the format of {@code res/raw/venues.json}.
+     */
+    static VenueMetadata[] parse(InputStream in) throws IOException {
+        try {
+            return new Gson().fromJson(new InputStreamReader(in, "UTF-8"),
+                    VenueMetadata[].class);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the newest cached catalog if it is newer than {@code minVersion}, otherwise or if
+     * it cannot be read {@code null}.
+     */
+    @Nullable
+    private VenueCatalog readCache(int minVersion) {
+        File[] files = mCacheDir != null ? mCacheDir.listFiles() : null;
+        if (files == null) {
+            return null;
+        }
+        File newest = null;
+        int newestVersion = minVersion;
+        for (File file : files) {
+            int version = cacheVersion(file);
+            if (version > newestVersion) {
+                newest = file;
+                newestVersion = version;
+            }
+        }
+        if (newest == null) {
+            return null;
+        }
+        try {
+            return BinaryVenueReader.map(new FileInputStream(newest), 0, newest.length(),
+                    newestVersion);
+        } catch (IOException e) {
+            Timber.w(e, "discarding unreadable venue cache %s", newest);
+            newest.delete();
+            return null;
+        }
+    }
+
+    private static int cacheVersion(File file) {
+        String name = file.getName();
+        if (!name.startsWith(CACHE_PREFIX) || !name.endsWith(CACHE_SUFFIX)) {
+            return NO_VERSION;
+        }
+        try {
+            return Integer.parseInt(name.substring(CACHE_PREFIX.length(),
+                    name.length() - CACHE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return NO_VERSION;
+        }
+    }
+
+    /**
+     * Saves the catalog under a temporary name first, so that a crash never leaves a partial
+     * cache, then removes older versions.
+     */
+    private void writeCache(VenueCatalog catalog) throws IOException {
+        if (mCacheDir == null) {
+            return;
+        }
+        if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs()) {
+            throw new IOException("cannot create " + mCacheDir);
+        }
+        String name = CACHE_PREFIX + catalog.getVersion() + CACHE_SUFFIX;
+        File temporary = new File(mCacheDir, name + ".tmp");
+        VenueCatalogCompiler.compile(catalog.getVenues().toArray(
+                new VenueMetadata[catalog.size()]), temporary);
+        File file = new File(mCacheDir, name);
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("cannot write " + file);
+        }
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File old : files) {
+                if (!old.equals(file)) {
+                    old.delete();
                 }
             }
         }
     }
 
+    /**
+     * Single background thread which goes away once the catalog is loaded.
+     */
+    private static Executor newLoaderExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "VenueMetadataStorage");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-    public static VenueMetadataStorage getInstance(Context context) {
-        if (sSingleton == null) {
-            sSingleton = new VenueMetadataStorage(context);
+    private void onLoaded(VenueCatalog catalog) {
+        List<Runnable> pending;
+        synchronized (this) {
+            mCatalog = catalog;
+            pending = mPending;
+            mPending = null;
+        }
+        for (Runnable runnable : pending) {
+            runnable.run();
         }
-        return sSingleton;
     }
 
-    @Nullable
-    public VenueMetadata findByIaId(String id) {
-        for (VenueMetadata venue : mVenues) {
-            if (venue.iaId.equals(id)) {
-                return venue;
+    /**
+     * Calls the listener on given executor once the catalog is loaded, right away if it already
+     * is.
+     */
+    public void whenLoaded(final OnLoadedListener listener, final Executor executor) {
+        Runnable notify = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onVenuesLoaded(mCatalog);
+                    }
+                });
+            }
+        };
+        synchronized (this) {
+            if (mPending != null) {
+                mPending.add(notify);
+                return;
+            }
+        }
+        notify.run();
+    }
+
+    /**
+     * Applies a delta read from the stream, which is closed. Blocks until the catalog has been
+     * loaded and the update saved, so call it off the main thread.
+     *
+     * @return {@code false} if the catalog already is at the version of the delta or newer.
+     * @throws IOException if the delta cannot be read, does not apply to the current version or
+     *                     cannot be saved, in which case the catalog is left unchanged.
+     */
+    public boolean applyUpdate(InputStream in) throws IOException {
+        VenueDelta delta = VenueDelta.parse(in);
+        synchronized (mUpdateLock) {
+            VenueCatalog current = awaitCatalog();
+            if (delta.version <= current.getVersion()) {
+                return false;
             }
+            long start = System.nanoTime();
+            VenueCatalog updated = delta.applyTo(current);
+            writeCache(updated);
+            mCatalog = updated;
+            Timber.d("updated venues from version %d to %d in %d ms", current.getVersion(),
+                    updated.getVersion(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return true;
         }
-        return null;
+    }
+
+    public boolean applyUpdate(File delta) throws IOException {
+        return applyUpdate(new FileInputStream(delta));
+    }
+
+    /**
+     * Fetches and applies deltas until the catalog is current. The endpoint is queried with the
+     * current version as {@code since} parameter and answers with a delta from that version, or
+     * 204 or 304 if there is none. Blocking, call it off the main thread.
+     *
+     * @return number of deltas applied.
+     */
+    public int fetchUpdates(URL endpoint) throws IOException {
+        String separator = endpoint.getQuery() != null ? "&" : "?";
+        int applied = 0;
+        while (applied < MAX_DELTAS_PER_FETCH) {
+            URL url = new URL(endpoint + separator + "since=" + awaitCatalog().getVersion());
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+                connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NO_CONTENT
+                        || code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    break;
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("venue update failed: HTTP " + code);
+                }
+                if (!applyUpdate(connection.getInputStream())) {
+                    break;
+                }
+                applied++;
+            } finally {
+                connection.disconnect();
+            }
+        }
+        return applied;
+    }
+
+    private VenueCatalog awaitCatalog() throws IOException {
+        try {
+            mLoad.get();
+            return mCatalog;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading venues");
+        } catch (ExecutionException e) {
+            // the load task handles its own failures
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Completes with the catalog as first loaded, for callers off the main thread that can
+     * afford to wait.
+     */
+    public Future<VenueCatalog> getCatalogFuture() {
+        return mLoad;
+    }
+
+    public boolean isLoaded() {
+        return mCatalog != null;
+    }
+
+    /**
+     * Returns the current catalog or {@code null} if it is still loading.
+     */
+    @Nullable
+    public VenueCatalog getCatalog() {
+        return mCatalog;
+    }
+
+    /**
+     * Returns the venue or {@code null} if it is unknown or the catalog is still loading.
+     */
+    @Nullable
+    public VenueMetadata findByIaId(IaId id) {
+        final VenueCatalog catalog = mCatalog;
+        return catalog != null ? catalog.findByIaId(id) : null;
+    }
+
+    /**
+     * Returns the catalog's instance of a venue or floor plan id, or the given id if it is not
+     * known or the catalog is still loading.
+     */
+    public IaId internId(IaId id) {
+        final VenueCatalog catalog = mCatalog;
+        return catalog != null ? catalog.internId(id) : id;
+    }
+
+    @Nullable
+    public VenueMetadata findByWrldId(String wrldId) {
+        final VenueCatalog catalog = mCatalog;
+        return catalog != null ? catalog.findByWrldId(wrldId) : null;
     }
 }
@@ -0,0 +1,354 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grid index over venue coordinates answering nearest, radius and bounding box queries. Venues
+ * are bucketed into cells of a fixed size in degrees; queries only visit the cells that can hold
+ * a match.
+ * <p>
+ * Venues can be added and removed at any time. Writers are serialized, readers never block: each
+ * cell is an immutable array replaced on write, so a query sees every cell either before or after
+ * a concurrent change. Distances use an equirectangular approximation, which is accurate to well
+ * below a meter at venue scale. Boxes crossing the antimeridian are not supported.
+ */
+public class VenueSpatialIndex {
+
+    /** About 550 m north-south, a few venues per cell in a dense city center. */
+    public static final double DEFAULT_CELL_DEGREES = 0.005;
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private static final class Entry {
+
+        final VenueMetadata venue;
+
+        final double latitude;
+
+        final double longitude;
+
+        Entry(VenueMetadata venue) {
+            this.venue = venue;
+            this.latitude = venue.coordinates[0];
+            this.longitude = venue.coordinates[1];
+        }
+    }
+
+    /** Range of occupied cell indices, immutable. */
+    private static final class Bounds {
+
+        final int minRow;
+        final int maxRow;
+        final int minColumn;
+        final int maxColumn;
+
+        Bounds(int minRow, int maxRow, int minColumn, int maxColumn) {
+            this.minRow = minRow;
+            this.maxRow = maxRow;
+            this.minColumn = minColumn;
+            this.maxColumn = maxColumn;
+        }
+    }
+
+    private final double mCellDegrees;
+
+    private final ConcurrentHashMap<Long, Entry[]> mCells = new ConcurrentHashMap<>();
+
+    private volatile Bounds mBounds;
+
+    private volatile int mSize;
+
+    public VenueSpatialIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    public VenueSpatialIndex(double cellDegrees) {
+        mCellDegrees = cellDegrees;
+    }
+
+    /**
+     * Indexes all venues of a catalog that have coordinates.
+     */
+    public static VenueSpatialIndex of(Collection<VenueMetadata> venues) {
+        VenueSpatialIndex index = new VenueSpatialIndex();
+        for (VenueMetadata venue : venues) {
+            index.add(venue);
+        }
+        return index;
+    }
+
+    /**
+     * Returns an index with the same venues, which can then be changed independently. Cells are
+     * shared until changed, so copying does not depend on the number of venues per cell.
+     */
+    public synchronized VenueSpatialIndex copy() {
+        VenueSpatialIndex copy = new VenueSpatialIndex(mCellDegrees);
+        copy.mCells.putAll(mCells);
+        copy.mBounds = mBounds;
+        copy.mSize = mSize;
+        return copy;
+    }
+
+    /**
+     * Adds a venue, ignored if it has no coordinates. The coordinates must not change while the
+     * venue is indexed.
+     */
+    public synchronized void add(VenueMetadata venue) {
+        if (venue.coordinates == null || venue.coordinates.length != 2) {
+            return;
+        }
+        Entry entry = new Entry(venue);
+        int row = row(entry.latitude);
+        int column = column(entry.longitude);
+        Long key = key(row, column);
+        Entry[] cell = mCells.get(key);
+        if (cell == null) {
+            cell = EMPTY;
+        }
+        Entry[] updated = Arrays.copyOf(cell, cell.length + 1);
+        updated[cell.length] = entry;
+        mCells.put(key, updated);
+        Bounds bounds = mBounds;
+        if (bounds == null) {
+            mBounds = new Bounds(row, row, column, column);
+        } else if (row < bounds.minRow || row > bounds.maxRow
+                || column < bounds.minColumn || column > bounds.maxColumn) {
+            mBounds = new Bounds(Math.min(row, bounds.minRow), Math.max(row, bounds.maxRow),
+                    Math.min(column, bounds.minColumn), Math.max(column, bounds.maxColumn));
+        }
+        mSize++;
+    }
+
+    /**
+     * Removes a venue added earlier.
+     *
+     * @return false if the venue was not indexed.
+     */
+    public synchronized boolean remove(VenueMetadata venue) {
+        if (venue.coordinates == null || venue.coordinates.length != 2) {
+            return false;
+        }
+        Long key = key(row(venue.coordinates[0]), column(venue.coordinates[1]));
+        Entry[] cell = mCells.get(key);
+        if (cell == null) {
+            return false;
+        }
+        for (int i = 0; i < cell.length; i++) {
+            if (cell[i].venue == venue) {
+                if (cell.length == 1) {
+                    mCells.remove(key);
+                } else {
+                    Entry[] updated = new Entry[cell.length - 1];
+                    System.arraycopy(cell, 0, updated, 0, i);
+                    System.arraycopy(cell, i + 1, updated, i, updated.length - i);
+                    mCells.put(key, updated);
+                }
+                // bounds are left as they are, they only limit how far queries look
+                mSize--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the venue closest to the given point within {@code maxMeters} or {@code null}.
+     */
+    @Nullable
+    public VenueMetadata findNearest(double latitude, double longitude, double maxMeters) {
+        List<VenueMetadata> nearest = findNearest(latitude, longitude, 1, maxMeters);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Returns up to {@code k} venues within {@code maxMeters} of the given point, closest first.
+     */
+    public List<VenueMetadata> findNearest(double latitude, double longitude, int k,
+                                           double maxMeters) {
+        final Bounds bounds = mBounds;
+        if (bounds == null || k <= 0) {
+            return new ArrayList<>(0);
+        }
+        final double cos = Math.cos(Math.toRadians(latitude));
+        // smallest cell extent in meters, used to bound the distance to unvisited rings
+        final double cellMeters = mCellDegrees * METERS_PER_DEGREE * Math.min(1, cos);
+        final int row = row(latitude);
+        final int column = column(longitude);
+        // sorted candidates, squared distances in parallel
+        Entry[] best = new Entry[k];
+        double[] bestDistances = new double[k];
+        int found = 0;
+        final double maxSquared = maxMeters * maxMeters;
+        for (int ring = 0; ; ring++) {
+            double ringMeters = (ring - 1) * cellMeters;
+            if (ring > 0 && ringMeters > maxMeters) {
+                break;
+            }
+            if (found == k && ring > 0 && ringMeters * ringMeters > bestDistances[k - 1]) {
+                break;
+            }
+            if (row - ring < bounds.minRow && row + ring > bounds.maxRow
+                    && column - ring < bounds.minColumn && column + ring > bounds.maxColumn) {
+                // the ring is outside of all occupied cells
+                break;
+            }
+            int lastRow = Math.min(row + ring, bounds.maxRow);
+            for (int r = Math.max(row - ring, bounds.minRow); r <= lastRow; r++) {
+                // whole top and bottom rows of the ring, only the ends of the rows in between
+                boolean edge = r == row - ring || r == row + ring;
+                int step = edge ? 1 : 2 * ring;
+                int first = edge ? Math.max(column - ring, bounds.minColumn) : column - ring;
+                int last = edge ? Math.min(column + ring, bounds.maxColumn) : column + ring;
+                for (int c = first; c <= last; c += Math.max(1, step)) {
+                    if (c < bounds.minColumn || c > bounds.maxColumn) {
+                        continue;
+                    }
+                    Entry[] cell = mCells.get(key(r, c));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Entry entry : cell) {
+                        double distance = squaredDistance(latitude, longitude, cos, entry);
+                        if (distance > maxSquared
+                                || (found == k && distance >= bestDistances[k - 1])) {
+                            continue;
+                        }
+                        // insertion sort into the k best
+                        int i = found < k ? found++ : k - 1;
+                        while (i > 0 && bestDistances[i - 1] > distance) {
+                            best[i] = best[i - 1];
+                            bestDistances[i] = bestDistances[i - 1];
+                            i--;
+                        }
+                        best[i] = entry;
+                        bestDistances[i] = distance;
+                    }
+                }
+            }
+        }
+        List<VenueMetadata> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(best[i].venue);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the venues within {@code meters} of the given point to {@code out}, in no particular
+     * order.
+     *
+     * @return number of venues added.
+     */
+    public int findWithinRadius(double latitude, double longitude, double meters,
+                                List<VenueMetadata> out) {
+        final double cos = Math.cos(Math.toRadians(latitude));
+        final double latitudeDelta = meters / METERS_PER_DEGREE;
+        final double longitudeDelta = cos > 1e-9 ? latitudeDelta / cos : 180;
+        final double squared = meters * meters;
+        return query(latitude - latitudeDelta, longitude - longitudeDelta,
+                latitude + latitudeDelta, longitude + longitudeDelta,
+                latitude, longitude, cos, squared, out);
+    }
+
+    /**
+     * Adds the venues inside the given box, e.g. the camera bounds, to {@code out}, in no
+     * particular order.
+     *
+     * @return number of venues added.
+     */
+    public int findInBounds(double south, double west, double north, double east,
+                            List<VenueMetadata> out) {
+        return query(south, west, north, east, 0, 0, 0, Double.NaN, out);
+    }
+
+    /**
+     * Collects venues in the box and, unless {@code squaredMeters} is NaN, within the distance.
+     */
+    private int query(double south, double west, double north, double east,
+                      double latitude, double longitude, double cos, double squaredMeters,
+                      List<VenueMetadata> out) {
+        final Bounds bounds = mBounds;
+        if (bounds == null) {
+            return 0;
+        }
+        final boolean checkDistance = !Double.isNaN(squaredMeters);
+        final int minRow = Math.max(row(south), bounds.minRow);
+        final int maxRow = Math.min(row(north), bounds.maxRow);
+        final int minColumn = Math.max(column(west), bounds.minColumn);
+        final int maxColumn = Math.min(column(east), bounds.maxColumn);
+        if (minRow > maxRow || minColumn > maxColumn) {
+            return 0;
+        }
+        int added = 0;
+        long cellCount = (long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+        if (cellCount > mCells.size()) {
+            // a sparse box, e.g. zoomed far out, visiting the occupied cells is cheaper
+            for (Entry[] cell : mCells.values()) {
+                added += collect(cell, south, west, north, east, latitude, longitude, cos,
+                        squaredMeters, checkDistance, out);
+            }
+            return added;
+        }
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                Entry[] cell = mCells.get(key(r, c));
+                if (cell != null) {
+                    added += collect(cell, south, west, north, east, latitude, longitude, cos,
+                            squaredMeters, checkDistance, out);
+                }
+            }
+        }
+        return added;
+    }
+
+    private static int collect(Entry[] cell, double south, double west, double north,
+                               double east, double latitude, double longitude, double cos,
+                               double squaredMeters, boolean checkDistance,
+                               List<VenueMetadata> out) {
+        int added = 0;
+        for (Entry entry : cell) {
+            if (entry.latitude < south || entry.latitude > north
+                    || entry.longitude < west || entry.longitude > east) {
+                continue;
+            }
+            if (checkDistance
+                    && squaredDistance(latitude, longitude, cos, entry) > squaredMeters) {
+                continue;
+            }
+            out.add(entry.venue);
+            added++;
+        }
+        return added;
+    }
+
+    private static double squaredDistance(double latitude, double longitude, double cos,
+                                          Entry entry) {
+        double x = (entry.longitude - longitude) * cos * METERS_PER_DEGREE;
+        double y = (entry.latitude - latitude) * METERS_PER_DEGREE;
+        return x * x + y * y;
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / mCellDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / mCellDegrees);
+    }
+
+    private static Long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,247 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+import com.indooratlas.android.example.indoor.wrld.model.LocalTangentPlane;
+
+import timber.log.Timber;
+
+/**
+ * Keeps the accuracy circle of the blue dot on the map. WRLD polygons cannot be moved or
+ * reshaped, a changed circle means removing the native polygon and adding a new one, so the
+ * single polygon of the current indoor map and floor is only replaced when the circle has visibly
+ * changed: its center or radius moved more than a threshold in screen pixels, or the zoom level
+ * needs a different number of points. Replacements are also limited to a maximum rate, a change
+ * arriving sooner is kept pending until {@link #getNextDeadline()}. Changing the indoor map or
+ * floor replaces the polygon right away.
+ * <p>
+ * A circle held back by the rate limit is only drawn from {@link #tick()}: when the blue dot
+ * stops, no further update arrives, so the owner posts a tick for {@link #getNextDeadline()} or
+ * the last circle would lag behind the dot. Not thread safe except for the counters which can be
+ * read from any thread.
+ *
+ * @param <T> native polygon handle.
+ */
+final class AccuracyCircleOverlay<T> {
+
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    static final float DEFAULT_THRESHOLD_PIXELS = 2f;
+
+    static final float DEFAULT_MAX_UPDATES_PER_SECOND = 10f;
+
+    private static final double METERS_PER_DEGREE = LocalTangentPlane.EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * Creates and removes the native polygons.
+     */
+    interface Renderer<T> {
+
+        /**
+         * Adds a polygon of {@code count} points, latitude and longitude interleaved in
+         * {@code points}, on the given indoor map and floor.
+         */
+        T add(String indoorMapId, int floorId, double[] points, int count);
+
+        void remove(T polygon);
+    }
+
+    private final Clock mClock;
+
+    private final Renderer<T> mRenderer;
+
+    private final float mThresholdPixels;
+
+    private final long mMinIntervalMillis;
+
+    private final double[] mPoints = new double[2 * AccuracyRing.MAX_POINTS];
+
+    private T mPolygon;
+
+    private String mDrawnMapId;
+
+    private int mDrawnFloorId;
+
+    private double mDrawnLatitude;
+
+    private double mDrawnLongitude;
+
+    private double mDrawnRadius;
+
+    private int mDrawnCount;
+
+    private long mLastUpdate;
+
+    private boolean mPending;
+
+    private String mMapId;
+
+    private int mFloorId;
+
+    private double mLatitude;
+
+    private double mLongitude;
+
+    private double mRadius;
+
+    private double mZoom;
+
+    private volatile long mAddCount;
+
+    private volatile long mRemoveCount;
+
+    private volatile long mSkippedCount;
+
+    /** Native operations in the current one second window, and the rate of the last one. */
+    private long mWindowStart;
+
+    private int mWindowOperations;
+
+    private volatile float mOperationsPerSecond;
+
+    AccuracyCircleOverlay(Clock clock, Renderer<T> renderer) {
+        this(clock, renderer, DEFAULT_THRESHOLD_PIXELS, DEFAULT_MAX_UPDATES_PER_SECOND);
+    }
+
+    /**
+     * @param thresholdPixels smallest change of center or radius on screen that is drawn.
+     * @param maxUpdatesPerSecond upper limit of polygon replacements on the same floor.
+     */
+    AccuracyCircleOverlay(Clock clock, Renderer<T> renderer, float thresholdPixels,
+                          float maxUpdatesPerSecond) {
+        mClock = clock;
+        mRenderer = renderer;
+        mThresholdPixels = thresholdPixels;
+        mMinIntervalMillis = (long) Math.ceil(1000 / maxUpdatesPerSecond);
+        mWindowStart = clock.elapsedRealtime();
+    }
+
+    /**
+     * Sets the circle, typically on every blue dot animation frame.
+     *
+     * @param radius accuracy in meters.
+     * @param zoom current camera zoom level.
+     */
+    void update(double latitude, double longitude, double radius, double zoom,
+                String indoorMapId, int floorId) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadius = radius;
+        mZoom = zoom;
+        mMapId = indoorMapId;
+        mFloorId = floorId;
+        long now = mClock.elapsedRealtime();
+        if (mPolygon == null || floorId != mDrawnFloorId
+                || (indoorMapId == null ? mDrawnMapId != null
+                : !indoorMapId.equals(mDrawnMapId))) {
+            apply(now);
+        } else if (!isVisibleChange()) {
+            mPending = false;
+            mSkippedCount++;
+        } else if (now - mLastUpdate >= mMinIntervalMillis) {
+            apply(now);
+        } else {
+            mPending = true;
+        }
+    }
+
+    /**
+     * Removes the polygon, e.g. when leaving the indoor map.
+     */
+    void clear() {
+        mPending = false;
+        if (mPolygon != null) {
+            mRenderer.remove(mPolygon);
+            mPolygon = null;
+            mDrawnMapId = null;
+            mRemoveCount++;
+            countOperation(mClock.elapsedRealtime());
+            Timber.d("accuracy circle cleared, %d adds, %d skipped, %.1f operations/s",
+                    mAddCount, mSkippedCount, mOperationsPerSecond);
+        }
+    }
+
+    void tick() {
+        long now = mClock.elapsedRealtime();
+        if (mPending && now >= getNextDeadline()) {
+            apply(now);
+        }
+    }
+
+    long getNextDeadline() {
+        return mPending ? mLastUpdate + mMinIntervalMillis : NO_DEADLINE;
+    }
+
+    /**
+     * Number of native polygons added.
+     */
+    long getAddCount() {
+        return mAddCount;
+    }
+
+    /**
+     * Number of native polygons removed.
+     */
+    long getRemoveCount() {
+        return mRemoveCount;
+    }
+
+    /**
+     * Number of updates that did not change the circle visibly.
+     */
+    long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Native adds and removes per second, over the last window of at least one second.
+     */
+    float getOperationsPerSecond() {
+        return mOperationsPerSecond;
+    }
+
+    private boolean isVisibleChange() {
+        double metersPerPixel = AccuracyRing.metersPerPixel(mLatitude, mZoom);
+        if (AccuracyRing.pointCount(mRadius / metersPerPixel) != mDrawnCount) {
+            return true;
+        }
+        double threshold = mThresholdPixels * metersPerPixel;
+        if (Math.abs(mRadius - mDrawnRadius) > threshold) {
+            return true;
+        }
+        double north = (mLatitude - mDrawnLatitude) * METERS_PER_DEGREE;
+        double east = (mLongitude - mDrawnLongitude) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(mLatitude));
+        return north * north + east * east > threshold * threshold;
+    }
+
+    private void apply(long now) {
+        int count = AccuracyRing.computeAtZoom(mLatitude, mLongitude, mRadius, mZoom, mPoints);
+        if (mPolygon != null) {
+            mRenderer.remove(mPolygon);
+            mRemoveCount++;
+            countOperation(now);
+        }
+        mPolygon = mRenderer.add(mMapId, mFloorId, mPoints, count);
+        mAddCount++;
+        countOperation(now);
+        mDrawnMapId = mMapId;
+        mDrawnFloorId = mFloorId;
+        mDrawnLatitude = mLatitude;
+        mDrawnLongitude = mLongitude;
+        mDrawnRadius = mRadius;
+        mDrawnCount = count;
+        mLastUpdate = now;
+        mPending = false;
+    }
+
+    private void countOperation(long now) {
+        long elapsed = now - mWindowStart;
+        if (elapsed >= 1000) {
+            // windows are closed by the next operation, idle time lowers the rate of the window
+            mOperationsPerSecond = mWindowOperations * 1000f / elapsed;
+            mWindowStart = now;
+            mWindowOperations = 0;
+        }
+        mWindowOperations++;
+    }
+}
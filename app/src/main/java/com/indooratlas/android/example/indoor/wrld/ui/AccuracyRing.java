@@ -0,0 +1,108 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import static com.indooratlas.android.example.indoor.wrld.model.LocalTangentPlane.EARTH_RADIUS;
+
+/**
+ * Accuracy circle vertices from precomputed unit circle tables. Instead of solving the spherical
+ * offset for every vertex, the circle is scaled onto the local tangent plane at its center, which
+ * takes one cosine per circle and a multiply-add per vertex.
+ * <p>
+ * The plane differs from the sphere by about {@code r^2 tan(latitude) / 2R} per vertex: below
+ * 1 cm for radii up to 200 m at latitudes up to 70 degrees, far below what is visible at any
+ * zoom level where such a circle is drawn. Not usable within a few kilometers of the poles.
+ * <p>
+ * Vertices start north and go clockwise, latitude and longitude interleaved, the same layout as
+ * {@link com.google.maps.android.SphericalUtil#computeCircle}. Nothing is allocated.
+ */
+final class AccuracyRing {
+
+    /** Point counts are multiples of this, so there is a small, fixed set of tables. */
+    static final int POINT_STEP = 8;
+
+    static final int MIN_POINTS = POINT_STEP;
+
+    static final int MAX_POINTS = 64;
+
+    /** Largest distance between a chord and the true circle, in pixels. */
+    static final double MAX_ERROR_PIXELS = 0.5;
+
+    /** Web mercator tile size, the map is this many pixels around the equator at zoom 0. */
+    private static final double TILE_PIXELS = 256;
+
+    /** North (cos) and east (sin) components of the unit circle, by point count / step. */
+    private static final double[][] COS = new double[MAX_POINTS / POINT_STEP + 1][];
+
+    private static final double[][] SIN = new double[MAX_POINTS / POINT_STEP + 1][];
+
+    static {
+        for (int count = MIN_POINTS; count <= MAX_POINTS; count += POINT_STEP) {
+            double[] cos = new double[count];
+            double[] sin = new double[count];
+            for (int i = 0; i < count; i++) {
+                double angle = 2 * Math.PI * i / count;
+                cos[i] = Math.cos(angle);
+                sin[i] = Math.sin(angle);
+            }
+            COS[count / POINT_STEP] = cos;
+            SIN[count / POINT_STEP] = sin;
+        }
+    }
+
+    private AccuracyRing() {
+    }
+
+    /**
+     * Returns the number of points needed to draw a circle of the given on-screen radius without
+     * visible corners, a multiple of {@link #POINT_STEP} between {@link #MIN_POINTS} and
+     * {@link #MAX_POINTS}.
+     */
+    static int pointCount(double radiusPixels) {
+        if (!(radiusPixels > MAX_ERROR_PIXELS)) {
+            return MIN_POINTS;
+        }
+        // a chord spanning 2 pi / n is at most r (1 - cos(pi / n)) inside the circle
+        double exact = Math.PI / Math.acos(1 - MAX_ERROR_PIXELS / radiusPixels);
+        int count = (int) Math.ceil(exact / POINT_STEP) * POINT_STEP;
+        return Math.max(MIN_POINTS, Math.min(MAX_POINTS, count));
+    }
+
+    /**
+     * Returns the map scale at the given latitude and camera zoom level.
+     */
+    static double metersPerPixel(double latitude, double zoom) {
+        return 2 * Math.PI * EARTH_RADIUS * Math.cos(Math.toRadians(latitude))
+                / (TILE_PIXELS * Math.pow(2, zoom));
+    }
+
+    /**
+     * Writes a circle with as many points as the on-screen radius at the given zoom level needs.
+     *
+     * @param out receives the points, must hold {@code 2 * MAX_POINTS} values.
+     * @return number of points written.
+     */
+    static int computeAtZoom(double latitude, double longitude, double radiusMeters,
+                             double zoom, double[] out) {
+        int count = pointCount(radiusMeters / metersPerPixel(latitude, zoom));
+        compute(latitude, longitude, radiusMeters, count, out);
+        return count;
+    }
+
+    /**
+     * Writes a circle of {@code count} points, which must be a multiple of {@link #POINT_STEP}
+     * between {@link #MIN_POINTS} and {@link #MAX_POINTS}.
+     */
+    static void compute(double latitude, double longitude, double radiusMeters, int count,
+                        double[] out) {
+        if (count % POINT_STEP != 0 || count < MIN_POINTS || count > MAX_POINTS) {
+            throw new IllegalArgumentException("unsupported point count " + count);
+        }
+        double[] cos = COS[count / POINT_STEP];
+        double[] sin = SIN[count / POINT_STEP];
+        double latitudeDegrees = Math.toDegrees(radiusMeters / EARTH_RADIUS);
+        double longitudeDegrees = latitudeDegrees / Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < count; i++) {
+            out[2 * i] = latitude + latitudeDegrees * cos[i];
+            out[2 * i + 1] = longitude + longitudeDegrees * sin[i];
+        }
+    }
+}
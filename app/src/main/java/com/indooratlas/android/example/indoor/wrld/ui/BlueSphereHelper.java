@@ -1,13 +1,12 @@
 package com.indooratlas.android.example.indoor.wrld.ui;
 
 import android.animation.ValueAnimator;
-import android.location.Location;
 import android.os.SystemClock;
 import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.Interpolator;
 
 import com.eegeo.mapapi.bluesphere.BlueSphere;
 import com.eegeo.mapapi.geometry.LatLng;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
 
 import timber.log.Timber;
 
@@ -17,9 +16,8 @@ import timber.log.Timber;
 class BlueSphereHelper {
 
     private final BlueSphere mBlueSphere;
-    private Location mCurrentLocation;
-    private ValueAnimator mLocationChangeAnimator;
-    private Interpolator mInterpolator;
+    private final FixInterpolator mFixInterpolator = new FixInterpolator();
+    private final ValueAnimator mLocationChangeAnimator;
     private int mNumSamples;
     private long mCreateMillis;
 
@@ -27,8 +25,18 @@ class BlueSphereHelper {
         mBlueSphere = blueSphere;
         mBlueSphere.setEnabled(true);
         mBlueSphere.setElevation(0.0);
-        mInterpolator = new AccelerateDecelerateInterpolator();
         mCreateMillis = SystemClock.elapsedRealtime();
+
+        // single animator reused for every fix
+        mLocationChangeAnimator = ValueAnimator.ofFloat(0, 1);
+        mLocationChangeAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        mLocationChangeAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator valueAnimator) {
+                mFixInterpolator.evaluate(valueAnimator.getAnimatedFraction());
+                applyLocation();
+            }
+        });
     }
 
     void setDisplayOnMap(String mapId, int floorId) {
@@ -37,42 +45,40 @@ class BlueSphereHelper {
     }
 
 
-    public void setLocation(Location location) {
+    /**
+     * Animates the blue dot towards given fix. The values are copied, the instance is not retained.
+     */
+    public void setLocation(LocationFix fix) {
 
         mNumSamples++;
 
-        if (location.equals(mCurrentLocation)) {
-            Timber.v("no change in location, ignoring");
+        if (mFixInterpolator.isTarget(fix)) {
+            // no change in location, ignoring
             return;
         }
 
-        if (mCurrentLocation != null) {
-
-            if (mLocationChangeAnimator != null) {
-                mLocationChangeAnimator.end();
-            }
-
-            mLocationChangeAnimator = ValueAnimator.ofFloat(0, 1);
+        if (mFixInterpolator.hasTarget()) {
+            // jump to end of the previous segment before starting the next one
+            mLocationChangeAnimator.end();
+            mFixInterpolator.setTarget(fix);
             mLocationChangeAnimator.setDuration(Math.min(
                     (SystemClock.elapsedRealtime() - mCreateMillis) / mNumSamples,
                     1000)); // max animation duration
-            mLocationChangeAnimator.setInterpolator(mInterpolator);
-            mLocationChangeAnimator.addUpdateListener(new LocationAnimator(mCurrentLocation,
-                    location));
             mLocationChangeAnimator.start();
         } else {
-            applyLocation(location.getLatitude(), location.getLongitude(), location.getBearing(),
-                    location.getAccuracy());
+            mFixInterpolator.reset(fix);
+            applyLocation();
         }
-
-        mCurrentLocation = location;
     }
 
-    private void applyLocation(double latitude, double longitude, float bearing, float accuracy) {
-        LatLng latLng = new LatLng(latitude, longitude);
-        mBlueSphere.setPosition(latLng);
+    private void applyLocation() {
+        final double latitude = mFixInterpolator.getLatitude();
+        final double longitude = mFixInterpolator.getLongitude();
+        final float bearing = mFixInterpolator.getBearing();
+        // the WRLD API only takes an immutable LatLng, the one allocation per frame
+        mBlueSphere.setPosition(new LatLng(latitude, longitude));
         mBlueSphere.setBearing(bearing + 180f);
-        onUpdateLocation(latitude, longitude, bearing, accuracy);
+        onUpdateLocation(latitude, longitude, bearing, mFixInterpolator.getAccuracy());
     }
 
     /**
@@ -84,45 +90,4 @@ class BlueSphereHelper {
         // N/A
     }
 
-
-    private class LocationAnimator implements ValueAnimator.AnimatorUpdateListener {
-
-        private double mAnimateDeltaLat;
-        private double mAnimateDeltaLon;
-        private double mAnimateDeltaBearing;
-        private Location mFromLocation;
-        private Location mToLocation;
-
-        private LocationAnimator(Location fromLocation, Location toLocation) {
-            mFromLocation = fromLocation;
-            mToLocation = toLocation;
-            mAnimateDeltaLat = toLocation.getLatitude() - fromLocation.getLatitude();
-            mAnimateDeltaLon = toLocation.getLongitude() - fromLocation.getLongitude();
-
-            double fromBearingRad = fromLocation.getBearing() * Math.PI / 180;
-            double toBearingRad = toLocation.getBearing() * Math.PI / 180;
-
-            mAnimateDeltaBearing = Math.atan2(Math.sin(toBearingRad - fromBearingRad),
-                    Math.cos(toBearingRad - fromBearingRad)) * (180 / Math.PI);
-        }
-
-        @Override
-        public void onAnimationUpdate(ValueAnimator valueAnimator) {
-            float fraction = valueAnimator.getAnimatedFraction();
-            double newLat;
-            double newLon;
-            double newBearing;
-
-            if (fraction == 1.0) {
-                newLat = mToLocation.getLatitude();
-                newLon = mToLocation.getLongitude();
-                newBearing = mToLocation.getBearing();
-            } else {
-                newLat = (mFromLocation.getLatitude() + (mAnimateDeltaLat * fraction));
-                newLon = (mFromLocation.getLongitude() + (mAnimateDeltaLon * fraction));
-                newBearing = (mFromLocation.getBearing() + (mAnimateDeltaBearing * fraction));
-            }
-            applyLocation(newLat, newLon, (float) newBearing, mToLocation.getAccuracy());
-        }
-    }
 }
@@ -0,0 +1,104 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+
+/**
+ * Interpolation math for animating the blue dot from one fix to the next. Keeps its own copies of
+ * the fixes so that the instances handed over by the producer can be reused and nothing is
+ * allocated per fix or per animation frame.
+ */
+final class FixInterpolator {
+
+    private final LocationFix mFrom = new LocationFix();
+    private final LocationFix mTo = new LocationFix();
+
+    private double mDeltaLat;
+    private double mDeltaLon;
+    private double mDeltaBearing;
+    private boolean mHasTarget;
+
+    private double mLatitude;
+    private double mLongitude;
+    private float mBearing;
+    private float mAccuracy;
+
+    /**
+     * Returns true if at least one fix has been set.
+     */
+    boolean hasTarget() {
+        return mHasTarget;
+    }
+
+    /**
+     * Returns true if given fix has the same position as the current target.
+     */
+    boolean isTarget(LocationFix fix) {
+        return mHasTarget && mTo.isSamePosition(fix);
+    }
+
+    /**
+     * Jumps directly to given fix without animation.
+     */
+    void reset(LocationFix fix) {
+        mFrom.copyFrom(fix);
+        mTo.copyFrom(fix);
+        mDeltaLat = 0;
+        mDeltaLon = 0;
+        mDeltaBearing = 0;
+        mHasTarget = true;
+        evaluate(1f);
+    }
+
+    /**
+     * Starts a new segment from the previous target towards given fix.
+     */
+    void setTarget(LocationFix fix) {
+        if (!mHasTarget) {
+            reset(fix);
+            return;
+        }
+        mFrom.copyFrom(mTo);
+        mTo.copyFrom(fix);
+        mDeltaLat = mTo.latitude - mFrom.latitude;
+        mDeltaLon = mTo.longitude - mFrom.longitude;
+
+        double fromBearingRad = mFrom.bearing * Math.PI / 180;
+        double toBearingRad = mTo.bearing * Math.PI / 180;
+
+        mDeltaBearing = Math.atan2(Math.sin(toBearingRad - fromBearingRad),
+                Math.cos(toBearingRad - fromBearingRad)) * (180 / Math.PI);
+    }
+
+    /**
+     * Computes the position at given fraction [0, 1] of the current segment. Results are
+     * available via the getters.
+     */
+    void evaluate(float fraction) {
+        if (fraction == 1.0) {
+            mLatitude = mTo.latitude;
+            mLongitude = mTo.longitude;
+            mBearing = mTo.bearing;
+        } else {
+            mLatitude = mFrom.latitude + (mDeltaLat * fraction);
+            mLongitude = mFrom.longitude + (mDeltaLon * fraction);
+            mBearing = (float) (mFrom.bearing + (mDeltaBearing * fraction));
+        }
+        mAccuracy = mTo.accuracy;
+    }
+
+    double getLatitude() {
+        return mLatitude;
+    }
+
+    double getLongitude() {
+        return mLongitude;
+    }
+
+    float getBearing() {
+        return mBearing;
+    }
+
+    float getAccuracy() {
+        return mAccuracy;
+    }
+}
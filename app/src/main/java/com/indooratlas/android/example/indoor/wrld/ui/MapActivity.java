@@ -80,15 +80,19 @@ public class MapActivity extends AppCompatActivity implements EasyPermissions.Pe
             }
         });
 
-        mLocationProducer = new IndoorOutdoorLocationProducer(this);
+        VenueMetadataStorage venueStorage = VenueMetadataStorage.getInstance(this);
+        mLocationProducer = new IndoorOutdoorLocationProducer(this, venueStorage);
 
         // ... or to debug with pre-configured location events
         //    mLocationProducer = new PlaybackLocationProducer(this,
         //            PlaybackLocationProducer.DEFAULT_DELAY)
         //            .setData(R.raw.playback_kluuvi);
 
-        mNavigationController = new NavigationController(this, mLocationProducer,
-                VenueMetadataStorage.getInstance(this));
+        // ... or to record a trace of the session for later playback
+        //    mLocationProducer = new RecordingLocationProducer(mLocationProducer,
+        //            new File(getExternalFilesDir(null), "trace.json"));
+
+        mNavigationController = new NavigationController(this, mLocationProducer, venueStorage);
         mNavigationController.setCenterOnLocation(true);
 
         mRecenterButton.setOnClickListener(new View.OnClickListener() {
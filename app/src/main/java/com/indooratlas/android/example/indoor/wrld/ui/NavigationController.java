@@ -1,6 +1,8 @@
 package com.indooratlas.android.example.indoor.wrld.ui;
 
-import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
@@ -18,11 +20,16 @@ import com.eegeo.mapapi.indoors.OnIndoorExitedListener;
 import com.eegeo.mapapi.map.OnInitialStreamingCompleteListener;
 import com.eegeo.mapapi.polygons.Polygon;
 import com.eegeo.mapapi.polygons.PolygonOptions;
-import com.google.maps.android.SphericalUtil;
 import com.indooratlas.android.example.indoor.wrld.Global;
 import com.indooratlas.android.example.indoor.wrld.R;
 import com.indooratlas.android.example.indoor.wrld.Utils;
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+import com.indooratlas.android.example.indoor.wrld.location.HandlerExecutor;
+import com.indooratlas.android.example.indoor.wrld.location.LocationEventBus;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
 import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+import com.indooratlas.android.example.indoor.wrld.model.IaId;
+import com.indooratlas.android.example.indoor.wrld.model.VenueCatalog;
 import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
 import com.indooratlas.android.example.indoor.wrld.model.VenueMetadataStorage;
 
@@ -92,8 +99,37 @@ class NavigationController implements LocationProducer.Listener {
      */
     private BuildingHighlight mBuildingHighlight;
 
-    private Polygon mAccuracyCircle;
+    /**
+     * Accuracy circle shown in debug builds, replaced only when it visibly changes.
+     */
+    private AccuracyCircleOverlay<Polygon> mAccuracyCircle;
+
+    /**
+     * Fill color of the accuracy circle, resolved once.
+     */
+    private int mAccuracyCircleColor;
+
+    /**
+     * Ids from the location callbacks, parsed once per venue and floor.
+     */
+    private final IaId.LastParsed mVenueIds = new IaId.LastParsed();
 
+    private final IaId.LastParsed mFloorIds = new IaId.LastParsed();
+
+    /**
+     * Copy of the producer's last fix, main thread only.
+     */
+    private final LocationFix mLastFix = new LocationFix();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mAccuracyCircleTick = new Runnable() {
+        @Override
+        public void run() {
+            mAccuracyCircle.tick();
+            scheduleAccuracyCircleTick();
+        }
+    };
 
     NavigationController(MapActivity activity,
                          LocationProducer producer,
@@ -101,7 +137,15 @@ class NavigationController implements LocationProducer.Listener {
         mMapActivity = activity;
         mLocationProducer = producer;
         mVenueStorage = venueMetadataStorage;
-        producer.setListener(this);
+        // producers run on their own threads, only the latest fix is worth drawing
+        producer.subscribe(this,
+                LocationEventBus.DispatchPolicy.latestOnly(HandlerExecutor.mainThread()));
+        venueMetadataStorage.whenLoaded(new VenueMetadataStorage.OnLoadedListener() {
+            @Override
+            public void onVenuesLoaded(VenueCatalog catalog) {
+                handleVenuesLoaded();
+            }
+        }, HandlerExecutor.mainThread());
     }
 
     /**
@@ -128,7 +172,10 @@ class NavigationController implements LocationProducer.Listener {
             } else if (mMap.getActiveIndoorMap() != null) {
                 mMap.exitIndoorMap();
             }
-            handleLocationUpdated(mLocationProducer.getLastLocation());
+            if (mLocationProducer.getLastFix(mLastFix)) {
+                handleLocationUpdated(mLastFix.latitude, mLastFix.longitude, mLastFix.bearing,
+                        mLastFix.accuracy);
+            }
         } else {
             clearAccuracyCircle();
         }
@@ -202,13 +249,12 @@ class NavigationController implements LocationProducer.Listener {
      * From LocationProducer. Location update is either from indoor or outdoor provider.
      */
     @Override
-    public void onLocationChanged(LocationProducer.LocationUpdate locationUpdate) {
-        Timber.v("onLocationChanged: " + locationUpdate);
+    public void onLocationChanged(LocationFix fix) {
         if (mMap == null) {
             Timber.w("map not yet initialized, location update is ignored");
             return;
         }
-        mBlueSphere.setLocation(locationUpdate.location);
+        mBlueSphere.setLocation(fix);
     }
 
 
@@ -227,6 +273,32 @@ class NavigationController implements LocationProducer.Listener {
 
         mMap = map;
 
+        mAccuracyCircleColor = ContextCompat.getColor(mMapActivity, R.color.accuracyCircle);
+        mAccuracyCircle = new AccuracyCircleOverlay<>(new Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return SystemClock.elapsedRealtime();
+            }
+        }, new AccuracyCircleOverlay.Renderer<Polygon>() {
+            @Override
+            public Polygon add(String indoorMapId, int floorId, double[] points, int count) {
+                PolygonOptions polygonOptions = new PolygonOptions();
+                polygonOptions.fillColor(mAccuracyCircleColor);
+                polygonOptions.elevation(0d);
+                polygonOptions.indoor(indoorMapId, floorId);
+                for (int i = 0; i < 2 * count; i += 2) {
+                    // the polygon API only takes LatLng instances
+                    polygonOptions.add(new LatLng(points[i], points[i + 1]));
+                }
+                return mMap.addPolygon(polygonOptions);
+            }
+
+            @Override
+            public void remove(Polygon polygon) {
+                mMap.removePolygon(polygon);
+            }
+        });
+
         mBlueSphere = new BlueSphereHelper(map.getBlueSphere()) {
             @Override
             protected void onUpdateLocation(double latitude, double longitude, float bearing,
@@ -264,12 +336,10 @@ class NavigationController implements LocationProducer.Listener {
                 Timber.d("initial streaming completed");
                 mInitialStreamingCompleted = true;
 
-                Location lastLocation = mLocationProducer.getLastLocation();
-                if (lastLocation != null) {
-                    LatLng latLng = new LatLng(lastLocation.getLatitude(),
-                            lastLocation.getLongitude());
+                if (mLocationProducer.getLastFix(mLastFix)) {
+                    LatLng latLng = new LatLng(mLastFix.latitude, mLastFix.longitude);
 
-                    Timber.d("moving camera to last location: %s", lastLocation);
+                    Timber.d("moving camera to last location: %s", mLastFix);
                     mMap.moveCamera(CameraUpdateFactory.newLatLng(latLng));
                     mMap.addOnCameraMoveListener(new OneTimeCameraMoveListener() {
 
@@ -296,38 +366,18 @@ class NavigationController implements LocationProducer.Listener {
 
     }
 
-    private void handleLocationUpdated(Location location) {
-        if (location != null) {
-            handleLocationUpdated(location.getLatitude(),
-                    location.getLongitude(),
-                    location.getBearing(),
-                    location.getAccuracy());
-        }
-    }
-
     private void handleLocationUpdated(double latitude, double longitude, float bearing,
                                        float accuracy) {
 
 
         if (Global.isDebug) {
-            clearAccuracyCircle();
             if (mMap.getActiveIndoorMap() != null) {
-                int points = 50;
-                int p = 360 / points;
-                int d = 0;
-                PolygonOptions polygonOptions = new PolygonOptions();
-                polygonOptions.fillColor(ContextCompat.getColor(mMapActivity,
-                        R.color.accuracyCircle));
-                polygonOptions.elevation(0d);
-                if (mMap.getActiveIndoorMap() != null) {
-                    polygonOptions.indoor(mCurrentIndoorMapId, mCurrentIndoorFloorId);
-                }
-                LatLng center = new LatLng(latitude, longitude);
-                for (int i = 0; i < points; ++i, d += p) {
-                    polygonOptions.add(SphericalUtil.computeOffset(center, accuracy, d));
-                }
-                Timber.v("adding new accuracy circle");
-                mAccuracyCircle = mMap.addPolygon(polygonOptions);
+                mAccuracyCircle.update(latitude, longitude, accuracy,
+                        mMap.getCameraPosition().zoom, mCurrentIndoorMapId,
+                        mCurrentIndoorFloorId);
+                scheduleAccuracyCircleTick();
+            } else {
+                clearAccuracyCircle();
             }
         }
 
@@ -344,10 +394,21 @@ class NavigationController implements LocationProducer.Listener {
     }
 
     private void clearAccuracyCircle() {
-        if (mMap != null && mAccuracyCircle != null) {
-            Timber.v("removing old accuracy circle");
-            mMap.removePolygon(mAccuracyCircle);
-            mAccuracyCircle = null;
+        if (mAccuracyCircle != null) {
+            mHandler.removeCallbacks(mAccuracyCircleTick);
+            mAccuracyCircle.clear();
+        }
+    }
+
+    /**
+     * Makes sure a change held back by the rate limit is drawn when the blue dot stops moving.
+     */
+    private void scheduleAccuracyCircleTick() {
+        mHandler.removeCallbacks(mAccuracyCircleTick);
+        long deadline = mAccuracyCircle.getNextDeadline();
+        if (deadline != AccuracyCircleOverlay.NO_DEADLINE) {
+            mHandler.postDelayed(mAccuracyCircleTick,
+                    Math.max(0, deadline - SystemClock.elapsedRealtime()));
         }
     }
 
@@ -372,7 +433,13 @@ class NavigationController implements LocationProducer.Listener {
             return;
         }
 
-        VenueMetadata venue = mVenueStorage.findByIaId(venueId);
+        if (!mVenueStorage.isLoaded()) {
+            Timber.d("venue metadata not loaded yet, deferring enter indoors");
+            return;
+        }
+
+        IaId venueIaId = mVenueIds.parse(venueId);
+        VenueMetadata venue = venueIaId != null ? mVenueStorage.findByIaId(venueIaId) : null;
         if (venue != null) {
             Timber.d("opening indoor map for venue: %s", venue);
             mMap.enterIndoorMap(venue.wrldId);
@@ -412,15 +479,23 @@ class NavigationController implements LocationProducer.Listener {
             return;
         }
 
+        if (!mVenueStorage.isLoaded()) {
+            Timber.d("venue metadata not loaded yet, deferring floor change");
+            return;
+        }
+
         // we may get floor change event though this is a venue we have detected
-        final VenueMetadata venue = mVenueStorage.findByIaId(venueId);
+        final IaId venueIaId = mVenueIds.parse(venueId);
+        final VenueMetadata venue = venueIaId != null ? mVenueStorage.findByIaId(venueIaId) : null;
         if (venue == null) {
             Timber.w("floor changed but we have no venue metadata for it, venue id: %s", venueId);
             return;
         }
 
         // floor was changed in the indoor map user is currently viewing
-        VenueMetadata.FloorMetadata floor = venue.findFloorByIaId(floorId);
+        IaId floorIaId = mFloorIds.parse(floorId);
+        VenueMetadata.FloorMetadata floor = floorIaId != null ? venue.findFloorByIaId(floorIaId)
+                : null;
         if (floor == null) {
             Timber.w("floor changed but we have no floor metadata for it, floor id %s", floorId);
             // try to hide blue dot since we've moved to a floor for which we have no metadata
@@ -440,6 +515,30 @@ class NavigationController implements LocationProducer.Listener {
         FloorLevelView.show(mMapActivity, floorLevel, mMapActivity.getString(R.string.floor_level_subtitle));
     }
 
+    /**
+     * Redoes the venue lookups that were skipped because the catalog was still loading. Entering
+     * the indoor map replays the floor change once the map is shown.
+     */
+    private void handleVenuesLoaded() {
+        Timber.d("venue metadata loaded");
+        if (mMap == null || mLocationProducer.getVenueId() == null) {
+            // nothing was skipped, the map setup looks venues up itself
+            return;
+        }
+        if (mMap.getActiveIndoorMap() == null) {
+            if (mBuildingHighlight == null) {
+                enableBuildingHighLight();
+            }
+            if (mLocationProducer.isIndoors()) {
+                handleEnterIndoors(mLocationProducer.getVenueId());
+            }
+        } else if (mLocationProducer.isIndoors()) {
+            handleFloorChange(mLocationProducer.getVenueId(),
+                    mLocationProducer.getFloorId(),
+                    mLocationProducer.getFloorLevel());
+        }
+    }
+
     /**
      *
      */
@@ -457,8 +556,8 @@ class NavigationController implements LocationProducer.Listener {
         if (mMap == null) {
             return;
         }
-        String venueId = mLocationProducer.getVenueId();
-        VenueMetadata venue = mVenueStorage.findByIaId(venueId);
+        IaId venueId = mVenueIds.parse(mLocationProducer.getVenueId());
+        VenueMetadata venue = venueId != null ? mVenueStorage.findByIaId(venueId) : null;
         if (venue != null && venue.coordinates != null && venue.coordinates.length == 2) {
             LatLng latLng = new LatLng(venue.coordinates[0], venue.coordinates[1]);
             mBuildingHighlight = mMap.addBuildingHighlight(new BuildingHighlightOptions()
@@ -0,0 +1,202 @@
+package com.google.maps.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the batch distances and nearest points against {@link SphericalUtil} and a full sort.
+ */
+public class SphericalBatchTest {
+
+    private static final double LATITUDE = 60.17;
+
+    private static final double LONGITUDE = 24.94;
+
+    @Test
+    public void distancesMatchSphericalUtil() {
+        SphericalBatch batch = randomBatch(new Random(1), 1000, 0.5);
+        double[] distances = new double[batch.size()];
+        batch.computeDistances(LATITUDE, LONGITUDE, distances);
+        for (int i = 0; i < batch.size(); i++) {
+            double expected = SphericalUtil.computeDistanceBetween(LATITUDE, LONGITUDE,
+                    batch.getLatitude(i), batch.getLongitude(i));
+            assertEquals(expected, distances[i], 1e-6);
+        }
+        // far apart and antipodal
+        SphericalBatch far = new SphericalBatch(new double[]{-60.17, -33.86},
+                new double[]{-155.06, 151.21});
+        far.computeDistances(LATITUDE, LONGITUDE, distances);
+        assertEquals(Math.PI * 6371009, distances[0], 1e-3);
+        assertEquals(SphericalUtil.computeDistanceBetween(LATITUDE, LONGITUDE, -33.86, 151.21),
+                distances[1], 1e-3);
+    }
+
+    @Test
+    public void findNearestMatchesFullSort() {
+        Random random = new Random(2);
+        SphericalBatch batch = randomBatch(random, 5000, 0.1);
+        int[] indices = new int[10];
+        double[] distances = new double[10];
+        for (int round = 0; round < 50; round++) {
+            double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.1;
+            double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.2;
+            double maxMeters = round % 2 == 0 ? Double.MAX_VALUE : 300;
+            int k = 1 + round % 10;
+            int found = batch.findNearest(latitude, longitude, k, maxMeters, indices,
+                    distances);
+            double[] expected = sortedDistances(batch, latitude, longitude, maxMeters);
+            assertEquals(Math.min(k, expected.length), found);
+            for (int i = 0; i < found; i++) {
+                assertEquals(expected[i], distances[i], 1e-6);
+                assertEquals(distances[i], SphericalUtil.computeDistanceBetween(latitude,
+                        longitude, batch.getLatitude(indices[i]),
+                        batch.getLongitude(indices[i])), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        Random random = new Random(3);
+        SphericalBatch batch = randomBatch(random, 4 * SphericalBatch.PARALLEL_THRESHOLD + 17,
+                1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[] indices = new int[20];
+            double[] distances = new double[20];
+            int[] parallelIndices = new int[20];
+            double[] parallelDistances = new double[20];
+            for (int round = 0; round < 10; round++) {
+                double latitude = LATITUDE + random.nextDouble() - 0.5;
+                double longitude = LONGITUDE + random.nextDouble() - 0.5;
+                int found = batch.findNearest(latitude, longitude, 20, 5000, indices,
+                        distances);
+                assertEquals(found, batch.findNearest(latitude, longitude, 20, 5000,
+                        parallelIndices, parallelDistances, pool));
+                assertTrue(found > 0);
+                assertArrayEquals(distances, parallelDistances, 0);
+                assertArrayEquals(indices, parallelIndices);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void nearestOverSeveralBatches() {
+        Random random = new Random(4);
+        SphericalBatch first = randomBatch(random, 300, 0.05);
+        SphericalBatch second = randomBatch(random, 300, 0.05);
+        String[] firstNames = names("a", first.size());
+        String[] secondNames = names("b", second.size());
+        SphericalBatch.Nearest<String> nearest = new SphericalBatch.Nearest<>(5);
+        nearest.reset(LATITUDE, LONGITUDE, 1000);
+        nearest.add(first, firstNames);
+        nearest.add(second, secondNames);
+
+        int[] indices = new int[5];
+        double[] firstDistances = new double[5];
+        double[] secondDistances = new double[5];
+        int firstFound = first.findNearest(LATITUDE, LONGITUDE, 5, 1000, indices,
+                firstDistances);
+        int secondFound = second.findNearest(LATITUDE, LONGITUDE, 5, 1000, indices,
+                secondDistances);
+        double[] merged = new double[firstFound + secondFound];
+        System.arraycopy(firstDistances, 0, merged, 0, firstFound);
+        System.arraycopy(secondDistances, 0, merged, firstFound, secondFound);
+        Arrays.sort(merged);
+        assertEquals(Math.min(5, merged.length), nearest.size());
+        for (int i = 0; i < nearest.size(); i++) {
+            assertEquals(merged[i], nearest.getDistance(i), 1e-9);
+            String name = nearest.get(i);
+            SphericalBatch batch = name.startsWith("a") ? first : second;
+            assertEquals(name.substring(0, 1) + nearest.getIndex(i), name);
+            assertEquals(nearest.getDistance(i), SphericalUtil.computeDistanceBetween(LATITUDE,
+                    LONGITUDE, batch.getLatitude(nearest.getIndex(i)),
+                    batch.getLongitude(nearest.getIndex(i))), 1e-6);
+        }
+        assertEquals(nearest.getDistance(nearest.size() - 1), nearest.getFarthestDistance(),
+                1e-9);
+    }
+
+    @Test
+    public void collectWithinRadius() {
+        SphericalBatch batch = randomBatch(new Random(5), 2000, 0.05);
+        String[] names = names("", batch.size());
+        List<String> within = new ArrayList<>();
+        int added = batch.collectWithinRadius(LATITUDE, LONGITUDE, 500, names, within);
+        assertEquals(within.size(), added);
+        int expected = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            double distance = SphericalUtil.computeDistanceBetween(LATITUDE, LONGITUDE,
+                    batch.getLatitude(i), batch.getLongitude(i));
+            if (distance <= 500) {
+                assertTrue(within.contains(names[i]));
+                expected++;
+            }
+        }
+        assertEquals(expected, added);
+        assertEquals(0, batch.collectWithinRadius(LATITUDE, LONGITUDE, -1, names, within));
+    }
+
+    @Test
+    public void withAndWithout() {
+        SphericalBatch batch = SphericalBatch.empty().with(60.1, 24.1).with(60.2, 24.2)
+                .with(60.3, 24.3);
+        SphericalBatch expected = new SphericalBatch(new double[]{60.1, 60.3},
+                new double[]{24.1, 24.3});
+        SphericalBatch removed = batch.without(1);
+        assertEquals(3, batch.size());
+        assertEquals(2, removed.size());
+        double[] distances = new double[2];
+        double[] expectedDistances = new double[2];
+        removed.computeDistances(LATITUDE, LONGITUDE, distances);
+        expected.computeDistances(LATITUDE, LONGITUDE, expectedDistances);
+        assertArrayEquals(expectedDistances, distances, 0);
+        assertEquals(60.3, removed.getLatitude(1), 0);
+        assertEquals(24.3, removed.getLongitude(1), 0);
+    }
+
+    private static SphericalBatch randomBatch(Random random, int size, double spread) {
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = LATITUDE + (random.nextDouble() - 0.5) * spread;
+            longitudes[i] = LONGITUDE + (random.nextDouble() - 0.5) * 2 * spread;
+        }
+        return new SphericalBatch(latitudes, longitudes);
+    }
+
+    private static double[] sortedDistances(SphericalBatch batch, double latitude,
+                                            double longitude, double maxMeters) {
+        double[] distances = new double[batch.size()];
+        int count = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            double distance = SphericalUtil.computeDistanceBetween(latitude, longitude,
+                    batch.getLatitude(i), batch.getLongitude(i));
+            if (distance <= maxMeters) {
+                distances[count++] = distance;
+            }
+        }
+        distances = Arrays.copyOf(distances, count);
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    private static String[] names(String prefix, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + i;
+        }
+        return names;
+    }
+}
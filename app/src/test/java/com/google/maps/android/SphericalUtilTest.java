@@ -0,0 +1,139 @@
+package com.google.maps.android;
+
+import com.eegeo.mapapi.geometry.LatLng;
+import com.indooratlas.android.example.indoor.wrld.AllocationCounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the primitive and batch variants against the {@link LatLng} ones.
+ */
+public class SphericalUtilTest {
+
+    private static final double EPSILON = 1e-9;
+
+    private static final LatLng KAMPPI = new LatLng(60.16926, 24.93206);
+
+    private static final LatLng STOCKMAN = new LatLng(60.16843, 24.94168);
+
+    @Test
+    public void primitiveVariantsMatchLatLngVariants() {
+        double[] out = new double[4];
+        for (int heading = -180; heading < 360; heading += 15) {
+            LatLng expected = SphericalUtil.computeOffset(KAMPPI, 25, heading);
+            SphericalUtil.computeOffset(KAMPPI.latitude, KAMPPI.longitude, 25, heading, out, 2);
+            assertEquals(expected.latitude, out[2], EPSILON);
+            assertEquals(expected.longitude, out[3], EPSILON);
+
+            LatLng origin = SphericalUtil.computeOffsetOrigin(expected, 25, heading);
+            assertTrue(SphericalUtil.computeOffsetOrigin(expected.latitude, expected.longitude,
+                    25, heading, out, 0));
+            assertEquals(origin.latitude, out[0], EPSILON);
+            assertEquals(origin.longitude, out[1], EPSILON);
+            assertEquals(KAMPPI.latitude, out[0], EPSILON);
+            assertEquals(KAMPPI.longitude, out[1], EPSILON);
+        }
+        for (double fraction = -0.5; fraction <= 1.5; fraction += 0.25) {
+            LatLng expected = SphericalUtil.interpolate(KAMPPI, STOCKMAN, fraction);
+            SphericalUtil.interpolate(KAMPPI.latitude, KAMPPI.longitude, STOCKMAN.latitude,
+                    STOCKMAN.longitude, fraction, out, 1);
+            assertEquals(expected.latitude, out[1], EPSILON);
+            assertEquals(expected.longitude, out[2], EPSILON);
+        }
+        assertEquals(SphericalUtil.computeHeading(KAMPPI, STOCKMAN),
+                SphericalUtil.computeHeading(KAMPPI.latitude, KAMPPI.longitude,
+                        STOCKMAN.latitude, STOCKMAN.longitude), EPSILON);
+        assertEquals(SphericalUtil.computeDistanceBetween(KAMPPI, STOCKMAN),
+                SphericalUtil.computeDistanceBetween(KAMPPI.latitude, KAMPPI.longitude,
+                        STOCKMAN.latitude, STOCKMAN.longitude), EPSILON);
+    }
+
+    @Test
+    public void batchVariantsMatchSinglePoints() {
+        int count = 50;
+        double[] headings = new double[count];
+        for (int i = 0; i < count; i++) {
+            headings[i] = 360.0 * i / count;
+        }
+        double[] offsets = new double[2 * count];
+        double[] circle = new double[2 * count];
+        SphericalUtil.computeOffsets(KAMPPI.latitude, KAMPPI.longitude, 12, headings, count,
+                offsets);
+        SphericalUtil.computeCircle(KAMPPI.latitude, KAMPPI.longitude, 12, count, circle);
+        for (int i = 0; i < count; i++) {
+            LatLng expected = SphericalUtil.computeOffset(KAMPPI, 12, headings[i]);
+            assertEquals(expected.latitude, offsets[2 * i], EPSILON);
+            assertEquals(expected.longitude, offsets[2 * i + 1], EPSILON);
+            assertEquals(expected.latitude, circle[2 * i], EPSILON);
+            assertEquals(expected.longitude, circle[2 * i + 1], EPSILON);
+        }
+
+        double[] path = new double[2 * 5];
+        SphericalUtil.interpolate(KAMPPI.latitude, KAMPPI.longitude, STOCKMAN.latitude,
+                STOCKMAN.longitude, 5, path);
+        for (int i = 0; i < 5; i++) {
+            LatLng expected = SphericalUtil.interpolate(KAMPPI, STOCKMAN, i / 4.0);
+            assertEquals(expected.latitude, path[2 * i], EPSILON);
+            assertEquals(expected.longitude, path[2 * i + 1], EPSILON);
+        }
+        assertEquals(STOCKMAN.latitude, path[8], EPSILON);
+        assertEquals(STOCKMAN.longitude, path[9], EPSILON);
+    }
+
+    @Test
+    public void degenerateCases() {
+        // interpolating between equal points gives that point
+        double[] path = new double[6];
+        SphericalUtil.interpolate(KAMPPI.latitude, KAMPPI.longitude, KAMPPI.latitude,
+                KAMPPI.longitude, 3, path);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(KAMPPI.latitude, path[2 * i], 0);
+            assertEquals(KAMPPI.longitude, path[2 * i + 1], 0);
+        }
+
+        // no origin at a quarter of the circumference north of 80 degrees
+        double[] out = {1, 2};
+        double quarter = Math.PI / 2 * MathUtil.EARTH_RADIUS;
+        assertNull(SphericalUtil.computeOffsetOrigin(new LatLng(80, 0), quarter, 90));
+        assertFalse(SphericalUtil.computeOffsetOrigin(80, 0, quarter, 90, out, 0));
+        assertEquals(1, out[0], 0);
+        assertEquals(2, out[1], 0);
+    }
+
+    @Test
+    public void primitiveVariantsDoNotAllocate() {
+        double[] headings = new double[50];
+        double[] out = new double[2 * headings.length];
+        for (int i = 0; i < 3; i++) {
+            run(headings, out);
+        }
+        AllocationCounter counter = AllocationCounter.forCurrentThread();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            counter.start();
+            run(headings, out);
+            allocated = Math.min(allocated, counter.stop());
+        }
+        assertEquals(0, allocated);
+    }
+
+    private static void run(double[] headings, double[] out) {
+        for (int i = 0; i < 1000; i++) {
+            double latitude = KAMPPI.latitude + i * 1e-6;
+            SphericalUtil.computeCircle(latitude, KAMPPI.longitude, 10, 50, out);
+            SphericalUtil.computeOffsets(latitude, KAMPPI.longitude, 10, headings,
+                    headings.length, out);
+            SphericalUtil.computeOffset(latitude, KAMPPI.longitude, 10, i, out, 0);
+            SphericalUtil.computeOffsetOrigin(latitude, KAMPPI.longitude, 10, i, out, 0);
+            SphericalUtil.interpolate(latitude, KAMPPI.longitude, STOCKMAN.latitude,
+                    STOCKMAN.longitude, 0.5, out, 0);
+            SphericalUtil.interpolate(latitude, KAMPPI.longitude, STOCKMAN.latitude,
+                    STOCKMAN.longitude, 50, out);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.indooratlas.android.example.indoor.wrld;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts bytes allocated by the current thread. Relies on the HotSpot specific
+ * {@code com.sun.management.ThreadMXBean}, tests using this are skipped on other VMs.
+ */
+public final class AllocationCounter {
+
+    private final com.sun.management.ThreadMXBean mBean;
+
+    private final long mThreadId;
+
+    private final long mOverhead;
+
+    private long mStart;
+
+    private AllocationCounter(com.sun.management.ThreadMXBean bean) {
+        mBean = bean;
+        mThreadId = Thread.currentThread().getId();
+        // measure the cost of the measurement itself so that it can be subtracted
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            long a = mBean.getThreadAllocatedBytes(mThreadId);
+            long b = mBean.getThreadAllocatedBytes(mThreadId);
+            overhead = Math.min(overhead, b - a);
+        }
+        mOverhead = overhead;
+    }
+
+    /**
+     * Returns a counter for the calling thread or skips the test if allocation counting is not
+     * supported.
+     */
+    public static AllocationCounter forCurrentThread() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("allocation counting not supported",
+                bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue("allocation counting not supported",
+                threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return new AllocationCounter(threadBean);
+    }
+
+    public void start() {
+        mStart = mBean.getThreadAllocatedBytes(mThreadId);
+    }
+
+    /**
+     * Returns number of bytes allocated since {@link #start()}.
+     */
+    public long stop() {
+        long end = mBean.getThreadAllocatedBytes(mThreadId);
+        return Math.max(0, end - mStart - mOverhead);
+    }
+}
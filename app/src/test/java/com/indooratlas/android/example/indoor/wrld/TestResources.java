@@ -0,0 +1,24 @@
+package com.indooratlas.android.example.indoor.wrld;
+
+import java.io.File;
+
+/**
+ * Locates app resources from unit tests regardless of whether they are run from the module or
+ * the project directory.
+ */
+public final class TestResources {
+
+    private TestResources() {
+    }
+
+    public static File raw(String name) {
+        File file = new File("src/main/res/raw", name);
+        if (!file.exists()) {
+            file = new File("app/src/main/res/raw", name);
+        }
+        if (!file.exists()) {
+            throw new IllegalStateException("raw resource not found: " + name);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,83 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GpsDutyCyclePolicyTest {
+
+    private static final double VENUE_LAT = 60.1695617;
+    private static final double VENUE_LON = 24.9332728;
+
+    private IndoorOutdoorTransitionEngineTest.FakeClock mClock;
+
+    private final List<GpsDutyCyclePolicy.Mode> mModes = new ArrayList<>();
+
+    private GpsDutyCyclePolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mClock = new IndoorOutdoorTransitionEngineTest.FakeClock();
+        mPolicy = new GpsDutyCyclePolicy(mClock, new GpsDutyCyclePolicy.Config(),
+                new GpsDutyCyclePolicy.Callback() {
+                    @Override
+                    public void onGpsModeChanged(GpsDutyCyclePolicy.Mode mode) {
+                        mModes.add(mode);
+                    }
+                });
+        mPolicy.setVenueBoundary(VENUE_LAT, VENUE_LON, 100f);
+    }
+
+    @Test
+    public void reducesAndSuspendsWhenStablyIndoors() {
+        mPolicy.onIndoorsChanged(true);
+        mPolicy.onIndoorFix(VENUE_LAT, VENUE_LON, 5f);
+        assertEquals(GpsDutyCyclePolicy.Mode.CONTINUOUS, mPolicy.getMode());
+
+        advanceTo(10000);
+        assertEquals(GpsDutyCyclePolicy.Mode.REDUCED, mPolicy.getMode());
+        advanceTo(60000);
+        assertEquals(GpsDutyCyclePolicy.Mode.SUSPENDED, mPolicy.getMode());
+        assertEquals(GpsDutyCyclePolicy.NO_DEADLINE, mPolicy.getNextDeadline());
+    }
+
+    @Test
+    public void resumesNearBoundaryAndOnPendingExit() {
+        mPolicy.onIndoorsChanged(true);
+        advanceTo(60000);
+        assertEquals(GpsDutyCyclePolicy.Mode.SUSPENDED, mPolicy.getMode());
+
+        // ~90m north of the venue center with 100m radius
+        mPolicy.onIndoorFix(VENUE_LAT + 0.0008, VENUE_LON, 5f);
+        assertEquals(GpsDutyCyclePolicy.Mode.CONTINUOUS, mPolicy.getMode());
+
+        mPolicy.onIndoorFix(VENUE_LAT, VENUE_LON, 5f);
+        advanceTo(120000);
+        assertEquals(GpsDutyCyclePolicy.Mode.SUSPENDED, mPolicy.getMode());
+
+        mPolicy.onExitPending(true);
+        assertEquals(GpsDutyCyclePolicy.Mode.CONTINUOUS, mPolicy.getMode());
+        assertEquals(6, mModes.size());
+    }
+
+    @Test
+    public void countsCallbacks() {
+        mPolicy.recordCallback(false);
+        mPolicy.recordCallback(true);
+        mPolicy.recordCallback(true);
+        assertEquals(3, mPolicy.getCallbackCount());
+        assertEquals(2, mPolicy.getDiscardedCount());
+    }
+
+    private void advanceTo(long time) {
+        while (mPolicy.getNextDeadline() <= time) {
+            mClock.now = mPolicy.getNextDeadline();
+            mPolicy.tick();
+        }
+        mClock.now = time;
+    }
+}
@@ -0,0 +1,257 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndoorOutdoorTransitionEngineTest {
+
+    private FakeClock mClock;
+
+    private CountingCallback mCallback;
+
+    private IndoorOutdoorTransitionEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mCallback = new CountingCallback();
+        mEngine = new IndoorOutdoorTransitionEngine(mClock,
+                new IndoorOutdoorTransitionEngine.Config(), mCallback);
+    }
+
+    @Test
+    public void entersAfterDwellWithGoodIndoorFix() {
+        mEngine.onEnterFloorPlan();
+        mEngine.onIndoorFix(3f);
+        assertFalse(mEngine.isIndoors());
+        assertEquals(1000, mEngine.getNextDeadline());
+
+        advance(1000);
+        assertTrue(mEngine.isIndoors());
+        assertEquals(1, mCallback.enters);
+    }
+
+    @Test
+    public void doesNotEnterWithPoorIndoorFixes() {
+        mEngine.onEnterFloorPlan();
+        mEngine.onIndoorFix(30f);
+        advance(5000);
+        assertFalse(mEngine.isIndoors());
+        assertEquals(10000, mEngine.getNextDeadline());
+
+        // confidence is smoothed, one good fix is not enough to recover from a poor one
+        mEngine.onIndoorFix(2f);
+        assertFalse(mEngine.isIndoors());
+        mEngine.onIndoorFix(2f);
+        assertTrue(mEngine.isIndoors());
+    }
+
+    @Test
+    public void entersAfterMaxDwellWhenIndoorAccuracyStaysPoor() {
+        mEngine.onEnterFloorPlan();
+        for (int second = 0; second < 9; second++) {
+            mEngine.onIndoorFix(25f);
+            advance(1000);
+            assertFalse(mEngine.isIndoors());
+        }
+        mEngine.onIndoorFix(25f);
+        assertEquals(10000, mEngine.getNextDeadline());
+        advance(1000);
+        assertTrue(mEngine.isIndoors());
+        assertEquals(1, mCallback.enters);
+        assertEquals(IndoorOutdoorTransitionEngine.NO_DEADLINE, mEngine.getNextDeadline());
+    }
+
+    @Test
+    public void entersOnlyWithMarginOverGps() {
+        mEngine = new IndoorOutdoorTransitionEngine(mClock,
+                new IndoorOutdoorTransitionEngine.Config().setEnterMargin(0.5f), mCallback);
+        mEngine.onEnterFloorPlan();
+        mEngine.onIndoorFix(3f);
+        mEngine.onOutdoorFix(20f);
+        advance(1000);
+        assertFalse("outdoor confidence 0.75 is within the margin", mEngine.isIndoors());
+
+        // smoothed outdoor confidence 0.525, then 0.3675
+        mEngine.onOutdoorFix(50f);
+        assertFalse(mEngine.isIndoors());
+        mEngine.onOutdoorFix(50f);
+        assertTrue(mEngine.isIndoors());
+    }
+
+    @Test
+    public void exitsAfterDwellOnlyWhenGpsIsGood() {
+        enterIndoors();
+        mEngine.onExitFloorPlan();
+        mEngine.onOutdoorFix(80f);
+        advance(1500);
+        assertTrue("poor GPS keeps us indoors", mEngine.isIndoors());
+
+        mEngine.onOutdoorFix(5f);
+        mEngine.onOutdoorFix(5f);
+        assertFalse(mEngine.isIndoors());
+        assertEquals(1, mCallback.exits);
+        assertEquals(1, mCallback.venueLost);
+    }
+
+    @Test
+    public void exitsAfterMaxDwellWithoutGps() {
+        enterIndoors();
+        mEngine.onExitFloorPlan();
+        advance(9999);
+        assertTrue(mEngine.isIndoors());
+        advance(1);
+        assertFalse(mEngine.isIndoors());
+    }
+
+    @Test
+    public void venueExitIsImmediate() {
+        enterIndoors();
+        mEngine.onExitVenue();
+        assertFalse(mEngine.isIndoors());
+        assertEquals(1, mCallback.exits);
+        assertEquals(0, mCallback.venueLost);
+    }
+
+    /**
+     * Replays synthetic building entrances where floor plan detection flaps and compares the
+     * number of map switches to the fixed-delay logic previously used by the producer.
+     */
+    @Test
+    public void replayedEntrancesSwitchMapsLessThanFixedDelay() {
+        final int entrances = 2000;
+        Random random = new Random(42);
+        int engineSwitches = 0;
+        int fixedDelaySwitches = 0;
+        for (int i = 0; i < entrances; i++) {
+            setUp();
+            FixedDelayModel fixedDelay = new FixedDelayModel();
+            long seed = random.nextLong();
+            replayEntrance(new Random(seed), fixedDelay);
+            engineSwitches += mCallback.enters + mCallback.exits;
+            fixedDelaySwitches += fixedDelay.switches;
+            assertTrue("ends indoors", mEngine.isIndoors());
+        }
+        // every entrance needs at least one switch
+        assertTrue(engineSwitches >= entrances);
+        assertTrue("engine: " + engineSwitches + ", fixed delay: " + fixedDelaySwitches,
+                engineSwitches * 2 < fixedDelaySwitches);
+    }
+
+    /**
+     * Walks in through an entrance: GPS degrades while IndoorAtlas floor plan detection toggles
+     * a few times before settling.
+     */
+    private void replayEntrance(Random random, FixedDelayModel fixedDelay) {
+        boolean onFloorPlan = false;
+        int flaps = 2 + random.nextInt(6);
+        for (int second = 0; second < 40; second++) {
+            boolean settled = second >= flaps * 3;
+            boolean wantFloorPlan = settled || (second > 2 && random.nextInt(3) > 0);
+            if (wantFloorPlan != onFloorPlan) {
+                onFloorPlan = wantFloorPlan;
+                if (onFloorPlan) {
+                    mEngine.onEnterFloorPlan();
+                    fixedDelay.onEnterFloorPlan(mClock.now);
+                } else {
+                    mEngine.onExitFloorPlan();
+                    fixedDelay.onExitFloorPlan(mClock.now);
+                }
+            }
+            // GPS gets worse as we move in, indoor positioning better
+            mEngine.onOutdoorFix(8f + second * 3f + random.nextFloat() * 10f);
+            mEngine.onIndoorFix(onFloorPlan ? 2f + random.nextFloat() * 6f : 25f);
+            for (int ms = 0; ms < 1000; ms += 250) {
+                advance(250);
+                fixedDelay.tick(mClock.now);
+            }
+        }
+    }
+
+    private void enterIndoors() {
+        mEngine.onEnterFloorPlan();
+        mEngine.onIndoorFix(3f);
+        advance(1000);
+        assertTrue(mEngine.isIndoors());
+    }
+
+    private void advance(long millis) {
+        long target = mClock.now + millis;
+        while (true) {
+            long deadline = mEngine.getNextDeadline();
+            if (deadline > target) {
+                break;
+            }
+            mClock.now = Math.max(mClock.now, deadline);
+            mEngine.tick();
+        }
+        mClock.now = target;
+    }
+
+    /**
+     * The logic the producer had before the engine: enter on first floor plan event, exit 1.5s
+     * after losing the floor plan unless re-entered.
+     */
+    static class FixedDelayModel {
+
+        boolean indoors;
+        long exitAt = Long.MAX_VALUE;
+        int switches;
+
+        void onEnterFloorPlan(long now) {
+            exitAt = Long.MAX_VALUE;
+            if (!indoors) {
+                indoors = true;
+                switches++;
+            }
+        }
+
+        void onExitFloorPlan(long now) {
+            exitAt = now + 1500;
+        }
+
+        void tick(long now) {
+            if (indoors && now >= exitAt) {
+                indoors = false;
+                exitAt = Long.MAX_VALUE;
+                switches++;
+            }
+        }
+    }
+
+    static class FakeClock implements Clock {
+
+        long now;
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    static class CountingCallback implements IndoorOutdoorTransitionEngine.Callback {
+
+        int enters;
+        int exits;
+        int venueLost;
+
+        @Override
+        public void onEnterIndoors() {
+            enters++;
+        }
+
+        @Override
+        public void onExitIndoors(boolean lost) {
+            exits++;
+            if (lost) {
+                venueLost++;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocationEventBusTest {
+
+    @Test
+    public void synchronousSubscribersReceiveEventsInOrder() {
+        LocationEventBus bus = new LocationEventBus();
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        bus.subscribe(first, LocationEventBus.DispatchPolicy.synchronous());
+        bus.subscribe(second, LocationEventBus.DispatchPolicy.synchronous());
+
+        bus.onEnterVenue("venue", "name");
+        bus.onLocationChanged(fix(1));
+
+        assertEquals("[venue:venue, fix:1.0]", first.events.toString());
+        assertEquals(first.events, second.events);
+
+        assertTrue(bus.unsubscribe(first));
+        assertFalse(bus.unsubscribe(first));
+        bus.onExitVenue("venue");
+        assertEquals(2, first.events.size());
+        assertEquals(3, second.events.size());
+    }
+
+    @Test
+    public void subscriberCanUnsubscribeDuringDispatch() {
+        final LocationEventBus bus = new LocationEventBus();
+        final RecordingListener other = new RecordingListener();
+        LocationProducer.Listener once = new LocationProducer.ListenerSupport() {
+            @Override
+            public void onLocationChanged(LocationFix fix) {
+                bus.unsubscribe(this);
+            }
+        };
+        bus.subscribe(once, LocationEventBus.DispatchPolicy.synchronous());
+        bus.subscribe(other, LocationEventBus.DispatchPolicy.synchronous());
+
+        bus.onLocationChanged(fix(1));
+        bus.onLocationChanged(fix(2));
+
+        assertEquals(1, bus.getSubscriberCount());
+        assertEquals(2, other.events.size());
+    }
+
+    @Test
+    public void asyncSubscriberCopiesEveryFix() {
+        LocationEventBus bus = new LocationEventBus();
+        ManualExecutor executor = new ManualExecutor();
+        RecordingListener listener = new RecordingListener();
+        bus.subscribe(listener, LocationEventBus.DispatchPolicy.async(executor));
+
+        LocationFix reused = new LocationFix();
+        bus.onLocationChanged(reused.set(LocationFix.SOURCE_OUTDOOR, 1, 0, 0, 0, 0, 0));
+        bus.onLocationChanged(reused.set(LocationFix.SOURCE_OUTDOOR, 2, 0, 0, 0, 0, 0));
+        assertEquals(0, listener.events.size());
+
+        executor.runAll();
+        assertEquals("[fix:1.0, fix:2.0]", listener.events.toString());
+    }
+
+    @Test
+    public void latestOnlySubscriberCoalescesFixesButKeepsContextOrder() {
+        LocationEventBus bus = new LocationEventBus();
+        ManualExecutor executor = new ManualExecutor();
+        RecordingListener listener = new RecordingListener();
+        bus.subscribe(listener, LocationEventBus.DispatchPolicy.latestOnly(executor));
+
+        bus.onLocationChanged(fix(1));
+        bus.onLocationChanged(fix(2));
+        bus.onEnterIndoors("venue");
+        bus.onLocationChanged(fix(3));
+        bus.onLocationChanged(fix(4));
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals("[fix:2.0, indoors:venue, fix:4.0]", listener.events.toString());
+    }
+
+    @Test
+    public void queuedSubscribersAreNeverInvokedConcurrently() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            LocationEventBus bus = new LocationEventBus();
+            OrderCheckingListener async = new OrderCheckingListener();
+            OrderCheckingListener latest = new OrderCheckingListener();
+            bus.subscribe(async, LocationEventBus.DispatchPolicy.async(pool));
+            bus.subscribe(latest, LocationEventBus.DispatchPolicy.latestOnly(pool));
+
+            LocationFix reused = new LocationFix();
+            for (int i = 1; i <= OrderCheckingListener.EVENTS; i++) {
+                if (i % 5 == 0 || i == OrderCheckingListener.EVENTS) {
+                    bus.onFloorChanged("venue", Integer.toString(i), null);
+                } else {
+                    // latitude and longitude from the same event, to catch torn fixes
+                    bus.onLocationChanged(reused.set(LocationFix.SOURCE_INDOOR, i, i, 0, 0, i,
+                            0));
+                }
+                if (i % 100 == 0) {
+                    // let the drains catch up now and then so they finish and restart
+                    Thread.yield();
+                }
+            }
+            async.await();
+            latest.await();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static LocationFix fix(double latitude) {
+        return new LocationFix().set(LocationFix.SOURCE_OUTDOOR, latitude, 0, 0, 0, 0,
+                LocationFix.NO_FLOOR);
+    }
+
+    static class ManualExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    static class RecordingListener extends LocationProducer.ListenerSupport {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            events.add("fix:" + fix.latitude);
+        }
+
+        @Override
+        public void onEnterIndoors(String venueId) {
+            events.add("indoors:" + venueId);
+        }
+
+        @Override
+        public void onEnterVenue(String venueId, String venueName) {
+            events.add("venue:" + venueId);
+        }
+
+        @Override
+        public void onExitVenue(String venueId) {
+            events.add("exit:" + venueId);
+        }
+    }
+
+    /**
+     * Fails if called concurrently or with events out of order, events carry their sequence
+     * number.
+     */
+    static class OrderCheckingListener extends LocationProducer.ListenerSupport {
+
+        static final int EVENTS = 20000;
+
+        private final AtomicInteger mActive = new AtomicInteger();
+
+        private final AtomicReference<String> mFailure = new AtomicReference<>();
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private int mLast;
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            if (fix.latitude != fix.longitude) {
+                mFailure.compareAndSet(null, "torn fix " + fix.latitude + ", " + fix.longitude);
+            }
+            receive((int) fix.latitude);
+        }
+
+        @Override
+        public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+            receive(Integer.parseInt(floorId));
+        }
+
+        private void receive(int sequence) {
+            if (mActive.incrementAndGet() != 1) {
+                mFailure.compareAndSet(null, "concurrent call at " + sequence);
+            }
+            if (sequence <= mLast) {
+                mFailure.compareAndSet(null, sequence + " after " + mLast);
+            }
+            mLast = sequence;
+            // widen the window for an overlapping drain
+            for (int i = 0; i < 50; i++) {
+                Thread.yield();
+                if (i % 10 == 0 && mActive.get() != 1) {
+                    mFailure.compareAndSet(null, "concurrent call at " + sequence);
+                }
+            }
+            mActive.decrementAndGet();
+            if (sequence == EVENTS) {
+                mDone.countDown();
+            }
+        }
+
+        void await() throws InterruptedException {
+            boolean done = mDone.await(60, TimeUnit.SECONDS);
+            assertNull(mFailure.get(), mFailure.get());
+            assertTrue("last event not delivered, last " + mLast, done);
+        }
+    }
+}
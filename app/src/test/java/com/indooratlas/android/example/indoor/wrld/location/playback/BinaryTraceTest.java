@@ -0,0 +1,116 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryTraceTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("trace", ".trace");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void convertsBundledTraces() throws IOException {
+        for (String name : new String[]{"playback_kamppi.json", "playback_kluuvi.json",
+                "playback_mikonkatu13.json"}) {
+            File json = TestResources.raw(name);
+            int count = BinaryTraceConverter.convert(json, mFile);
+            assertTrue(mFile.length() * 5 < json.length());
+
+            JsonPlaybackEventSource expected = new JsonPlaybackEventSource(
+                    JsonPlaybackEventSourceTest.fileOpener(json));
+            BinaryPlaybackEventSource actual = new BinaryPlaybackEventSource(mFile);
+            for (int i = 0; i < count; i++) {
+                assertEvent(expected.next().withTimestamp(i * 1000L), actual.next());
+            }
+            assertNull(expected.next());
+            assertNull(actual.next());
+
+            actual.rewind();
+            assertEquals(0, actual.next().timestamp);
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void encodesLargeJumpsAndGaps() throws IOException {
+        PlaybackEvent[] events = {
+                PlaybackEvent.venueEntry(5000000000L, "venue", null),
+                PlaybackEvent.location(5000000000L, 60.1698, 24.9353),
+                PlaybackEvent.location(5000000500L, 60.1699, 24.9352),
+                // antimeridian and a long pause
+                PlaybackEvent.location(5000100000L, -33.8688, -179.9999),
+                PlaybackEvent.location(5010000000L, -33.8688, 179.9999),
+                PlaybackEvent.floorEntry(5010000000L, "floor", "-1"),
+                PlaybackEvent.venueExit(5010000001L),
+        };
+        BinaryTraceWriter writer = new BinaryTraceWriter(mFile);
+        for (PlaybackEvent event : events) {
+            writer.write(event);
+        }
+        writer.close();
+
+        BinaryPlaybackEventSource source = new BinaryPlaybackEventSource(mFile);
+        for (PlaybackEvent event : events) {
+            assertEvent(event, source.next());
+        }
+        assertNull(source.next());
+        source.close();
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write("[{\"type\": \"location\", \"coordinates\": [60.1, 24.9]}]".getBytes("UTF-8"));
+        out.close();
+        try {
+            new BinaryPlaybackEventSource(mFile);
+            fail();
+        } catch (IOException expected) {
+        }
+
+        BinaryTraceWriter writer = new BinaryTraceWriter(mFile);
+        writer.write(PlaybackEvent.venueEntry(0, "venue", "name"));
+        writer.close();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 2);
+        file.close();
+        try {
+            new BinaryPlaybackEventSource(mFile);
+            fail();
+        } catch (IOException | RuntimeException expected) {
+        }
+    }
+
+    static void assertEvent(PlaybackEvent expected, PlaybackEvent actual) {
+        assertEquals(expected.toString(), expected.type, actual.type);
+        assertEquals(expected.toString(), expected.timestamp, actual.timestamp);
+        assertEquals(expected.latitude, actual.latitude, 1e-7);
+        assertEquals(expected.longitude, actual.longitude, 1e-7);
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.floorLevel, actual.floorLevel);
+    }
+}
@@ -0,0 +1,97 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonPlaybackEventSourceTest {
+
+    @Test
+    public void readsBundledTrace() throws IOException {
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(
+                fileOpener(TestResources.raw("playback_kamppi.json")));
+
+        PlaybackEvent first = source.next();
+        assertEquals(PlaybackEvent.TYPE_LOCATION, first.type);
+        assertEquals(60.16981, first.latitude, 0);
+        assertEquals(24.93535, first.longitude, 0);
+
+        int count = 1;
+        int venueEntries = 0;
+        int floorEntries = 0;
+        PlaybackEvent event;
+        while ((event = source.next()) != null) {
+            count++;
+            if (event.type == PlaybackEvent.TYPE_VENUE_ENTRY) {
+                venueEntries++;
+                assertEquals("dc1447ad-698a-4c43-aebc-3bec33e45823", event.id);
+                assertEquals("Kamppi", event.name);
+            } else if (event.type == PlaybackEvent.TYPE_FLOOR_ENTRY) {
+                floorEntries++;
+            }
+        }
+        // floor-exit is not a playback event
+        assertEquals(35, count);
+        assertEquals(1, venueEntries);
+        assertEquals(2, floorEntries);
+
+        source.rewind();
+        assertEquals(60.16981, source.next().latitude, 0);
+        source.close();
+    }
+
+    @Test
+    public void skipsUnknownEventsAndProperties() throws IOException {
+        String json = "[{\"type\":\"sensor\",\"values\":[1,2]},"
+                + "{\"type\":\"context\",\"kind\":\"floor-entry\",\"id\":\"f\",\"floorLevel\":2,"
+                + "\"extra\":{\"a\":1}},"
+                + "{\"type\":\"context\",\"kind\":\"venue-exit\"}]";
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(stringOpener(json));
+
+        PlaybackEvent floor = source.next();
+        assertEquals(PlaybackEvent.TYPE_FLOOR_ENTRY, floor.type);
+        assertEquals("f", floor.id);
+        assertEquals("2", floor.floorLevel);
+        assertEquals(PlaybackEvent.TYPE_VENUE_EXIT, source.next().type);
+        assertNull(source.next());
+    }
+
+    @Test
+    public void readsOptionalTimestamps() throws IOException {
+        String json = "[{\"type\":\"location\",\"timestamp\":1520000000123,"
+                + "\"coordinates\":[60.1,24.9]},"
+                + "{\"type\":\"location\",\"coordinates\":[60.2,24.8]}]";
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(stringOpener(json));
+
+        assertEquals(1520000000123L, source.next().timestamp);
+        assertEquals(PlaybackEvent.NO_TIMESTAMP, source.next().timestamp);
+        assertNull(source.next());
+    }
+
+    static StreamOpener fileOpener(final File file) {
+        return new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+        };
+    }
+
+    static StreamOpener stringOpener(final String json) {
+        return new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new ByteArrayInputStream(json.getBytes("UTF-8"));
+            }
+        };
+    }
+}
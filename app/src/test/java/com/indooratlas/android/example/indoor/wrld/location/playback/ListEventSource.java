@@ -0,0 +1,36 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory event source for tests.
+ */
+class ListEventSource implements PlaybackEventSource {
+
+    private final List<PlaybackEvent> mEvents;
+
+    private int mIndex;
+
+    ListEventSource(PlaybackEvent... events) {
+        this(Arrays.asList(events));
+    }
+
+    ListEventSource(List<PlaybackEvent> events) {
+        mEvents = events;
+    }
+
+    @Override
+    public PlaybackEvent next() {
+        return mIndex < mEvents.size() ? mEvents.get(mIndex++) : null;
+    }
+
+    @Override
+    public void rewind() {
+        mIndex = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
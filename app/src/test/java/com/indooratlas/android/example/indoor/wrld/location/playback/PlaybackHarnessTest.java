@@ -0,0 +1,149 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackHarnessTest {
+
+    private static final int KAMPPI_EVENTS = 35;
+
+    @Test
+    public void playsAllSessionsToTheEnd() throws Exception {
+        final List<AtomicInteger> venueEntries = Collections.synchronizedList(
+                new ArrayList<AtomicInteger>());
+        PlaybackHarness.Report report = new PlaybackHarness(
+                new PlaybackHarness.SessionFactory() {
+                    @Override
+                    public PlaybackEventSource openSource(int session) {
+                        return kamppi();
+                    }
+
+                    @Override
+                    public LocationProducer.Listener createController(int session) {
+                        final AtomicInteger entries = new AtomicInteger();
+                        venueEntries.add(entries);
+                        return new LocationProducer.ListenerSupport() {
+                            @Override
+                            public void onEnterVenue(String venueId, String venueName) {
+                                entries.incrementAndGet();
+                            }
+                        };
+                    }
+                })
+                .setSessions(50)
+                .setThreads(2)
+                .setClock(PlaybackClock.unthrottled())
+                .setMeasureHeap(false)
+                .run(10000);
+
+        assertEquals(50, report.sessions);
+        assertEquals(0, report.failedSessions);
+        assertEquals(50 * KAMPPI_EVENTS, report.events);
+        assertEquals(-1, report.heapPerSessionBytes);
+        assertEquals(50, venueEntries.size());
+        for (AtomicInteger entries : venueEntries) {
+            assertEquals(1, entries.get());
+        }
+    }
+
+    @Test
+    public void measuresLatencyWithScaledClock() throws Exception {
+        final List<PlaybackEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(PlaybackEvent.location(i * 1000L, 60.17, 24.94));
+        }
+        final AtomicInteger fixes = new AtomicInteger();
+        PlaybackHarness.Report report = new PlaybackHarness(
+                new PlaybackHarness.SessionFactory() {
+                    @Override
+                    public PlaybackEventSource openSource(int session) {
+                        return new ListEventSource(events);
+                    }
+
+                    @Override
+                    public LocationProducer.Listener createController(int session) {
+                        return new LocationProducer.ListenerSupport() {
+                            @Override
+                            public void onLocationChanged(LocationFix fix) {
+                                fixes.incrementAndGet();
+                            }
+                        };
+                    }
+                })
+                .setSessions(10)
+                .setThreads(2)
+                .setClock(PlaybackClock.scaled(200))
+                .run(10000);
+
+        assertEquals(200, report.events);
+        assertEquals(200, fixes.get());
+        // 19 intervals of 5 ms
+        assertTrue(report.elapsedMillis >= 90);
+        assertTrue(report.p50LatencyMicros <= report.p99LatencyMicros);
+        assertTrue(report.p99LatencyMicros <= report.maxLatencyMicros);
+        // measured while sessions run, so a racing collection may leave nothing to report
+        assertTrue(report.heapPerSessionBytes == -1 || report.heapPerSessionBytes > 0);
+    }
+
+    @Test
+    public void stopsAtTimeout() throws Exception {
+        final List<PlaybackEvent> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(PlaybackEvent.location(i * 1000L, 60.17, 24.94));
+        }
+        PlaybackHarness.Report report = new PlaybackHarness(
+                new PlaybackHarness.SessionFactory() {
+                    @Override
+                    public PlaybackEventSource openSource(int session) {
+                        return new ListEventSource(events);
+                    }
+
+                    @Override
+                    public LocationProducer.Listener createController(int session) {
+                        return new LocationProducer.ListenerSupport();
+                    }
+                })
+                .setSessions(4)
+                .setThreads(1)
+                .setMeasureHeap(false)
+                .run(200);
+
+        assertEquals(4, report.events);
+        assertTrue(report.elapsedMillis < 5000);
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.percentile(50), 5000 * 0.07);
+        assertEquals(9900, histogram.percentile(99), 9900 * 0.07);
+        assertEquals(10000, histogram.percentile(100));
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(3);
+        histogram.add(other);
+        assertEquals(10001, histogram.getCount());
+    }
+
+    private static PlaybackEventSource kamppi() {
+        return new JsonPlaybackEventSource(JsonPlaybackEventSourceTest.fileOpener(
+                TestResources.raw("playback_kamppi.json")));
+    }
+}
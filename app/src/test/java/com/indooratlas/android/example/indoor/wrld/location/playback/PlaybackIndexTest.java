@@ -0,0 +1,211 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackIndexTest {
+
+    private static final long INTERVAL = 1000;
+
+    private final List<String> mCallbacks = new ArrayList<>();
+
+    private final List<Long> mTimes = new ArrayList<>();
+
+    private final PlaybackDispatcher mDispatcher = new PlaybackDispatcher(
+            new LocationProducer.ListenerSupport() {
+                @Override
+                public void onLocationChanged(LocationFix fix) {
+                    mTimes.add(fix.time);
+                }
+
+                @Override
+                public void onEnterVenue(String venueId, String venueName) {
+                    mCallbacks.add("enter venue " + venueId);
+                }
+
+                @Override
+                public void onExitVenue(String venueId) {
+                    mCallbacks.add("exit venue " + venueId);
+                }
+
+                @Override
+                public void onEnterIndoors(String venueId) {
+                    mCallbacks.add("enter indoors");
+                }
+
+                @Override
+                public void onExitIndoors(String venueId) {
+                    mCallbacks.add("exit indoors");
+                }
+
+                @Override
+                public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+                    mCallbacks.add("floor " + floorLevel);
+                }
+            });
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("index", "");
+        mDir.delete();
+        mDir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void seekToEveryOrdinalRestoresState() throws IOException {
+        File trace = TestResources.raw("playback_kamppi.json");
+        PlaybackIndex index = PlaybackIndex.buildJson(
+                JsonPlaybackEventSourceTest.fileOpener(trace), INTERVAL, 4);
+        assertEquals(35, index.getEventCount());
+        assertEquals(9, index.getCheckpoints().size());
+
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(
+                JsonPlaybackEventSourceTest.fileOpener(trace));
+        List<String> states = sequentialStates(source);
+
+        PlaybackPump pump = new PlaybackPump(source, mDispatcher, PlaybackClock.unthrottled(),
+                INTERVAL);
+        for (int ordinal = 0; ordinal < index.getEventCount(); ordinal++) {
+            assertTrue(pump.seekToOrdinal(index, ordinal, 0));
+            assertEquals("ordinal " + ordinal, states.get(ordinal), state(mDispatcher));
+            long before = pump.getDispatchedCount();
+            while (pump.step(0) != PlaybackPump.END) {
+                // drain
+            }
+            assertEquals(index.getEventCount() - ordinal, pump.getDispatchedCount() - before);
+        }
+        assertFalse(pump.seekToOrdinal(index, index.getEventCount(), 0));
+        source.close();
+    }
+
+    @Test
+    public void seekToTimeInSidecarIndexedTraces() throws IOException {
+        File json = new File(mDir, "walk.json");
+        writeWalk(json, 5000);
+        File binary = new File(mDir, "walk.trace");
+        BinaryTraceConverter.convert(json, binary);
+
+        for (File trace : new File[]{json, binary}) {
+            PlaybackIndex index = PlaybackIndex.forFile(trace, INTERVAL);
+            File sidecar = new File(trace.getPath() + ".idx");
+            assertTrue(sidecar.exists());
+            assertEquals(5000, PlaybackIndex.forFile(trace, INTERVAL).getEventCount());
+
+            SeekablePlaybackEventSource source = trace == binary
+                    ? new BinaryPlaybackEventSource(trace)
+                    : new JsonPlaybackEventSource(JsonPlaybackEventSourceTest.fileOpener(trace));
+            List<String> states = sequentialStates(source);
+            PlaybackPump pump = new PlaybackPump(source, mDispatcher,
+                    PlaybackClock.unthrottled(), INTERVAL);
+
+            // 37 minutes in, in the middle of two events, on the third floor
+            long target = index.getStartTime() + 37 * 60 * 1000 + 250;
+            mCallbacks.clear();
+            assertTrue(pump.seekTo(index, target, 0));
+            assertEquals(states.get(4441), state(mDispatcher));
+            assertEquals("[enter venue venue-4, enter indoors, floor 3]", mCallbacks.toString());
+
+            mTimes.clear();
+            pump.step(0);
+            assertEquals(target + 250, (long) mTimes.get(0));
+
+            // back to the start leaves the venue
+            mCallbacks.clear();
+            assertTrue(pump.seekTo(index, 0, 0));
+            assertEquals("[exit indoors, exit venue venue-4]", mCallbacks.toString());
+            source.close();
+        }
+    }
+
+    /**
+     * Returns state before each event when played from the start.
+     */
+    private static List<String> sequentialStates(PlaybackEventSource source) throws IOException {
+        PlaybackDispatcher dispatcher = new PlaybackDispatcher(
+                new LocationProducer.ListenerSupport());
+        List<String> states = new ArrayList<>();
+        source.rewind();
+        PlaybackEvent event;
+        while ((event = source.next()) != null) {
+            states.add(state(dispatcher));
+            dispatcher.dispatch(event);
+        }
+        source.rewind();
+        return states;
+    }
+
+    private static String state(PlaybackDispatcher dispatcher) {
+        return dispatcher.getVenueId() + "/" + dispatcher.isIndoors() + "/"
+                + dispatcher.getFloorId() + "/" + dispatcher.getFloorLevel();
+    }
+
+    /**
+     * Writes a walk with an event every 500 ms, entering and leaving a venue and its floors.
+     */
+    private static void writeWalk(File file, int events) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write("[\n");
+        long time = 1520000000000L;
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                writer.write(",\n");
+            }
+            String context = null;
+            switch (i % 1000) {
+                case 100:
+                    context = "\"kind\":\"venue-entry\",\"id\":\"venue-" + i / 1000 + "\"";
+                    break;
+                case 200:
+                    context = "\"kind\":\"indoors-entry\"";
+                    break;
+                case 300:
+                case 500:
+                    context = "\"kind\":\"floor-entry\",\"id\":\"floor-" + i + "\","
+                            + "\"floorLevel\":\"" + (i % 1000) / 100 + "\"";
+                    break;
+                case 700:
+                    context = "\"kind\":\"indoors-exit\"";
+                    break;
+                case 800:
+                    context = "\"kind\":\"venue-exit\"";
+                    break;
+            }
+            if (context != null) {
+                writer.write("{\"type\":\"context\",\"timestamp\":" + time + "," + context + "}");
+            } else {
+                writer.write("{\"type\":\"location\",\"timestamp\":" + time
+                        + ",\"coordinates\":[" + (60 + i * 1e-5) + ",24.9]}");
+            }
+            time += 500;
+        }
+        writer.write("\n]\n");
+        writer.close();
+    }
+}
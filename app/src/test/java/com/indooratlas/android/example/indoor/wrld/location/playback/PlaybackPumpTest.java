@@ -0,0 +1,140 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackPumpTest {
+
+    private final List<Double> mLatitudes = new ArrayList<>();
+
+    private final PlaybackDispatcher mDispatcher = new PlaybackDispatcher(
+            new LocationProducer.ListenerSupport() {
+                @Override
+                public void onLocationChanged(LocationFix fix) {
+                    mLatitudes.add(fix.latitude);
+                }
+            });
+
+    @Test
+    public void realTimeFollowsTimestamps() throws IOException {
+        PlaybackPump pump = new PlaybackPump(new ListEventSource(
+                PlaybackEvent.location(5000, 1, 0),
+                PlaybackEvent.location(6000, 2, 0),
+                PlaybackEvent.location(8500, 3, 0)),
+                mDispatcher, PlaybackClock.realTime(), 1000);
+
+        pump.start(100);
+        assertEquals(1000, pump.step(100));
+        assertEquals(1, mLatitudes.size());
+        // woken up early
+        assertEquals(400, pump.step(700));
+        assertEquals(1, mLatitudes.size());
+        assertEquals(2500, pump.step(1100));
+        // woken up late, schedule does not drift
+        assertEquals(PlaybackPump.END, pump.step(3700));
+        assertEquals(3, pump.getDispatchedCount());
+    }
+
+    @Test
+    public void scaledClockDividesDelays() throws IOException {
+        PlaybackPump pump = new PlaybackPump(new ListEventSource(
+                PlaybackEvent.location(0, 1, 0),
+                PlaybackEvent.location(10000, 2, 0)),
+                mDispatcher, PlaybackClock.scaled(4), 1000);
+
+        pump.start(0);
+        assertEquals(2500, pump.step(0));
+        assertEquals(PlaybackPump.END, pump.step(2500));
+    }
+
+    @Test
+    public void eventsWithoutTimestampUseDefaultInterval() throws IOException {
+        PlaybackPump pump = new PlaybackPump(new ListEventSource(
+                PlaybackEvent.location(PlaybackEvent.NO_TIMESTAMP, 1, 0),
+                PlaybackEvent.location(PlaybackEvent.NO_TIMESTAMP, 2, 0)),
+                mDispatcher, PlaybackClock.realTime(), 700);
+
+        pump.start(0);
+        assertEquals(700, pump.step(0));
+        assertEquals(PlaybackPump.END, pump.step(700));
+    }
+
+    @Test
+    public void unthrottledDrainsInBatches() throws IOException {
+        List<PlaybackEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            events.add(PlaybackEvent.location(i * 60000L, i, 0));
+        }
+        PlaybackPump pump = new PlaybackPump(new ListEventSource(events), mDispatcher,
+                PlaybackClock.unthrottled(), 1000).setBatchSize(256);
+
+        pump.start(0);
+        int steps = 0;
+        long delay;
+        do {
+            delay = pump.step(0);
+            steps++;
+        } while (delay == 0);
+        assertEquals(PlaybackPump.END, delay);
+        assertEquals(4, steps);
+        assertEquals(1000, mLatitudes.size());
+        assertEquals(999.0, mLatitudes.get(999), 0);
+    }
+
+    @Test
+    public void loopingRestartsAfterDefaultInterval() throws IOException {
+        PlaybackPump pump = new PlaybackPump(new ListEventSource(
+                PlaybackEvent.location(1000, 1, 0),
+                PlaybackEvent.location(2000, 2, 0)),
+                mDispatcher, PlaybackClock.realTime(), 500).setLooping(true);
+
+        pump.start(0);
+        assertEquals(1000, pump.step(0));
+        assertEquals(500, pump.step(1000));
+        assertEquals(1000, pump.step(1500));
+        assertEquals(3, pump.getDispatchedCount());
+        assertEquals(1.0, mLatitudes.get(2), 0);
+    }
+
+    @Test
+    public void lastFixIsNeverTorn() throws InterruptedException {
+        final PlaybackDispatcher dispatcher = new PlaybackDispatcher(
+                new LocationProducer.ListenerSupport());
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger torn = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LocationFix fix = new LocationFix();
+                while (!done.get()) {
+                    if (dispatcher.getLastFix(fix) && fix.latitude != fix.longitude) {
+                        torn.incrementAndGet();
+                    }
+                }
+            }
+        });
+        LocationFix fix = new LocationFix();
+        assertFalse(dispatcher.getLastFix(fix));
+        reader.start();
+        for (int i = 0; i < 200000; i++) {
+            dispatcher.dispatch(PlaybackEvent.location(i, i, i));
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, torn.get());
+        assertTrue(dispatcher.getLastFix(fix));
+        assertEquals(199999.0, fix.latitude, 0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackTraceTest {
+
+    @Test
+    public void compilesAllEventsOfSource() throws IOException {
+        JsonPlaybackEventSource source = kamppi();
+        PlaybackTrace trace = PlaybackTrace.compile(source);
+        source.rewind();
+        SeekablePlaybackEventSource compiled = trace.newSource();
+        PlaybackEvent event;
+        int count = 0;
+        while ((event = source.next()) != null) {
+            BinaryTraceTest.assertEvent(event, compiled.next());
+            count++;
+        }
+        assertNull(compiled.next());
+        assertEquals(count, trace.size());
+        source.close();
+    }
+
+    @Test
+    public void internsRepeatedStrings() throws IOException {
+        PlaybackTrace trace = PlaybackTrace.compile(new ListEventSource(
+                PlaybackEvent.venueEntry(0, new String("venue"), "Venue"),
+                PlaybackEvent.floorEntry(1, new String("floor"), new String("1")),
+                PlaybackEvent.venueExit(2),
+                PlaybackEvent.venueEntry(3, new String("venue"), "Venue"),
+                PlaybackEvent.floorEntry(4, new String("floor"), new String("1"))));
+        assertSame(trace.get(0).id, trace.get(3).id);
+        assertSame(trace.get(1).id, trace.get(4).id);
+        assertSame(trace.get(1).floorLevel, trace.get(4).floorLevel);
+    }
+
+    @Test
+    public void sourcesAreIndependentAndSeekable() throws IOException {
+        JsonPlaybackEventSource json = kamppi();
+        PlaybackTrace trace = PlaybackTrace.compile(json);
+        json.close();
+        SeekablePlaybackEventSource first = trace.newSource();
+        SeekablePlaybackEventSource second = trace.newSource();
+        first.next();
+        first.next();
+        assertSame(trace.get(0), second.next());
+        assertSame(trace.get(2), first.next());
+
+        PlaybackIndex index = trace.buildIndex(1000, 8);
+        assertEquals(trace.size(), index.getEventCount());
+        PlaybackIndex.Checkpoint checkpoint = index.findByOrdinal(20);
+        assertTrue(checkpoint.ordinal <= 20);
+        second.seek(checkpoint);
+        assertSame(trace.get((int) checkpoint.ordinal), second.next());
+
+        first.rewind();
+        assertSame(trace.get(0), first.next());
+    }
+
+    private static JsonPlaybackEventSource kamppi() {
+        return new JsonPlaybackEventSource(JsonPlaybackEventSourceTest.fileOpener(
+                TestResources.raw("playback_kamppi.json")));
+    }
+}
@@ -0,0 +1,204 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+import com.indooratlas.android.example.indoor.wrld.model.IaId;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata.FloorMetadata;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticTraceGeneratorTest {
+
+    private static final double RADIUS = 40;
+
+    @Test
+    public void sameSeedGivesSameTrace() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(20, 1, 60.17, 24.94, 2000);
+        assertEquals(json(venues, 7, 5000), json(venues, 7, 5000));
+        assertFalse(json(venues, 7, 5000).equals(json(venues, 8, 5000)));
+    }
+
+    @Test
+    public void walksThroughBundledVenues() throws IOException {
+        VenueMetadata[] venues = bundledVenues();
+        Map<String, VenueMetadata> byId = new HashMap<>();
+        for (VenueMetadata venue : venues) {
+            byId.put(venue.iaId.toString(), venue);
+        }
+        List<PlaybackEvent> events = generate(venues, 3, 20000);
+        assertEquals(20000, events.size());
+
+        VenueMetadata venue = null;
+        FloorMetadata floor = null;
+        boolean indoors = false;
+        int visits = 0;
+        int floorChanges = 0;
+        long time = Long.MIN_VALUE;
+        for (PlaybackEvent event : events) {
+            assertTrue(event.timestamp >= time);
+            time = event.timestamp;
+            switch (event.type) {
+                case PlaybackEvent.TYPE_VENUE_ENTRY:
+                    assertNull(venue);
+                    venue = byId.get(event.id);
+                    assertNotNull(venue);
+                    assertEquals(venue.name, event.name);
+                    visits++;
+                    break;
+                case PlaybackEvent.TYPE_INDOORS_ENTRY:
+                    assertNotNull(venue);
+                    assertFalse(indoors);
+                    indoors = true;
+                    break;
+                case PlaybackEvent.TYPE_FLOOR_ENTRY:
+                    assertTrue(indoors);
+                    FloorMetadata next = findFloor(venue, event);
+                    assertNotNull(next);
+                    if (floor != null) {
+                        // floors are only ever changed to the next one up or down
+                        assertEquals(1, Math.abs(next.zOrder - floor.zOrder));
+                        floorChanges++;
+                    }
+                    floor = next;
+                    break;
+                case PlaybackEvent.TYPE_INDOORS_EXIT:
+                    assertTrue(indoors);
+                    indoors = false;
+                    break;
+                case PlaybackEvent.TYPE_VENUE_EXIT:
+                    assertNotNull(venue);
+                    assertFalse(indoors);
+                    venue = null;
+                    floor = null;
+                    break;
+                default:
+                    if (indoors) {
+                        assertTrue(distance(venue.coordinates, event) < RADIUS + 20);
+                    }
+            }
+        }
+        assertTrue(visits > 10);
+        assertTrue(floorChanges > 0);
+    }
+
+    @Test
+    public void tracesRoundTripThroughBothFormats() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(50, 2, 60.17, 24.94, 2000);
+        String json = json(venues, 11, 3000);
+        JsonPlaybackEventSource jsonSource = new JsonPlaybackEventSource(
+                JsonPlaybackEventSourceTest.stringOpener(json));
+        List<PlaybackEvent> expected = generate(venues, 11, 3000);
+
+        File file = File.createTempFile("synthetic", ".trace");
+        BinaryTraceWriter binary = new BinaryTraceWriter(file);
+        generator(venues, 11).generate(binary, 3000);
+        binary.close();
+        BinaryPlaybackEventSource binarySource = new BinaryPlaybackEventSource(file);
+        try {
+            for (PlaybackEvent event : expected) {
+                BinaryTraceTest.assertEvent(event, jsonSource.next());
+                BinaryTraceTest.assertEvent(event, binarySource.next());
+            }
+            assertNull(jsonSource.next());
+            assertNull(binarySource.next());
+        } finally {
+            jsonSource.close();
+            binarySource.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void generatedVenuesHaveContiguousFloors() {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(1000, 5, 60.17, 24.94,
+                5000);
+        Set<IaId> ids = new HashSet<>();
+        for (VenueMetadata venue : venues) {
+            assertTrue(ids.add(venue.iaId));
+            assertTrue(venue.floors.length >= 1 && venue.floors.length <= 6);
+            for (int i = 0; i < venue.floors.length; i++) {
+                assertTrue(ids.add(venue.floors[i].iaId));
+                assertEquals(venue.floors[0].zOrder + i, venue.floors[i].zOrder);
+            }
+        }
+    }
+
+    private static VenueMetadata[] bundledVenues() throws IOException {
+        Reader in = new InputStreamReader(
+                new FileInputStream(TestResources.raw("venues.json")), "UTF-8");
+        try {
+            return SyntheticTraceGenerator.readVenues(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static SyntheticTraceGenerator generator(VenueMetadata[] venues, long seed) {
+        return new SyntheticTraceGenerator(venues, seed)
+                .setFootprintRadius(RADIUS)
+                .setFloorChangeProbability(0.05)
+                .setVisitLength(20, 200);
+    }
+
+    private static List<PlaybackEvent> generate(VenueMetadata[] venues, long seed, long count)
+            throws IOException {
+        final List<PlaybackEvent> events = new ArrayList<>();
+        generator(venues, seed).generate(new PlaybackEventWriter() {
+                    @Override
+                    public void write(PlaybackEvent event) {
+                        events.add(event);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                }, count);
+        return events;
+    }
+
+    private static String json(VenueMetadata[] venues, long seed, long count)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        JsonTraceWriter writer = new JsonTraceWriter(out);
+        generator(venues, seed).generate(writer, count);
+        writer.close();
+        return out.toString();
+    }
+
+    private static FloorMetadata findFloor(VenueMetadata venue, PlaybackEvent event) {
+        // the bundled catalog has floors sharing an id, so match the level as well
+        for (FloorMetadata floor : venue.floors) {
+            if (floor.iaId.toString().equals(event.id)
+                    && String.valueOf(floor.zOrder).equals(event.floorLevel)) {
+                return floor;
+            }
+        }
+        return null;
+    }
+
+    private static double distance(double[] coordinates, PlaybackEvent event) {
+        double north = (event.latitude - coordinates[0]) * 111320.0;
+        double east = (event.longitude - coordinates[1]) * 111320.0
+                * Math.cos(Math.toRadians(coordinates[0]));
+        return Math.sqrt(north * north + east * east);
+    }
+}
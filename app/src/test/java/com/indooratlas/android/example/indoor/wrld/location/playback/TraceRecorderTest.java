@@ -0,0 +1,171 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.AllocationCounter;
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest {
+
+    private long mNow;
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+    };
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("recording", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void recordedTraceReplaysSameCallbacks() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(mFile, 16, mClock);
+        recorder.start();
+        recorder.recordLocation(60.1, 24.9);
+        mNow += 1500;
+        recorder.recordVenueEntry("venue", "Kamppi");
+        recorder.recordIndoorsEntry();
+        recorder.recordFloorEntry("floor", "2");
+        mNow += 1000;
+        recorder.recordLocation(60.2, 24.8);
+        recorder.recordIndoorsExit();
+        recorder.recordVenueExit();
+        recorder.close();
+        assertEquals(7, recorder.getWrittenCount());
+        assertEquals(0, recorder.getDroppedCount());
+
+        final List<String> callbacks = new ArrayList<>();
+        PlaybackDispatcher dispatcher = new PlaybackDispatcher(new LocationProducer.Listener() {
+            @Override
+            public void onLocationChanged(LocationFix fix) {
+                callbacks.add("location " + fix.latitude + " " + fix.floorLevel);
+            }
+
+            @Override
+            public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+                callbacks.add("floor " + venueId + " " + floorId + " " + floorLevel);
+            }
+
+            @Override
+            public void onEnterIndoors(String venueId) {
+                callbacks.add("enter indoors " + venueId);
+            }
+
+            @Override
+            public void onExitIndoors(String venueId) {
+                callbacks.add("exit indoors " + venueId);
+            }
+
+            @Override
+            public void onEnterVenue(String venueId, String venueName) {
+                callbacks.add("enter venue " + venueId + " " + venueName);
+            }
+
+            @Override
+            public void onExitVenue(String venueId) {
+                callbacks.add("exit venue " + venueId);
+            }
+        });
+
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(
+                JsonPlaybackEventSourceTest.fileOpener(mFile));
+        PlaybackEvent first = source.next();
+        dispatcher.dispatch(first);
+        PlaybackEvent event;
+        PlaybackEvent last = first;
+        while ((event = source.next()) != null) {
+            dispatcher.dispatch(event);
+            last = event;
+        }
+        source.close();
+
+        assertEquals(2500, last.timestamp - first.timestamp);
+        assertEquals(7, callbacks.size());
+        assertEquals("location 60.1 " + LocationFix.NO_FLOOR, callbacks.get(0));
+        assertEquals("enter venue venue Kamppi", callbacks.get(1));
+        assertEquals("enter indoors venue", callbacks.get(2));
+        assertEquals("floor venue floor 2", callbacks.get(3));
+        assertEquals("location 60.2 2", callbacks.get(4));
+        assertEquals("exit indoors venue", callbacks.get(5));
+        assertEquals("exit venue venue", callbacks.get(6));
+        assertFalse(dispatcher.isIndoors());
+    }
+
+    @Test
+    public void dropsWhenRingIsFull() {
+        TraceRecorder recorder = new TraceRecorder(mFile, 8, mClock);
+        // writer not started, nothing drains the ring
+        for (int i = 0; i < 20; i++) {
+            recorder.recordLocation(60, 24);
+        }
+        assertEquals(12, recorder.getDroppedCount());
+
+        recorder.start();
+        recorder.close();
+        assertEquals(8, recorder.getWrittenCount());
+        recorder.recordVenueExit();
+        assertEquals(13, recorder.getDroppedCount());
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        TraceRecorder recorder = new TraceRecorder(mFile, 4096, mClock);
+        // warm up, fills half the ring
+        record(recorder, 2048);
+
+        AllocationCounter counter = AllocationCounter.forCurrentThread();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            counter.start();
+            // the rest of the ring and then drops
+            record(recorder, 2048);
+            allocated = Math.min(allocated, counter.stop());
+        }
+        assertEquals(0, allocated);
+        assertEquals(2 * 2048, recorder.getDroppedCount());
+    }
+
+    private static void record(TraceRecorder recorder, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i % 64 == 0) {
+                recorder.recordFloorEntry("floor", "1");
+            } else {
+                recorder.recordLocation(60 + i * 1e-6, 24);
+            }
+        }
+    }
+
+    @Test
+    public void unfinishedRecordingIsReadable() throws IOException {
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(
+                JsonPlaybackEventSourceTest.stringOpener(
+                        "[{\"type\":\"location\",\"coordinates\":[60.1,24.9]},"));
+        assertTrue(source.next() != null);
+        assertNull(source.next());
+    }
+}
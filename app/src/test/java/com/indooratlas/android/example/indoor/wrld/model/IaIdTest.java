@@ -0,0 +1,103 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IaIdTest {
+
+    @Test
+    public void parsesAndFormatsLikeUuid() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            IaId id = IaId.parse(uuid.toString());
+            assertEquals(uuid.getMostSignificantBits(), id.getMostSignificantBits());
+            assertEquals(uuid.getLeastSignificantBits(), id.getLeastSignificantBits());
+            assertEquals(uuid.toString(), id.toString());
+            assertEquals(id, IaId.parse(uuid.toString().toUpperCase()));
+            assertEquals(id.hashCode(), IaId.parse(uuid.toString()).hashCode());
+        }
+        IaId id = IaId.parse("773c63d2-06d5-46d2-8d1e-46fc9b2cc31a");
+        // the string is kept, so every caller gets the same instance
+        assertSame(id.toString(), id.toString());
+        assertTrue(id.equals(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        assertNotEquals(id, IaId.parse("773c63d2-06d5-46d2-8d1e-46fc9b2cc31b"));
+        assertFalse(id.equals("773c63d2-06d5-46d2-8d1e-46fc9b2cc31a"));
+    }
+
+    @Test
+    public void rejectsMalformedIds() {
+        String[] malformed = {null, "", "kamppi_22885", "773c63d2-06d5-46d2-8d1e-46fc9b2cc31",
+                "773c63d2-06d5-46d2-8d1e-46fc9b2cc31aa", "773c63d2x06d5-46d2-8d1e-46fc9b2cc31a",
+                "773c63d2-06d5-46d2-8d1e-46fc9b2cc31g", "+73c63d2-06d5-46d2-8d1e-46fc9b2cc31a"};
+        for (String id : malformed) {
+            assertNull(id, IaId.tryParse(id));
+        }
+        try {
+            IaId.parse("kamppi_22885");
+            fail("parsed a WRLD id");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void readsAndWritesJsonStrings() throws IOException {
+        VenueMetadata[] venues = VenueCatalogTest.bundledVenues();
+        Gson gson = new Gson();
+        VenueMetadata[] copy = gson.fromJson(gson.toJson(venues), VenueMetadata[].class);
+        assertEquals(venues[0].iaId, copy[0].iaId);
+        assertEquals(venues[3].floors[1].iaId, copy[3].floors[1].iaId);
+        assertTrue(gson.toJson(venues).contains("\"773c63d2-06d5-46d2-8d1e-46fc9b2cc31a\""));
+        try {
+            gson.fromJson("[{\"iaId\": \"not-an-id\"}]", VenueMetadata[].class);
+            fail("read a malformed id");
+        } catch (JsonParseException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void catalogInternsIds() throws IOException {
+        VenueCatalog catalog = new VenueCatalog(VenueCatalogTest.bundledVenues());
+        IaId venueId = IaId.parse("773c63d2-06d5-46d2-8d1e-46fc9b2cc31a");
+        IaId interned = catalog.internId(venueId);
+        assertEquals(venueId, interned);
+        assertSame(interned, catalog.findByIaId(venueId).iaId);
+        assertSame(interned.toString(), catalog.internId(IaId.parse(venueId.toString()))
+                .toString());
+        IaId floorId = IaId.parse("058de6f9-7490-4a92-8b88-0f5331de1bd7");
+        assertSame(catalog.internId(floorId), catalog.internId(IaId.parse(floorId.toString())));
+        IaId unknown = IaId.parse("00000000-0000-0000-0000-000000000001");
+        assertSame(unknown, catalog.internId(unknown));
+    }
+
+    @Test
+    public void lastParsedParsesOncePerId() {
+        IaId.LastParsed ids = new IaId.LastParsed();
+        String venueId = "773c63d2-06d5-46d2-8d1e-46fc9b2cc31a";
+        IaId parsed = ids.parse(venueId);
+        assertEquals(IaId.parse(venueId), parsed);
+        assertSame(parsed, ids.parse(venueId));
+        assertSame(parsed, ids.parse(new String(venueId)));
+        assertNull(ids.parse("unknown"));
+        assertNull(ids.parse(null));
+        assertNotSame(parsed, ids.parse(venueId));
+        assertEquals(parsed, ids.parse(venueId));
+    }
+}
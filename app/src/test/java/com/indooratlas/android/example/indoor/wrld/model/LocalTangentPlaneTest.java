@@ -0,0 +1,97 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalTangentPlaneTest {
+
+    private static final double[] LATITUDES = {0, 30, -45, 60.17, 70};
+
+    @Test
+    public void staysWithinErrorBoundsWithinOneKilometer() {
+        Random random = new Random(22);
+        double[] point = new double[2];
+        double maxDistance = 0;
+        double maxHeading = 0;
+        double maxOffset = 0;
+        for (double anchorLatitude : LATITUDES) {
+            double anchorLongitude = 24.94;
+            LocalTangentPlane plane = new LocalTangentPlane(anchorLatitude, anchorLongitude);
+            for (int i = 0; i < 20000; i++) {
+                // two points within 1 km of the anchor
+                SphericalUtil.computeOffset(anchorLatitude, anchorLongitude,
+                        1000 * Math.sqrt(random.nextDouble()), 360 * random.nextDouble(),
+                        point, 0);
+                double fromLatitude = point[0];
+                double fromLongitude = point[1];
+                SphericalUtil.computeOffset(anchorLatitude, anchorLongitude,
+                        1000 * Math.sqrt(random.nextDouble()), 360 * random.nextDouble(),
+                        point, 0);
+                double toLatitude = point[0];
+                double toLongitude = point[1];
+
+                double distance = SphericalUtil.computeDistanceBetween(fromLatitude,
+                        fromLongitude, toLatitude, toLongitude);
+                maxDistance = Math.max(maxDistance, Math.abs(distance - plane.distance(
+                        fromLatitude, fromLongitude, toLatitude, toLongitude)));
+                if (distance > 1) {
+                    double heading = SphericalUtil.computeHeading(fromLatitude, fromLongitude,
+                            toLatitude, toLongitude);
+                    double error = Math.abs(heading - plane.heading(fromLatitude,
+                            fromLongitude, toLatitude, toLongitude));
+                    maxHeading = Math.max(maxHeading, Math.min(error, 360 - error));
+                }
+
+                double heading = 360 * random.nextDouble() - 180;
+                double meters = 1000 * random.nextDouble();
+                SphericalUtil.computeOffset(fromLatitude, fromLongitude, meters, heading,
+                        point, 0);
+                double[] approximate = new double[2];
+                plane.offset(fromLatitude, fromLongitude, meters, heading, approximate, 0);
+                maxOffset = Math.max(maxOffset, SphericalUtil.computeDistanceBetween(
+                        point[0], point[1], approximate[0], approximate[1]));
+            }
+        }
+        assertTrue("distance error " + maxDistance + " m", maxDistance < 0.0001);
+        assertTrue("heading error " + maxHeading + " degrees", maxHeading < 0.00001);
+        assertTrue("offset error " + maxOffset + " m", maxOffset < 0.0001);
+    }
+
+    @Test
+    public void projectsAndInvertsAroundAnchor() {
+        LocalTangentPlane plane = new LocalTangentPlane(60.17, 24.94);
+        double[] local = new double[3];
+        plane.toLocal(60.17, 24.94, local, 1);
+        assertEquals(0, local[1], 0);
+        assertEquals(0, local[2], 0);
+
+        double[] point = new double[2];
+        SphericalUtil.computeOffset(60.17, 24.94, 100, 90, point, 0);
+        plane.toLocal(point[0], point[1], local, 0);
+        assertEquals(100, local[0], 0.01);
+        assertEquals(0, local[1], 0.01);
+
+        double[] back = new double[2];
+        plane.toGeodetic(local[0], local[1], back, 0);
+        assertEquals(point[0], back[0], 1e-12);
+        assertEquals(point[1], back[1], 1e-12);
+    }
+
+    @Test
+    public void handlesAntimeridian() {
+        LocalTangentPlane plane = new LocalTangentPlane(-17.0, 179.999);
+        double[] local = new double[2];
+        plane.toLocal(-17.0, -179.999, local, 0);
+        assertEquals(SphericalUtil.computeDistanceBetween(-17.0, 179.999, -17.0, -179.999),
+                local[0], 0.01);
+        assertEquals(SphericalUtil.computeDistanceBetween(-17.0, 179.999, -17.0, -179.999),
+                plane.distance(-17.0, 179.999, -17.0, -179.999), 0.001);
+        assertEquals(90, plane.heading(-17.0, 179.999, -17.0, -179.999), 0.01);
+    }
+}
@@ -0,0 +1,179 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+import com.indooratlas.android.example.indoor.wrld.location.playback.SyntheticTraceGenerator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VenueCatalogCompilerTest {
+
+    @Test
+    public void bundledCatalogIsValid() throws IOException {
+        List<String> errors = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        VenueCatalogCompiler.validate(
+                VenueCatalogCompiler.readJson(TestResources.raw("venues.json")), errors, warnings);
+        assertEquals(errors.toString(), 0, errors.size());
+        // two Stockman floors share a floor plan
+        assertEquals(warnings.toString(), 1, warnings.size());
+    }
+
+    @Test
+    public void reportsInvalidCatalogs() throws IOException {
+        VenueMetadata[] venues = VenueCatalogCompiler.readJson(TestResources.raw("venues.json"));
+        venues[1].iaId = venues[0].iaId;
+        venues[2].wrldId = venues[0].wrldId;
+        venues[2].floors[1].zOrder = venues[2].floors[0].zOrder;
+        venues[3].floors[0].iaId = venues[0].floors[0].iaId;
+        venues[3].floors[2].index = 100;
+        venues[0].coordinates = null;
+        List<String> errors = new ArrayList<>();
+        VenueCatalogCompiler.validate(venues, errors, new ArrayList<String>());
+        assertEquals(errors.toString(), 6, errors.size());
+
+        VenueMetadata empty = new VenueMetadata();
+        empty.iaId = IaId.parse("00000000-0000-0000-0000-00000000000e");
+        empty.coordinates = new double[]{60, 25};
+        errors.clear();
+        VenueCatalogCompiler.validate(new VenueMetadata[]{empty}, errors,
+                new ArrayList<String>());
+        assertEquals(Arrays.asList("venue 0 (null): no floors"), errors);
+    }
+
+    @Test
+    public void readsCompiledBundledCatalog() throws IOException {
+        VenueMetadata[] venues = VenueCatalogCompiler.readJson(TestResources.raw("venues.json"));
+        File file = File.createTempFile("venues", ".bin");
+        try {
+            VenueCatalogCompiler.compile(venues, file);
+            List<VenueMetadata> mapped = BinaryVenueReader.map(new FileInputStream(file), 0,
+                    file.length(), 1).getVenues();
+            VenueMetadata[] read = mapped.toArray(new VenueMetadata[mapped.size()]);
+            assertSameVenues(venues, read);
+            // strings are stored once and shared
+            assertSame(read[0].floors[0].name, read[3].floors[0].name);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readsCompiledGeneratedCatalog() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(500, 3, 60.17, 24.94,
+                5000);
+        venues[7].wrldId = null;
+        venues[8].coordinates = null;
+        assertSameVenues(venues, BinaryVenueReader.read(ByteBuffer.wrap(compile(venues))));
+    }
+
+    @Test
+    public void mappedLookupsMatchIndexedCatalog() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(500, 3, 60.17, 24.94,
+                5000);
+        venues[7].wrldId = null;
+        // shared ids resolve to the first venue like in a linear search
+        VenueMetadata.FloorMetadata[] floors = venues[9].floors;
+        VenueMetadata.FloorMetadata shared = floors[floors.length - 1];
+        shared.iaId = venues[4].floors[0].iaId;
+        int twoFloors = 10;
+        while (venues[twoFloors].floors.length < 2) {
+            twoFloors++;
+        }
+        venues[twoFloors].floors[1].iaId = venues[twoFloors].floors[0].iaId;
+        VenueCatalog indexed = new VenueCatalog(venues);
+        VenueCatalog mapped = BinaryVenueReader.open(ByteBuffer.wrap(compile(venues)), 1);
+        assertEquals(venues.length, mapped.size());
+        for (VenueMetadata venue : venues) {
+            VenueMetadata found = mapped.findByIaId(venue.iaId);
+            assertEquals(venue.toString(), found.toString());
+            assertSame(found, mapped.findByIaId(IaId.parse(venue.iaId.toString())));
+            if (venue.wrldId != null) {
+                assertSame(found, mapped.findByWrldId(new String(venue.wrldId)));
+            }
+            for (VenueMetadata.FloorMetadata floor : venue.floors) {
+                assertEquals(indexed.findByFloorIaId(floor.iaId).iaId,
+                        mapped.findByFloorIaId(floor.iaId).iaId);
+                assertEquals(indexed.findFloorByIaId(floor.iaId).toString(),
+                        mapped.findFloorByIaId(floor.iaId).toString());
+            }
+        }
+        assertSame(mapped.findByIaId(venues[4].iaId), mapped.findByFloorIaId(shared.iaId));
+        assertSame(mapped.findByIaId(venues[twoFloors].iaId).floors[0],
+                mapped.findFloorByIaId(venues[twoFloors].floors[1].iaId));
+        assertNull(mapped.findByIaId(IaId.parse("00000000-0000-0000-0000-000000000001")));
+        assertNull(mapped.findByFloorIaId(venues[0].iaId));
+        assertNull(mapped.findByWrldId("unknown"));
+        assertEquals(indexed.getSpatialIndex().findNearest(60.17, 24.94, 5000).iaId,
+                mapped.getSpatialIndex().findNearest(60.17, 24.94, 5000).iaId);
+    }
+
+    @Test
+    public void rejectsCorruptCatalogs() {
+        byte[] bytes = compile(SyntheticTraceGenerator.generateVenues(10, 3, 60.17, 24.94,
+                5000));
+        assertRejected(Arrays.copyOf(bytes, 10));
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 5));
+        byte[] version = bytes.clone();
+        version[5] = 9;
+        assertRejected(version);
+        byte[] counts = bytes.clone();
+        counts[11] = 11;
+        assertRejected(counts);
+    }
+
+    private static byte[] compile(VenueMetadata[] venues) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            VenueCatalogCompiler.write(venues, new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            BinaryVenueReader.read(ByteBuffer.wrap(bytes));
+            fail("read a corrupt catalog");
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+
+    private static void assertSameVenues(VenueMetadata[] expected, VenueMetadata[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            VenueMetadata venue = actual[i];
+            assertEquals(expected[i].name, venue.name);
+            assertEquals(expected[i].iaId, venue.iaId);
+            assertEquals(expected[i].wrldId, venue.wrldId);
+            if (expected[i].coordinates == null) {
+                assertNull(venue.coordinates);
+            } else {
+                assertArrayEquals(expected[i].coordinates, venue.coordinates, 0);
+            }
+            assertEquals(expected[i].floors.length, venue.floors.length);
+            for (int j = 0; j < venue.floors.length; j++) {
+                assertEquals(expected[i].floors[j].toString(), venue.floors[j].toString());
+            }
+        }
+        assertTrue(new VenueCatalog(actual).size() == expected.length);
+    }
+}
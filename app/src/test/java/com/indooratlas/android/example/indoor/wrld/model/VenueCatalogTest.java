@@ -0,0 +1,94 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.gson.Gson;
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+import com.indooratlas.android.example.indoor.wrld.location.playback.SyntheticTraceGenerator;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class VenueCatalogTest {
+
+    @Test
+    public void findsBundledVenuesAndFloors() throws IOException {
+        VenueCatalog catalog = new VenueCatalog(bundledVenues());
+        assertEquals(4, catalog.size());
+
+        VenueMetadata kluuvi = catalog.findByIaId(
+                IaId.parse("773c63d2-06d5-46d2-8d1e-46fc9b2cc31a"));
+        assertEquals("Kluuvi", kluuvi.name);
+        assertSame(kluuvi, catalog.findByWrldId("EIM-cfcfd06c-34af-4caa-bebf-c460c2d4525b"));
+        IaId secondId = IaId.parse("058de6f9-7490-4a92-8b88-0f5331de1bd7");
+        assertSame(kluuvi, catalog.findByFloorIaId(secondId));
+
+        VenueMetadata.FloorMetadata second = kluuvi.findFloorByIaId(secondId);
+        assertEquals("2nd Floor", second.name);
+        assertSame(second, kluuvi.findFloorByZOrder(1));
+        assertSame(second, kluuvi.findFloorByIndex(2));
+        assertSame(second, catalog.findFloorByIaId(second.iaId));
+
+        IaId unknown = IaId.parse("00000000-0000-0000-0000-000000000001");
+        assertNull(catalog.findByIaId(unknown));
+        assertNull(catalog.findByWrldId("unknown"));
+        assertNull(catalog.findFloorByIaId(unknown));
+        assertNull(kluuvi.findFloorByIaId(unknown));
+        assertNull(kluuvi.findFloorByZOrder(7));
+    }
+
+    @Test
+    public void sharedFloorIdsResolveLikeLinearSearch() throws IOException {
+        // two floors of one bundled venue share an id, the first one is found
+        VenueMetadata[] venues = bundledVenues();
+        IaId duplicate = IaId.parse("1827eb13-4960-4711-91fa-db0cc6541d87");
+        VenueMetadata venue = new VenueCatalog(venues).findByFloorIaId(duplicate);
+        VenueMetadata.FloorMetadata linear = null;
+        for (VenueMetadata.FloorMetadata floor : venue.floors) {
+            if (floor.iaId.equals(duplicate)) {
+                linear = floor;
+                break;
+            }
+        }
+        assertSame(linear, venue.findFloorByIaId(duplicate));
+    }
+
+    @Test
+    public void indexedLookupsMatchLinearSearch() {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(1000, 3, 60.17, 24.94,
+                5000);
+        VenueMetadata[] unindexed = SyntheticTraceGenerator.generateVenues(1000, 3, 60.17,
+                24.94, 5000);
+        VenueCatalog catalog = new VenueCatalog(venues);
+        for (int i = 0; i < venues.length; i++) {
+            VenueMetadata venue = catalog.findByIaId(unindexed[i].iaId);
+            assertSame(venues[i], venue);
+            assertSame(venue, catalog.findByWrldId(unindexed[i].wrldId));
+            for (VenueMetadata.FloorMetadata floor : unindexed[i].floors) {
+                assertEquals(floor.toString(),
+                        venue.findFloorByIaId(floor.iaId).toString());
+                assertEquals(unindexed[i].findFloorByZOrder(floor.zOrder).toString(),
+                        venue.findFloorByZOrder(floor.zOrder).toString());
+                assertEquals(unindexed[i].findFloorByIndex(floor.index).toString(),
+                        venue.findFloorByIndex(floor.index).toString());
+                assertSame(venue, catalog.findByFloorIaId(floor.iaId));
+            }
+        }
+    }
+
+    static VenueMetadata[] bundledVenues() throws IOException {
+        Reader in = new InputStreamReader(
+                new FileInputStream(TestResources.raw("venues.json")), "UTF-8");
+        try {
+            return new Gson().fromJson(in, VenueMetadata[].class);
+        } finally {
+            in.close();
+        }
+    }
+}
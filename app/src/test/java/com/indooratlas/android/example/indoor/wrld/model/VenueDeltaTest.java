@@ -0,0 +1,142 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class VenueDeltaTest {
+
+    private static final String KLUUVI = "773c63d2-06d5-46d2-8d1e-46fc9b2cc31a";
+
+    private static final String MIKONKATU = "9760790b-4069-41d0-949a-3ed28ad2dbe8";
+
+    private static final String KAMPPI = "dc1447ad-698a-4c43-aebc-3bec33e45823";
+
+    private static final String KLUUVI_SECOND_FLOOR = "058de6f9-7490-4a92-8b88-0f5331de1bd7";
+
+    private VenueCatalog mCatalog;
+
+    @Before
+    public void setUp() throws IOException {
+        mCatalog = new VenueCatalog(VenueCatalogTest.bundledVenues(), 1);
+    }
+
+    @Test
+    public void addsReplacesAndRemovesVenues() throws IOException {
+        VenueCatalog updated = delta("{\"baseVersion\": 1, \"version\": 2,"
+                + " \"venues\": [" + venue("new", "Library", 60.1735, 24.9390, "f1")
+                + ", " + venue(KAMPPI, "Kamppi Center", 60.1696, 24.9333, "k0") + "],"
+                + " \"removedVenues\": [\"" + MIKONKATU + "\", \"" + id("unknown") + "\"]}")
+                .applyTo(mCatalog);
+
+        assertEquals(2, updated.getVersion());
+        assertEquals(4, updated.size());
+        // replaced venues keep their place, new ones are appended
+        assertSame(mCatalog.getVenues().get(0), updated.getVenues().get(0));
+        assertEquals("Kamppi Center", updated.getVenues().get(1).name);
+        assertEquals("Library", updated.getVenues().get(3).name);
+
+        assertNull(updated.findByIaId(IaId.parse(MIKONKATU)));
+        assertNull(updated.findByWrldId("kamppi_22885"));
+        assertEquals("Kamppi Center", updated.findByWrldId("wrld-" + KAMPPI).name);
+        assertEquals("Library", updated.findByFloorIaId(iaId("f1")).name);
+        assertNull(updated.findByFloorIaId(
+                IaId.parse("e41b37c3-56cc-486d-a05b-8baae6a00fe9")));
+        assertEquals("Library", updated.getSpatialIndex().findNearest(60.1735, 24.9390, 10).name);
+        assertNull(updated.getSpatialIndex().findNearest(60.1706707, 24.9450808, 10));
+
+        // the old catalog is untouched
+        assertEquals(1, mCatalog.getVersion());
+        assertEquals("Kamppi", mCatalog.findByIaId(IaId.parse(KAMPPI)).name);
+        assertEquals("IndoorAtlas Mikonkatu",
+                mCatalog.getSpatialIndex().findNearest(60.1706707, 24.9450808, 10).name);
+    }
+
+    @Test
+    public void changesFloors() throws IOException {
+        VenueCatalog updated = delta("{\"baseVersion\": 1, \"version\": 2, \"floors\": ["
+                + "{\"venue\": \"" + KLUUVI + "\", \"removedZOrders\": [0], \"floors\": ["
+                + "{\"name\": \"Top\", \"iaId\": \"" + id("top") + "\", \"zOrder\": 3, \"index\": 3},"
+                + "{\"name\": \"Second\", \"iaId\": \"" + KLUUVI_SECOND_FLOOR + "\","
+                + " \"zOrder\": 1, \"index\": 2}]}]}")
+                .applyTo(mCatalog);
+
+        VenueMetadata kluuvi = updated.findByIaId(IaId.parse(KLUUVI));
+        assertNotSame(mCatalog.findByIaId(IaId.parse(KLUUVI)), kluuvi);
+        assertEquals(2, kluuvi.floors.length);
+        assertEquals("Second", kluuvi.floors[0].name);
+        assertEquals("Top", kluuvi.floors[1].name);
+        assertSame(kluuvi.floors[1], kluuvi.findFloorByZOrder(3));
+        assertSame(kluuvi, updated.findByFloorIaId(iaId("top")));
+        assertNull(updated.findByFloorIaId(
+                IaId.parse("324e9aac-c608-4959-bfd4-755a1756a1d2")));
+        assertEquals(2, mCatalog.findByIaId(IaId.parse(KLUUVI)).floors.length);
+        assertEquals("1st Floor", mCatalog.findByIaId(IaId.parse(KLUUVI)).floors[0].name);
+    }
+
+    @Test
+    public void rejectsDeltasForOtherVersions() throws IOException {
+        assertRejected("{\"baseVersion\": 2, \"version\": 3}");
+        assertRejected("{\"baseVersion\": 1, \"version\": 1}");
+    }
+
+    @Test
+    public void rejectsInvalidChanges() throws IOException {
+        // duplicate floor index
+        assertRejected("{\"baseVersion\": 1, \"version\": 2, \"floors\": [{\"venue\": \""
+                + KLUUVI + "\", \"floors\": [{\"name\": \"x\", \"iaId\": \"" + id("x") + "\","
+                + " \"zOrder\": 5, \"index\": 1}]}]}");
+        // floor plan of another venue
+        assertRejected("{\"baseVersion\": 1, \"version\": 2, \"venues\": ["
+                + venue("new", "Copy", 60.17, 24.94, KLUUVI_SECOND_FLOOR) + "]}");
+        assertRejected("{\"baseVersion\": 1, \"version\": 2, \"floors\": ["
+                + "{\"venue\": \"" + id("unknown") + "\"}]}");
+    }
+
+    private void assertRejected(String json) throws IOException {
+        try {
+            delta(json).applyTo(mCatalog);
+            fail("applied " + json);
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+
+    static VenueDelta delta(String json) throws IOException {
+        return VenueDelta.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    /**
+     * Returns the JSON of a venue with one floor, with ids derived from the keys and the WRLD id
+     * {@code wrld-<key>}.
+     */
+    static String venue(String key, String name, double latitude, double longitude,
+                        String floorKey) {
+        return "{\"name\": \"" + name + "\", \"iaId\": \"" + id(key) + "\", \"wrldId\": \"wrld-"
+                + key + "\", \"coordinates\": [" + latitude + ", " + longitude + "],"
+                + " \"floors\": [{\"name\": \"Ground\", \"iaId\": \"" + id(floorKey) + "\","
+                + " \"zOrder\": 0, \"index\": 0}]}";
+    }
+
+    /**
+     * Returns a fixed IndoorAtlas id for a readable key, or the key if it already is an id.
+     */
+    static String id(String key) {
+        return IaId.tryParse(key) != null ? key
+                : UUID.nameUUIDFromBytes(key.getBytes(Charset.forName("UTF-8"))).toString();
+    }
+
+    static IaId iaId(String key) {
+        return IaId.parse(id(key));
+    }
+}
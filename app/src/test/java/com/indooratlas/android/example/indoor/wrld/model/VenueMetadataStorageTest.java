@@ -0,0 +1,323 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.indooratlas.android.example.indoor.wrld.TestResources;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VenueMetadataStorageTest {
+
+    private static final String KLUUVI = "773c63d2-06d5-46d2-8d1e-46fc9b2cc31a";
+
+    /** Runs tasks only when told to. */
+    private static class ManualExecutor implements Executor {
+
+        final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+    private final List<VenueCatalog> mLoaded = new ArrayList<>();
+
+    private File mCacheDir;
+
+    @After
+    public void tearDown() {
+        if (mCacheDir != null) {
+            File[] files = mCacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            mCacheDir.delete();
+        }
+    }
+
+    private final VenueMetadataStorage.OnLoadedListener mListener =
+            new VenueMetadataStorage.OnLoadedListener() {
+                @Override
+                public void onVenuesLoaded(VenueCatalog catalog) {
+                    mLoaded.add(catalog);
+                }
+            };
+
+    @Test
+    public void lookupsBeforeLoadReturnNull() throws Exception {
+        ManualExecutor loader = new ManualExecutor();
+        ManualExecutor main = new ManualExecutor();
+        VenueMetadataStorage storage = new VenueMetadataStorage(bundled(), loader);
+        storage.whenLoaded(mListener, main);
+
+        assertFalse(storage.isLoaded());
+        assertNull(storage.getCatalog());
+        assertNull(storage.findByIaId(IaId.parse(KLUUVI)));
+        assertFalse(storage.getCatalogFuture().isDone());
+
+        loader.runAll();
+        assertTrue(storage.isLoaded());
+        assertNotNull(storage.findByIaId(IaId.parse(KLUUVI)));
+        assertTrue(storage.getCatalogFuture().isDone());
+        // listener runs on its own executor
+        assertTrue(mLoaded.isEmpty());
+        main.runAll();
+        assertEquals(1, mLoaded.size());
+        assertSame(storage.getCatalog(), mLoaded.get(0));
+
+        // late listeners are called right away, still on their executor
+        storage.whenLoaded(mListener, main);
+        main.runAll();
+        assertEquals(2, mLoaded.size());
+    }
+
+    @Test
+    public void loadsOnBackgroundThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final Thread[] loadingThread = new Thread[1];
+        VenueMetadataStorage storage = new VenueMetadataStorage(
+                new Callable<VenueMetadata[]>() {
+                    @Override
+                    public VenueMetadata[] call() throws Exception {
+                        loadingThread[0] = Thread.currentThread();
+                        return bundled().call();
+                    }
+                }, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        new Thread(command).start();
+                    }
+                });
+        VenueCatalog catalog = storage.getCatalogFuture().get(5, TimeUnit.SECONDS);
+        assertEquals(4, catalog.size());
+        assertTrue(loadingThread[0] != caller);
+        assertSame(catalog, storage.getCatalog());
+    }
+
+    @Test
+    public void failedLoadGivesEmptyCatalog() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        VenueMetadataStorage storage = new VenueMetadataStorage(
+                new Callable<VenueMetadata[]>() {
+                    @Override
+                    public VenueMetadata[] call() throws Exception {
+                        throw new IOException("broken");
+                    }
+                }, executor);
+        storage.whenLoaded(mListener, executor);
+        executor.runAll();
+        assertTrue(storage.isLoaded());
+        assertEquals(0, storage.getCatalog().size());
+        assertNull(storage.findByIaId(IaId.parse(KLUUVI)));
+        assertEquals(1, mLoaded.size());
+    }
+
+    @Test
+    public void updatesAreCachedAndReloaded() throws Exception {
+        mCacheDir = Files.createTempDirectory("venues").toFile();
+        ManualExecutor executor = new ManualExecutor();
+        VenueMetadataStorage storage = new VenueMetadataStorage(bundled(), 1, mCacheDir,
+                executor);
+        executor.runAll();
+        assertTrue(storage.applyUpdate(delta(1, 2, "new")));
+        assertEquals(2, storage.getCatalog().getVersion());
+        assertEquals("Venue new", storage.findByIaId(VenueDeltaTest.iaId("new")).name);
+        // already applied
+        assertFalse(storage.applyUpdate(delta(1, 2, "new")));
+        assertEquals(1, mCacheDir.listFiles().length);
+
+        Callable<VenueMetadata[]> broken = new Callable<VenueMetadata[]>() {
+            @Override
+            public VenueMetadata[] call() throws Exception {
+                throw new IOException("bundled catalog should not be read");
+            }
+        };
+        VenueMetadataStorage restarted = new VenueMetadataStorage(broken, 1, mCacheDir,
+                executor);
+        executor.runAll();
+        assertEquals(2, restarted.getCatalog().getVersion());
+        assertEquals(5, restarted.getCatalog().size());
+        assertEquals("Venue new", restarted.findByIaId(VenueDeltaTest.iaId("new")).name);
+
+        // a newer bundled catalog wins over the cache
+        VenueMetadataStorage upgraded = new VenueMetadataStorage(bundled(), 3, mCacheDir,
+                executor);
+        executor.runAll();
+        assertEquals(3, upgraded.getCatalog().getVersion());
+        assertNull(upgraded.findByIaId(VenueDeltaTest.iaId("new")));
+    }
+
+    @Test
+    public void failedUpdateLeavesCatalogUnchanged() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        VenueMetadataStorage storage = new VenueMetadataStorage(bundled(), executor);
+        executor.runAll();
+        VenueCatalog catalog = storage.getCatalog();
+        try {
+            storage.applyUpdate(delta(2, 3, "new"));
+            fail("applied a delta for another version");
+        } catch (IOException expected) {
+            // ok
+        }
+        try {
+            storage.applyUpdate(new ByteArrayInputStream("{\"version\": ".getBytes("UTF-8")));
+            fail("applied a malformed delta");
+        } catch (IOException expected) {
+            // ok
+        }
+        assertSame(catalog, storage.getCatalog());
+    }
+
+    @Test
+    public void fetchesUpdatesOverHttp() throws Exception {
+        final List<String> queries = new ArrayList<>();
+        final int[] failWith = {0};
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/venues", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                queries.add(query);
+                int since = Integer.parseInt(query.substring(query.indexOf("since=") + 6));
+                if (failWith[0] != 0) {
+                    exchange.sendResponseHeaders(failWith[0], -1);
+                } else if (since < 3) {
+                    byte[] body = deltaJson(since, since + 1, "v" + since).getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } else {
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            ManualExecutor executor = new ManualExecutor();
+            VenueMetadataStorage storage = new VenueMetadataStorage(bundled(), executor);
+            executor.runAll();
+            URL endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                    + "/venues?app=test");
+            assertEquals(2, storage.fetchUpdates(endpoint));
+            assertEquals(3, storage.getCatalog().getVersion());
+            assertNotNull(storage.findByIaId(VenueDeltaTest.iaId("v1")));
+            assertNotNull(storage.findByIaId(VenueDeltaTest.iaId("v2")));
+            assertEquals("app=test&since=1", queries.get(0));
+            assertEquals(3, queries.size());
+            assertEquals(0, storage.fetchUpdates(endpoint));
+
+            failWith[0] = 500;
+            try {
+                storage.fetchUpdates(endpoint);
+                fail("fetched from a failing server");
+            } catch (IOException expected) {
+                // ok
+            }
+            assertEquals(3, storage.getCatalog().getVersion());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void readersNeverSeeHalfAppliedUpdates() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        final VenueMetadataStorage storage = new VenueMetadataStorage(bundled(), executor);
+        executor.runAll();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final int updates = 200;
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    VenueCatalog catalog;
+                    do {
+                        catalog = storage.getCatalog();
+                        // each update adds a pair of venues, removing the previous pair
+                        int version = catalog.getVersion();
+                        boolean first =
+                                catalog.findByIaId(VenueDeltaTest.iaId("a" + version)) != null;
+                        boolean second = catalog.findByWrldId("wrld-b" + version) != null;
+                        assertEquals(version > 1, first);
+                        assertEquals(first, second);
+                        assertEquals(version > 1 ? 6 : 4, catalog.size());
+                    } while (catalog.getVersion() < updates + 1);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+        for (int version = 2; version <= updates + 1; version++) {
+            String json = "{\"baseVersion\": " + (version - 1) + ", \"version\": " + version
+                    + ", \"venues\": [" + VenueDeltaTest.venue("a" + version, "A", 60.1, 24.1,
+                    "fa" + version) + ", " + VenueDeltaTest.venue("b" + version, "B", 60.2,
+                    24.2, "fb" + version) + "], \"removedVenues\": [\""
+                    + VenueDeltaTest.id("a" + (version - 1)) + "\", \""
+                    + VenueDeltaTest.id("b" + (version - 1)) + "\"]}";
+            assertTrue(storage.applyUpdate(new ByteArrayInputStream(json.getBytes("UTF-8"))));
+        }
+        reader.join(10000);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static ByteArrayInputStream delta(int from, int to, String venueId)
+            throws IOException {
+        return new ByteArrayInputStream(deltaJson(from, to, venueId).getBytes("UTF-8"));
+    }
+
+    private static String deltaJson(int from, int to, String venueId) {
+        return "{\"baseVersion\": " + from + ", \"version\": " + to + ", \"venues\": ["
+                + VenueDeltaTest.venue(venueId, "Venue " + venueId, 60.18, 24.95,
+                "floor-" + venueId) + "]}";
+    }
+
+    private static Callable<VenueMetadata[]> bundled() {
+        return new Callable<VenueMetadata[]>() {
+            @Override
+            public VenueMetadata[] call() throws IOException {
+                return VenueMetadataStorage.parse(
+                        new FileInputStream(TestResources.raw("venues.json")));
+            }
+        };
+    }
+}
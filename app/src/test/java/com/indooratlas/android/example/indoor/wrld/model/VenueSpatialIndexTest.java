@@ -0,0 +1,153 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.indooratlas.android.example.indoor.wrld.location.playback.SyntheticTraceGenerator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VenueSpatialIndexTest {
+
+    private static final double LATITUDE = 60.17;
+
+    private static final double LONGITUDE = 24.94;
+
+    private final VenueMetadata[] mVenues = SyntheticTraceGenerator.generateVenues(2000, 4,
+            LATITUDE, LONGITUDE, 10000);
+
+    private final VenueSpatialIndex mIndex = VenueSpatialIndex.of(Arrays.asList(mVenues));
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            final double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.3;
+            final double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.6;
+            double maxMeters = i % 2 == 0 ? 1000 : 100000;
+            List<VenueMetadata> expected = bruteForce(latitude, longitude, maxMeters);
+            List<VenueMetadata> nearest = mIndex.findNearest(latitude, longitude, 5, maxMeters);
+            assertEquals(expected.subList(0, Math.min(5, expected.size())), nearest);
+            assertSame(expected.isEmpty() ? null : expected.get(0),
+                    mIndex.findNearest(latitude, longitude, maxMeters));
+        }
+    }
+
+    @Test
+    public void radiusAndBoundsMatchBruteForce() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.2;
+            double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.4;
+            double meters = 200 + random.nextDouble() * 3000;
+            List<VenueMetadata> found = new ArrayList<>();
+            int added = mIndex.findWithinRadius(latitude, longitude, meters, found);
+            assertEquals(found.size(), added);
+            assertEquals(new HashSet<>(bruteForce(latitude, longitude, meters)),
+                    new HashSet<>(found));
+
+            double south = latitude - random.nextDouble() * 0.05;
+            double north = latitude + random.nextDouble() * 0.05;
+            double west = longitude - random.nextDouble() * 0.1;
+            double east = longitude + random.nextDouble() * 0.1;
+            found.clear();
+            mIndex.findInBounds(south, west, north, east, found);
+            List<VenueMetadata> expected = new ArrayList<>();
+            for (VenueMetadata venue : mVenues) {
+                if (venue.coordinates[0] >= south && venue.coordinates[0] <= north
+                        && venue.coordinates[1] >= west && venue.coordinates[1] <= east) {
+                    expected.add(venue);
+                }
+            }
+            assertEquals(new HashSet<>(expected), new HashSet<>(found));
+        }
+        // whole world falls back to visiting occupied cells
+        List<VenueMetadata> all = new ArrayList<>();
+        mIndex.findInBounds(-90, -180, 90, 180, all);
+        assertEquals(mVenues.length, all.size());
+    }
+
+    @Test
+    public void addAndRemove() {
+        VenueSpatialIndex index = new VenueSpatialIndex();
+        assertNull(index.findNearest(LATITUDE, LONGITUDE, 1000));
+        VenueMetadata venue = mVenues[0];
+        index.add(venue);
+        index.add(new VenueMetadata());
+        assertEquals(1, index.size());
+        assertSame(venue, index.findNearest(venue.coordinates[0], venue.coordinates[1], 1));
+        assertTrue(index.remove(venue));
+        assertEquals(0, index.size());
+        assertNull(index.findNearest(venue.coordinates[0], venue.coordinates[1], 1000));
+        assertEquals(false, index.remove(venue));
+    }
+
+    @Test
+    public void readersSeeConsistentIndexWhileWriting() throws Exception {
+        final VenueSpatialIndex index = new VenueSpatialIndex();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int last = 0;
+                    while (last < mVenues.length) {
+                        List<VenueMetadata> all = new ArrayList<>();
+                        index.findInBounds(-90, -180, 90, 180, all);
+                        // venues are only added, never fewer than before
+                        assertTrue(all.size() >= last);
+                        last = all.size();
+                        index.findNearest(LATITUDE, LONGITUDE, 3, 5000);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+        for (VenueMetadata venue : mVenues) {
+            index.add(venue);
+        }
+        reader.join(10000);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(mVenues.length, index.size());
+    }
+
+    private List<VenueMetadata> bruteForce(final double latitude, final double longitude,
+                                           double maxMeters) {
+        List<VenueMetadata> result = new ArrayList<>();
+        for (VenueMetadata venue : mVenues) {
+            if (distance(latitude, longitude, venue) <= maxMeters) {
+                result.add(venue);
+            }
+        }
+        Collections.sort(result, new Comparator<VenueMetadata>() {
+            @Override
+            public int compare(VenueMetadata a, VenueMetadata b) {
+                return Double.compare(distance(latitude, longitude, a),
+                        distance(latitude, longitude, b));
+            }
+        });
+        return result;
+    }
+
+    private static double distance(double latitude, double longitude, VenueMetadata venue) {
+        double x = (venue.coordinates[1] - longitude) * Math.cos(Math.toRadians(latitude))
+                * 111320.0;
+        double y = (venue.coordinates[0] - latitude) * 111320.0;
+        return Math.sqrt(x * x + y * y);
+    }
+}
@@ -0,0 +1,157 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccuracyCircleOverlayTest {
+
+    private static final double LATITUDE = 60.16926;
+
+    private static final double LONGITUDE = 24.93206;
+
+    private static final double ZOOM = 19;
+
+    /** Degrees of latitude per meter. */
+    private static final double METER = 1 / 111195.0;
+
+    private long mNow = 1000;
+
+    private final List<Integer> mPolygons = new ArrayList<>();
+
+    private final List<String> mFloors = new ArrayList<>();
+
+    private int mNextPolygon;
+
+    private AccuracyCircleOverlay<Integer> mOverlay;
+
+    @Before
+    public void setUp() {
+        mOverlay = new AccuracyCircleOverlay<>(new Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return mNow;
+            }
+        }, new AccuracyCircleOverlay.Renderer<Integer>() {
+            @Override
+            public Integer add(String indoorMapId, int floorId, double[] points, int count) {
+                assertTrue(count >= AccuracyRing.MIN_POINTS);
+                mPolygons.add(++mNextPolygon);
+                mFloors.add(indoorMapId + "/" + floorId);
+                return mNextPolygon;
+            }
+
+            @Override
+            public void remove(Integer polygon) {
+                assertTrue(mPolygons.remove(polygon));
+            }
+        }, 2f, 10f);
+    }
+
+    @Test
+    public void keepsPolygonWhileChangesAreInvisible() {
+        // about 0.15 m per pixel at zoom 19, 2 pixels is about 0.3 m
+        for (int frame = 0; frame < 600; frame++) {
+            mNow += 16;
+            mOverlay.update(LATITUDE + (frame % 3) * 0.1 * METER, LONGITUDE, 5 + frame % 2 * 0.1,
+                    ZOOM, "map", 1);
+        }
+        assertEquals(1, mOverlay.getAddCount());
+        assertEquals(0, mOverlay.getRemoveCount());
+        assertEquals(599, mOverlay.getSkippedCount());
+        assertEquals(1, mPolygons.size());
+    }
+
+    @Test
+    public void limitsReplacementRate() {
+        // walking at 1.5 m/s, animated at 60 frames per second for 10 seconds
+        for (int frame = 0; frame < 600; frame++) {
+            mNow += 16;
+            mOverlay.update(LATITUDE + frame * 0.025 * METER, LONGITUDE, 5, ZOOM, "map", 1);
+            if (mNow >= mOverlay.getNextDeadline()) {
+                mOverlay.tick();
+            }
+        }
+        // a change every 0.3 m, 12 frames, so the rate limit of 10 per second does not bind
+        long adds = mOverlay.getAddCount();
+        assertTrue("adds " + adds, adds >= 45 && adds <= 55);
+        assertEquals(adds - 1, mOverlay.getRemoveCount());
+        assertEquals(1, mPolygons.size());
+        assertTrue(mOverlay.getOperationsPerSecond() <= 20);
+
+        // a fast moving circle is limited to 10 replacements per second, ticks land on frames
+        // here so it is every 7th frame, 112 ms
+        long before = mOverlay.getAddCount();
+        for (int frame = 0; frame < 600; frame++) {
+            mNow += 16;
+            mOverlay.update(LATITUDE + frame * METER, LONGITUDE, 5, ZOOM, "map", 1);
+            if (mNow >= mOverlay.getNextDeadline()) {
+                mOverlay.tick();
+            }
+        }
+        long added = mOverlay.getAddCount() - before;
+        assertTrue("adds " + added, added >= 80 && added <= 96);
+        assertTrue(mOverlay.getOperationsPerSecond() <= 21);
+    }
+
+    @Test
+    public void drawsPendingChangeAtDeadline() {
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "map", 1);
+        mNow += 16;
+        mOverlay.update(LATITUDE + 5 * METER, LONGITUDE, 5, ZOOM, "map", 1);
+        assertEquals(1, mOverlay.getAddCount());
+        assertEquals(1000 + 100, mOverlay.getNextDeadline());
+
+        mNow = 1099;
+        mOverlay.tick();
+        assertEquals(1, mOverlay.getAddCount());
+        mNow = 1100;
+        mOverlay.tick();
+        assertEquals(2, mOverlay.getAddCount());
+        assertEquals(AccuracyCircleOverlay.NO_DEADLINE, mOverlay.getNextDeadline());
+
+        // moving back within the threshold cancels a pending change
+        mNow += 16;
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "map", 1);
+        mNow += 16;
+        mOverlay.update(LATITUDE + 5 * METER, LONGITUDE, 5, ZOOM, "map", 1);
+        assertEquals(AccuracyCircleOverlay.NO_DEADLINE, mOverlay.getNextDeadline());
+    }
+
+    @Test
+    public void replacesImmediatelyOnFloorChange() {
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "map", 1);
+        mNow += 16;
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "map", 2);
+        mNow += 16;
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "other", 2);
+        assertEquals(3, mOverlay.getAddCount());
+        assertEquals(2, mOverlay.getRemoveCount());
+        assertEquals("[map/1, map/2, other/2]", mFloors.toString());
+        assertEquals(1, mPolygons.size());
+
+        mOverlay.clear();
+        assertEquals(0, mPolygons.size());
+        assertEquals(3, mOverlay.getRemoveCount());
+        mOverlay.update(LATITUDE, LONGITUDE, 5, ZOOM, "other", 2);
+        assertEquals(4, mOverlay.getAddCount());
+    }
+
+    @Test
+    public void redrawsWhenZoomNeedsMorePoints() {
+        mOverlay.update(LATITUDE, LONGITUDE, 5, 15, "map", 1);
+        mNow += 200;
+        mOverlay.update(LATITUDE, LONGITUDE, 5, 15.01, "map", 1);
+        assertEquals(1, mOverlay.getAddCount());
+        mNow += 200;
+        mOverlay.update(LATITUDE, LONGITUDE, 5, 20, "map", 1);
+        assertEquals(2, mOverlay.getAddCount());
+    }
+}
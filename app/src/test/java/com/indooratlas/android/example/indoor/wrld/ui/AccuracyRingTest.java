@@ -0,0 +1,104 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.google.maps.android.SphericalUtil;
+import com.indooratlas.android.example.indoor.wrld.AllocationCounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccuracyRingTest {
+
+    private static final double[] LATITUDES = {0, 30, -45, 60.17, 70};
+
+    private static final double[] RADII = {0.5, 5, 20, 50, 200};
+
+    @Test
+    public void staysWithinErrorBoundOfSphericalCircle() {
+        double[] exact = new double[2 * AccuracyRing.MAX_POINTS];
+        double[] approximate = new double[2 * AccuracyRing.MAX_POINTS];
+        for (double latitude : LATITUDES) {
+            for (double radius : RADII) {
+                for (int count = AccuracyRing.MIN_POINTS; count <= AccuracyRing.MAX_POINTS;
+                     count += AccuracyRing.POINT_STEP) {
+                    SphericalUtil.computeCircle(latitude, 24.94, radius, count, exact);
+                    AccuracyRing.compute(latitude, 24.94, radius, count, approximate);
+                    // r^2 tan(latitude) / 2R with some slack for the neglected terms
+                    double bound = 1e-6 + radius * radius
+                            * Math.tan(Math.toRadians(Math.abs(latitude))) / 6371009;
+                    for (int i = 0; i < count; i++) {
+                        double error = SphericalUtil.computeDistanceBetween(exact[2 * i],
+                                exact[2 * i + 1], approximate[2 * i], approximate[2 * i + 1]);
+                        assertTrue("latitude " + latitude + ", radius " + radius + ": "
+                                + error + " m", error <= bound);
+                        assertTrue(error < 0.01);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pointCountFollowsOnScreenRadius() {
+        assertEquals(AccuracyRing.MIN_POINTS, AccuracyRing.pointCount(0));
+        assertEquals(AccuracyRing.MIN_POINTS, AccuracyRing.pointCount(Double.NaN));
+        assertEquals(AccuracyRing.MIN_POINTS, AccuracyRing.pointCount(2));
+        assertEquals(AccuracyRing.MAX_POINTS, AccuracyRing.pointCount(10000));
+        int previous = 0;
+        for (double pixels = 1; pixels < 2000; pixels *= 1.1) {
+            int count = AccuracyRing.pointCount(pixels);
+            assertTrue(count >= previous);
+            assertEquals(0, count % AccuracyRing.POINT_STEP);
+            if (count < AccuracyRing.MAX_POINTS) {
+                // distance between the chords and the circle
+                double sagitta = pixels * (1 - Math.cos(Math.PI / count));
+                assertTrue(pixels + " px: " + sagitta, sagitta <= AccuracyRing.MAX_ERROR_PIXELS);
+            }
+            previous = count;
+        }
+
+        // 10 m at venue zoom is a few dozen pixels, zooming out needs fewer points
+        int venueZoom = AccuracyRing.computeAtZoom(60.17, 24.94, 10, 19,
+                new double[2 * AccuracyRing.MAX_POINTS]);
+        int cityZoom = AccuracyRing.computeAtZoom(60.17, 24.94, 10, 14,
+                new double[2 * AccuracyRing.MAX_POINTS]);
+        assertTrue(venueZoom > cityZoom);
+        assertEquals(AccuracyRing.MIN_POINTS, cityZoom);
+    }
+
+    @Test
+    public void rejectsUnsupportedPointCounts() {
+        int[] counts = {0, 7, 50, AccuracyRing.MAX_POINTS + AccuracyRing.POINT_STEP};
+        for (int count : counts) {
+            try {
+                AccuracyRing.compute(60, 24, 10, count, new double[1000]);
+                fail("accepted " + count);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        double[] out = new double[2 * AccuracyRing.MAX_POINTS];
+        for (int i = 0; i < 3; i++) {
+            frames(out);
+        }
+        AllocationCounter counter = AllocationCounter.forCurrentThread();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            counter.start();
+            frames(out);
+            allocated = Math.min(allocated, counter.stop());
+        }
+        assertEquals(0, allocated);
+    }
+
+    private static void frames(double[] out) {
+        for (int i = 0; i < 1000; i++) {
+            AccuracyRing.computeAtZoom(60.17 + i * 1e-6, 24.94, 2 + i % 20, 15 + i % 6, out);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.indooratlas.android.example.indoor.wrld.AllocationCounter;
+import com.indooratlas.android.example.indoor.wrld.location.LocationEventBus;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackDispatcher;
+import com.indooratlas.android.example.indoor.wrld.location.playback.PlaybackEvent;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that handing fixes from a producer through the event bus to the blue dot
+ * interpolation does not allocate. The playback events are built up front, so decoding the trace
+ * is not covered, and neither are context events, the bus queues an event object for each of
+ * them, nor the WRLD renderer which takes a new {@code LatLng} per frame.
+ */
+public class LocationFixPipelineTest {
+
+    private static final int NUM_FIXES = 10000;
+
+    private static final int FRAMES_PER_FIX = 4;
+
+    @Test
+    public void steadyStatePlaybackDoesNotAllocate() {
+        final FixInterpolator interpolator = new FixInterpolator();
+        final double[] checksum = new double[1];
+        final Runnable[] drain = new Runnable[1];
+
+        // same steps as BlueSphereHelper on the main thread, which is the test thread here
+        LocationEventBus bus = new LocationEventBus();
+        bus.subscribe(new LocationProducer.ListenerSupport() {
+            @Override
+            public void onLocationChanged(LocationFix fix) {
+                if (interpolator.isTarget(fix)) {
+                    return;
+                }
+                interpolator.setTarget(fix);
+                for (int frame = 1; frame <= FRAMES_PER_FIX; frame++) {
+                    interpolator.evaluate((float) frame / FRAMES_PER_FIX);
+                    checksum[0] += interpolator.getLatitude() + interpolator.getBearing();
+                }
+            }
+        }, LocationEventBus.DispatchPolicy.latestOnly(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                drain[0] = command;
+            }
+        }));
+
+        PlaybackDispatcher dispatcher = new PlaybackDispatcher(bus);
+        dispatcher.dispatch(PlaybackEvent.venueEntry(0, "venue", "Venue"));
+        dispatcher.dispatch(PlaybackEvent.floorEntry(0, "floor", "1"));
+        runPending(drain);
+
+        PlaybackEvent[] events = new PlaybackEvent[NUM_FIXES];
+        for (int i = 0; i < NUM_FIXES; i++) {
+            events[i] = PlaybackEvent.location(1000L * i, 60.1698 + i * 1e-6, 24.9353 - i * 1e-6);
+        }
+
+        // warm up so that class loading and JIT do not show up in the measurement
+        for (int i = 0; i < 3; i++) {
+            playback(dispatcher, events, drain);
+        }
+
+        // a real per-fix allocation shows up on every run, occasional runtime noise does not
+        AllocationCounter counter = AllocationCounter.forCurrentThread();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            counter.start();
+            playback(dispatcher, events, drain);
+            allocated = Math.min(allocated, counter.stop());
+        }
+
+        assertTrue(checksum[0] != 0);
+        assertEquals("bytes allocated during " + NUM_FIXES + " fixes", 0, allocated);
+    }
+
+    @Test
+    public void interpolatesBetweenFixes() {
+        FixInterpolator interpolator = new FixInterpolator();
+        assertFalse(interpolator.hasTarget());
+
+        LocationFix fix = new LocationFix()
+                .set(LocationFix.SOURCE_INDOOR, 60.0, 24.0, 350f, 5f, 1000L, 1);
+        interpolator.setTarget(fix);
+        assertTrue(interpolator.isTarget(fix));
+        assertEquals(60.0, interpolator.getLatitude(), 0);
+
+        // the producer reuses the instance, interpolator must not be affected
+        fix.set(LocationFix.SOURCE_INDOOR, 61.0, 25.0, 10f, 3f, 2000L, 1);
+        assertFalse(interpolator.isTarget(fix));
+        interpolator.setTarget(fix);
+
+        interpolator.evaluate(0.5f);
+        assertEquals(60.5, interpolator.getLatitude(), 1e-9);
+        assertEquals(24.5, interpolator.getLongitude(), 1e-9);
+        // shortest way around from 350 to 10 degrees
+        assertEquals(360f, interpolator.getBearing(), 1e-3f);
+        assertEquals(3f, interpolator.getAccuracy(), 0f);
+
+        interpolator.evaluate(1f);
+        assertEquals(61.0, interpolator.getLatitude(), 0);
+        assertEquals(10f, interpolator.getBearing(), 0f);
+    }
+
+    /**
+     * Dispatches the fixes on the producer side, draining the bus after every other fix so that
+     * some fixes are coalesced like on a busy main thread.
+     */
+    private static void playback(PlaybackDispatcher dispatcher, PlaybackEvent[] events,
+                                 Runnable[] drain) {
+        for (int i = 0; i < events.length; i++) {
+            dispatcher.dispatch(events[i]);
+            if ((i & 1) == 1) {
+                runPending(drain);
+            }
+        }
+        runPending(drain);
+    }
+
+    private static void runPending(Runnable[] drain) {
+        Runnable command = drain[0];
+        if (command != null) {
+            drain[0] = null;
+            command.run();
+        }
+    }
+}
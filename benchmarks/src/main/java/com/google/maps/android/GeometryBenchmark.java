@@ -0,0 +1,222 @@
+package com.google.maps.android;
+
+import com.eegeo.mapapi.geometry.LatLng;
+import com.indooratlas.android.example.indoor.wrld.model.LocalTangentPlane;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SphericalUtil} and {@link MathUtil} on point pairs within a venue, and the same
+ * operations on the venue's {@link LocalTangentPlane}. Each invocation walks to the next pair so
+ * that results cannot be folded into constants. The nearest benchmarks find the 5 points closest
+ * to one of them, with a distance loop over LatLng objects and with {@link SphericalBatch}.
+ * <p>
+ * The circle benchmarks draw an accuracy circle of 50 points, as LatLng objects the way the
+ * navigation controller did and as primitives. The LatLng points are kept in an array like the
+ * polygon options keep them, otherwise HotSpot's escape analysis removes the allocations, which
+ * ART does not do. Run with {@code -prof gc} to see the bytes per circle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeometryBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private static final double LATITUDE = 60.16926;
+
+    private static final double LONGITUDE = 24.93206;
+
+    private final double[] mPoints = new double[2 * POINTS];
+
+    private final LatLng[] mLatLngs = new LatLng[POINTS];
+
+    private final double[] mOut = new double[2 * 64];
+
+    private final LatLng[] mCircle = new LatLng[50];
+
+    private final int[] mIndices = new int[5];
+
+    private final double[] mDistances = new double[5];
+
+    private LocalTangentPlane mPlane;
+
+    private SphericalBatch mBatch;
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(23);
+        for (int i = 0; i < POINTS; i++) {
+            SphericalUtil.computeOffset(LATITUDE, LONGITUDE, 300 * random.nextDouble(),
+                    360 * random.nextDouble(), mPoints, 2 * i);
+            mLatLngs[i] = new LatLng(mPoints[2 * i], mPoints[2 * i + 1]);
+        }
+        mPlane = new LocalTangentPlane(LATITUDE, LONGITUDE);
+        double[] latitudes = new double[POINTS];
+        double[] longitudes = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = mPoints[2 * i];
+            longitudes[i] = mPoints[2 * i + 1];
+        }
+        mBatch = new SphericalBatch(latitudes, longitudes);
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (POINTS - 1);
+        return mIndex;
+    }
+
+    @Benchmark
+    public double sphericalDistance() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        return SphericalUtil.computeDistanceBetween(mPoints[2 * i], mPoints[2 * i + 1],
+                mPoints[2 * j], mPoints[2 * j + 1]);
+    }
+
+    @Benchmark
+    public double sphericalDistanceLatLng() {
+        int i = next();
+        return SphericalUtil.computeDistanceBetween(mLatLngs[i],
+                mLatLngs[(i + 1) & (POINTS - 1)]);
+    }
+
+    @Benchmark
+    public double planeDistance() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        return mPlane.distance(mPoints[2 * i], mPoints[2 * i + 1], mPoints[2 * j],
+                mPoints[2 * j + 1]);
+    }
+
+    @Benchmark
+    public double sphericalHeading() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        return SphericalUtil.computeHeading(mPoints[2 * i], mPoints[2 * i + 1], mPoints[2 * j],
+                mPoints[2 * j + 1]);
+    }
+
+    @Benchmark
+    public double planeHeading() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        return mPlane.heading(mPoints[2 * i], mPoints[2 * i + 1], mPoints[2 * j],
+                mPoints[2 * j + 1]);
+    }
+
+    @Benchmark
+    public LatLng sphericalOffsetLatLng() {
+        int i = next();
+        return SphericalUtil.computeOffset(mLatLngs[i], 25, i);
+    }
+
+    @Benchmark
+    public double[] sphericalOffset() {
+        int i = next();
+        SphericalUtil.computeOffset(mPoints[2 * i], mPoints[2 * i + 1], 25, i, mOut, 0);
+        return mOut;
+    }
+
+    @Benchmark
+    public double[] planeOffset() {
+        int i = next();
+        mPlane.offset(mPoints[2 * i], mPoints[2 * i + 1], 25, i, mOut, 0);
+        return mOut;
+    }
+
+    @Benchmark
+    public double[] sphericalInterpolate() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        SphericalUtil.interpolate(mPoints[2 * i], mPoints[2 * i + 1], mPoints[2 * j],
+                mPoints[2 * j + 1], 0.25, mOut, 0);
+        return mOut;
+    }
+
+    @Benchmark
+    public double[] sphericalCircle50() {
+        int i = next();
+        SphericalUtil.computeCircle(mPoints[2 * i], mPoints[2 * i + 1], 10, 50, mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public LatLng[] sphericalCircle50LatLng() {
+        LatLng center = mLatLngs[next()];
+        for (int i = 0; i < mCircle.length; i++) {
+            mCircle[i] = SphericalUtil.computeOffset(center, 10, 360.0 * i / mCircle.length);
+        }
+        return mCircle;
+    }
+
+    @Benchmark
+    public double[] nearestLatLng() {
+        LatLng from = mLatLngs[next()];
+        int found = 0;
+        for (int v = 0; v < POINTS; v++) {
+            double distance = SphericalUtil.computeDistanceBetween(from, mLatLngs[v]);
+            if (found == 5 && distance >= mDistances[4]) {
+                continue;
+            }
+            int i = found < 5 ? found++ : 4;
+            while (i > 0 && mDistances[i - 1] > distance) {
+                mDistances[i] = mDistances[i - 1];
+                mIndices[i] = mIndices[i - 1];
+                i--;
+            }
+            mDistances[i] = distance;
+            mIndices[i] = v;
+        }
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] nearestBatch() {
+        int i = next();
+        mBatch.findNearest(mPoints[2 * i], mPoints[2 * i + 1], 5, Double.MAX_VALUE, mIndices,
+                mDistances);
+        return mDistances;
+    }
+
+    @Benchmark
+    public double mathHavDistance() {
+        int i = next();
+        int j = (i + 1) & (POINTS - 1);
+        return MathUtil.havDistance(Math.toRadians(mPoints[2 * i]),
+                Math.toRadians(mPoints[2 * j]),
+                Math.toRadians(mPoints[2 * i + 1] - mPoints[2 * j + 1]));
+    }
+
+    @Benchmark
+    public double mathArcHav() {
+        return MathUtil.arcHav(1e-9 * next());
+    }
+
+    @Benchmark
+    public double mathWrap() {
+        return MathUtil.wrap(next() * 0.7 - 360, -180, 180);
+    }
+
+    @Benchmark
+    public double mathMercator() {
+        return MathUtil.mercator(Math.toRadians(mPoints[2 * next()]));
+    }
+}
@@ -0,0 +1,114 @@
+package com.google.maps.android;
+
+import com.eegeo.mapapi.geometry.LatLng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the 5 venues closest to a fix among a metropolitan area worth of venues, by looping
+ * {@link SphericalUtil#computeDistanceBetween(LatLng, LatLng)} over LatLng objects and keeping
+ * the best, and with {@link SphericalBatch} sequentially and on a fork/join pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NearestVenuesBenchmark {
+
+    private static final int K = 5;
+
+    @Param({"100000"})
+    public int venueCount;
+
+    private LatLng[] mVenues;
+
+    private SphericalBatch mBatch;
+
+    private ForkJoinPool mPool;
+
+    private final int[] mIndices = new int[K];
+
+    private final double[] mDistances = new double[K];
+
+    private int mQuery;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        mVenues = new LatLng[venueCount];
+        double[] latitudes = new double[venueCount];
+        double[] longitudes = new double[venueCount];
+        for (int i = 0; i < venueCount; i++) {
+            latitudes[i] = 60.17 + (random.nextDouble() - 0.5) * 0.4;
+            longitudes[i] = 24.94 + (random.nextDouble() - 0.5) * 0.8;
+            mVenues[i] = new LatLng(latitudes[i], longitudes[i]);
+        }
+        mBatch = new SphericalBatch(latitudes, longitudes);
+        mPool = new ForkJoinPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    private int next() {
+        mQuery = (mQuery + 1) & 255;
+        return mQuery;
+    }
+
+    @Benchmark
+    public double[] latLng() {
+        int q = next();
+        LatLng fix = new LatLng(60.1 + q * 0.0007, 24.9 + q * 0.0003);
+        int found = 0;
+        for (int v = 0; v < mVenues.length; v++) {
+            double distance = SphericalUtil.computeDistanceBetween(fix, mVenues[v]);
+            if (found == K && distance >= mDistances[K - 1]) {
+                continue;
+            }
+            int i = found < K ? found++ : K - 1;
+            while (i > 0 && mDistances[i - 1] > distance) {
+                mDistances[i] = mDistances[i - 1];
+                mIndices[i] = mIndices[i - 1];
+                i--;
+            }
+            mDistances[i] = distance;
+            mIndices[i] = v;
+        }
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] batch() {
+        int q = next();
+        mBatch.findNearest(60.1 + q * 0.0007, 24.9 + q * 0.0003, K, Double.MAX_VALUE, mIndices,
+                mDistances);
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] parallel() {
+        int q = next();
+        mBatch.findNearest(60.1 + q * 0.0007, 24.9 + q * 0.0003, K, Double.MAX_VALUE, mIndices,
+                mDistances, mPool);
+        return mDistances;
+    }
+}
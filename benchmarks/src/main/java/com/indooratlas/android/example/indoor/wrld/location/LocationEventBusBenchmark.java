@@ -0,0 +1,109 @@
+package com.indooratlas.android.example.indoor.wrld.location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing a fix on {@link LocationEventBus} as seen by the publishing thread, with
+ * synchronous subscribers only, and with one synchronous subscriber (the blue dot) plus
+ * latest-only subscribers served by a deliberately slow background thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocationEventBusBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int subscriberCount;
+
+    private final LocationFixRing mFixes = new LocationFixRing(8);
+
+    private LocationEventBus mSynchronous;
+
+    private LocationEventBus mLatestOnly;
+
+    private ExecutorService mExecutor;
+
+    private int mCount;
+
+    @Setup
+    public void setUp() {
+        mSynchronous = new LocationEventBus();
+        for (int i = 0; i < subscriberCount; i++) {
+            mSynchronous.subscribe(new CountingListener(),
+                    LocationEventBus.DispatchPolicy.synchronous());
+        }
+        mExecutor = Executors.newSingleThreadExecutor();
+        mLatestOnly = new LocationEventBus();
+        mLatestOnly.subscribe(new CountingListener(),
+                LocationEventBus.DispatchPolicy.synchronous());
+        for (int i = 1; i < subscriberCount; i++) {
+            mLatestOnly.subscribe(new SlowListener(),
+                    LocationEventBus.DispatchPolicy.latestOnly(mExecutor));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        mExecutor.shutdownNow();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private LocationFix nextFix() {
+        int count = ++mCount;
+        return mFixes.next().set(LocationFix.SOURCE_INDOOR, 60 + (count & 1023) * 1e-7, 24, 0, 5,
+                count, 1);
+    }
+
+    @Benchmark
+    public void synchronous() {
+        mSynchronous.onLocationChanged(nextFix());
+    }
+
+    @Benchmark
+    public void latestOnlyWithSlowConsumer() {
+        mLatestOnly.onLocationChanged(nextFix());
+    }
+
+    private static class CountingListener extends LocationProducer.ListenerSupport {
+
+        long count;
+
+        double sum;
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            count++;
+            sum += fix.latitude;
+        }
+    }
+
+    private static class SlowListener extends LocationProducer.ListenerSupport {
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
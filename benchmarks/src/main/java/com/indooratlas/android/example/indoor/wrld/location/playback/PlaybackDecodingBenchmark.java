@@ -0,0 +1,143 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a synthetic trace from JSON and from the binary format, and generating it in the
+ * binary format, reported per event. The first event benchmarks compare loading the whole JSON
+ * file into a tree, like the previous {@code JSONArray} based implementation did, with
+ * streaming; {@code org.json} itself is not available off-device so Gson's tree model stands in
+ * for it. Run with {@code -prof gc} for the bytes allocated by each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlaybackDecodingBenchmark {
+
+    private static final int EVENTS = 100000;
+
+    private File mJson;
+
+    private File mBinary;
+
+    private VenueMetadata[] mVenues;
+
+    private File mGenerated;
+
+    @Setup
+    public void setUp() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(20, 1, 60.17, 24.94,
+                2000);
+        mVenues = venues;
+        mJson = File.createTempFile("trace", ".json");
+        mBinary = File.createTempFile("trace", ".trace");
+        mGenerated = File.createTempFile("generated", ".trace");
+        JsonTraceWriter json = new JsonTraceWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(mJson), "UTF-8")));
+        new SyntheticTraceGenerator(venues, 2).generate(json, EVENTS);
+        json.close();
+        BinaryTraceWriter binary = new BinaryTraceWriter(mBinary);
+        new SyntheticTraceGenerator(venues, 2).generate(binary, EVENTS);
+        binary.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mJson.delete();
+        mBinary.delete();
+        mGenerated.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long json() throws IOException {
+        return drain(new JsonPlaybackEventSource(new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(mJson);
+            }
+        }));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long binary() throws IOException {
+        return drain(new BinaryPlaybackEventSource(mBinary));
+    }
+
+    @Benchmark
+    public JsonElement firstEventWholeFile() throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(mJson), "UTF-8");
+        try {
+            return new JsonParser().parse(reader).getAsJsonArray().get(0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public PlaybackEvent firstEventStreaming() throws IOException {
+        JsonPlaybackEventSource source = new JsonPlaybackEventSource(new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(mJson);
+            }
+        });
+        try {
+            return source.next();
+        } finally {
+            source.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long generateBinary() throws IOException {
+        BinaryTraceWriter out = new BinaryTraceWriter(mGenerated);
+        new SyntheticTraceGenerator(mVenues, 3).generate(out, EVENTS);
+        out.close();
+        return mGenerated.length();
+    }
+
+    private static long drain(PlaybackEventSource source) throws IOException {
+        long checksum = 0;
+        try {
+            PlaybackEvent event;
+            while ((event = source.next()) != null) {
+                checksum += event.type + Double.doubleToRawLongBits(event.latitude);
+            }
+        } finally {
+            source.close();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,195 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.indooratlas.android.example.indoor.wrld.location.LocationEventBus;
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Per-event cost of dispatching a trace through {@link PlaybackDispatcher}: the previous JSON
+ * tree walk, the streaming JSON source and a compiled trace. The tree walk mirrors the old
+ * {@code dispatchEvent}: look up the object, log it, switch on the type and kind strings and
+ * build a new event. The pump benchmark plays a binary trace unthrottled through
+ * {@link PlaybackPump} and the event bus. Run with {@code -prof gc} for the bytes per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaybackDispatchBenchmark {
+
+    private static final int EVENTS = 50000;
+
+    /** Typical indoor positioning update rate. */
+    private static final long INTERVAL_MILLIS = 100;
+
+    private File mJson;
+
+    private File mBinary;
+
+    private JsonArray mTree;
+
+    private JsonPlaybackEventSource mStreaming;
+
+    private SeekablePlaybackEventSource mCompiled;
+
+    private PlaybackDispatcher mDispatcher;
+
+    private LocationEventBus mBus;
+
+    private long mCallbacks;
+
+    @Setup
+    public void setUp() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(20, 1, 60.17, 24.94,
+                2000);
+        mJson = File.createTempFile("trace", ".json");
+        mBinary = File.createTempFile("trace", ".trace");
+        JsonTraceWriter json = new JsonTraceWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(mJson), "UTF-8")));
+        new SyntheticTraceGenerator(venues, 2).generate(json, EVENTS);
+        json.close();
+        BinaryTraceWriter binary = new BinaryTraceWriter(mBinary);
+        new SyntheticTraceGenerator(venues, 2).generate(binary, EVENTS);
+        binary.close();
+
+        Reader reader = new InputStreamReader(new FileInputStream(mJson), "UTF-8");
+        mTree = new JsonParser().parse(reader).getAsJsonArray();
+        reader.close();
+        mStreaming = new JsonPlaybackEventSource(new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(mJson);
+            }
+        });
+        mCompiled = PlaybackTrace.compile(mStreaming).newSource();
+
+        LocationProducer.Listener listener = new LocationProducer.ListenerSupport() {
+            @Override
+            public void onLocationChanged(LocationFix fix) {
+                mCallbacks++;
+            }
+
+            @Override
+            public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+                mCallbacks++;
+            }
+        };
+        mDispatcher = new PlaybackDispatcher(listener);
+        mBus = new LocationEventBus();
+        mBus.subscribe(listener, LocationEventBus.DispatchPolicy.synchronous());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStreaming.close();
+        mJson.delete();
+        mBinary.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long jsonTree() {
+        for (int i = 0; i < mTree.size(); i++) {
+            dispatchTree(mTree.get(i).getAsJsonObject(), mDispatcher);
+        }
+        return mCallbacks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long jsonStreaming() throws IOException {
+        mStreaming.rewind();
+        PlaybackEvent event;
+        while ((event = mStreaming.next()) != null) {
+            mDispatcher.dispatch(event);
+        }
+        return mCallbacks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long compiled() throws IOException {
+        mCompiled.rewind();
+        PlaybackEvent event;
+        while ((event = mCompiled.next()) != null) {
+            mDispatcher.dispatch(event);
+        }
+        return mCallbacks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long pumpUnthrottled() throws IOException {
+        BinaryPlaybackEventSource source = new BinaryPlaybackEventSource(mBinary);
+        try {
+            PlaybackPump pump = new PlaybackPump(source, new PlaybackDispatcher(mBus),
+                    PlaybackClock.unthrottled(), INTERVAL_MILLIS);
+            pump.start(0);
+            while (pump.step(0) != PlaybackPump.END) {
+                // keep pumping
+            }
+            return pump.getDispatchedCount();
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void dispatchTree(JsonObject event, PlaybackDispatcher dispatcher) {
+        Timber.v("processing event: %s", event);
+        switch (event.get("type").getAsString()) {
+            case "location":
+                JsonArray coordinates = event.getAsJsonArray("coordinates");
+                dispatcher.dispatch(PlaybackEvent.location(PlaybackEvent.NO_TIMESTAMP,
+                        coordinates.get(0).getAsDouble(), coordinates.get(1).getAsDouble()));
+                break;
+            case "context":
+                switch (event.get("kind").getAsString()) {
+                    case "venue-entry":
+                        dispatcher.dispatch(PlaybackEvent.venueEntry(PlaybackEvent.NO_TIMESTAMP,
+                                event.get("id").getAsString(), event.get("name").getAsString()));
+                        break;
+                    case "floor-entry":
+                        dispatcher.dispatch(PlaybackEvent.floorEntry(PlaybackEvent.NO_TIMESTAMP,
+                                event.get("id").getAsString(),
+                                event.get("floorLevel").getAsString()));
+                        break;
+                    case "venue-exit":
+                        dispatcher.dispatch(PlaybackEvent.venueExit(PlaybackEvent.NO_TIMESTAMP));
+                        break;
+                }
+                break;
+        }
+    }
+}
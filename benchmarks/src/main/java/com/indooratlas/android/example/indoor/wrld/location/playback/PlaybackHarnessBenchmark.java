@@ -0,0 +1,175 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+import com.indooratlas.android.example.indoor.wrld.model.IaId;
+import com.indooratlas.android.example.indoor.wrld.model.VenueCatalog;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scales the number of concurrent playback sessions on a shared executor of
+ * {@value #THREADS} threads. Unthrottled playback measures how long all sessions take to play
+ * their traces; accelerated real time plays a fixed 5 seconds and reports the dispatch latency
+ * percentiles of the harness as secondary results.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlaybackHarnessBenchmark {
+
+    private static final int VENUES = 1000;
+
+    private static final long EVENTS = 20000;
+
+    private static final int THREADS = 4;
+
+    @Param({"10", "100", "1000"})
+    public int sessions;
+
+    private File[] mTraces;
+
+    private PlaybackHarness.SessionFactory mFactory;
+
+    /**
+     * Results of the harness's own measurements.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Latency {
+
+        public long p50LatencyMicros;
+
+        public long p99LatencyMicros;
+
+        public long maxLatencyMicros;
+
+        public long failedSessions;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        final VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(VENUES, 1, 60.1699,
+                24.9384, 5000);
+        final VenueCatalog catalog = new VenueCatalog(venues);
+        final File[] traces = new File[8];
+        for (int i = 0; i < traces.length; i++) {
+            traces[i] = File.createTempFile("harness", ".trace");
+            BinaryTraceWriter out = new BinaryTraceWriter(traces[i]);
+            new SyntheticTraceGenerator(venues, i).generate(out, EVENTS);
+            out.close();
+        }
+        mTraces = traces;
+        mFactory = new PlaybackHarness.SessionFactory() {
+            @Override
+            public PlaybackEventSource openSource(int session) throws IOException {
+                return new BinaryPlaybackEventSource(traces[session % traces.length]);
+            }
+
+            @Override
+            public LocationProducer.Listener createController(int session) {
+                return new VenueController(catalog);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File trace : mTraces) {
+            trace.delete();
+        }
+    }
+
+    @Benchmark
+    public PlaybackHarness.Report unthrottled() throws Exception {
+        return new PlaybackHarness(mFactory)
+                .setSessions(sessions)
+                .setThreads(THREADS)
+                .setClock(PlaybackClock.unthrottled())
+                .run(120000);
+    }
+
+    /**
+     * One event per 10 ms and session. Secondary results are only reported in the average time
+     * mode, an invocation takes the whole measurement time so it is still a single run.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 1, time = 1)
+    @Measurement(iterations = 3, time = 1)
+    public PlaybackHarness.Report scaled(Latency latency) throws Exception {
+        PlaybackHarness.Report report = new PlaybackHarness(mFactory)
+                .setSessions(sessions)
+                .setThreads(THREADS)
+                .setClock(PlaybackClock.scaled(100))
+                .run(5000);
+        latency.p50LatencyMicros = report.p50LatencyMicros;
+        latency.p99LatencyMicros = report.p99LatencyMicros;
+        latency.maxLatencyMicros = report.maxLatencyMicros;
+        latency.failedSessions = report.failedSessions;
+        return report;
+    }
+
+    /**
+     * Does the lookups NavigationController does on context changes and keeps the last fix.
+     */
+    private static class VenueController extends LocationProducer.ListenerSupport {
+
+        private final VenueCatalog mCatalog;
+
+        private final IaId.LastParsed mVenueIds = new IaId.LastParsed();
+
+        private final IaId.LastParsed mFloorIds = new IaId.LastParsed();
+
+        private final LocationFix mFix = new LocationFix();
+
+        private VenueMetadata mVenue;
+
+        private VenueMetadata.FloorMetadata mFloor;
+
+        VenueController(VenueCatalog catalog) {
+            mCatalog = catalog;
+        }
+
+        @Override
+        public void onLocationChanged(LocationFix fix) {
+            mFix.copyFrom(fix);
+        }
+
+        @Override
+        public void onEnterVenue(String venueId, String venueName) {
+            mVenue = mCatalog.findByIaId(mVenueIds.parse(venueId));
+        }
+
+        @Override
+        public void onFloorChanged(String venueId, String floorId, String floorLevel) {
+            mFloor = mVenue != null ? mVenue.findFloorByIaId(mFloorIds.parse(floorId)) : null;
+        }
+
+        @Override
+        public void onExitVenue(String venueId) {
+            mVenue = null;
+            mFloor = null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationProducer;
+import com.indooratlas.android.example.indoor.wrld.model.VenueMetadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting to two thirds into a long trace by seeking with a {@link PlaybackIndex} versus
+ * replaying up to that point, and building the index versus loading it from its sidecar file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaybackSeekBenchmark {
+
+    private static final long EVENTS = 1000000;
+
+    private static final long INTERVAL = 1000;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private File mTrace;
+
+    private SeekablePlaybackEventSource mSource;
+
+    private PlaybackIndex mIndex;
+
+    private PlaybackPump mPump;
+
+    private long mTarget;
+
+    @Setup
+    public void setUp() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(20, 1, 60.17, 24.94,
+                2000);
+        if ("json".equals(format)) {
+            mTrace = File.createTempFile("trace", ".json");
+            JsonTraceWriter out = new JsonTraceWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(mTrace), "UTF-8")));
+            new SyntheticTraceGenerator(venues, 2).generate(out, EVENTS);
+            out.close();
+            mSource = new JsonPlaybackEventSource(new StreamOpener() {
+                @Override
+                public InputStream open() throws IOException {
+                    return new FileInputStream(mTrace);
+                }
+            });
+        } else {
+            mTrace = File.createTempFile("trace", ".trace");
+            BinaryTraceWriter out = new BinaryTraceWriter(mTrace);
+            new SyntheticTraceGenerator(venues, 2).generate(out, EVENTS);
+            out.close();
+            mSource = new BinaryPlaybackEventSource(mTrace);
+        }
+        mIndex = PlaybackIndex.forFile(mTrace, INTERVAL);
+        mPump = new PlaybackPump(mSource,
+                new PlaybackDispatcher(new LocationProducer.ListenerSupport()),
+                PlaybackClock.unthrottled(), INTERVAL);
+        mTarget = EVENTS * 2 / 3;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mSource.close();
+        new File(mTrace.getPath() + ".idx").delete();
+        mTrace.delete();
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        long base = mPump.getDispatchedCount();
+        mPump.start(0);
+        while (mPump.getDispatchedCount() - base < mTarget) {
+            mPump.step(0);
+        }
+        return mPump.getDispatchedCount();
+    }
+
+    @Benchmark
+    public boolean seek() throws IOException {
+        return mPump.seekToOrdinal(mIndex, mTarget, 0);
+    }
+
+    /**
+     * Loading the index from its sidecar, as done when the trace is opened again.
+     */
+    @Benchmark
+    public PlaybackIndex loadIndex() throws IOException {
+        return PlaybackIndex.forFile(mTrace, INTERVAL);
+    }
+
+    @Benchmark
+    public PlaybackIndex buildIndex() throws IOException {
+        if (mSource instanceof BinaryPlaybackEventSource) {
+            BinaryPlaybackEventSource source = new BinaryPlaybackEventSource(mTrace);
+            try {
+                return PlaybackIndex.buildBinary(source, INTERVAL, PlaybackIndex.DEFAULT_SPACING);
+            } finally {
+                source.close();
+            }
+        }
+        return PlaybackIndex.buildJson(new StreamOpener() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(mTrace);
+            }
+        }, INTERVAL, PlaybackIndex.DEFAULT_SPACING);
+    }
+}
@@ -0,0 +1,66 @@
+package com.indooratlas.android.example.indoor.wrld.location.playback;
+
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a location on the callback thread while the writer thread drains to disk.
+ * Sampled so that the percentiles show the worst cases; the recorder drops events rather than
+ * block when the writer falls behind.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceRecorderBenchmark {
+
+    @Param({"1024", "65536"})
+    public int capacity;
+
+    private File mFile;
+
+    private TraceRecorder mRecorder;
+
+    private int mCount;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("recording", ".json");
+        mRecorder = new TraceRecorder(mFile, capacity, new Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return System.nanoTime() / 1000000;
+            }
+        });
+        mRecorder.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRecorder.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public void recordLocation() {
+        mRecorder.recordLocation(60.1695 + (++mCount & 1023) * 1e-7, 24.9332);
+    }
+}
@@ -0,0 +1,184 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.google.gson.stream.JsonWriter;
+import com.indooratlas.android.example.indoor.wrld.location.playback.SyntheticTraceGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a catalog ready for lookups: parsing and indexing {@code venues.json} with Gson versus
+ * mapping the compiled binary catalog, and applying a small delta to a catalog versus indexing
+ * the updated one from scratch. The cold benchmarks read once per fork, which includes class
+ * loading and, for Gson, building the reflective type adapters, which is what an app cold start
+ * pays. The JSON is written without Gson's reflection so that it stays cold until then.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VenueCatalogBenchmark {
+
+    private static final int DELTA = 10;
+
+    @Param({"1000", "100000"})
+    public int venueCount;
+
+    private VenueMetadata[] mVenues;
+
+    private File mJson;
+
+    private File mBinary;
+
+    private VenueCatalog mCatalog;
+
+    private List<VenueMetadata> mAdded;
+
+    private List<IaId> mRemoved;
+
+    private VenueMetadata[] mUpdated;
+
+    @Setup
+    public void setUp() throws IOException {
+        VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(venueCount + DELTA, 1,
+                60.17, 24.94, 20000);
+        mVenues = Arrays.copyOf(venues, venueCount);
+        mJson = File.createTempFile("venues", ".json");
+        mBinary = File.createTempFile("venues", ".bin");
+        writeJson(mVenues, mJson);
+        VenueCatalogCompiler.compile(mVenues, mBinary);
+
+        mCatalog = new VenueCatalog(mVenues, 1);
+        mAdded = Arrays.asList(venues).subList(venueCount, venueCount + DELTA);
+        mRemoved = new ArrayList<>();
+        for (int i = 0; i < DELTA; i++) {
+            mRemoved.add(mVenues[i * (venueCount / DELTA)].iaId);
+        }
+        mUpdated = mCatalog.withChanges(2, mAdded, mRemoved).getVenues()
+                .toArray(new VenueMetadata[venueCount]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mJson.delete();
+        mBinary.delete();
+    }
+
+    @Benchmark
+    public VenueCatalog index() {
+        return new VenueCatalog(mVenues);
+    }
+
+    @Benchmark
+    public VenueCatalog parseJson() throws IOException {
+        return new VenueCatalog(VenueMetadataStorage.parse(new FileInputStream(mJson)));
+    }
+
+    @Benchmark
+    public VenueCatalog mapBinary() throws IOException {
+        FileInputStream in = new FileInputStream(mBinary);
+        try {
+            return BinaryVenueReader.map(in, 0, mBinary.length(), 1);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public VenueCatalog coldParseJson() throws IOException {
+        return parseJson();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public VenueCatalog coldMapBinary() throws IOException {
+        return mapBinary();
+    }
+
+    /**
+     * Time the calling thread, i.e. {@code MapActivity.onCreate}, is blocked by starting to load
+     * the catalog in the background. The load itself is not run.
+     */
+    @Benchmark
+    public VenueMetadataStorage startLoading() {
+        return new VenueMetadataStorage(new Callable<VenueMetadata[]>() {
+            @Override
+            public VenueMetadata[] call() throws IOException {
+                return VenueMetadataStorage.parse(new FileInputStream(mJson));
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // dropped
+            }
+        });
+    }
+
+    @Benchmark
+    public VenueCatalog applyDelta() {
+        return mCatalog.withChanges(2, mAdded, mRemoved);
+    }
+
+    @Benchmark
+    public VenueCatalog indexAfterDelta() {
+        return new VenueCatalog(mUpdated, 2);
+    }
+
+    private static void writeJson(VenueMetadata[] venues, File file) throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8"));
+        writer.beginArray();
+        for (VenueMetadata venue : venues) {
+            writer.beginObject();
+            writer.name("name").value(venue.name);
+            writer.name("iaId").value(venue.iaId.toString());
+            writer.name("wrldId").value(venue.wrldId);
+            writer.name("coordinates").beginArray().value(venue.coordinates[0])
+                    .value(venue.coordinates[1]).endArray();
+            writer.name("floors").beginArray();
+            for (VenueMetadata.FloorMetadata floor : venue.floors) {
+                writer.beginObject();
+                writer.name("name").value(floor.name);
+                writer.name("zOrder").value(floor.zOrder);
+                writer.name("iaId").value(floor.iaId.toString());
+                writer.name("index").value(floor.index);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.close();
+    }
+}
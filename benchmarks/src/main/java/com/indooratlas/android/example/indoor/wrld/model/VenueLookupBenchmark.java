@@ -0,0 +1,210 @@
+package com.indooratlas.android.example.indoor.wrld.model;
+
+import com.indooratlas.android.example.indoor.wrld.location.playback.SyntheticTraceGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups the location producer does on every region event, through
+ * {@link VenueMetadataStorage} loaded with a synthetic catalog, and spatial queries. The venue
+ * and floor lookup of a floor change is also done with a linear scan over venues that have no
+ * index, like the navigation controller did before the catalog.
+ * <p>
+ * The id benchmarks compare two equal ids that are different instances, e.g. one from the
+ * catalog and one from the positioning SDK, as {@link IaId} and as strings, which is how the
+ * catalog stored them before. Run with {@code -prof gc} for the bytes of a new id in both forms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VenueLookupBenchmark {
+
+    @Param({"100", "100000"})
+    public int venueCount;
+
+    private VenueMetadataStorage mStorage;
+
+    private VenueCatalog mCatalog;
+
+    private VenueMetadata[] mUnindexed;
+
+    /** Venue and floor ids as the positioning SDK hands them out, new strings every time. */
+    private String[] mVenueIds;
+
+    private String[] mFloorIds;
+
+    private IaId[] mParsedIds;
+
+    private IaId[] mParsedFloorIds;
+
+    /** Equal to the ids and id strings above but different instances. */
+    private IaId[] mOtherIds;
+
+    private String[] mOtherIdStrings;
+
+    private double[] mPoints;
+
+    private final List<VenueMetadata> mFound = new ArrayList<>();
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws Exception {
+        final VenueMetadata[] venues = SyntheticTraceGenerator.generateVenues(venueCount, 1,
+                60.17, 24.94, 20000);
+        mStorage = new VenueMetadataStorage(new Callable<VenueMetadata[]>() {
+            @Override
+            public VenueMetadata[] call() {
+                return venues;
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        mCatalog = mStorage.getCatalogFuture().get();
+        mUnindexed = SyntheticTraceGenerator.generateVenues(venueCount, 1, 60.17, 24.94, 20000);
+        mVenueIds = new String[1024];
+        mFloorIds = new String[1024];
+        mParsedIds = new IaId[1024];
+        mParsedFloorIds = new IaId[1024];
+        mOtherIds = new IaId[1024];
+        mOtherIdStrings = new String[1024];
+        mPoints = new double[2 * 1024];
+        for (int i = 0; i < 1024; i++) {
+            VenueMetadata venue = venues[(i * 7919) % venues.length];
+            mVenueIds[i] = new String(venue.iaId.toString());
+            mFloorIds[i] = new String(venue.floors[i % venue.floors.length].iaId.toString());
+            mParsedIds[i] = IaId.parse(mVenueIds[i]);
+            mParsedFloorIds[i] = IaId.parse(mFloorIds[i]);
+            mOtherIds[i] = IaId.parse(mVenueIds[i]);
+            mOtherIdStrings[i] = new String(mVenueIds[i]);
+            mPoints[2 * i] = venue.coordinates[0] + 0.0003;
+            mPoints[2 * i + 1] = venue.coordinates[1] - 0.0002;
+        }
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & 1023;
+        return mIndex;
+    }
+
+    /**
+     * Lookup of an id that is parsed first, as done once where ids arrive as strings.
+     */
+    @Benchmark
+    public VenueMetadata parseAndFindByIaId() {
+        return mStorage.findByIaId(IaId.parse(mVenueIds[next()]));
+    }
+
+    @Benchmark
+    public VenueMetadata findByIaId() {
+        return mCatalog.findByIaId(mParsedIds[next()]);
+    }
+
+    @Benchmark
+    public VenueMetadata findByFloorIaId() {
+        return mCatalog.findByFloorIaId(mParsedFloorIds[next()]);
+    }
+
+    @Benchmark
+    public VenueMetadata.FloorMetadata findVenueAndFloor() {
+        int i = next();
+        return mCatalog.findByIaId(mParsedIds[i]).findFloorByIaId(mParsedFloorIds[i]);
+    }
+
+    @Benchmark
+    public VenueMetadata.FloorMetadata linearFindVenueAndFloor() {
+        int i = next();
+        IaId id = mParsedIds[i];
+        for (VenueMetadata venue : mUnindexed) {
+            if (venue.iaId.equals(id)) {
+                return venue.findFloorByIaId(mParsedFloorIds[i]);
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public IaId internId() {
+        return mStorage.internId(mParsedIds[next()]);
+    }
+
+    @Benchmark
+    public VenueMetadata findNearest() {
+        int i = next();
+        return mCatalog.getSpatialIndex().findNearest(mPoints[2 * i], mPoints[2 * i + 1], 500);
+    }
+
+    @Benchmark
+    public List<VenueMetadata> findNearest10() {
+        int i = next();
+        return mCatalog.getSpatialIndex().findNearest(mPoints[2 * i], mPoints[2 * i + 1], 10,
+                5000);
+    }
+
+    @Benchmark
+    public int findWithinRadius() {
+        int i = next();
+        mFound.clear();
+        return mCatalog.getSpatialIndex().findWithinRadius(mPoints[2 * i], mPoints[2 * i + 1],
+                200, mFound);
+    }
+
+    /**
+     * Venues in a street level camera view of about 2 x 1 km.
+     */
+    @Benchmark
+    public int findInBounds() {
+        int i = next();
+        mFound.clear();
+        return mCatalog.getSpatialIndex().findInBounds(mPoints[2 * i] - 0.0045,
+                mPoints[2 * i + 1] - 0.018, mPoints[2 * i] + 0.0045, mPoints[2 * i + 1] + 0.018,
+                mFound);
+    }
+
+    @Benchmark
+    public boolean idEquals() {
+        int i = next();
+        return mParsedIds[i].equals(mOtherIds[i]);
+    }
+
+    @Benchmark
+    public boolean idStringEquals() {
+        int i = next();
+        return mVenueIds[i].equals(mOtherIdStrings[i]);
+    }
+
+    @Benchmark
+    public IaId newId() {
+        IaId id = mParsedIds[next()];
+        return new IaId(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    @Benchmark
+    public String newIdString() {
+        IaId id = mParsedIds[next()];
+        return new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits()).toString();
+    }
+}
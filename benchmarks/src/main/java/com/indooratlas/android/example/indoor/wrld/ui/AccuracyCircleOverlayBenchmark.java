@@ -0,0 +1,140 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.eegeo.mapapi.geometry.LatLng;
+import com.indooratlas.android.example.indoor.wrld.location.Clock;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The debug accuracy circle on every blue dot animation frame of a slow walk at 60 frames per
+ * second: through {@link AccuracyCircleOverlay}, and replacing the polygon on every frame the way
+ * the navigation controller did. The renderer builds the LatLng points the polygon options take;
+ * the native polygons added and the frames drawn are reported as secondary results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccuracyCircleOverlayBenchmark {
+
+    private static final long FRAME_MILLIS = 16;
+
+    /** About 1.4 m/s northwards, in degrees of latitude per frame. */
+    private static final double STEP_DEGREES = 1.4 * FRAME_MILLIS / 1000 / 111195;
+
+    private static final double ZOOM = 19;
+
+    private final double[] mPoints = new double[2 * AccuracyRing.MAX_POINTS];
+
+    private final FrameClock mClock = new FrameClock();
+
+    private final LatLngRenderer mRenderer = new LatLngRenderer();
+
+    private AccuracyCircleOverlay<LatLng[]> mOverlay;
+
+    private LatLng[] mPolygon;
+
+    private int mFrame;
+
+    /**
+     * Native polygons added and frames drawn in the iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Polygons {
+
+        public long polygonsAdded;
+
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            polygonsAdded = 0;
+            frames = 0;
+        }
+    }
+
+    private static final class FrameClock implements Clock {
+
+        long mNow;
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+    }
+
+    private static final class LatLngRenderer
+            implements AccuracyCircleOverlay.Renderer<LatLng[]> {
+
+        long mAdds;
+
+        @Override
+        public LatLng[] add(String indoorMapId, int floorId, double[] points, int count) {
+            LatLng[] polygon = new LatLng[count];
+            for (int i = 0; i < count; i++) {
+                polygon[i] = new LatLng(points[2 * i], points[2 * i + 1]);
+            }
+            mAdds++;
+            return polygon;
+        }
+
+        @Override
+        public void remove(LatLng[] polygon) {
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mOverlay = new AccuracyCircleOverlay<>(mClock, mRenderer);
+    }
+
+    private double latitude() {
+        // walk 10 seconds north, then start over
+        return 60.17 + (mFrame % 625) * STEP_DEGREES;
+    }
+
+    private double accuracy() {
+        return 5 + (mFrame / 30 % 4) * 0.25;
+    }
+
+    @Benchmark
+    public long overlay(Polygons polygons) {
+        mFrame++;
+        mClock.mNow += FRAME_MILLIS;
+        long adds = mRenderer.mAdds;
+        mOverlay.update(latitude(), 24.94, accuracy(), ZOOM, "venue", 1);
+        mOverlay.tick();
+        polygons.polygonsAdded += mRenderer.mAdds - adds;
+        polygons.frames++;
+        return mRenderer.mAdds;
+    }
+
+    @Benchmark
+    public LatLng[] everyFrame(Polygons polygons) {
+        mFrame++;
+        if (mPolygon != null) {
+            mRenderer.remove(mPolygon);
+        }
+        int count = AccuracyRing.computeAtZoom(latitude(), 24.94, accuracy(), ZOOM, mPoints);
+        mPolygon = mRenderer.add("venue", 1, mPoints, count);
+        polygons.polygonsAdded++;
+        polygons.frames++;
+        return mPolygon;
+    }
+}
@@ -0,0 +1,73 @@
+package com.indooratlas.android.example.indoor.wrld.ui;
+
+import com.indooratlas.android.example.indoor.wrld.location.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The math behind the blue dot animation of {@code BlueSphereHelper}: a new fix, then animation
+ * frames interpolating towards it, and the accuracy circle drawn per fix, adaptive at venue zoom
+ * levels and with a fixed table size close to the 50 points of the spherical circle in
+ * {@code GeometryBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpolationBenchmark {
+
+    private static final int FRAMES_PER_FIX = 16;
+
+    private final FixInterpolator mInterpolator = new FixInterpolator();
+
+    private final LocationFix mFix = new LocationFix();
+
+    private final double[] mCircle = new double[2 * AccuracyRing.MAX_POINTS];
+
+    private int mCount;
+
+    @Setup
+    public void setUp() {
+        mInterpolator.reset(mFix.set(LocationFix.SOURCE_INDOOR, 60.17, 24.94, 0f, 5f, 0L, 1));
+    }
+
+    @Benchmark
+    public double fixWithFrames() {
+        int count = ++mCount;
+        mInterpolator.setTarget(mFix.set(LocationFix.SOURCE_INDOOR, 60.17 + (count & 15) * 1e-6,
+                24.94 + (count & 7) * 1e-6, (count * 37) % 360, 5f, count * 1000L, 1));
+        double sum = 0;
+        for (int frame = 1; frame <= FRAMES_PER_FIX; frame++) {
+            mInterpolator.evaluate((float) frame / FRAMES_PER_FIX);
+            sum += mInterpolator.getLatitude() + mInterpolator.getBearing();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int accuracyRing() {
+        int count = ++mCount;
+        return AccuracyRing.computeAtZoom(60.17 + (count & 15) * 1e-6, 24.94, 3 + (count & 15),
+                17 + (count & 3), mCircle);
+    }
+
+    @Benchmark
+    public double[] accuracyRingTable48() {
+        int count = ++mCount;
+        AccuracyRing.compute(60.17 + (count & 15) * 1e-6, 24.94, 3 + (count & 15), 48, mCircle);
+        return mCircle;
+    }
+}
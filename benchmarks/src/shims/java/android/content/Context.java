@@ -0,0 +1,21 @@
+package android.content;
+
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * Shim of the parts of the Android class the benchmarked code compiles against. Benchmarks do not
+ * go through a context.
+ */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract AssetManager getAssets();
+
+    public abstract Resources getResources();
+
+    public abstract File getFilesDir();
+}
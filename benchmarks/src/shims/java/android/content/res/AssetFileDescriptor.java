@@ -0,0 +1,17 @@
+package android.content.res;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Shim, see {@link android.content.Context}.
+ */
+public abstract class AssetFileDescriptor implements Closeable {
+
+    public abstract FileInputStream createInputStream() throws IOException;
+
+    public abstract long getStartOffset();
+
+    public abstract long getLength();
+}
@@ -0,0 +1,11 @@
+package android.content.res;
+
+import java.io.IOException;
+
+/**
+ * Shim, see {@link android.content.Context}.
+ */
+public abstract class AssetManager {
+
+    public abstract AssetFileDescriptor openFd(String fileName) throws IOException;
+}
@@ -0,0 +1,11 @@
+package android.content.res;
+
+import java.io.InputStream;
+
+/**
+ * Shim, see {@link android.content.Context}.
+ */
+public abstract class Resources {
+
+    public abstract InputStream openRawResource(int id);
+}
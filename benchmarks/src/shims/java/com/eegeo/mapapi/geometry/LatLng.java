@@ -0,0 +1,16 @@
+package com.eegeo.mapapi.geometry;
+
+/**
+ * Shim of the WRLD SDK class, an immutable point like the real one.
+ */
+public class LatLng {
+
+    public final double latitude;
+
+    public final double longitude;
+
+    public LatLng(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
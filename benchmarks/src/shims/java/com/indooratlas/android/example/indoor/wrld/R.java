@@ -0,0 +1,12 @@
+package com.indooratlas.android.example.indoor.wrld;
+
+/**
+ * Shim of the generated resource ids used by the benchmarked code.
+ */
+public final class R {
+
+    public static final class raw {
+
+        public static final int venues = 0;
+    }
+}
@@ -0,0 +1,31 @@
+package timber.log;
+
+/**
+ * Shim of the Timber logging facade, logging is dropped like in a release build without trees.
+ */
+public final class Timber {
+
+    private Timber() {
+    }
+
+    public static void v(String message, Object... args) {
+    }
+
+    public static void d(String message, Object... args) {
+    }
+
+    public static void i(String message, Object... args) {
+    }
+
+    public static void w(String message, Object... args) {
+    }
+
+    public static void w(Throwable t, String message, Object... args) {
+    }
+
+    public static void e(String message, Object... args) {
+    }
+
+    public static void e(Throwable t, String message, Object... args) {
+    }
+}